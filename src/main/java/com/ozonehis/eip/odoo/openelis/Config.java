@@ -7,18 +7,61 @@
  */
 package com.ozonehis.eip.odoo.openelis;
 
+import ca.uhn.fhir.context.FhirContext;
+import com.ozonehis.eip.odoo.openelis.fhir.OdooFhirClientProperties;
 import com.ozonehis.eip.odoo.openelis.fhir.OpenElisFhirClient;
+import com.ozonehis.eip.odoo.openelis.fhir.OpenElisFhirClientProperties;
 import com.ozonehis.eip.odoo.openelis.task.TaskConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 
+@Slf4j
 @Configuration
 @Import(TaskConfig.class)
+@EnableConfigurationProperties({OdooFhirClientProperties.class, OpenElisFhirClientProperties.class})
 public class Config {
 
     @Bean
     public StartListener startListener(OpenElisFhirClient openElisClient) {
         return new StartListener(openElisClient);
     }
+
+    /**
+     * Creates the {@link FhirContext} shared by the fhir clients, it is created and warmed up eagerly so that the
+     * first webhook request or sync run does not pay for the model scanning. A private context is used instead of the
+     * JVM wide cached one because the fhir clients set their routing client factory on it.
+     *
+     * @return the fhir context
+     */
+    @Bean
+    public FhirContext fhirContext() {
+        final long start = System.currentTimeMillis();
+        FhirContext fhirContext = FhirUtils.warmUp(FhirContext.forR4());
+        log.info("Initialized the fhir context in {}ms", System.currentTimeMillis() - start);
+        return fhirContext;
+    }
+
+    @Bean
+    public DedupeIndex dedupeIndex(
+            @Value("${" + Constants.PROP_DEDUPE_CACHE_TTL + ":0}") long ttl,
+            @Value("${" + Constants.PROP_DEDUPE_CACHE_MAX_SIZE + ":" + Constants.DEFAULT_DEDUPE_CACHE_MAX_SIZE + "}")
+                    int maxSize,
+            @Value("${" + Constants.PROP_DELAY + "}") long delay,
+            @Value("${" + Constants.PROP_SYNC_OVERLAP + "}") long overlap) {
+        // An entry must outlive a sync run and its overlap otherwise the poll would resend what a webhook just synced
+        final long minTtl = delay + overlap;
+        if (ttl <= 0) {
+            ttl = minTtl;
+        } else if (ttl < minTtl) {
+            log.warn("Dedupe cache ttl {}ms is less than the sync delay plus overlap, using {}ms", ttl, minTtl);
+            ttl = minTtl;
+        }
+
+        log.info("Dedupe cache ttl is {}ms and max size is {}", ttl, maxSize);
+        return new DedupeIndex(Runtime.getRuntime().availableProcessors() * 4, ttl, maxSize, System::currentTimeMillis);
+    }
 }
@@ -25,5 +25,158 @@ public class Constants {
 
     public static final String PROP_SYNC_OVERLAP = "eip.sync.task.ts.overlap";
 
+    public static final String PROP_SEARCH_PAGE_SIZE = "eip.openelis.search.page.size";
+
+    public static final int DEFAULT_SEARCH_PAGE_SIZE = 100;
+
+    public static final String PROP_SEARCH_RAW = "eip.openelis.search.raw";
+
+    public static final String PROP_PREFETCH_DEPTH = "eip.sync.task.prefetch.depth";
+
+    public static final int DEFAULT_PREFETCH_DEPTH = 1;
+
+    public static final String PROP_BACKFILL_SLICES = "eip.sync.task.backfill.slices";
+
+    public static final int DEFAULT_BACKFILL_SLICES = 4;
+
+    public static final String PROP_BACKFILL_THRESHOLD = "eip.sync.task.backfill.threshold";
+
+    public static final int DEFAULT_BACKFILL_THRESHOLD = 10000;
+
+    public static final String PROP_BACKFILL_WINDOW = "eip.sync.task.backfill.window";
+
+    public static final long DEFAULT_BACKFILL_WINDOW = 3600000;
+
+    public static final String PROP_DISPATCH_MAX_IN_FLIGHT = "eip.sync.task.dispatch.max.in.flight";
+
+    public static final int DEFAULT_DISPATCH_MAX_IN_FLIGHT = 500;
+
+    public static final String PROP_DISPATCH_MAX_BYTES = "eip.sync.task.dispatch.max.bytes";
+
+    public static final String PROP_VIRTUAL_THREADS = "spring.threads.virtual.enabled";
+
+    public static final String PROP_MAX_CONCURRENCY = "eip.sync.task.max.concurrency";
+
+    public static final String PROP_ODOO_BATCH_ENABLED = "eip.odoo.fhir.batch.enabled";
+
+    public static final String PROP_ODOO_BATCH_SIZE = "eip.odoo.fhir.batch.size";
+
+    public static final String PROP_ODOO_BATCH_TYPE = "eip.odoo.fhir.batch.type";
+
+    public static final String PROP_ODOO_LIMIT_ENABLED = "eip.odoo.fhir.limit.enabled";
+
+    public static final String PROP_ODOO_LIMIT_MIN = "eip.odoo.fhir.limit.min";
+
+    public static final String PROP_ODOO_LIMIT_MAX = "eip.odoo.fhir.limit.max";
+
+    public static final String PROP_ODOO_LIMIT_LATENCY_TARGET = "eip.odoo.fhir.limit.latency.target";
+
+    public static final long DEFAULT_ODOO_LIMIT_LATENCY_TARGET = 5000;
+
+    public static final String PROP_ODOO_LIMIT_BACKOFF_RATIO = "eip.odoo.fhir.limit.backoff.ratio";
+
+    public static final double DEFAULT_ODOO_LIMIT_BACKOFF_RATIO = 0.75;
+
+    public static final String PROP_ODOO_CIRCUIT_ENABLED = "eip.odoo.fhir.circuit.enabled";
+
+    public static final String PROP_ODOO_CIRCUIT_FAILURE_RATE = "eip.odoo.fhir.circuit.failure.rate";
+
+    public static final int DEFAULT_ODOO_CIRCUIT_FAILURE_RATE = 50;
+
+    public static final String PROP_ODOO_CIRCUIT_WINDOW = "eip.odoo.fhir.circuit.window";
+
+    public static final int DEFAULT_ODOO_CIRCUIT_WINDOW = 20;
+
+    public static final String PROP_ODOO_CIRCUIT_MIN_CALLS = "eip.odoo.fhir.circuit.min.calls";
+
+    public static final int DEFAULT_ODOO_CIRCUIT_MIN_CALLS = 10;
+
+    public static final String PROP_ODOO_CIRCUIT_OPEN_DURATION = "eip.odoo.fhir.circuit.open.duration";
+
+    public static final long DEFAULT_ODOO_CIRCUIT_OPEN_DURATION = 30000;
+
+    public static final String PROP_ODOO_CIRCUIT_TRIAL_CALLS = "eip.odoo.fhir.circuit.trial.calls";
+
+    public static final int DEFAULT_ODOO_CIRCUIT_TRIAL_CALLS = 3;
+
+    public static final String PROP_RETRY_QUEUE_FILE = "eip.sync.retry.queue.file";
+
+    public static final String PROP_RETRY_INITIAL_DELAY = "eip.sync.retry.initial.delay";
+
+    public static final long DEFAULT_RETRY_INITIAL_DELAY = 60000;
+
+    public static final String PROP_RETRY_MAX_DELAY = "eip.sync.retry.max.delay";
+
+    public static final long DEFAULT_RETRY_MAX_DELAY = 3600000;
+
+    public static final String PROP_RETRY_MAX_ATTEMPTS = "eip.sync.retry.max.attempts";
+
+    public static final int DEFAULT_RETRY_MAX_ATTEMPTS = 20;
+
+    public static final String PROP_RETRY_BATCH_SIZE = "eip.sync.retry.batch.size";
+
+    public static final int DEFAULT_RETRY_BATCH_SIZE = 500;
+
+    public static final String PROP_DEDUPE_CACHE_TTL = "eip.dedupe.cache.ttl";
+
+    public static final String PROP_DEDUPE_CACHE_MAX_SIZE = "eip.dedupe.cache.max.size";
+
+    public static final int DEFAULT_DEDUPE_CACHE_MAX_SIZE = 100000;
+
+    public static final String PROP_FINGERPRINT_ENABLED = "eip.sync.fingerprint.enabled";
+
+    public static final String PROP_FINGERPRINT_FILE = "eip.sync.fingerprint.file";
+
+    public static final String PROP_FINGERPRINT_RESET = "eip.sync.fingerprint.reset";
+
+    public static final String PROP_WEBHOOK_QUEUE_CAPACITY = "eip.webhook.queue.capacity";
+
+    public static final int DEFAULT_WEBHOOK_QUEUE_CAPACITY = 1000;
+
+    public static final String PROP_WEBHOOK_WORKERS = "eip.webhook.workers";
+
+    public static final int DEFAULT_WEBHOOK_WORKERS = 4;
+
+    public static final String PROP_WEBHOOK_RETRY_AFTER = "eip.webhook.retry.after";
+
+    public static final int DEFAULT_WEBHOOK_RETRY_AFTER = 5;
+
+    public static final int DEFAULT_HTTP_CONNECT_TIMEOUT = 30000;
+
+    public static final int DEFAULT_HTTP_CONNECTION_REQUEST_TIMEOUT = 120000;
+
+    public static final int DEFAULT_HTTP_SOCKET_TIMEOUT = 120000;
+
+    public static final long DEFAULT_HTTP_KEEP_ALIVE = 60000;
+
+    public static final long DEFAULT_HTTP_IDLE_TIMEOUT = 30000;
+
+    public static final int DEFAULT_HTTP_RETRY_MAX_ATTEMPTS = 3;
+
+    public static final long DEFAULT_HTTP_RETRY_INITIAL_DELAY = 500;
+
+    public static final long DEFAULT_HTTP_RETRY_MAX_DELAY = 10000;
+
+    public static final String DEFAULT_HTTP_RETRY_STATUS_CODES = "429,502,503,504";
+
+    public static final String DEFAULT_HTTP_RETRY_EXCEPTIONS = "org.apache.http.NoHttpResponseException,"
+            + "java.net.ConnectException,java.net.SocketTimeoutException,java.net.http.HttpTimeoutException";
+
+    public static final String DEFAULT_HTTP_RETRY_WRITE_EXCEPTIONS = "org.apache.http.NoHttpResponseException,"
+            + "java.net.ConnectException,org.apache.http.conn.ConnectTimeoutException,"
+            + "java.net.http.HttpConnectTimeoutException";
+
+    public static final double DEFAULT_HTTP_RETRY_BUDGET_RATIO = 0.2;
+
+    public static final String HTTP_CLIENT_APACHE = "apache";
+
+    public static final String HTTP_CLIENT_JDK = "jdk";
+
     public static final String DEFAULT_SYNC_TS_FILE = "sync_timestamps.txt";
+
+    public static final String DEFAULT_RETRY_QUEUE_FILE = "sync_retry_queue.txt";
+
+    public static final String DEFAULT_RETRY_DEAD_LETTER_FILE = "sync_dead_letters.txt";
+
+    public static final String DEFAULT_FINGERPRINT_FILE = "sync_fingerprints.txt";
 }
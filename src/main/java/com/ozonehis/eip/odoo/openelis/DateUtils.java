@@ -41,6 +41,16 @@ public class DateUtils {
                 .toLocalDateTime();
     }
 
+    /**
+     * Converts the specified serialized date to milliseconds since the epoch.
+     *
+     * @param date the date to convert
+     * @return the epoch milliseconds
+     */
+    public static long toEpochMilli(String date) {
+        return ZonedDateTime.parse(date, DATE_FORMATTER).toInstant().toEpochMilli();
+    }
+
     /**
      * Convert Date to LocalDateTime.
      *
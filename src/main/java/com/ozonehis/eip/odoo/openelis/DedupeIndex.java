@@ -0,0 +1,440 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A concurrent index of the last updated timestamps of resources keyed by resource type ordinal and id, the entries are
+ * spread across stripes each guarded by its own {@link StampedLock} so that lookups from different threads rarely
+ * contend, lookups use optimistic reads and do not allocate. Each stripe is an open addressing hash table with linear
+ * probing that stores the timestamps as epoch milliseconds in a primitive array.
+ * <p>
+ * Entries expire after the configured time to live from when they were stored, and when a stripe reaches its share of
+ * the maximum size an entry is evicted using the clock algorithm i.e. a hand sweeps the slots giving a second chance to
+ * entries that were read since the last sweep.
+ */
+public class DedupeIndex implements MeterBinder {
+
+    /**
+     * Value returned for a resource that is not in the index.
+     */
+    public static final long ABSENT = Long.MIN_VALUE;
+
+    /**
+     * Value stored for a deleted resource.
+     */
+    public static final long DELETED = Long.MIN_VALUE + 1;
+
+    private static final int INITIAL_STRIPE_CAPACITY = 16;
+
+    // Number of slots examined for expired entries on each insert so that memory is reclaimed without a sweeper thread
+    private static final int SWEEP_STEPS = 2;
+
+    private final Stripe[] stripes;
+
+    private final int stripeMask;
+
+    private final int stripeShift;
+
+    private final long ttl;
+
+    private final int maxStripeSize;
+
+    private final LongSupplier clock;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder expirations = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    public DedupeIndex() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param concurrency the expected number of concurrently updating threads, it is rounded up to a power of two to
+     *     get the number of stripes
+     */
+    public DedupeIndex(int concurrency) {
+        this(concurrency, 0, 0, System::currentTimeMillis);
+    }
+
+    /**
+     * @param concurrency the expected number of concurrently updating threads, it is rounded up to a power of two to
+     *     get the number of stripes
+     * @param ttl the time in milliseconds after which an entry expires, a value less than 1 means entries never expire
+     * @param maxSize the maximum number of entries, a value less than 1 means no limit, the limit is applied per stripe
+     *     so it is rounded up to a multiple of the stripe count
+     * @param clock supplies the current time in milliseconds
+     */
+    public DedupeIndex(int concurrency, long ttl, int maxSize, LongSupplier clock) {
+        int stripeCount = Integer.highestOneBit(Math.max(concurrency - 1, 1)) << 1;
+        stripeMask = stripeCount - 1;
+        stripeShift = Integer.numberOfTrailingZeros(stripeCount);
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+
+        this.ttl = ttl;
+        this.maxStripeSize = maxSize > 0 ? Math.max((maxSize + stripeCount - 1) / stripeCount, 1) : 0;
+        this.clock = clock;
+    }
+
+    /**
+     * Gets the value stored for the specified resource.
+     *
+     * @param type the resource type ordinal
+     * @param id the resource id
+     * @return the stored value, {@link #DELETED} for a deleted resource or {@link #ABSENT} if there is no entry or the
+     *     entry has expired
+     */
+    public long get(int type, String id) {
+        final int hash = hash(type, id);
+        final Stripe stripe = stripes[hash & stripeMask];
+        final int slotHash = hash >>> stripeShift;
+        long stamp = stripe.lock.tryOptimisticRead();
+        Table table = stripe.table;
+        int slot = table.find(type, id, slotHash);
+        long value = slot < 0 ? ABSENT : table.values[slot];
+        long storedAt = slot < 0 ? 0 : table.storedAt[slot];
+        if (!stripe.lock.validate(stamp)) {
+            stamp = stripe.lock.readLock();
+            try {
+                table = stripe.table;
+                slot = table.find(type, id, slotHash);
+                value = slot < 0 ? ABSENT : table.values[slot];
+                storedAt = slot < 0 ? 0 : table.storedAt[slot];
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+
+        if (value == ABSENT || isExpired(storedAt, clock.getAsLong())) {
+            misses.increment();
+            return ABSENT;
+        }
+
+        // A benign race, the flag is only a hint for the clock hand
+        table.referenced[slot] = true;
+        hits.increment();
+        return value;
+    }
+
+    /**
+     * Stores the specified value for the specified resource replacing any existing value.
+     *
+     * @param type the resource type ordinal
+     * @param id the resource id
+     * @param value the value to store, epoch milliseconds or {@link #DELETED}
+     */
+    public void put(int type, String id, long value) {
+        final int hash = hash(type, id);
+        final Stripe stripe = stripes[hash & stripeMask];
+        final long now = clock.getAsLong();
+        final long stamp = stripe.lock.writeLock();
+        try {
+            stripe.put(type, id, hash >>> stripeShift, value, now);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            final long stamp = stripe.lock.writeLock();
+            try {
+                stripe.table = new Table(INITIAL_STRIPE_CAPACITY);
+                stripe.size = 0;
+                stripe.hand = 0;
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of entries including expired entries that are not yet removed.
+     *
+     * @return the entry count
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            final long stamp = stripe.lock.readLock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getExpiredCount() {
+        return expirations.sum();
+    }
+
+    public long getEvictedCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("eip.dedupe.cache.requests", this, DedupeIndex::getHitCount)
+                .description("The number of dedupe lookups that found a live entry")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("eip.dedupe.cache.requests", this, DedupeIndex::getMissCount)
+                .description("The number of dedupe lookups that found no entry or an expired one")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("eip.dedupe.cache.evictions", this, DedupeIndex::getExpiredCount)
+                .description("The number of dedupe entries removed because they expired")
+                .tag("cause", "expired")
+                .register(registry);
+        FunctionCounter.builder("eip.dedupe.cache.evictions", this, DedupeIndex::getEvictedCount)
+                .description("The number of dedupe entries evicted to stay within the maximum size")
+                .tag("cause", "size")
+                .register(registry);
+        Gauge.builder("eip.dedupe.cache.size", this, DedupeIndex::size)
+                .description("The number of entries in the dedupe cache")
+                .register(registry);
+    }
+
+    private boolean isExpired(long storedAt, long now) {
+        return ttl > 0 && now - storedAt >= ttl;
+    }
+
+    private static int hash(int type, String id) {
+        final int h = id.hashCode() * 31 + type;
+        return h ^ (h >>> 16);
+    }
+
+    private final class Stripe {
+
+        private final StampedLock lock = new StampedLock();
+
+        private volatile Table table = new Table(INITIAL_STRIPE_CAPACITY);
+
+        private int size;
+
+        private int hand;
+
+        private void put(int type, String id, int slotHash, long value, long now) {
+            Table current = table;
+            int slot = current.indexOf(type, id, slotHash);
+            if (current.ids[slot] != null) {
+                current.values[slot] = value;
+                current.storedAt[slot] = now;
+                return;
+            }
+
+            if (maxStripeSize > 0 && size >= maxStripeSize) {
+                evictOne(now);
+                // The eviction may have shifted entries into the free slot
+                slot = current.indexOf(type, id, slotHash);
+            }
+
+            current.insert(slot, type, id, value, now);
+            size++;
+            sweepExpired(now);
+            // Keep the load factor at or below 0.5 so probe sequences stay short
+            if (size * 2 > current.ids.length) {
+                table = current.resize(current.ids.length * 2, stripeShift);
+                hand = 0;
+            }
+        }
+
+        /**
+         * Advances the clock hand by a few slots removing any expired entries it passes.
+         */
+        private void sweepExpired(long now) {
+            if (ttl <= 0) {
+                return;
+            }
+
+            Table current = table;
+            for (int i = 0; i < SWEEP_STEPS; i++) {
+                hand = hand & current.mask;
+                if (current.ids[hand] != null && isExpired(current.storedAt[hand], now)) {
+                    // The backward shift may move an unchecked entry into this slot so the hand stays in place
+                    remove(hand);
+                    expirations.increment();
+                } else {
+                    hand++;
+                }
+            }
+        }
+
+        /**
+         * Moves the clock hand until an entry that is expired or was not read since the hand last passed it is found
+         * and removes it.
+         */
+        private void evictOne(long now) {
+            Table current = table;
+            // Two full turns are enough since the first turn clears all the referenced flags
+            for (int i = 0; i < current.ids.length * 2; i++) {
+                hand = hand & current.mask;
+                if (current.ids[hand] != null) {
+                    if (isExpired(current.storedAt[hand], now)) {
+                        remove(hand);
+                        expirations.increment();
+                        return;
+                    }
+
+                    if (!current.referenced[hand]) {
+                        remove(hand);
+                        evictions.increment();
+                        return;
+                    }
+
+                    current.referenced[hand] = false;
+                }
+
+                hand++;
+            }
+        }
+
+        private void remove(int slot) {
+            table.remove(slot, stripeShift);
+            size--;
+        }
+    }
+
+    /**
+     * The arrays of a stripe, they are held together in a single object so that an optimistic reader always sees
+     * arrays of the same length.
+     */
+    private static final class Table {
+
+        private final String[] ids;
+
+        private final int[] types;
+
+        private final long[] values;
+
+        private final long[] storedAt;
+
+        private final boolean[] referenced;
+
+        private final int mask;
+
+        private Table(int capacity) {
+            ids = new String[capacity];
+            types = new int[capacity];
+            values = new long[capacity];
+            storedAt = new long[capacity];
+            referenced = new boolean[capacity];
+            mask = capacity - 1;
+        }
+
+        /**
+         * Gets the slot of the specified resource.
+         *
+         * @return the slot or -1 if not found
+         */
+        private int find(int type, String id, int slotHash) {
+            int slot = slotHash & mask;
+            for (int i = 0; i <= mask; i++) {
+                final String existing = ids[slot];
+                if (existing == null) {
+                    return -1;
+                }
+
+                if (types[slot] == type && existing.equals(id)) {
+                    return slot;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+
+            return -1;
+        }
+
+        /**
+         * Gets the slot of the specified resource or the free slot where it should be inserted, must be called with
+         * the write lock held.
+         */
+        private int indexOf(int type, String id, int slotHash) {
+            int slot = slotHash & mask;
+            while (ids[slot] != null && (types[slot] != type || !ids[slot].equals(id))) {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
+        }
+
+        private void insert(int slot, int type, String id, long value, long storedAt) {
+            this.types[slot] = type;
+            this.values[slot] = value;
+            this.storedAt[slot] = storedAt;
+            this.referenced[slot] = false;
+            this.ids[slot] = id;
+        }
+
+        /**
+         * Removes the entry in the specified slot and shifts back the entries after it in the same probe sequence so
+         * that lookups do not stop at the freed slot.
+         */
+        private void remove(int slot, int stripeShift) {
+            int free = slot;
+            int next = (free + 1) & mask;
+            while (ids[next] != null) {
+                final int home = (hash(types[next], ids[next]) >>> stripeShift) & mask;
+                // Move the entry unless its home slot is cyclically after the free slot and at or before its slot
+                final boolean stays = free <= next ? (free < home && home <= next) : (free < home || home <= next);
+                if (!stays) {
+                    insert(free, types[next], ids[next], values[next], storedAt[next]);
+                    referenced[free] = referenced[next];
+                    free = next;
+                }
+
+                next = (next + 1) & mask;
+            }
+
+            ids[free] = null;
+            referenced[free] = false;
+        }
+
+        private Table resize(int capacity, int stripeShift) {
+            Table resized = new Table(capacity);
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != null) {
+                    final int slot = resized.indexOf(types[i], ids[i], hash(types[i], ids[i]) >>> stripeShift);
+                    resized.insert(slot, types[i], ids[i], values[i], storedAt[i]);
+                    resized.referenced[slot] = referenced[i];
+                }
+            }
+
+            return resized;
+        }
+    }
+}
@@ -7,12 +7,21 @@
  */
 package com.ozonehis.eip.odoo.openelis;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.function.IOConsumer;
 
 public class EipFileUtils {
 
@@ -32,6 +41,53 @@ public class EipFileUtils {
         return FileUtils.openOutputStream(file);
     }
 
+    /**
+     * Replaces the contents of the specified file with the output of the specified writer in a crash safe way, the
+     * output is written to a temporary file in the same directory which is synced to disk and then atomically renamed
+     * to the target file, a reader or a crash therefore sees either the old or the new contents and never a partially
+     * written file.
+     *
+     * @param file the file to write
+     * @param writer writes the new contents to the stream it is passed, the stream must not be closed by the writer
+     * @throws IOException
+     */
+    public static void writeAtomically(File file, IOConsumer<OutputStream> writer) throws IOException {
+        final Path target = file.toPath().toAbsolutePath();
+        final Path dir = target.getParent();
+        final Path tempFile = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        try {
+            try (FileOutputStream fileOut = new FileOutputStream(tempFile.toFile());
+                    BufferedOutputStream out = new BufferedOutputStream(fileOut)) {
+                writer.accept(out);
+                out.flush();
+                fileOut.getFD().sync();
+            }
+
+            try {
+                Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+
+        syncDirectory(dir);
+    }
+
+    /**
+     * Syncs the specified directory to disk so that a rename in it survives a crash, this is a best effort since some
+     * platforms do not support opening a directory.
+     */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on this platform
+        }
+    }
+
     /**
      * Creates a new file instance for the specified file path.
      *
@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import java.util.List;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.CapabilityStatement;
+import org.hl7.fhir.r4.model.HumanName;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.ServiceRequest;
+import org.hl7.fhir.r4.model.Subscription;
+
+public class FhirUtils {
+
+    /**
+     * The resource types exchanged with OpenELIS and Odoo.
+     */
+    private static final List<Class<? extends IBaseResource>> RESOURCE_TYPES = List.of(
+            Patient.class,
+            ServiceRequest.class,
+            Subscription.class,
+            Bundle.class,
+            OperationOutcome.class,
+            CapabilityStatement.class);
+
+    /**
+     * Scans the model of the resource types exchanged with OpenELIS and Odoo and runs a round trip through the JSON
+     * parser so that the first request does not pay for the lazy initialization of the specified context.
+     *
+     * @param fhirContext the fhir context to warm up
+     * @return the fhir context
+     */
+    public static FhirContext warmUp(FhirContext fhirContext) {
+        RESOURCE_TYPES.forEach(fhirContext::getResourceDefinition);
+        IParser parser = fhirContext.newJsonParser();
+        Bundle bundle = new Bundle();
+        bundle.addEntry().setResource(new Patient().addName(new HumanName().setFamily("warm")));
+        bundle.addEntry().setResource(new ServiceRequest().setSubject(new Reference("Patient/1")));
+        parser.parseResource(Bundle.class, parser.encodeResourceToString(bundle));
+        return fhirContext;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+
+/**
+ * Reads the meta element of a fhir resource from its JSON payload with a streaming parser, the parser stops as soon as
+ * it has read the meta element and skips over any other top level element without building a tree, the meta of
+ * contained resources is ignored.
+ */
+public final class ResourceMetaReader {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private static final String META = "meta";
+
+    private static final String VERSION_ID = "versionId";
+
+    private static final String LAST_UPDATED = "lastUpdated";
+
+    /**
+     * The meta fields of a resource.
+     *
+     * @param versionId the version id, null if absent
+     * @param lastUpdated the last updated timestamp as in the payload, null if absent
+     */
+    public record ResourceMeta(String versionId, String lastUpdated) {}
+
+    private static final ResourceMeta EMPTY = new ResourceMeta(null, null);
+
+    private ResourceMetaReader() {}
+
+    /**
+     * Reads the meta element from the specified resource payload.
+     *
+     * @param payload the JSON payload of the resource
+     * @return the resource meta, its fields are null if the resource has no meta element
+     */
+    public static ResourceMeta read(String payload) {
+        try (JsonParser parser = FACTORY.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new RuntimeException("Expected a JSON object for the resource payload");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final boolean isMeta = META.equals(parser.currentName());
+                final JsonToken value = parser.nextToken();
+                if (isMeta && value == JsonToken.START_OBJECT) {
+                    return readMeta(parser);
+                }
+
+                parser.skipChildren();
+            }
+
+            return EMPTY;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read the resource meta", e);
+        }
+    }
+
+    /**
+     * Reads the last updated timestamp from the specified resource payload.
+     *
+     * @param payload the JSON payload of the resource
+     * @return the last updated timestamp as in the payload or null if absent
+     */
+    public static String readLastUpdated(String payload) {
+        return read(payload).lastUpdated();
+    }
+
+    private static ResourceMeta readMeta(JsonParser parser) throws IOException {
+        String versionId = null;
+        String lastUpdated = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.currentName();
+            final JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_STRING && VERSION_ID.equals(name)) {
+                versionId = parser.getText();
+            } else if (value == JsonToken.VALUE_STRING && LAST_UPDATED.equals(name)) {
+                lastUpdated = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+
+            if (versionId != null && lastUpdated != null) {
+                break;
+            }
+        }
+
+        return new ResourceMeta(versionId, lastUpdated);
+    }
+}
@@ -7,66 +7,80 @@
  */
 package com.ozonehis.eip.odoo.openelis;
 
-import com.jayway.jsonpath.JsonPath;
 import java.time.LocalDateTime;
-import java.util.Collections;
-import java.util.HashMap;
+import java.time.ZoneId;
+import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.ResourceType;
 
 @Slf4j
 public class SyncUtils {
 
-    private static final Map<String, LocalDateTime> ID_LAST_UPDATED_MAP = Collections.synchronizedMap(new HashMap<>());
+    private static final Map<String, Integer> UNKNOWN_TYPES = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger NEXT_UNKNOWN_TYPE = new AtomicInteger(ResourceType.values().length);
 
     /**
      * Saves the last updated timestamp for a given resource type and id.
      *
+     * @param index        the index of the last updated timestamps
      * @param resourceType the type of the resource
      * @param id           the identifier of the resource
      * @param lastUpdated  the timestamp of the last update
      */
-    public static void saveLastUpdated(String resourceType, String id, LocalDateTime lastUpdated) {
+    public static void saveLastUpdated(DedupeIndex index, String resourceType, String id, LocalDateTime lastUpdated) {
         if (log.isDebugEnabled()) {
             log.debug("Saving lastUpdated timestamp for {}/{} as {}", resourceType, id, lastUpdated);
         }
 
-        ID_LAST_UPDATED_MAP.put(resourceType + id, lastUpdated);
-    }
-
-    /**
-     * Clears all resource and lastUpdated timestamp entries.
-     */
-    public static void clearLastUpdatedTimestamps() {
-        ID_LAST_UPDATED_MAP.clear();
+        index.put(
+                getTypeOrdinal(resourceType),
+                id,
+                lastUpdated == null ? DedupeIndex.DELETED : toEpochMilli(lastUpdated));
     }
 
     /**
      * Determines whether a resource of the specified type, id and payload should be skipped based on its last updated timestamp.
      *
+     * @param index        the index of the last updated timestamps
      * @param resourceType the type of the resource
      * @param id           the id of the resource
      * @param payload      the JSON payload of the resource
      * @return true if the resource should be skipped otherwise false.
      */
-    public static boolean skip(String resourceType, String id, String payload) {
+    public static boolean skip(DedupeIndex index, String resourceType, String id, String payload) {
+        final int type = getTypeOrdinal(resourceType);
         if (payload != null) {
-            return skip(resourceType, id, DateUtils.deserialize(JsonPath.read(payload, "meta.lastUpdated")));
+            final String lastUpdated = ResourceMetaReader.readLastUpdated(payload);
+            if (lastUpdated == null) {
+                return false;
+            }
+
+            return skip(index, type, id, DateUtils.toEpochMilli(lastUpdated));
         }
 
         // This is a deleted resource
-        return ID_LAST_UPDATED_MAP.containsKey(resourceType + id) && getLastUpdated(resourceType, id) == null;
+        return index.get(type, id) == DedupeIndex.DELETED;
     }
 
     /**
      * Determines whether a given resource should be skipped based on its last updated timestamp.
      *
+     * @param index    the index of the last updated timestamps
      * @param resource the resource
      * @return true if the resource should be skipped otherwise false.
      */
-    public static boolean skip(DomainResource resource) {
-        return skip(resource.fhirType(), resource.getIdPart(), getLastUpdatedTimeStamp(resource));
+    public static boolean skip(DedupeIndex index, DomainResource resource) {
+        Date lastUpdated = resource.getMeta().getLastUpdated();
+        if (lastUpdated == null) {
+            return false;
+        }
+
+        return skip(index, resource.getResourceType().ordinal(), resource.getIdPart(), lastUpdated.getTime());
     }
 
     /**
@@ -82,28 +96,54 @@ public class SyncUtils {
     /**
      * Retrieves the last updated timestamp for a given resource type and id.
      *
+     * @param index        the index of the last updated timestamps
      * @param resourceType the type of the resource
      * @param id           the identifier of the resource
-     * @return the last updated timestamp of the resource, or null if no entry exists
+     * @return the last updated timestamp of the resource, or null if no entry exists or the resource was deleted
      */
-    public static LocalDateTime getLastUpdated(String resourceType, String id) {
-        return ID_LAST_UPDATED_MAP.get(resourceType + id);
+    public static LocalDateTime getLastUpdated(DedupeIndex index, String resourceType, String id) {
+        final long value = index.get(getTypeOrdinal(resourceType), id);
+        if (value == DedupeIndex.ABSENT || value == DedupeIndex.DELETED) {
+            return null;
+        }
+
+        return DateUtils.toLocalDateTime(new Date(value));
     }
 
     /**
      * Determines whether a given resource should be skipped based on the specified last updated timestamp.
      *
-     * @param resourceType the type of the resource
-     * @param id           the id of the resource
-     * @param lastUpdated  the resource lastUpdated date
+     * @param index       the index of the last updated timestamps
+     * @param type        the resource type ordinal
+     * @param id          the id of the resource
+     * @param lastUpdated the resource lastUpdated in epoch milliseconds
      * @return true if the resource should be skipped otherwise false.
      */
-    private static boolean skip(String resourceType, String id, LocalDateTime lastUpdated) {
-        LocalDateTime previousLastUpdated = getLastUpdated(resourceType, id);
-        if (previousLastUpdated != null) {
-            return lastUpdated.isBefore(previousLastUpdated) || lastUpdated.equals(previousLastUpdated);
+    private static boolean skip(DedupeIndex index, int type, String id, long lastUpdated) {
+        final long previousLastUpdated = index.get(type, id);
+        if (previousLastUpdated == DedupeIndex.ABSENT || previousLastUpdated == DedupeIndex.DELETED) {
+            return false;
+        }
+
+        return lastUpdated <= previousLastUpdated;
+    }
+
+    /**
+     * Gets the ordinal of the {@link ResourceType} with the specified name, a resource type that is not known to the
+     * fhir model is assigned an ordinal after the known ones.
+     *
+     * @param resourceType the resource type name
+     * @return the ordinal
+     */
+    private static int getTypeOrdinal(String resourceType) {
+        try {
+            return ResourceType.valueOf(resourceType).ordinal();
+        } catch (IllegalArgumentException e) {
+            return UNKNOWN_TYPES.computeIfAbsent(resourceType, k -> NEXT_UNKNOWN_TYPE.getAndIncrement());
         }
+    }
 
-        return false;
+    private static long toEpochMilli(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 }
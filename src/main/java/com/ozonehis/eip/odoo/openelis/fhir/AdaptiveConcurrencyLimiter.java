@@ -0,0 +1,194 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import java.io.InterruptedIOException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Limits the number of concurrent requests sent to a fhir server with an additive increase multiplicative decrease
+ * algorithm, the limit grows by one for each round of requests completed within the latency target while the limit is
+ * in use and it is cut by the backoff ratio when a request fails to connect, times out, fails with a 5xx or 429 status code or exceeds
+ * the latency target. Only one cut is applied for the requests that were already in flight at the time of a cut so that
+ * a burst of failures from the same overload does not collapse the limit.
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    private final String name;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long latencyTarget;
+
+    private final double backoffRatio;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition available = lock.newCondition();
+
+    private double limit;
+
+    private int inFlight;
+
+    private long lastDecrease = System.nanoTime();
+
+    /**
+     * @param name the name of the server the requests are sent to
+     * @param minLimit the minimum limit
+     * @param maxLimit the maximum limit, it is also the initial limit
+     * @param latencyTarget the latency in milliseconds above which a request is considered a sign of overload
+     * @param backoffRatio the ratio to multiply the limit by on overload, between 0 and 1
+     */
+    public AdaptiveConcurrencyLimiter(
+            String name, int minLimit, int maxLimit, long latencyTarget, double backoffRatio) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new RuntimeException("Invalid concurrency limits " + minLimit + " and " + maxLimit + " for " + name);
+        }
+
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new RuntimeException("The concurrency limit backoff ratio for " + name + " must be between 0 and 1");
+        }
+
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTarget = TimeUnit.MILLISECONDS.toNanos(latencyTarget);
+        this.backoffRatio = backoffRatio;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Sends a request once the number of requests in flight is below the limit and adjusts the limit based on its
+     * outcome and latency.
+     *
+     * @param request the request to send
+     * @return the value returned by the request
+     * @param <T> the type of the returned value
+     */
+    public <T> T execute(Supplier<T> request) {
+        final long start = acquire();
+        boolean overloaded = false;
+        try {
+            return request.get();
+        } catch (RuntimeException e) {
+            overloaded = isOverload(e);
+            throw e;
+        } finally {
+            release(start, overloaded);
+        }
+    }
+
+    /**
+     * Waits for a request slot.
+     *
+     * @return the time in nanoseconds when the slot was acquired
+     */
+    protected long acquire() {
+        lock.lock();
+        try {
+            while (inFlight >= getLimit()) {
+                available.await();
+            }
+
+            inFlight++;
+            return System.nanoTime();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to send a request to " + name, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a request slot and adjusts the limit.
+     *
+     * @param start the time in nanoseconds when the slot was acquired
+     * @param failed true if the request failed with an error that is a sign of overload
+     */
+    protected void release(long start, boolean failed) {
+        final long now = System.nanoTime();
+        lock.lock();
+        try {
+            final boolean saturated = inFlight * 2 >= getLimit();
+            inFlight--;
+            if (failed || now - start > latencyTarget) {
+                if (start - lastDecrease >= 0) {
+                    final int previous = getLimit();
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecrease = now;
+                    if (getLimit() != previous) {
+                        log.info(
+                                "Reduced the concurrency limit for {} from {} to {} after {}",
+                                name,
+                                previous,
+                                getLimit(),
+                                failed ? "a failed request" : "a slow request");
+                    }
+                }
+            } else if (saturated && limit < maxLimit) {
+                // Adding 1 / limit per request grows the limit by one per round of requests
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the current limit.
+     *
+     * @return the limit
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Gets the number of requests in flight.
+     *
+     * @return the number of requests
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Checks if the specified error is a sign that the server is overloaded i.e. a connection error, a timeout or a 5xx
+     * or 429 status code.
+     *
+     * @param e the error
+     * @return true if it is an overload error otherwise false
+     */
+    protected static boolean isOverload(Throwable e) {
+        // Connection errors including timeouts are reported by the fhir client with a 500 status code
+        if (e instanceof BaseServerResponseException serverException) {
+            final int code = serverException.getStatusCode();
+            return code >= 500 || code == 429;
+        }
+
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedIOException || cause instanceof HttpTimeoutException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -8,32 +8,147 @@
 package com.ozonehis.eip.odoo.openelis.fhir;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.HookParams;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.EncodingEnum;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.client.apache.ApacheRestfulClientFactory;
+import ca.uhn.fhir.rest.client.api.ClientResponseContext;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.IHttpClient;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import ca.uhn.fhir.rest.client.api.IRestfulClient;
+import ca.uhn.fhir.rest.client.api.IRestfulClientFactory;
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
 import ca.uhn.fhir.rest.gclient.TokenClientParam;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import com.ozonehis.eip.odoo.openelis.Constants;
+import com.ozonehis.eip.odoo.openelis.fhir.jdk.JdkRestfulClientFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.UnaryOperator;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
 import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.Bundle.HTTPVerb;
 import org.hl7.fhir.r4.model.DomainResource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
 /**
  * Base class for classes that interact with a FHIR server.
  */
 @Slf4j
-public abstract class BaseFhirClient {
+public abstract class BaseFhirClient implements DisposableBean {
+
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    public static final String OPERATION_READ = "read";
+
+    public static final String OPERATION_SEARCH = "search";
+
+    public static final String OPERATION_CREATE = "create";
+
+    public static final String OPERATION_UPDATE = "update";
+
+    public static final String OPERATION_DELETE = "delete";
+
+    public static final String OPERATION_TRANSACTION = "transaction";
+
+    private static final Set<Integer> BATCH_UNSUPPORTED_CODES = Set.of(404, 405, 501);
 
     @Getter
     private String sourceName;
 
+    @Getter
+    private FhirClientProperties properties;
+
     protected FhirContext fhirContext;
 
+    protected IRestfulClientFactory clientFactory;
+
     private IGenericClient fhirClient;
 
-    public BaseFhirClient(String sourceName) {
+    private volatile boolean batchUnsupported;
+
+    @Value("${" + Constants.PROP_MAX_CONCURRENCY + ":0}")
+    private int syncConcurrency;
+
+    @Value("${" + Constants.PROP_WEBHOOK_WORKERS + ":" + Constants.DEFAULT_WEBHOOK_WORKERS + "}")
+    private int webhookWorkers = Constants.DEFAULT_WEBHOOK_WORKERS;
+
+    private MeterRegistry meterRegistry;
+
+    private HttpTrafficMetrics trafficMetrics;
+
+    private volatile AdaptiveConcurrencyLimiter writeLimiter;
+
+    private volatile CircuitBreaker circuitBreaker;
+
+    private volatile RetryPolicy retryPolicy;
+
+    /**
+     * @param sourceName the name of the fhir server
+     * @param properties the http and retry settings of the client
+     */
+    public BaseFhirClient(String sourceName, FhirClientProperties properties) {
         this.sourceName = sourceName;
+        this.properties = properties;
+    }
+
+    /**
+     * Sets the {@link FhirContext} to use, the context is expensive to create so a single instance is shared by all the
+     * clients, each client has its own restful client factory so that the http settings are not shared.
+     *
+     * @param fhirContext the fhir context
+     */
+    @Autowired
+    public void setFhirContext(FhirContext fhirContext) {
+        this.fhirContext = fhirContext;
+    }
+
+    /**
+     * Sets the registry to report the connection pool metrics.
+     *
+     * @param meterRegistry the meter registry
+     */
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
     }
 
     /**
@@ -45,11 +160,39 @@ public abstract class BaseFhirClient {
         if (fhirClient == null) {
             synchronized (this) {
                 if (fhirClient == null) {
-                    fhirContext = FhirContext.forR4();
-                    fhirContext.getRestfulClientFactory().setConnectTimeout(30000);
-                    fhirContext.getRestfulClientFactory().setConnectionRequestTimeout(120000);
-                    fhirContext.getRestfulClientFactory().setSocketTimeout(120000);
-                    fhirClient = createFhirClient();
+                    if (fhirContext == null) {
+                        fhirContext = FhirContext.forR4();
+                    }
+
+                    if (meterRegistry != null && trafficMetrics == null) {
+                        trafficMetrics = new HttpTrafficMetrics(meterRegistry, sourceName);
+                    }
+
+                    clientFactory = createClientFactory(getHttpClientSettings());
+                    IGenericClient client = createFhirClient();
+                    writeLimiter = createWriteLimiter(getMaxConcurrency());
+                    if (writeLimiter != null && meterRegistry != null) {
+                        registerLimiterMetrics(writeLimiter);
+                    }
+
+                    RetrySettings retrySettings = getRetrySettings();
+                    if (retrySettings != null && retrySettings.maxAttempts() > 1) {
+                        retryPolicy = new RetryPolicy(sourceName, retrySettings, meterRegistry);
+                    }
+
+                    circuitBreaker = createCircuitBreaker();
+                    if (circuitBreaker != null && meterRegistry != null) {
+                        Gauge.builder("eip.http.circuit.state", circuitBreaker, b -> b.getState()
+                                        .ordinal())
+                                .description("The state of the circuit for write requests, 0 for closed, 1 for open "
+                                        + "and 2 for half open")
+                                .tag("target", sourceName)
+                                .register(meterRegistry);
+                    }
+
+                    RoutingRestfulClientFactory.getInstance(fhirContext)
+                            .register(client.getServerBase(), clientFactory);
+                    fhirClient = client;
                 }
             }
         }
@@ -57,6 +200,277 @@ public abstract class BaseFhirClient {
         return fhirClient;
     }
 
+    /**
+     * Creates the restful client factory backed by the http client configured with the specified settings, the pooled
+     * apache client is used unless the JDK client is selected.
+     *
+     * @param settings the http client settings
+     * @return the client factory
+     */
+    protected IRestfulClientFactory createClientFactory(HttpClientSettings settings) {
+        if (Constants.HTTP_CLIENT_JDK.equalsIgnoreCase(settings.client())) {
+            log.info("Using the JDK http client for {}", sourceName);
+            JdkRestfulClientFactory factory = new JdkRestfulClientFactory(fhirContext);
+            factory.setConnectTimeout(settings.connectTimeout());
+            factory.setSocketTimeout(settings.socketTimeout());
+            factory.setGzipRequests(settings.gzipRequests());
+            factory.setGzipResponses(settings.gzipResponses());
+            factory.setTrafficMetrics(trafficMetrics);
+            return factory;
+        } else if (StringUtils.isNotBlank(settings.client())
+                && !Constants.HTTP_CLIENT_APACHE.equalsIgnoreCase(settings.client())) {
+            throw new RuntimeException("Unsupported http client " + settings.client() + " for " + sourceName);
+        }
+
+        ApacheRestfulClientFactory factory = new ApacheRestfulClientFactory(fhirContext);
+        factory.setConnectTimeout(settings.connectTimeout());
+        factory.setConnectionRequestTimeout(settings.connectionRequestTimeout());
+        factory.setSocketTimeout(settings.socketTimeout());
+        factory.setHttpClient(createHttpClient(settings));
+        return factory;
+    }
+
+    /**
+     * Gets the maximum number of requests that can be sent to the fhir server at the same time.
+     *
+     * @return the maximum number of requests
+     */
+    private int getMaxConcurrency() {
+        // The sync task and the webhook workers can all use the client at the same time
+        final int concurrency =
+                syncConcurrency > 0 ? syncConcurrency : Runtime.getRuntime().availableProcessors() * 2;
+        return concurrency + webhookWorkers;
+    }
+
+    /**
+     * Creates the limiter for the concurrent write requests sent to the fhir server, writes are not limited by default.
+     *
+     * @param maxConcurrency the maximum number of requests the sync task and the webhook workers can send at the same
+     *     time
+     * @return the limiter or null if writes are not limited
+     */
+    protected AdaptiveConcurrencyLimiter createWriteLimiter(int maxConcurrency) {
+        return null;
+    }
+
+    /**
+     * Gets the settings for retrying the requests that fail with a transient error.
+     *
+     * @return the retry settings or null if requests are not retried
+     */
+    protected RetrySettings getRetrySettings() {
+        return properties.toRetrySettings();
+    }
+
+    /**
+     * Sends the specified request and retries it as configured for the operation if it fails with a transient error.
+     *
+     * @param operation the operation
+     * @param request the request to send
+     * @return the value returned by the request
+     * @param <T> the type of the returned value
+     */
+    protected <T> T send(String operation, Supplier<T> request) {
+        final RetryPolicy policy = retryPolicy;
+        return policy == null ? request.get() : policy.execute(operation, request);
+    }
+
+    /**
+     * Creates the circuit breaker for the write requests sent to the fhir server, there is no circuit breaker by
+     * default.
+     *
+     * @return the circuit breaker or null if writes are always sent
+     */
+    protected CircuitBreaker createCircuitBreaker() {
+        return null;
+    }
+
+    /**
+     * Checks if the circuit for the write requests is open i.e. writes currently fail without being sent.
+     *
+     * @return true if the circuit is open otherwise false
+     */
+    public boolean isCircuitOpen() {
+        final CircuitBreaker breaker = circuitBreaker;
+        return breaker != null && breaker.isOpen();
+    }
+
+    private void registerLimiterMetrics(AdaptiveConcurrencyLimiter limiter) {
+        Gauge.builder("eip.http.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("The maximum number of concurrent write requests")
+                .tag("target", sourceName)
+                .register(meterRegistry);
+        Gauge.builder("eip.http.concurrency.in.flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("The number of write requests in flight")
+                .tag("target", sourceName)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Sends the specified write request to the fhir server through the circuit breaker and within the concurrency
+     * limit if any, each attempt of a retried request goes through both.
+     *
+     * @param operation the operation
+     * @param request the request to send
+     * @return the value returned by the request
+     * @param <T> the type of the returned value
+     */
+    private <T> T write(String operation, Function<IGenericClient, T> request) {
+        final IGenericClient client = getFhirClient();
+        final AdaptiveConcurrencyLimiter limiter = writeLimiter;
+        final Supplier<T> attempt =
+                limiter == null ? () -> request.apply(client) : () -> limiter.execute(() -> request.apply(client));
+        final CircuitBreaker breaker = circuitBreaker;
+        return send(operation, breaker == null ? attempt : () -> breaker.execute(attempt));
+    }
+
+    /**
+     * Creates a pooled http client with the specified settings, the pool metrics are reported when a meter registry is
+     * set.
+     *
+     * @param settings the http client settings
+     * @return the http client
+     */
+    protected CloseableHttpClient createHttpClient(HttpClientSettings settings) {
+        int maxConnections = settings.maxConnections();
+        if (maxConnections < 1) {
+            maxConnections = getMaxConcurrency();
+        }
+
+        final int maxPerRoute =
+                settings.maxConnectionsPerRoute() > 0 ? settings.maxConnectionsPerRoute() : maxConnections;
+        log.info(
+                "Using a pool of {} http connections with {} per route for {}",
+                maxConnections,
+                maxPerRoute,
+                sourceName);
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        registerPoolMetrics(connectionManager);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(settings.connectTimeout())
+                .setConnectionRequestTimeout(settings.connectionRequestTimeout())
+                .setSocketTimeout(settings.socketTimeout())
+                .build();
+        var builder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    final long serverKeepAlive =
+                            DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? Math.min(serverKeepAlive, settings.keepAlive()) : settings.keepAlive();
+                })
+                .evictExpiredConnections()
+                .addInterceptorFirst((HttpRequestInterceptor) (request, context) -> encodeRequest(request, settings));
+        if (settings.idleTimeout() > 0) {
+            builder.evictIdleConnections(settings.idleTimeout(), TimeUnit.MILLISECONDS);
+        }
+
+        if (!settings.gzipResponses()) {
+            builder.disableContentCompression();
+        }
+
+        if (trafficMetrics != null) {
+            // The first interceptor sees the body as received and the last one sees it after it is decoded
+            final HttpTrafficMetrics metrics = trafficMetrics;
+            builder.addInterceptorFirst(
+                    (HttpResponseInterceptor) (response, context) -> wrapEntity(response, metrics::countWireReceived));
+            builder.addInterceptorLast((HttpResponseInterceptor)
+                    (response, context) -> wrapEntity(response, metrics::countContentReceived));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Gzip encodes the body of the specified request if enabled in the settings and records its size, the accept
+     * encoding header added by hapi is removed if gzip encoded responses are not allowed.
+     *
+     * @param request the request
+     * @param settings the http client settings
+     * @throws IOException if the body cannot be read
+     */
+    private void encodeRequest(HttpRequest request, HttpClientSettings settings) throws IOException {
+        if (!settings.gzipResponses()) {
+            request.removeHeaders(HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        if (!(request instanceof HttpEntityEnclosingRequest enclosingRequest) || enclosingRequest.getEntity() == null) {
+            return;
+        }
+
+        HttpEntity entity = enclosingRequest.getEntity();
+        if (settings.gzipRequests()
+                && entity.getContentEncoding() == null
+                && !request.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+            final byte[] content = EntityUtils.toByteArray(entity);
+            final byte[] encoded = GzipUtils.gzip(content);
+            ByteArrayEntity encodedEntity = new ByteArrayEntity(encoded);
+            encodedEntity.setContentType(entity.getContentType());
+            encodedEntity.setContentEncoding(GzipUtils.ENCODING);
+            enclosingRequest.setEntity(encodedEntity);
+            if (trafficMetrics != null) {
+                trafficMetrics.recordSent(encoded.length, content.length);
+            }
+        } else if (trafficMetrics != null && entity.getContentLength() > 0) {
+            trafficMetrics.recordSent(entity.getContentLength(), entity.getContentLength());
+        }
+    }
+
+    private static void wrapEntity(HttpResponse response, UnaryOperator<InputStream> wrapper) {
+        final HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return;
+        }
+
+        response.setEntity(new HttpEntityWrapper(entity) {
+
+            @Override
+            public InputStream getContent() throws IOException {
+                return wrapper.apply(super.getContent());
+            }
+        });
+    }
+
+    /**
+     * Gets the http connection pool and timeout settings for the fhir server.
+     *
+     * @return the http client settings
+     */
+    protected HttpClientSettings getHttpClientSettings() {
+        return properties.toHttpClientSettings();
+    }
+
+    private void registerPoolMetrics(PoolingHttpClientConnectionManager connectionManager) {
+        if (meterRegistry == null) {
+            return;
+        }
+
+        registerPoolGauge(connectionManager, "leased", PoolStats::getLeased, "The number of connections in use");
+        registerPoolGauge(
+                connectionManager, "pending", PoolStats::getPending, "The number of requests waiting for a connection");
+        registerPoolGauge(
+                connectionManager, "available", PoolStats::getAvailable, "The number of idle pooled connections");
+        Gauge.builder("eip.http.pool.max", connectionManager, m -> m.getTotalStats()
+                        .getMax())
+                .description("The maximum number of pooled connections")
+                .tag("target", sourceName)
+                .register(meterRegistry);
+    }
+
+    private void registerPoolGauge(
+            PoolingHttpClientConnectionManager connectionManager,
+            String state,
+            ToDoubleFunction<PoolStats> value,
+            String description) {
+        Gauge.builder("eip.http.pool.connections", connectionManager, m -> value.applyAsDouble(m.getTotalStats()))
+                .description(description)
+                .tag("target", sourceName)
+                .tag("state", state)
+                .register(meterRegistry);
+    }
+
     /**
      * Fetches a resource from a fhir server with an identifier matching the specified external identifier.
      *
@@ -70,11 +484,11 @@ public abstract class BaseFhirClient {
         }
 
         try {
-            Bundle bundle = (Bundle) getFhirClient()
+            Bundle bundle = send(OPERATION_SEARCH, () -> (Bundle) getFhirClient()
                     .search()
                     .forResource(resourceType)
                     .where(new TokenClientParam("identifier").exactly().identifier(externalId))
-                    .execute();
+                    .execute());
             if (bundle.getEntry().size() == 1) {
                 if (log.isDebugEnabled()) {
                     log.debug("Found {} in {} with identifier: {}", resource, sourceName, externalId);
@@ -96,6 +510,34 @@ public abstract class BaseFhirClient {
         return null;
     }
 
+    /**
+     * Fetches the resource of the specified type with the given id from the fhir server.
+     *
+     * @param resourceType the resource type
+     * @param id the resource id
+     * @return the resource or null if it does not exist or was deleted
+     */
+    public <T extends DomainResource> T getById(Class<T> resourceType, String id) {
+        final String resource = resourceType.getSimpleName();
+        if (log.isDebugEnabled()) {
+            log.debug("Getting {}/{} from {}", resource, id, sourceName);
+        }
+
+        try {
+            return send(OPERATION_READ, () -> getFhirClient()
+                    .read()
+                    .resource(resourceType)
+                    .withId(id)
+                    .execute());
+        } catch (ResourceNotFoundException | ResourceGoneException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("No {} found in {} with id: {}", resource, sourceName, id);
+            }
+
+            return null;
+        }
+    }
+
     /**
      * Creates the specified resource in the fhir server.
      *
@@ -108,7 +550,7 @@ public abstract class BaseFhirClient {
 
         MethodOutcome outcome;
         try {
-            outcome = getFhirClient().create().resource(resource).execute();
+            outcome = write(OPERATION_CREATE, c -> c.create().resource(resource).execute());
         } catch (Exception e) {
             throw new RuntimeException(getErrorMessage(e, resource.fhirType(), "create"));
         }
@@ -135,7 +577,7 @@ public abstract class BaseFhirClient {
 
         MethodOutcome outcome;
         try {
-            outcome = getFhirClient().update().resource(resource).execute();
+            outcome = write(OPERATION_UPDATE, c -> c.update().resource(resource).execute());
         } catch (Exception e) {
             throw new RuntimeException(getErrorMessage(e, resource.fhirType(), "update"));
         }
@@ -152,7 +594,8 @@ public abstract class BaseFhirClient {
     }
 
     /**
-     * Updates a resource of the specified type with the given ID in the fhir server.
+     * Updates a resource of the specified type with the given ID in the fhir server, the payload is sent as is with
+     * the http client of this client bypassing the generic client so that it is not parsed.
      *
      * @param resourceType the type of the resource to be updated
      * @param id           the identifier of the resource to be updated
@@ -164,14 +607,13 @@ public abstract class BaseFhirClient {
             log.debug("Updating {}/{} in {}", resourceType, id, sourceName);
         }
 
-        MethodOutcome outcome;
+        final int code;
         try {
-            outcome = getFhirClient().update().resource(payload).withId(id).execute();
+            code = write(OPERATION_UPDATE, c -> put(c, resourceType + "/" + id, payload));
         } catch (Exception e) {
             throw new RuntimeException(getErrorMessage(e, resourceType, "update"));
         }
 
-        int code = outcome.getResponseStatusCode();
         if (code != 200) {
             throw new RuntimeException("Unexpected status code " + code + " when updating " + resourceType + "/" + id
                     + " in " + sourceName);
@@ -181,7 +623,69 @@ public abstract class BaseFhirClient {
             log.debug("Successfully updated {}/{} in {}", resourceType, id, sourceName);
         }
 
-        return outcome.getResponseStatusCode();
+        return code;
+    }
+
+    /**
+     * Sends the specified payload in a PUT request to the specified path relative to the server base, the request and
+     * the response go through the interceptors registered with the generic client e.g. for authentication and logging.
+     *
+     * @param client the generic client
+     * @param path the resource path
+     * @param payload the JSON payload
+     * @return the http status code
+     */
+    private int put(IGenericClient client, String path, String payload) {
+        StringBuilder url = new StringBuilder(StringUtils.removeEnd(client.getServerBase(), "/"));
+        url.append("/").append(path);
+        IHttpClient httpClient = clientFactory.getHttpClient(url, null, null, RequestTypeEnum.PUT, new ArrayList<>());
+        IHttpRequest request = httpClient.createByteRequest(
+                fhirContext, payload, ca.uhn.fhir.rest.api.Constants.CT_FHIR_JSON_NEW, EncodingEnum.JSON);
+        request.addHeader(
+                ca.uhn.fhir.rest.api.Constants.HEADER_ACCEPT, ca.uhn.fhir.rest.api.Constants.CT_FHIR_JSON_NEW);
+        HookParams params = new HookParams();
+        params.add(IHttpRequest.class, request);
+        params.add(IRestfulClient.class, client);
+        client.getInterceptorService().callHooks(Pointcut.CLIENT_REQUEST, params);
+        IHttpResponse response;
+        try {
+            response = request.execute();
+        } catch (IOException e) {
+            throw new FhirClientConnectionException("Failed to update " + path + " in " + sourceName, e);
+        }
+
+        try {
+            ClientResponseContext context = new ClientResponseContext(request, response, client, fhirContext, null);
+            HookParams responseParams = new HookParams();
+            responseParams.add(IHttpRequest.class, request);
+            responseParams.add(IHttpResponse.class, response);
+            responseParams.add(IRestfulClient.class, client);
+            responseParams.add(ClientResponseContext.class, context);
+            client.getInterceptorService().callHooks(Pointcut.CLIENT_RESPONSE, responseParams);
+            // An interceptor can replace the response e.g. to buffer or decode the body
+            response = context.getHttpResponse();
+            // The body is read in full so that the connection can be reused
+            String body = null;
+            try (InputStream in = response.readEntity()) {
+                if (in != null) {
+                    body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                }
+            }
+
+            if (response.getStatus() >= 400) {
+                BaseServerResponseException e = BaseServerResponseException.newInstance(
+                        response.getStatus(),
+                        "Failed to update " + path + " in " + sourceName + ": " + response.getStatusInfo());
+                e.setResponseBody(body);
+                throw e;
+            }
+
+            return response.getStatus();
+        } catch (IOException e) {
+            throw new FhirClientConnectionException("Failed to read the response from " + sourceName, e);
+        } finally {
+            response.close();
+        }
     }
 
     /**
@@ -197,7 +701,9 @@ public abstract class BaseFhirClient {
 
         MethodOutcome outcome;
         try {
-            outcome = getFhirClient().delete().resourceById(resourceType, id).execute();
+            outcome = write(
+                    OPERATION_DELETE,
+                    c -> c.delete().resourceById(resourceType, id).execute());
         } catch (Exception e) {
             throw new RuntimeException(getErrorMessage(e, resourceType, "delete"));
         }
@@ -213,6 +719,136 @@ public abstract class BaseFhirClient {
         }
     }
 
+    /**
+     * Sends the specified update and delete operations to the fhir server grouped in batch or transaction bundles of
+     * at most the configured batch size, the outcome of each operation is set on its entry. Entries that fail inside a
+     * bundle are retried individually so that a bad entry does not fail the others, when the server rejects the
+     * bundle as a whole with a 4xx status code all its entries are sent as individual requests instead and if the
+     * server does not support batches at all, no further bundles are sent to it. When the server fails with a 5xx
+     * status code or cannot be reached, all the entries of the bundle fail without being sent individually.
+     *
+     * @param entries the entries to send
+     */
+    public void batch(List<BatchEntry> entries) {
+        final int batchSize = Math.max(getBatchSize(), 1);
+        for (int i = 0; i < entries.size(); i += batchSize) {
+            List<BatchEntry> chunk = entries.subList(i, Math.min(i + batchSize, entries.size()));
+            if (batchUnsupported) {
+                sendIndividually(chunk);
+            } else {
+                sendBundle(chunk);
+            }
+        }
+    }
+
+    private void sendBundle(List<BatchEntry> entries) {
+        final BundleType type = getBatchType();
+        if (log.isDebugEnabled()) {
+            log.debug("Sending {} bundle with {} entries to {}", type.toCode(), entries.size(), sourceName);
+        }
+
+        Bundle bundle = new Bundle();
+        bundle.setType(type);
+        for (BatchEntry entry : entries) {
+            BundleEntryComponent bundleEntry = bundle.addEntry();
+            bundleEntry.getRequest().setMethod(entry.getMethod()).setUrl(entry.getResourceType() + "/" + entry.getId());
+            if (entry.getResource() != null) {
+                bundleEntry.setResource(entry.getResource());
+            }
+        }
+
+        Bundle response;
+        try {
+            response = write(
+                    OPERATION_TRANSACTION,
+                    c -> c.transaction().withBundle(bundle).execute());
+        } catch (BaseServerResponseException e) {
+            if (BATCH_UNSUPPORTED_CODES.contains(e.getStatusCode())) {
+                log.warn(
+                        "{} rejected the {} bundle with status code {}, falling back to individual requests",
+                        sourceName,
+                        type.toCode(),
+                        e.getStatusCode());
+                batchUnsupported = true;
+            } else if (e.getStatusCode() >= 500) {
+                // Sending each entry to a failing server would only add to its load
+                log.warn("{} failed to process {} bundle: {}", sourceName, type.toCode(), e.getMessage());
+                fail(entries, e);
+                return;
+            } else {
+                log.warn("Failed to process {} bundle in {}, retrying entries individually", type.toCode(), sourceName);
+            }
+
+            sendIndividually(entries);
+            return;
+        } catch (Exception e) {
+            log.warn("Failed to send {} bundle to {}: {}", type.toCode(), sourceName, e.getMessage());
+            fail(entries, e);
+            return;
+        }
+
+        if (response == null || response.getEntry().size() != entries.size()) {
+            log.warn("Unexpected {} response from {}, retrying entries individually", type.toCode(), sourceName);
+            sendIndividually(entries);
+            return;
+        }
+
+        List<BatchEntry> failed = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            String status = response.getEntry().get(i).getResponse().getStatus();
+            if (!isSuccessStatus(status)) {
+                BatchEntry entry = entries.get(i);
+                log.warn("{} failed in {} bundle with status {}, retrying it individually", entry, sourceName, status);
+                failed.add(entry);
+            }
+        }
+
+        sendIndividually(failed);
+    }
+
+    private void sendIndividually(List<BatchEntry> entries) {
+        for (BatchEntry entry : entries) {
+            try {
+                if (entry.getMethod() == HTTPVerb.DELETE) {
+                    delete(entry.getResourceType(), entry.getId());
+                } else {
+                    update(entry.getResource());
+                }
+
+                entry.setError(null);
+            } catch (Exception e) {
+                log.warn("Failed to apply {} in {}: {}", entry, sourceName, e.getMessage());
+                entry.setError(e);
+            }
+        }
+    }
+
+    private static void fail(List<BatchEntry> entries, Exception e) {
+        entries.forEach(entry -> entry.setError(e));
+    }
+
+    private static boolean isSuccessStatus(String status) {
+        return StringUtils.isNotBlank(status) && status.trim().startsWith("2");
+    }
+
+    /**
+     * Gets the maximum number of entries to include in a single batch bundle.
+     *
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * Gets the type of bundle to use when sending batches, either batch or transaction.
+     *
+     * @return the bundle type
+     */
+    protected BundleType getBatchType() {
+        return BundleType.BATCH;
+    }
+
     protected String getErrorMessage(Exception e, String resourceName, String operation) {
         String msg = getServerErrorMessage(e);
         if (StringUtils.isBlank(msg)) {
@@ -236,4 +872,11 @@ public abstract class BaseFhirClient {
      * @return IGenericClient
      */
     protected abstract IGenericClient createFhirClient();
+
+    @Override
+    public void destroy() throws Exception {
+        if (fhirClient != null) {
+            RoutingRestfulClientFactory.getInstance(fhirContext).unregister(fhirClient.getServerBase(), clientFactory);
+        }
+    }
 }
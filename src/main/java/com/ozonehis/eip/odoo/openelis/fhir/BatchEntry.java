@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.hl7.fhir.r4.model.Bundle.HTTPVerb;
+import org.hl7.fhir.r4.model.DomainResource;
+
+/**
+ * Represents a single update or delete operation sent to a fhir server as part of a batch along with its outcome.
+ */
+@Getter
+public class BatchEntry {
+
+    private final HTTPVerb method;
+
+    private final String resourceType;
+
+    private final String id;
+
+    private final DomainResource resource;
+
+    @Setter
+    private Exception error;
+
+    private BatchEntry(HTTPVerb method, String resourceType, String id, DomainResource resource) {
+        this.method = method;
+        this.resourceType = resourceType;
+        this.id = id;
+        this.resource = resource;
+    }
+
+    /**
+     * Creates an entry to update the specified resource.
+     *
+     * @param resource the resource to update
+     * @return the batch entry
+     */
+    public static BatchEntry update(DomainResource resource) {
+        return new BatchEntry(HTTPVerb.PUT, resource.fhirType(), resource.getIdPart(), resource);
+    }
+
+    /**
+     * Creates an entry to delete the resource of the specified type and id.
+     *
+     * @param resourceType the resource type
+     * @param id the resource id
+     * @return the batch entry
+     */
+    public static BatchEntry delete(String resourceType, String id) {
+        return new BatchEntry(HTTPVerb.DELETE, resourceType, id, null);
+    }
+
+    /**
+     * Checks if the operation was successfully applied by the server.
+     *
+     * @return true if successful otherwise false
+     */
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + resourceType + "/" + id;
+    }
+}
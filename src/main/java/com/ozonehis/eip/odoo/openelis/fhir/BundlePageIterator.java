@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.DomainResource;
+
+/**
+ * Iterates over the pages of a FHIR search result, each page is fetched lazily from the server by following the
+ * next link of the previous page only when it is requested, this implies only the current page is held in memory.
+ *
+ * @param <T> the resource type
+ */
+@Slf4j
+public class BundlePageIterator<T extends DomainResource> implements Iterator<List<T>> {
+
+    private final IGenericClient fhirClient;
+
+    private final Supplier<Bundle> initialSearch;
+
+    private final Function<Supplier<Bundle>, Bundle> sender;
+
+    private List<T> nextPage;
+
+    private String nextUrl;
+
+    private boolean started;
+
+    public BundlePageIterator(IGenericClient fhirClient, Supplier<Bundle> initialSearch) {
+        this(fhirClient, initialSearch, Supplier::get);
+    }
+
+    /**
+     * @param fhirClient the fhir client to fetch the next pages
+     * @param initialSearch the search that fetches the first page
+     * @param sender sends the request for each page e.g. to retry it
+     */
+    public BundlePageIterator(
+            IGenericClient fhirClient, Supplier<Bundle> initialSearch, Function<Supplier<Bundle>, Bundle> sender) {
+        this.fhirClient = fhirClient;
+        this.initialSearch = initialSearch;
+        this.sender = sender;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (nextPage == null && (!started || nextUrl != null)) {
+            Bundle bundle;
+            if (!started) {
+                started = true;
+                bundle = sender.apply(initialSearch);
+            } else {
+                if (log.isDebugEnabled()) {
+                    log.debug("Fetching next page: {}", nextUrl);
+                }
+
+                final String url = nextUrl;
+                bundle = sender.apply(() -> fhirClient
+                        .loadPage()
+                        .byUrl(url)
+                        .andReturnBundle(Bundle.class)
+                        .execute());
+            }
+
+            Bundle.BundleLinkComponent next = bundle.getLink(Bundle.LINK_NEXT);
+            nextUrl = next != null ? next.getUrl() : null;
+            if (!bundle.getEntry().isEmpty()) {
+                List<T> page = new ArrayList<>(bundle.getEntry().size());
+                for (BundleEntryComponent entry : bundle.getEntry()) {
+                    page.add((T) entry.getResource());
+                }
+
+                nextPage = page;
+            }
+        }
+
+        return nextPage != null;
+    }
+
+    @Override
+    public List<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        List<T> page = nextPage;
+        nextPage = null;
+        return page;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stops sending requests to a fhir server that is failing so that callers fail fast instead of each waiting out the
+ * socket timeout. The outcomes of the last requests are recorded in a sliding window and the circuit opens when the
+ * rate of requests that failed with an overload error reaches the threshold, after the open duration a limited number
+ * of trial requests are let through, the circuit closes if they all succeed and opens again as soon as one fails.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+
+    private final int failureRateThreshold;
+
+    private final int minimumCalls;
+
+    private final long openDuration;
+
+    private final int trialCalls;
+
+    // Ring buffer of the outcomes of the last requests in the closed state, true for a failure
+    private final boolean[] outcomes;
+
+    private State state = State.CLOSED;
+
+    private int index;
+
+    private int count;
+
+    private int failures;
+
+    private long openedAt;
+
+    private int trialsStarted;
+
+    private int trialsSucceeded;
+
+    /**
+     * @param name the name of the server the requests are sent to
+     * @param failureRateThreshold the percentage of failed requests in the window at which the circuit opens
+     * @param windowSize the number of the last requests to compute the failure rate from
+     * @param minimumCalls the minimum number of requests in the window before the failure rate is computed
+     * @param openDuration the time in milliseconds to wait before sending trial requests after the circuit opens
+     * @param trialCalls the number of trial requests that must succeed to close the circuit
+     */
+    public CircuitBreaker(
+            String name,
+            int failureRateThreshold,
+            int windowSize,
+            int minimumCalls,
+            long openDuration,
+            int trialCalls) {
+        if (failureRateThreshold < 1 || failureRateThreshold > 100) {
+            throw new RuntimeException("The circuit breaker failure rate for " + name + " must be between 1 and 100");
+        }
+
+        if (windowSize < 1 || trialCalls < 1) {
+            throw new RuntimeException("The circuit breaker window and trial calls for " + name + " must be positive");
+        }
+
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = Math.min(Math.max(minimumCalls, 1), windowSize);
+        this.openDuration = TimeUnit.MILLISECONDS.toNanos(openDuration);
+        this.trialCalls = trialCalls;
+        this.outcomes = new boolean[windowSize];
+    }
+
+    /**
+     * Sends the specified request if the circuit allows it and records its outcome.
+     *
+     * @param request the request to send
+     * @return the value returned by the request
+     * @param <T> the type of the returned value
+     * @throws RuntimeException if the circuit is open
+     */
+    public <T> T execute(Supplier<T> request) {
+        final boolean trial = acquire();
+        final T result;
+        try {
+            result = request.get();
+        } catch (RuntimeException e) {
+            onComplete(trial, AdaptiveConcurrencyLimiter.isOverload(e));
+            throw e;
+        }
+
+        onComplete(trial, false);
+        return result;
+    }
+
+    /**
+     * Checks if the circuit lets a request through.
+     *
+     * @return true if the request is a trial request in the half open state otherwise false
+     * @throws RuntimeException if the circuit is open
+     */
+    protected synchronized boolean acquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openDuration) {
+                throw new RuntimeException("Not sending the request to " + name + " while its circuit is open");
+            }
+
+            log.info("Sending trial requests to {} after the circuit was open", name);
+            state = State.HALF_OPEN;
+            trialsStarted = 0;
+            trialsSucceeded = 0;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (trialsStarted >= trialCalls) {
+                throw new RuntimeException("Not sending the request to " + name + " while its circuit is open");
+            }
+
+            trialsStarted++;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Records the outcome of a request, the outcome of a request sent in a previous state is ignored.
+     *
+     * @param trial true if the request was a trial request
+     * @param failed true if the request failed with an overload error
+     */
+    protected synchronized void onComplete(boolean trial, boolean failed) {
+        if (trial) {
+            if (state != State.HALF_OPEN) {
+                return;
+            }
+
+            if (failed) {
+                open();
+            } else if (++trialsSucceeded >= trialCalls) {
+                log.info("Closing the circuit for {} after {} successful trial request(s)", name, trialsSucceeded);
+                state = State.CLOSED;
+                index = 0;
+                count = 0;
+                failures = 0;
+            }
+
+            return;
+        }
+
+        if (state != State.CLOSED) {
+            return;
+        }
+
+        if (count == outcomes.length) {
+            if (outcomes[index]) {
+                failures--;
+            }
+        } else {
+            count++;
+        }
+
+        outcomes[index] = failed;
+        if (failed) {
+            failures++;
+        }
+
+        index = (index + 1) % outcomes.length;
+        if (count >= minimumCalls && failures * 100 >= failureRateThreshold * count) {
+            log.warn("Opening the circuit for {} after {} of the last {} request(s) failed", name, failures, count);
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    /**
+     * Gets the state of the circuit.
+     *
+     * @return the state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Checks if the circuit is open and still rejects all the requests i.e. the open duration has not elapsed.
+     *
+     * @return true if the circuit is open otherwise false
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && System.nanoTime() - openedAt < openDuration;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import com.ozonehis.eip.odoo.openelis.Constants;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The http and retry settings of a fhir client bound from the configuration properties under the prefix of its server,
+ * all durations are in milliseconds, see {@link HttpClientSettings} and {@link RetrySettings} for the meaning of each
+ * setting.
+ */
+@Getter
+@Setter
+public abstract class FhirClientProperties {
+
+    private Http http = new Http();
+
+    private Retry retry = new Retry();
+
+    /**
+     * Gets the http connection pool and timeout settings.
+     *
+     * @return the http client settings
+     */
+    public HttpClientSettings toHttpClientSettings() {
+        return new HttpClientSettings(
+                http.maxConnections,
+                http.maxConnectionsPerRoute,
+                http.keepAlive,
+                http.idleTimeout,
+                http.connectTimeout,
+                http.connectionRequestTimeout,
+                http.socketTimeout,
+                http.client,
+                http.gzip.requests,
+                http.gzip.responses);
+    }
+
+    /**
+     * Gets the settings for retrying the requests that fail with a transient error.
+     *
+     * @return the retry settings
+     */
+    public RetrySettings toRetrySettings() {
+        return RetrySettings.parse(
+                retry.maxAttempts,
+                retry.initialDelay,
+                retry.maxDelay,
+                retry.statusCodes,
+                retry.exceptions,
+                retry.writeExceptions,
+                retry.operations,
+                retry.budgetRatio);
+    }
+
+    @Getter
+    @Setter
+    public static class Http {
+
+        private int maxConnections;
+
+        private int maxConnectionsPerRoute;
+
+        private long keepAlive = Constants.DEFAULT_HTTP_KEEP_ALIVE;
+
+        private long idleTimeout = Constants.DEFAULT_HTTP_IDLE_TIMEOUT;
+
+        private int connectTimeout = Constants.DEFAULT_HTTP_CONNECT_TIMEOUT;
+
+        private int connectionRequestTimeout = Constants.DEFAULT_HTTP_CONNECTION_REQUEST_TIMEOUT;
+
+        private int socketTimeout = Constants.DEFAULT_HTTP_SOCKET_TIMEOUT;
+
+        private String client = Constants.HTTP_CLIENT_APACHE;
+
+        private Gzip gzip = new Gzip();
+    }
+
+    @Getter
+    @Setter
+    public static class Gzip {
+
+        private boolean requests;
+
+        private boolean responses = true;
+    }
+
+    @Getter
+    @Setter
+    public static class Retry {
+
+        private int maxAttempts = Constants.DEFAULT_HTTP_RETRY_MAX_ATTEMPTS;
+
+        private long initialDelay = Constants.DEFAULT_HTTP_RETRY_INITIAL_DELAY;
+
+        private long maxDelay = Constants.DEFAULT_HTTP_RETRY_MAX_DELAY;
+
+        private String statusCodes = Constants.DEFAULT_HTTP_RETRY_STATUS_CODES;
+
+        private String exceptions = Constants.DEFAULT_HTTP_RETRY_EXCEPTIONS;
+
+        private String writeExceptions = Constants.DEFAULT_HTTP_RETRY_WRITE_EXCEPTIONS;
+
+        private String operations;
+
+        private double budgetRatio = Constants.DEFAULT_HTTP_RETRY_BUDGET_RATIO;
+    }
+}
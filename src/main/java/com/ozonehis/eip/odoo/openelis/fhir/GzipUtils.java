@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Utility methods to gzip encode and decode http bodies.
+ */
+public final class GzipUtils {
+
+    public static final String ENCODING = "gzip";
+
+    private GzipUtils() {}
+
+    /**
+     * Gzip encodes the specified bytes.
+     *
+     * @param content the bytes to encode
+     * @return the encoded bytes
+     */
+    public static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(content.length / 4, 64));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to gzip the http body", e);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the specified gzip encoded bytes.
+     *
+     * @param content the encoded bytes
+     * @return the decoded bytes
+     */
+    public static byte[] gunzip(byte[] content) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(content))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to decode the gzip http body", e);
+        }
+    }
+}
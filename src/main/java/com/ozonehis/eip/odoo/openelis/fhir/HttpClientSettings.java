@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import com.ozonehis.eip.odoo.openelis.Constants;
+
+/**
+ * The http connection pool and timeout settings of a fhir client, all durations are in milliseconds.
+ *
+ * @param maxConnections the maximum number of pooled connections, a value less than 1 means the pool is sized to the
+ *     number of threads that can use the client at the same time
+ * @param maxConnectionsPerRoute the maximum number of pooled connections per route, a value less than 1 means the same
+ *     as the maximum number of connections
+ * @param keepAlive the maximum time an idle connection is kept alive, a shorter keep alive sent by the server wins
+ * @param idleTimeout the time after which an idle connection is evicted from the pool, a value less than 1 disables
+ *     the eviction
+ * @param connectTimeout the connect timeout
+ * @param connectionRequestTimeout the time to wait for a connection from the pool
+ * @param socketTimeout the socket read timeout
+ * @param client the http client implementation to use, {@value Constants#HTTP_CLIENT_APACHE} for the pooled apache
+ *     client or {@value Constants#HTTP_CLIENT_JDK} for the JDK client which negotiates HTTP/2, the pool settings do not
+ *     apply to the latter
+ * @param gzipRequests whether request bodies are gzip encoded, the server must support gzip encoded requests
+ * @param gzipResponses whether the server is allowed to send gzip encoded responses
+ */
+public record HttpClientSettings(
+        int maxConnections,
+        int maxConnectionsPerRoute,
+        long keepAlive,
+        long idleTimeout,
+        int connectTimeout,
+        int connectionRequestTimeout,
+        int socketTimeout,
+        String client,
+        boolean gzipRequests,
+        boolean gzipResponses) {}
@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes of the http request and response bodies exchanged with a fhir server, the wire bytes are counted as
+ * sent or received i.e. compressed when the body is gzip encoded and the content bytes are counted after decoding so
+ * that the two show the saving from compression.
+ */
+public class HttpTrafficMetrics {
+
+    private final Counter wireSent;
+
+    private final Counter wireReceived;
+
+    private final Counter contentSent;
+
+    private final Counter contentReceived;
+
+    public HttpTrafficMetrics(MeterRegistry meterRegistry, String target) {
+        wireSent = createCounter(meterRegistry, "eip.http.bytes.wire", target, "sent", "on the wire");
+        wireReceived = createCounter(meterRegistry, "eip.http.bytes.wire", target, "received", "on the wire");
+        contentSent = createCounter(meterRegistry, "eip.http.bytes.content", target, "sent", "before encoding");
+        contentReceived = createCounter(meterRegistry, "eip.http.bytes.content", target, "received", "after decoding");
+    }
+
+    private static Counter createCounter(
+            MeterRegistry meterRegistry, String name, String target, String direction, String stage) {
+        return Counter.builder(name)
+                .description("The number of http body bytes " + direction + " " + stage)
+                .baseUnit("bytes")
+                .tag("target", target)
+                .tag("direction", direction)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records the size of a request body.
+     *
+     * @param wireBytes the number of bytes sent
+     * @param contentBytes the number of bytes before encoding
+     */
+    public void recordSent(long wireBytes, long contentBytes) {
+        wireSent.increment(wireBytes);
+        contentSent.increment(contentBytes);
+    }
+
+    /**
+     * Records the size of a response body.
+     *
+     * @param wireBytes the number of bytes received
+     * @param contentBytes the number of bytes after decoding
+     */
+    public void recordReceived(long wireBytes, long contentBytes) {
+        wireReceived.increment(wireBytes);
+        contentReceived.increment(contentBytes);
+    }
+
+    /**
+     * Wraps a stream of a response body as received to count the bytes read from it.
+     *
+     * @param in the stream to wrap
+     * @return the wrapped stream
+     */
+    public InputStream countWireReceived(InputStream in) {
+        return new CountingInputStream(in, wireReceived);
+    }
+
+    /**
+     * Wraps a stream of a decoded response body to count the bytes read from it.
+     *
+     * @param in the stream to wrap
+     * @return the wrapped stream
+     */
+    public InputStream countContentReceived(InputStream in) {
+        return new CountingInputStream(in, contentReceived);
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final Counter counter;
+
+        CountingInputStream(InputStream in, Counter counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                counter.increment();
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int count = super.read(b, off, len);
+            if (count > 0) {
+                counter.increment(count);
+            }
+
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long count = super.skip(n);
+            if (count > 0) {
+                counter.increment(count);
+            }
+
+            return count;
+        }
+    }
+}
@@ -9,10 +9,15 @@ package com.ozonehis.eip.odoo.openelis.fhir;
 
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.client.interceptor.BasicAuthInterceptor;
+import com.ozonehis.eip.odoo.openelis.Constants;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+@Slf4j
 @Component
 public class OdooFhirClient extends BaseFhirClient {
 
@@ -27,14 +32,103 @@ public class OdooFhirClient extends BaseFhirClient {
     @Getter
     private char[] password;
 
+    @Value("${" + Constants.PROP_ODOO_BATCH_ENABLED + ":false}")
+    @Getter
+    private boolean batchEnabled;
+
+    @Value("${" + Constants.PROP_ODOO_BATCH_SIZE + ":" + DEFAULT_BATCH_SIZE + "}")
+    private int batchSize;
+
+    @Value("${" + Constants.PROP_ODOO_BATCH_TYPE + ":batch}")
+    private String batchType;
+
+    @Value("${" + Constants.PROP_ODOO_LIMIT_ENABLED + ":true}")
+    private boolean limitEnabled = true;
+
+    @Value("${" + Constants.PROP_ODOO_LIMIT_MIN + ":1}")
+    private int minLimit = 1;
+
+    @Value("${" + Constants.PROP_ODOO_LIMIT_MAX + ":0}")
+    private int maxLimit;
+
+    @Value("${" + Constants.PROP_ODOO_LIMIT_LATENCY_TARGET + ":" + Constants.DEFAULT_ODOO_LIMIT_LATENCY_TARGET + "}")
+    private long latencyTarget = Constants.DEFAULT_ODOO_LIMIT_LATENCY_TARGET;
+
+    @Value("${" + Constants.PROP_ODOO_LIMIT_BACKOFF_RATIO + ":" + Constants.DEFAULT_ODOO_LIMIT_BACKOFF_RATIO + "}")
+    private double backoffRatio = Constants.DEFAULT_ODOO_LIMIT_BACKOFF_RATIO;
+
+    @Value("${" + Constants.PROP_ODOO_CIRCUIT_ENABLED + ":true}")
+    private boolean circuitEnabled = true;
+
+    @Value("${" + Constants.PROP_ODOO_CIRCUIT_FAILURE_RATE + ":" + Constants.DEFAULT_ODOO_CIRCUIT_FAILURE_RATE + "}")
+    private int circuitFailureRate = Constants.DEFAULT_ODOO_CIRCUIT_FAILURE_RATE;
+
+    @Value("${" + Constants.PROP_ODOO_CIRCUIT_WINDOW + ":" + Constants.DEFAULT_ODOO_CIRCUIT_WINDOW + "}")
+    private int circuitWindow = Constants.DEFAULT_ODOO_CIRCUIT_WINDOW;
+
+    @Value("${" + Constants.PROP_ODOO_CIRCUIT_MIN_CALLS + ":" + Constants.DEFAULT_ODOO_CIRCUIT_MIN_CALLS + "}")
+    private int circuitMinCalls = Constants.DEFAULT_ODOO_CIRCUIT_MIN_CALLS;
+
+    @Value("${" + Constants.PROP_ODOO_CIRCUIT_OPEN_DURATION + ":" + Constants.DEFAULT_ODOO_CIRCUIT_OPEN_DURATION + "}")
+    private long circuitOpenDuration = Constants.DEFAULT_ODOO_CIRCUIT_OPEN_DURATION;
+
+    @Value("${" + Constants.PROP_ODOO_CIRCUIT_TRIAL_CALLS + ":" + Constants.DEFAULT_ODOO_CIRCUIT_TRIAL_CALLS + "}")
+    private int circuitTrialCalls = Constants.DEFAULT_ODOO_CIRCUIT_TRIAL_CALLS;
+
     public OdooFhirClient() {
-        super("Odoo");
+        this(new OdooFhirClientProperties());
+    }
+
+    @Autowired
+    public OdooFhirClient(OdooFhirClientProperties properties) {
+        super("Odoo", properties);
     }
 
     @Override
     protected IGenericClient createFhirClient() {
-        IGenericClient fhirClient = fhirContext.newRestfulGenericClient(serverUrl + "/odoo/fhir/R4");
+        IGenericClient fhirClient = clientFactory.newGenericClient(serverUrl + "/odoo/fhir/R4");
         fhirClient.registerInterceptor(new BasicAuthInterceptor(username, new String(password)));
         return fhirClient;
     }
+
+    @Override
+    protected AdaptiveConcurrencyLimiter createWriteLimiter(int maxConcurrency) {
+        if (!limitEnabled) {
+            return null;
+        }
+
+        final int max = maxLimit > 0 ? maxLimit : maxConcurrency;
+        log.info(
+                "Limiting the concurrent writes to {} between {} and {} with a latency target of {}ms",
+                getSourceName(),
+                minLimit,
+                max,
+                latencyTarget);
+        return new AdaptiveConcurrencyLimiter(getSourceName(), minLimit, max, latencyTarget, backoffRatio);
+    }
+
+    @Override
+    protected CircuitBreaker createCircuitBreaker() {
+        if (!circuitEnabled) {
+            return null;
+        }
+
+        return new CircuitBreaker(
+                getSourceName(),
+                circuitFailureRate,
+                circuitWindow,
+                circuitMinCalls,
+                circuitOpenDuration,
+                circuitTrialCalls);
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    protected BundleType getBatchType() {
+        return BundleType.fromCode(batchType);
+    }
 }
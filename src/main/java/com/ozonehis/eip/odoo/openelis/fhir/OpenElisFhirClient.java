@@ -13,18 +13,35 @@ import static org.hl7.fhir.r4.model.Subscription.SP_PAYLOAD;
 import static org.hl7.fhir.r4.model.Subscription.SP_TYPE;
 import static org.hl7.fhir.r4.model.Subscription.SubscriptionChannelType.RESTHOOK;
 
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.SummaryEnum;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.IHttpClient;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.rest.gclient.IQuery;
 import ca.uhn.fhir.rest.gclient.StringClientParam;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import com.ozonehis.eip.odoo.openelis.Constants;
 import com.ozonehis.eip.odoo.openelis.DateUtils;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.DomainResource;
 import org.hl7.fhir.r4.model.Subscription;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
@@ -35,13 +52,24 @@ public class OpenElisFhirClient extends BaseFhirClient {
     @Value("${eip.openelis.url}")
     private String baseUrl;
 
+    @Value("${" + Constants.PROP_SEARCH_PAGE_SIZE + ":" + Constants.DEFAULT_SEARCH_PAGE_SIZE + "}")
+    private int pageSize;
+
+    @Value("${" + Constants.PROP_SEARCH_RAW + ":false}")
+    private boolean raw;
+
     public OpenElisFhirClient() {
-        super("OpenELIS");
+        this(new OpenElisFhirClientProperties());
+    }
+
+    @Autowired
+    public OpenElisFhirClient(OpenElisFhirClientProperties properties) {
+        super("OpenELIS", properties);
     }
 
     @Override
     protected IGenericClient createFhirClient() {
-        return fhirContext.newRestfulGenericClient(baseUrl + "/fhir");
+        return clientFactory.newGenericClient(baseUrl + "/fhir");
     }
 
     public Subscription getSubscription() {
@@ -50,13 +78,13 @@ public class OpenElisFhirClient extends BaseFhirClient {
         }
 
         try {
-            Bundle bundle = (Bundle) getFhirClient()
+            Bundle bundle = send(OPERATION_SEARCH, () -> (Bundle) getFhirClient()
                     .search()
                     .forResource(Subscription.class)
                     .where(CRITERIA.matchesExactly().value(Constants.SUBSCRIPTION_CRITERIA))
                     .and(new StringClientParam(SP_TYPE).matchesExactly().value(RESTHOOK.toCode()))
                     .and(new StringClientParam(SP_PAYLOAD).matchesExactly().value(Constants.MEDIA_TYPE))
-                    .execute();
+                    .execute());
             if (bundle.getEntry().size() == 1) {
                 if (log.isDebugEnabled()) {
                     log.debug("Found subscription in {}", getSourceName());
@@ -78,25 +106,155 @@ public class OpenElisFhirClient extends BaseFhirClient {
     }
 
     /**
-     * Fetches all resources from a fhir server modified since the specified time.
+     * Counts the resources modified since the specified time, the server time is read from the meta of the search result
+     * which the server sets to the time it ran the search.
+     *
+     * @param resourceType the resource type to match
+     * @param since the date instance to compare against
+     * @return the search summary
+     */
+    public SearchSummary getModifiedSummary(Class<? extends DomainResource> resourceType, LocalDateTime since) {
+        Bundle bundle =
+                send(OPERATION_SEARCH, () -> (Bundle) getModifiedQuery(getFhirClient(), resourceType, since, null)
+                        .summaryMode(SummaryEnum.COUNT)
+                        .execute());
+        return new SearchSummary(
+                bundle.getTotal(), DateUtils.toLocalDateTime(bundle.getMeta().getLastUpdated()));
+    }
+
+    /**
+     * Gets the last updated timestamp of the least recently modified resource in the specified range.
+     *
+     * @param resourceType the resource type to match
+     * @param since the date instance to compare against
+     * @param until the exclusive upper bound of the last updated timestamp, null for no upper bound
+     * @return the last updated timestamp or null if no resource matches
+     */
+    public LocalDateTime getOldestLastUpdated(
+            Class<? extends DomainResource> resourceType, LocalDateTime since, LocalDateTime until) {
+        Bundle bundle =
+                send(OPERATION_SEARCH, () -> (Bundle) getModifiedQuery(getFhirClient(), resourceType, since, until)
+                        .sort()
+                        .ascending(SP_RES_LAST_UPDATED)
+                        .count(1)
+                        .execute());
+        if (bundle.getEntry().isEmpty()) {
+            return null;
+        }
+
+        return DateUtils.toLocalDateTime(
+                bundle.getEntry().get(0).getResource().getMeta().getLastUpdated());
+    }
+
+    /**
+     * Fetches all resources from a fhir server modified since the specified time and before the specified upper bound
+     * in ascending last updated order, the search results are fetched lazily a page at a time as the returned iterator
+     * is advanced. When raw search is enabled, the pages are read without parsing the resources, see
+     * {@link RawBundleReader}.
      *
      * @param resourceType the resource type to match
      * @param since        the date instance to compare against
-     * @return list of modified resources
+     * @param until        the exclusive upper bound of the last updated timestamp, null for no upper bound
+     * @return an iterator over the pages of modified resources
      */
-    public <T extends DomainResource> List<T> getModifiedResources(Class<T> resourceType, LocalDateTime since) {
+    public <T extends DomainResource> Iterator<List<T>> getModifiedResources(
+            Class<T> resourceType, LocalDateTime since, LocalDateTime until) {
         final String resource = resourceType.getSimpleName();
         if (log.isDebugEnabled()) {
-            log.debug("Getting all resource of type {} modified since {}", resource, since);
+            log.debug("Getting all resource of type {} modified since {} and before {}", resource, since, until);
         }
 
-        final String sinceStr = DateUtils.serialize(since);
-        Bundle bundle = (Bundle) getFhirClient()
-                .search()
+        final IGenericClient client = getFhirClient();
+        if (raw) {
+            return new RawBundlePageIterator<>(
+                    getModifiedUrl(client, resourceType, since, until),
+                    url -> send(OPERATION_SEARCH, () -> getRawPage(url, resourceType)));
+        }
+
+        return new BundlePageIterator<>(
+                client,
+                () -> (Bundle) getModifiedQuery(client, resourceType, since, until)
+                        .sort()
+                        .ascending(SP_RES_LAST_UPDATED)
+                        .count(pageSize)
+                        .execute(),
+                request -> send(OPERATION_SEARCH, request));
+    }
+
+    /**
+     * Builds the url of the same search as the one sent for {@link #getModifiedResources(Class, LocalDateTime,
+     * LocalDateTime)} with the generic client.
+     */
+    private String getModifiedUrl(
+            IGenericClient client,
+            Class<? extends DomainResource> resourceType,
+            LocalDateTime since,
+            LocalDateTime until) {
+        StringBuilder url = new StringBuilder(StringUtils.removeEnd(client.getServerBase(), "/"));
+        url.append("/").append(resourceType.getSimpleName());
+        url.append("?").append(SP_RES_LAST_UPDATED).append("=").append(encode("ge" + DateUtils.serialize(since)));
+        if (until != null) {
+            url.append("&").append(SP_RES_LAST_UPDATED).append("=").append(encode("lt" + DateUtils.serialize(until)));
+        }
+
+        url.append("&_sort=").append(SP_RES_LAST_UPDATED).append("&_count=").append(pageSize);
+        return url.toString();
+    }
+
+    /**
+     * Fetches the search result page at the specified url and reads it without parsing the resources, the request is
+     * sent with the http client of this client bypassing the generic client.
+     *
+     * @param url the page url
+     * @param resourceType the searched resource type
+     * @return the page
+     */
+    protected <T extends DomainResource> RawBundleReader.Page<T> getRawPage(String url, Class<T> resourceType) {
+        IHttpClient httpClient =
+                clientFactory.getHttpClient(new StringBuilder(url), null, null, RequestTypeEnum.GET, new ArrayList<>());
+        IHttpRequest request = httpClient.createGetRequest(fhirContext, EncodingEnum.JSON);
+        request.addHeader(
+                ca.uhn.fhir.rest.api.Constants.HEADER_ACCEPT, ca.uhn.fhir.rest.api.Constants.CT_FHIR_JSON_NEW);
+        IHttpResponse response;
+        try {
+            response = request.execute();
+        } catch (IOException e) {
+            throw new FhirClientConnectionException("Failed to search " + getSourceName(), e);
+        }
+
+        try {
+            if (response.getStatus() >= 400) {
+                throw BaseServerResponseException.newInstance(
+                        response.getStatus(), "Failed to search " + getSourceName() + ": " + response.getStatusInfo());
+            }
+
+            try (InputStream in = response.readEntity()) {
+                return RawBundleReader.read(in, resourceType);
+            }
+        } catch (IOException e) {
+            throw new FhirClientConnectionException("Failed to read search result from " + getSourceName(), e);
+        } finally {
+            response.close();
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private IQuery<IBaseBundle> getModifiedQuery(
+            IGenericClient client,
+            Class<? extends DomainResource> resourceType,
+            LocalDateTime since,
+            LocalDateTime until) {
+        IQuery<IBaseBundle> query = client.search()
                 .forResource(resourceType)
-                .where(new StringClientParam(SP_RES_LAST_UPDATED).matches().value("ge" + sinceStr))
-                .execute();
-        return (List)
-                bundle.getEntry().stream().parallel().map(e -> e.getResource()).collect(Collectors.toList());
+                .where(new StringClientParam(SP_RES_LAST_UPDATED).matches().value("ge" + DateUtils.serialize(since)));
+        if (until != null) {
+            query = query.and(
+                    new StringClientParam(SP_RES_LAST_UPDATED).matches().value("lt" + DateUtils.serialize(until)));
+        }
+
+        return query;
     }
 }
@@ -0,0 +1,21 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * The http and retry settings of the OpenELIS fhir client, only reads are retried by default.
+ */
+@ConfigurationProperties("eip.openelis")
+public class OpenElisFhirClientProperties extends FhirClientProperties {
+
+    public OpenElisFhirClientProperties() {
+        getRetry().setOperations("read,search");
+    }
+}
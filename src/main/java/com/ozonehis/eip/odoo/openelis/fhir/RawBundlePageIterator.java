@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.r4.model.DomainResource;
+
+/**
+ * Iterates over the pages of a FHIR search result read with the {@link RawBundleReader}, each page is fetched lazily
+ * by following the next link of the previous page only when it is requested.
+ *
+ * @param <T> the resource type
+ */
+@Slf4j
+public class RawBundlePageIterator<T extends DomainResource> implements Iterator<List<T>> {
+
+    private final Function<String, RawBundleReader.Page<T>> fetcher;
+
+    private List<T> nextPage;
+
+    private String nextUrl;
+
+    /**
+     * @param url the url of the first page
+     * @param fetcher fetches and reads the page at a url
+     */
+    public RawBundlePageIterator(String url, Function<String, RawBundleReader.Page<T>> fetcher) {
+        this.nextUrl = url;
+        this.fetcher = fetcher;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (nextPage == null && nextUrl != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Fetching page: {}", nextUrl);
+            }
+
+            RawBundleReader.Page<T> page = fetcher.apply(nextUrl);
+            nextUrl = page.nextUrl();
+            if (!page.resources().isEmpty()) {
+                nextPage = page.resources();
+            }
+        }
+
+        return nextPage != null;
+    }
+
+    @Override
+    public List<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        List<T> page = nextPage;
+        nextPage = null;
+        return page;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.InstantType;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.ServiceRequest;
+
+/**
+ * Reads a page of a fhir search result from its JSON payload with a streaming parser without parsing the entries to
+ * fhir resources. The JSON of each entry resource is copied token by token and only its id, meta and subject are read,
+ * the entry is returned as a resource of the searched type with only those elements set and the JSON kept with it as a
+ * {@link RawPayload}. Entries of any other resource type e.g. an OperationOutcome are ignored.
+ */
+@Slf4j
+public final class RawBundleReader {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private static final String RESOURCE_TYPE = "resourceType";
+
+    private static final String ID = "id";
+
+    private static final String META = "meta";
+
+    private static final String VERSION_ID = "versionId";
+
+    private static final String LAST_UPDATED = "lastUpdated";
+
+    private static final String SUBJECT = "subject";
+
+    private static final String REFERENCE = "reference";
+
+    /**
+     * A page of a search result.
+     *
+     * @param resources the resources in the page
+     * @param nextUrl the url of the next page, null if this is the last page
+     */
+    public record Page<T extends DomainResource>(List<T> resources, String nextUrl) {}
+
+    private RawBundleReader() {}
+
+    /**
+     * Reads a page of resources of the specified type from the specified search result payload.
+     *
+     * @param in the stream to read the payload from
+     * @param resourceType the searched resource type
+     * @return the page
+     */
+    public static <T extends DomainResource> Page<T> read(InputStream in, Class<T> resourceType) {
+        List<T> resources = new ArrayList<>();
+        String nextUrl = null;
+        try (JsonParser parser = FACTORY.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new RuntimeException("Expected a JSON object for the search result");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.currentName();
+                final JsonToken value = parser.nextToken();
+                if (value == JsonToken.START_ARRAY && "link".equals(name)) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        Map<String, String> link = readFields(parser, "relation", "url");
+                        if (Bundle.LINK_NEXT.equals(link.get("relation"))) {
+                            nextUrl = link.get("url");
+                        }
+                    }
+                } else if (value == JsonToken.START_ARRAY && "entry".equals(name)) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readEntry(parser, resourceType, resources);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read the search result", e);
+        }
+
+        return new Page<>(resources, nextUrl);
+    }
+
+    private static <T extends DomainResource> void readEntry(
+            JsonParser parser, Class<T> resourceType, List<T> resources) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.currentName();
+            if (parser.nextToken() == JsonToken.START_OBJECT && "resource".equals(name)) {
+                T resource = readResource(parser, resourceType);
+                if (resource != null) {
+                    resources.add(resource);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static <T extends DomainResource> T readResource(JsonParser parser, Class<T> resourceType)
+            throws IOException {
+        StringWriter out = new StringWriter();
+        String type = null;
+        String id = null;
+        Map<String, String> meta = Map.of();
+        Map<String, String> subject = Map.of();
+        int metaStart = -1;
+        int metaEnd = -1;
+        try (JsonGenerator generator = FACTORY.createGenerator(out)) {
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.currentName();
+                final JsonToken value = parser.nextToken();
+                if (value == JsonToken.START_OBJECT && META.equals(name)) {
+                    // The separator before the meta element is written with its name so it is inside the range
+                    generator.flush();
+                    metaStart = out.getBuffer().length();
+                    generator.writeFieldName(name);
+                    meta = copyFields(parser, generator, VERSION_ID, LAST_UPDATED);
+                    generator.flush();
+                    metaEnd = out.getBuffer().length();
+                    continue;
+                }
+
+                generator.writeFieldName(name);
+                if (value == JsonToken.START_OBJECT && SUBJECT.equals(name)) {
+                    subject = copyFields(parser, generator, REFERENCE);
+                    continue;
+                }
+
+                if (value == JsonToken.VALUE_STRING && RESOURCE_TYPE.equals(name)) {
+                    type = parser.getText();
+                } else if (value == JsonToken.VALUE_STRING && ID.equals(name)) {
+                    id = parser.getText();
+                }
+
+                copy(parser, generator);
+            }
+
+            generator.writeEndObject();
+        }
+
+        if (!resourceType.getSimpleName().equals(type)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Ignoring {} entry in search result for {}", type, resourceType.getSimpleName());
+            }
+
+            return null;
+        }
+
+        T resource;
+        try {
+            resource = resourceType.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Failed to create resource of type " + type, e);
+        }
+
+        resource.setId(id);
+        resource.getMeta().setVersionId(meta.get(VERSION_ID));
+        if (meta.get(LAST_UPDATED) != null) {
+            resource.getMeta().setLastUpdatedElement(new InstantType(meta.get(LAST_UPDATED)));
+        }
+
+        // The subject is needed to push a service request after its patient
+        if (resource instanceof ServiceRequest request && subject.get(REFERENCE) != null) {
+            request.setSubject(new Reference(subject.get(REFERENCE)));
+        }
+
+        new RawPayload(out.toString(), metaStart, metaEnd).attach(resource);
+        return resource;
+    }
+
+    /**
+     * Skips over the object at the current position of the parser and reads the specified top level string fields.
+     */
+    private static Map<String, String> readFields(JsonParser parser, String... names) throws IOException {
+        return copyFields(parser, null, names);
+    }
+
+    /**
+     * Copies the object at the current position of the parser to the generator if any and reads the specified top
+     * level string fields.
+     */
+    private static Map<String, String> copyFields(JsonParser parser, JsonGenerator generator, String... names)
+            throws IOException {
+        Map<String, String> values = new HashMap<>(names.length);
+        if (generator != null) {
+            generator.writeStartObject();
+        }
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.currentName();
+            final JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_STRING) {
+                for (String n : names) {
+                    if (n.equals(name)) {
+                        values.put(name, parser.getText());
+                    }
+                }
+            }
+
+            if (generator == null) {
+                parser.skipChildren();
+            } else {
+                generator.writeFieldName(name);
+                copy(parser, generator);
+            }
+        }
+
+        if (generator != null) {
+            generator.writeEndObject();
+        }
+
+        return values;
+    }
+
+    /**
+     * Copies the value at the current position of the parser, numbers are copied exactly to preserve the precision of
+     * fhir decimals.
+     */
+    private static void copy(JsonParser parser, JsonGenerator generator) throws IOException {
+        int depth = 0;
+        do {
+            generator.copyCurrentEventExact(parser);
+            if (parser.currentToken().isStructStart()) {
+                depth++;
+            } else if (parser.currentToken().isStructEnd()) {
+                depth--;
+            }
+        } while (depth > 0 && parser.nextToken() != null);
+    }
+}
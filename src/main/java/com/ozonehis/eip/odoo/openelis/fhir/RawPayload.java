@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import org.hl7.fhir.r4.model.DomainResource;
+
+/**
+ * The JSON payload of a resource read from a search result without parsing it, it is kept in the user data of a
+ * resource that only has the id, meta and subject set so that the payload is forwarded unchanged.
+ *
+ * @param json the JSON payload
+ * @param metaStart the index of the meta element in the payload, -1 if the payload has no meta element
+ * @param metaEnd the index after the meta element in the payload, -1 if the payload has no meta element
+ */
+public record RawPayload(String json, int metaStart, int metaEnd) {
+
+    private static final String USER_DATA_KEY = RawPayload.class.getName();
+
+    /**
+     * Gets the raw payload kept with the specified resource.
+     *
+     * @param resource the resource
+     * @return the payload or null if the resource was parsed
+     */
+    public static RawPayload get(DomainResource resource) {
+        return resource.getUserData(USER_DATA_KEY) instanceof RawPayload payload ? payload : null;
+    }
+
+    /**
+     * Keeps this payload with the specified resource.
+     *
+     * @param resource the resource
+     */
+    public void attach(DomainResource resource) {
+        resource.setUserData(USER_DATA_KEY, this);
+    }
+
+    /**
+     * Gets the payload without its meta element, the result is only meant to be compared and is not necessarily valid
+     * JSON.
+     *
+     * @return the payload without the meta element
+     */
+    public String withoutMeta() {
+        if (metaStart < 0) {
+            return json;
+        }
+
+        return json.substring(0, metaStart) + json.substring(metaEnd);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Retries the requests to a fhir server that fail with a transient error with an exponential backoff and full jitter
+ * i.e. the delay before a retry is a random value up to a maximum that doubles with each retry. Retries are drawn from
+ * a budget that is refilled by a fraction of a retry for every request up to a small reserve, when the budget is spent
+ * a failed request is not retried so that a failing server does not get more requests than it would without retries.
+ * The retries are counted per operation and outcome, i.e. retried for each retry, recovered for a request that
+ * succeeded after a retry, exhausted for a request that failed after the maximum attempts and throttled for a retry
+ * skipped because the budget is spent.
+ * <p>
+ * The write operations are retried on a separate list of exceptions because a write that timed out may still be
+ * applied by the server, by default they are only retried when the request did not reach the server so that a slow
+ * server does not keep a caller waiting for several socket timeouts.
+ */
+@Slf4j
+public class RetryPolicy {
+
+    protected static final int MAX_BACKOFF_EXPONENT = 30;
+
+    private static final double BUDGET_RESERVE = 10;
+
+    private static final Set<String> WRITE_OPERATIONS = Set.of(
+            BaseFhirClient.OPERATION_CREATE,
+            BaseFhirClient.OPERATION_UPDATE,
+            BaseFhirClient.OPERATION_DELETE,
+            BaseFhirClient.OPERATION_TRANSACTION);
+
+    private final String target;
+
+    private final RetrySettings settings;
+
+    private final List<Class<?>> exceptions;
+
+    private final List<Class<?>> writeExceptions;
+
+    private final MeterRegistry meterRegistry;
+
+    private double budget = BUDGET_RESERVE;
+
+    /**
+     * @param target the name of the server the requests are sent to
+     * @param settings the retry settings
+     * @param meterRegistry the registry to report the retry counts, can be null
+     */
+    public RetryPolicy(String target, RetrySettings settings, MeterRegistry meterRegistry) {
+        this.target = target;
+        this.settings = settings;
+        this.meterRegistry = meterRegistry;
+        this.exceptions = loadClasses(settings.exceptions());
+        this.writeExceptions = loadClasses(settings.writeExceptions());
+    }
+
+    private List<Class<?>> loadClasses(List<String> names) {
+        return names.stream()
+                .<Class<?>>map(name -> {
+                    try {
+                        return Class.forName(name.trim());
+                    } catch (ClassNotFoundException e) {
+                        throw new RuntimeException("Unknown retryable exception " + name + " for " + target, e);
+                    }
+                })
+                .toList();
+    }
+
+    /**
+     * Sends the specified request and retries it if it fails with a retryable error and the operation is retried.
+     *
+     * @param operation the operation
+     * @param request the request to send
+     * @return the value returned by the request
+     * @param <T> the type of the returned value
+     */
+    public <T> T execute(String operation, Supplier<T> request) {
+        if (!settings.operations().contains(operation)) {
+            return request.get();
+        }
+
+        deposit();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                final T result = request.get();
+                if (attempt > 1) {
+                    increment(operation, "recovered");
+                }
+
+                return result;
+            } catch (RuntimeException e) {
+                if (!isRetryable(operation, e)) {
+                    throw e;
+                }
+
+                if (attempt >= settings.maxAttempts()) {
+                    increment(operation, "exhausted");
+                    throw e;
+                }
+
+                if (!withdraw()) {
+                    increment(operation, "throttled");
+                    log.warn("Not retrying {} in {} because the retry budget is spent", operation, target);
+                    throw e;
+                }
+
+                final long delay = getDelay(attempt);
+                log.warn(
+                        "Attempt {} to {} in {} failed, retrying in {}ms: {}",
+                        attempt,
+                        operation,
+                        target,
+                        delay,
+                        e.getMessage());
+                increment(operation, "retried");
+                try {
+                    sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    e.addSuppressed(ie);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if the specified error is transient i.e. a response with a retryable status code or an error caused by a
+     * retryable exception for the operation.
+     *
+     * @param operation the operation
+     * @param e the error
+     * @return true if the error is retryable otherwise false
+     */
+    protected boolean isRetryable(String operation, Throwable e) {
+        if (e instanceof BaseServerResponseException serverException
+                && settings.statusCodes().contains(serverException.getStatusCode())) {
+            return true;
+        }
+
+        final List<Class<?>> retryable = WRITE_OPERATIONS.contains(operation) ? writeExceptions : exceptions;
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            for (Class<?> clazz : retryable) {
+                if (clazz.isInstance(cause)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets a random delay up to the exponential backoff for the specified attempt.
+     *
+     * @param attempt the number of the failed attempt
+     * @return the delay in milliseconds
+     */
+    protected long getDelay(int attempt) {
+        final int exponent = Math.min(attempt - 1, MAX_BACKOFF_EXPONENT);
+        final long backoff = Math.min(settings.initialDelay() * (1L << exponent), settings.maxDelay());
+        return backoff < 1 ? 0 : ThreadLocalRandom.current().nextLong(backoff + 1);
+    }
+
+    protected void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    private synchronized void deposit() {
+        budget = Math.min(budget + settings.budgetRatio(), BUDGET_RESERVE);
+    }
+
+    private synchronized boolean withdraw() {
+        if (budget < 1) {
+            return false;
+        }
+
+        budget--;
+        return true;
+    }
+
+    private void increment(String operation, String outcome) {
+        if (meterRegistry == null) {
+            return;
+        }
+
+        Counter.builder("eip.http.retry")
+                .description("The number of retries of requests that failed with a transient error")
+                .tag("target", target)
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+}
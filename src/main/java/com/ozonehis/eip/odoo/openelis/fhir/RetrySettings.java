@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The settings for retrying the requests to a fhir server that fail with a transient error, all durations are in
+ * milliseconds.
+ *
+ * @param maxAttempts the maximum number of attempts of a request including the first one, a value less than 2
+ *     disables the retries
+ * @param initialDelay the maximum delay before the first retry, the maximum delay doubles with each retry and the
+ *     actual delay is a random value up to it
+ * @param maxDelay the cap of the maximum delay
+ * @param statusCodes the http status codes of the responses to retry
+ * @param exceptions the fully qualified names of the exception classes to retry, an error is retried if it or any of
+ *     its causes is an instance of one of them
+ * @param writeExceptions the fully qualified names of the exception classes to retry for the write operations i.e.
+ *     create, update, delete and transaction, they should only include the errors raised before the request reaches
+ *     the server since a timed out write may still be applied by the server
+ * @param operations the operations to retry, see the operation constants in {@link BaseFhirClient}
+ * @param budgetRatio the number of retries allowed per request on top of a small reserve so that retries can't
+ *     amplify the load on a server that is failing
+ */
+public record RetrySettings(
+        int maxAttempts,
+        long initialDelay,
+        long maxDelay,
+        Set<Integer> statusCodes,
+        List<String> exceptions,
+        List<String> writeExceptions,
+        Set<String> operations,
+        double budgetRatio) {
+
+    /**
+     * Creates the retry settings from the comma separated values of the configuration properties.
+     *
+     * @param maxAttempts the maximum number of attempts
+     * @param initialDelay the initial delay
+     * @param maxDelay the maximum delay
+     * @param statusCodes the comma separated status codes
+     * @param exceptions the comma separated exception class names
+     * @param writeExceptions the comma separated exception class names for the write operations
+     * @param operations the comma separated operations
+     * @param budgetRatio the retry budget ratio
+     * @return the retry settings
+     */
+    public static RetrySettings parse(
+            int maxAttempts,
+            long initialDelay,
+            long maxDelay,
+            String statusCodes,
+            String exceptions,
+            String writeExceptions,
+            String operations,
+            double budgetRatio) {
+        return new RetrySettings(
+                maxAttempts,
+                initialDelay,
+                maxDelay,
+                split(statusCodes).stream().map(Integer::valueOf).collect(Collectors.toSet()),
+                split(exceptions),
+                split(writeExceptions),
+                Set.copyOf(split(operations)),
+                budgetRatio);
+    }
+
+    private static List<String> split(String value) {
+        return Arrays.stream(StringUtils.split(StringUtils.defaultString(value), ','))
+                .map(String::trim)
+                .filter(StringUtils::isNotBlank)
+                .toList();
+    }
+}
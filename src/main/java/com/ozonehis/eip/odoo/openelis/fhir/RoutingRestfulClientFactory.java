@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.client.apache.ApacheRestfulClientFactory;
+import ca.uhn.fhir.rest.client.api.Header;
+import ca.uhn.fhir.rest.client.api.IHttpClient;
+import ca.uhn.fhir.rest.client.api.IRestfulClientFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hapi looks up the restful client factory from the fhir context to create the http client for each request instead
+ * of using the factory that created the generic client, this factory is set on the application's private context
+ * rather than the JVM wide cached one and routes each
+ * request to the factory registered for the server base url of the request so that each fhir client keeps its own
+ * http settings, any other request is sent with the default apache client.
+ */
+public class RoutingRestfulClientFactory extends ApacheRestfulClientFactory {
+
+    private final Map<String, IRestfulClientFactory> factories = new ConcurrentHashMap<>();
+
+    public RoutingRestfulClientFactory(FhirContext fhirContext) {
+        super(fhirContext);
+    }
+
+    /**
+     * Gets the routing factory of the specified context, it is created and set on the context if necessary.
+     *
+     * @param fhirContext the fhir context
+     * @return the routing factory
+     */
+    public static RoutingRestfulClientFactory getInstance(FhirContext fhirContext) {
+        synchronized (fhirContext) {
+            if (fhirContext.getRestfulClientFactory() instanceof RoutingRestfulClientFactory routingFactory) {
+                return routingFactory;
+            }
+
+            RoutingRestfulClientFactory routingFactory = new RoutingRestfulClientFactory(fhirContext);
+            fhirContext.setRestfulClientFactory(routingFactory);
+            return routingFactory;
+        }
+    }
+
+    /**
+     * Registers the factory to use for requests to the specified server.
+     *
+     * @param serverBase the server base url
+     * @param factory the factory
+     */
+    public void register(String serverBase, IRestfulClientFactory factory) {
+        factories.put(serverBase, factory);
+    }
+
+    /**
+     * Removes the specified factory for requests to the specified server, does nothing if another factory has since
+     * been registered for the server.
+     *
+     * @param serverBase the server base url
+     * @param factory the factory
+     */
+    public void unregister(String serverBase, IRestfulClientFactory factory) {
+        factories.remove(serverBase, factory);
+    }
+
+    @Override
+    public IHttpClient getHttpClient(
+            StringBuilder url,
+            Map<String, List<String>> ifNoneExistParams,
+            String ifNoneExistString,
+            RequestTypeEnum requestType,
+            List<Header> headers) {
+        final IRestfulClientFactory factory = getFactory(url.toString());
+        if (factory != null) {
+            return factory.getHttpClient(url, ifNoneExistParams, ifNoneExistString, requestType, headers);
+        }
+
+        return super.getHttpClient(url, ifNoneExistParams, ifNoneExistString, requestType, headers);
+    }
+
+    private IRestfulClientFactory getFactory(String url) {
+        IRestfulClientFactory match = null;
+        int matchLength = -1;
+        for (Map.Entry<String, IRestfulClientFactory> entry : factories.entrySet()) {
+            final String serverBase = entry.getKey();
+            if (url.startsWith(serverBase) && serverBase.length() > matchLength) {
+                match = entry.getValue();
+                matchLength = serverBase.length();
+            }
+        }
+
+        return match;
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import java.time.LocalDateTime;
+
+/**
+ * The result of a count only search.
+ *
+ * @param total the number of matching resources
+ * @param serverTime the time the server ran the search, null if the server does not report it
+ */
+public record SearchSummary(int total, LocalDateTime serverTime) {}
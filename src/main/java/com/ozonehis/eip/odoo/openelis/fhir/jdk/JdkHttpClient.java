@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir.jdk;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.client.apache.BaseHttpClient;
+import ca.uhn.fhir.rest.client.api.Header;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Creates the requests of a single fhir operation to be sent with the JDK {@link HttpClient}, the headers common to all
+ * requests are added by the base class.
+ */
+class JdkHttpClient extends BaseHttpClient {
+
+    private final JdkRestfulClientFactory factory;
+
+    JdkHttpClient(
+            JdkRestfulClientFactory factory,
+            StringBuilder url,
+            Map<String, List<String>> ifNoneExistParams,
+            String ifNoneExistString,
+            RequestTypeEnum requestType,
+            List<Header> headers) {
+        super(url, ifNoneExistParams, ifNoneExistString, requestType, headers);
+        this.factory = factory;
+    }
+
+    @Override
+    protected IHttpRequest createHttpRequest() {
+        return createHttpRequest((byte[]) null);
+    }
+
+    @Override
+    protected IHttpRequest createHttpRequest(byte[] content) {
+        final String method = myRequestType == null ? RequestTypeEnum.GET.name() : myRequestType.name();
+        return new JdkHttpRequest(factory, myUrl.toString(), method, content);
+    }
+
+    @Override
+    protected IHttpRequest createHttpRequest(Map<String, List<String>> params) {
+        StringJoiner form = new StringJoiner("&");
+        params.forEach(
+                (name, values) -> values.forEach(value -> form.add(URLEncoder.encode(name, StandardCharsets.UTF_8) + "="
+                        + URLEncoder.encode(value, StandardCharsets.UTF_8))));
+        IHttpRequest request = createHttpRequest(form.toString().getBytes(StandardCharsets.UTF_8));
+        request.addHeader(Constants.HEADER_CONTENT_TYPE, Constants.CT_X_FORM_URLENCODED);
+        return request;
+    }
+
+    @Override
+    protected IHttpRequest createHttpRequest(String content) {
+        return createHttpRequest(content == null ? null : content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir.jdk;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.client.api.BaseHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import ca.uhn.fhir.util.StopWatch;
+import com.ozonehis.eip.odoo.openelis.fhir.GzipUtils;
+import com.ozonehis.eip.odoo.openelis.fhir.HttpTrafficMetrics;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A request sent with the JDK {@link HttpClient}.
+ */
+class JdkHttpRequest extends BaseHttpRequest {
+
+    // Headers managed by the JDK client that it refuses to have set by the caller
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        RESTRICTED_HEADERS.addAll(List.of("Connection", "Content-Length", "Expect", "Host", "Upgrade"));
+    }
+
+    private final JdkRestfulClientFactory factory;
+
+    private final String method;
+
+    private final byte[] content;
+
+    private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    private String uri;
+
+    JdkHttpRequest(JdkRestfulClientFactory factory, String uri, String method, byte[] content) {
+        this.factory = factory;
+        this.uri = uri;
+        this.method = method;
+        this.content = content;
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        headers.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+    }
+
+    @Override
+    public IHttpResponse execute() throws IOException {
+        byte[] body = content;
+        if (body != null && body.length > 0 && factory.isGzipRequests()) {
+            body = GzipUtils.gzip(body);
+            headers.put(Constants.HEADER_CONTENT_ENCODING, List.of(GzipUtils.ENCODING));
+        }
+
+        if (!factory.isGzipResponses()) {
+            headers.remove(Constants.HEADER_ACCEPT_ENCODING);
+        }
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(uri))
+                .method(
+                        method,
+                        body == null
+                                ? HttpRequest.BodyPublishers.noBody()
+                                : HttpRequest.BodyPublishers.ofByteArray(body));
+        final Duration responseTimeout = factory.getResponseTimeout();
+        if (responseTimeout != null) {
+            builder.timeout(responseTimeout);
+        }
+
+        headers.forEach((name, values) -> {
+            if (!RESTRICTED_HEADERS.contains(name)) {
+                values.forEach(value -> builder.header(name, value));
+            }
+        });
+
+        final HttpTrafficMetrics metrics = factory.getTrafficMetrics();
+        if (metrics != null && body != null) {
+            metrics.recordSent(body.length, content.length);
+        }
+
+        StopWatch stopWatch = new StopWatch();
+        try {
+            HttpResponse<byte[]> response =
+                    factory.getNativeHttpClient().send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+            return new JdkHttpResponse(response, stopWatch, metrics);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the response from " + uri);
+        }
+    }
+
+    @Override
+    public Map<String, List<String>> getAllHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    @Override
+    public String getRequestBodyFromStream() {
+        return content == null ? null : new String(content, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getUri() {
+        return uri;
+    }
+
+    @Override
+    public void setUri(String uri) {
+        this.uri = uri;
+    }
+
+    @Override
+    public String getHttpVerbName() {
+        return method;
+    }
+
+    @Override
+    public void removeHeaders(String name) {
+        headers.remove(name);
+    }
+}
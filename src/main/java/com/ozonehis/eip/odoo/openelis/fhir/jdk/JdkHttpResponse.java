@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir.jdk;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import ca.uhn.fhir.util.StopWatch;
+import com.ozonehis.eip.odoo.openelis.fhir.GzipUtils;
+import com.ozonehis.eip.odoo.openelis.fhir.HttpTrafficMetrics;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpStatus;
+
+/**
+ * A response received with the JDK {@link java.net.http.HttpClient}, the body is fully buffered and decoded if it is gzip encoded.
+ */
+class JdkHttpResponse implements IHttpResponse {
+
+    private final HttpResponse<byte[]> response;
+
+    private final StopWatch stopWatch;
+
+    private final byte[] body;
+
+    JdkHttpResponse(HttpResponse<byte[]> response, StopWatch stopWatch, HttpTrafficMetrics metrics) {
+        this.response = response;
+        this.stopWatch = stopWatch;
+        final byte[] received = response.body() == null ? new byte[0] : response.body();
+        final String encoding =
+                response.headers().firstValue(Constants.HEADER_CONTENT_ENCODING).orElse(null);
+        body = received.length > 0 && GzipUtils.ENCODING.equalsIgnoreCase(encoding)
+                ? GzipUtils.gunzip(received)
+                : received;
+        if (metrics != null) {
+            metrics.recordReceived(received.length, body.length);
+        }
+    }
+
+    @Override
+    public void bufferEntity() {
+        // The body is already buffered
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release since the body is buffered
+    }
+
+    @Override
+    public Reader createReader() throws IOException {
+        return new InputStreamReader(readEntity(), getCharset());
+    }
+
+    @Override
+    public Map<String, List<String>> getAllHeaders() {
+        // Lower case names like the other hapi clients, HTTP/2 header names are lower case anyway
+        Map<String, List<String>> headers = new HashMap<>();
+        response.headers().map().forEach((name, values) -> headers.put(name.toLowerCase(Locale.ROOT), values));
+        return headers;
+    }
+
+    @Override
+    public List<String> getHeaders(String name) {
+        return response.headers().allValues(name);
+    }
+
+    @Override
+    public String getMimeType() {
+        return response.headers()
+                .firstValue(Constants.HEADER_CONTENT_TYPE)
+                .map(value -> StringUtils.substringBefore(value, ";").trim())
+                .orElse(null);
+    }
+
+    @Override
+    public StopWatch getRequestStopWatch() {
+        return stopWatch;
+    }
+
+    @Override
+    public Object getResponse() {
+        return response;
+    }
+
+    @Override
+    public int getStatus() {
+        return response.statusCode();
+    }
+
+    @Override
+    public String getStatusInfo() {
+        // The JDK client does not expose the reason phrase
+        HttpStatus status = HttpStatus.resolve(response.statusCode());
+        return status == null ? "" : status.getReasonPhrase();
+    }
+
+    @Override
+    public InputStream readEntity() {
+        return new ByteArrayInputStream(body);
+    }
+
+    private Charset getCharset() {
+        final String contentType =
+                response.headers().firstValue(Constants.HEADER_CONTENT_TYPE).orElse("");
+        final String charset = StringUtils.substringAfter(contentType.toLowerCase(Locale.ROOT), "charset=");
+        if (StringUtils.isNotBlank(charset)) {
+            try {
+                return Charset.forName(StringUtils.substringBefore(charset, ";").trim());
+            } catch (IllegalArgumentException e) {
+                // Fall back to the default
+            }
+        }
+
+        return StandardCharsets.UTF_8;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir.jdk;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.client.api.Header;
+import ca.uhn.fhir.rest.client.api.IHttpClient;
+import ca.uhn.fhir.rest.client.impl.RestfulClientFactory;
+import com.ozonehis.eip.odoo.openelis.fhir.HttpTrafficMetrics;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A restful client factory that sends the requests with the {@link HttpClient} of the JDK, it negotiates HTTP/2 with
+ * servers that support it so that concurrent requests are multiplexed over a single connection instead of each
+ * holding a pooled connection. The socket timeout is applied as the timeout for each response, and the connection
+ * request timeout and pool settings do not apply since the JDK client manages its own connections.
+ */
+public class JdkRestfulClientFactory extends RestfulClientFactory {
+
+    private HttpClient httpClient;
+
+    private ProxySelector proxySelector;
+
+    /**
+     * Whether request bodies are gzip encoded.
+     */
+    @Getter
+    @Setter
+    private boolean gzipRequests;
+
+    /**
+     * Whether gzip encoded responses are accepted, the accept encoding header is removed from the requests otherwise.
+     */
+    @Getter
+    @Setter
+    private boolean gzipResponses = true;
+
+    /**
+     * The metrics to record the bytes of the request and response bodies, can be null.
+     */
+    @Getter
+    @Setter
+    private HttpTrafficMetrics trafficMetrics;
+
+    public JdkRestfulClientFactory(FhirContext fhirContext) {
+        super(fhirContext);
+    }
+
+    @Override
+    protected synchronized JdkHttpClient getHttpClient(String serverBase) {
+        return new JdkHttpClient(this, new StringBuilder(serverBase), null, null, null, null);
+    }
+
+    @Override
+    public synchronized IHttpClient getHttpClient(
+            StringBuilder url,
+            Map<String, List<String>> ifNoneExistParams,
+            String ifNoneExistString,
+            RequestTypeEnum requestType,
+            List<Header> headers) {
+        return new JdkHttpClient(this, url, ifNoneExistParams, ifNoneExistString, requestType, headers);
+    }
+
+    /**
+     * Gets the underlying JDK http client, it is created on first use.
+     *
+     * @return the http client
+     */
+    public synchronized HttpClient getNativeHttpClient() {
+        if (httpClient == null) {
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .connectTimeout(Duration.ofMillis(getConnectTimeout()));
+            if (proxySelector != null) {
+                builder.proxy(proxySelector);
+            }
+
+            httpClient = builder.build();
+        }
+
+        return httpClient;
+    }
+
+    @Override
+    protected synchronized void resetHttpClient() {
+        httpClient = null;
+    }
+
+    @Override
+    public synchronized void setHttpClient(Object httpClient) {
+        this.httpClient = (HttpClient) httpClient;
+    }
+
+    @Override
+    public synchronized void setProxy(String host, Integer port) {
+        proxySelector = host == null ? null : ProxySelector.of(new InetSocketAddress(host, port));
+        resetHttpClient();
+    }
+
+    Duration getResponseTimeout() {
+        return getSocketTimeout() > 0 ? Duration.ofMillis(getSocketTimeout()) : null;
+    }
+}
@@ -7,13 +7,12 @@
  */
 package com.ozonehis.eip.odoo.openelis.fhir.web;
 
-import com.jayway.jsonpath.JsonPath;
 import com.ozonehis.eip.odoo.openelis.Constants;
-import com.ozonehis.eip.odoo.openelis.DateUtils;
-import com.ozonehis.eip.odoo.openelis.SyncUtils;
+import com.ozonehis.eip.odoo.openelis.ResourceMetaReader;
 import com.ozonehis.eip.odoo.openelis.fhir.OdooFhirClient;
-import java.time.LocalDateTime;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -27,14 +26,15 @@ import org.springframework.web.bind.annotation.RequestMapping;
 @Slf4j
 public class FhirController {
 
-    private final OdooFhirClient odooFhirClient;
+    private final WebhookProcessor webhookProcessor;
 
-    public FhirController(OdooFhirClient odooFhirClient) {
-        this.odooFhirClient = odooFhirClient;
+    public FhirController(WebhookProcessor webhookProcessor) {
+        this.webhookProcessor = webhookProcessor;
     }
 
     /**
-     * Handles FHIR requests to create or update a resource by forwarding it to the FHIR Odoo service via the {@link OdooFhirClient}
+     * Handles FHIR requests to create or update a resource by queueing it to be forwarded to the FHIR Odoo service via
+     * the {@link OdooFhirClient}
      *
      * @param resourceType The resource type name
      * @param id           The id of the resource being updated.
@@ -46,21 +46,20 @@ public class FhirController {
             @PathVariable("resourceType") String resourceType,
             @PathVariable("id") String id,
             @RequestBody String body) {
-        int status = 200;
+        final String lastUpdated;
         try {
-            status = odooFhirClient.update(resourceType, id, body);
-            LocalDateTime lastUpdated = DateUtils.deserialize(JsonPath.read(body, "meta.lastUpdated"));
-            SyncUtils.saveLastUpdated(resourceType, id, lastUpdated);
-        } catch (Throwable e) {
-            log.error("Failed to update resource {}/{}", resourceType, id, e);
-            // Ignore failures otherwise OpenELIS will keep re-submitting it.
+            lastUpdated = ResourceMetaReader.readLastUpdated(body);
+        } catch (RuntimeException e) {
+            log.error("Rejecting invalid payload for resource {}/{}", resourceType, id, e);
+            return ResponseEntity.badRequest().build();
         }
 
-        return ResponseEntity.status(status).build();
+        return enqueue(WebhookEvent.update(resourceType, id, body, lastUpdated), HttpStatus.OK);
     }
 
     /**
-     * Handles FHIR requests to delete a resource by forwarding it to the FHIR Odoo service via the {@link OdooFhirClient}
+     * Handles FHIR requests to delete a resource by queueing it to be forwarded to the FHIR Odoo service via the
+     * {@link OdooFhirClient}
      *
      * @param resourceType The resource type name
      * @param id           The id of the resource being deleted.
@@ -68,14 +67,17 @@ public class FhirController {
      */
     @DeleteMapping("{resourceType}/{id}")
     public ResponseEntity delete(@PathVariable("resourceType") String resourceType, @PathVariable("id") String id) {
-        try {
-            odooFhirClient.delete(resourceType, id);
-            SyncUtils.saveLastUpdated(resourceType, id, null);
-        } catch (Throwable e) {
-            log.error("Failed to update resource {}/{}", resourceType, id, e);
-            // Ignore failures otherwise OpenELIS will keep re-submitting it.
+        return enqueue(WebhookEvent.delete(resourceType, id), HttpStatus.NO_CONTENT);
+    }
+
+    private ResponseEntity enqueue(WebhookEvent event, HttpStatus status) {
+        if (!webhookProcessor.submit(event)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(webhookProcessor.getRetryAfter()))
+                    .build();
         }
 
-        return ResponseEntity.noContent().build();
+        // Failures to apply the event are ignored otherwise OpenELIS will keep re-submitting it.
+        return ResponseEntity.status(status).build();
     }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir.web;
+
+/**
+ * A resource change received from OpenELIS via a rest-hook subscription that is waiting to be applied to Odoo.
+ *
+ * @param resourceType the resource type
+ * @param id the resource id
+ * @param body the JSON payload of the resource, null for a deleted resource
+ * @param lastUpdated the last updated timestamp read from the payload, null for a deleted resource or if absent
+ */
+public record WebhookEvent(String resourceType, String id, String body, String lastUpdated) {
+
+    /**
+     * Creates an event for a created or updated resource.
+     *
+     * @param resourceType the resource type
+     * @param id the resource id
+     * @param body the JSON payload of the resource
+     * @param lastUpdated the last updated timestamp read from the payload
+     * @return the event
+     */
+    public static WebhookEvent update(String resourceType, String id, String body, String lastUpdated) {
+        return new WebhookEvent(resourceType, id, body, lastUpdated);
+    }
+
+    /**
+     * Creates an event for a deleted resource.
+     *
+     * @param resourceType the resource type
+     * @param id the resource id
+     * @return the event
+     */
+    public static WebhookEvent delete(String resourceType, String id) {
+        return new WebhookEvent(resourceType, id, null, null);
+    }
+
+    /**
+     * Checks if the resource was deleted.
+     *
+     * @return true for a deleted resource otherwise false
+     */
+    public boolean isDelete() {
+        return body == null;
+    }
+
+    @Override
+    public String toString() {
+        return (isDelete() ? "DELETE " : "PUT ") + resourceType + "/" + id;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir.web;
+
+import com.ozonehis.eip.odoo.openelis.Constants;
+import com.ozonehis.eip.odoo.openelis.DateUtils;
+import com.ozonehis.eip.odoo.openelis.DedupeIndex;
+import com.ozonehis.eip.odoo.openelis.SyncUtils;
+import com.ozonehis.eip.odoo.openelis.fhir.OdooFhirClient;
+import com.ozonehis.eip.odoo.openelis.task.FingerprintStore;
+import com.ozonehis.eip.odoo.openelis.task.RetryQueue;
+import com.ozonehis.eip.odoo.openelis.task.SyncTask;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Queues the resource changes received from OpenELIS and applies them to Odoo on a pool of worker threads so that the
+ * webhook requests are acknowledged without waiting for Odoo, the queue is bounded and an event is rejected when it is
+ * full so that OpenELIS can resend it later.
+ * <p>
+ * Events are coalesced per resource while they wait in the queue i.e. an event replaces the pending event for the same
+ * resource unless the pending one is newer, and a delete always replaces a pending update, only the latest state of the
+ * resource is then pushed to Odoo when a worker picks it up. The events of a resource are pushed one at a time in the
+ * order they are received, an event received while an earlier event for the same resource is being pushed waits in the
+ * queue and is only scheduled once that push has completed.
+ * <p>
+ * The events still queued when the application shuts down are added to the retry queue since they were already
+ * acknowledged.
+ */
+@Slf4j
+@Component
+public class WebhookProcessor implements DisposableBean {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final OdooFhirClient odooFhirClient;
+
+    private final FingerprintStore fingerprintStore;
+
+    private final RetryQueue retryQueue;
+
+    private final DedupeIndex dedupeIndex;
+
+    private final ThreadPoolExecutor executor;
+
+    private final Map<String, WebhookEvent> pending = new ConcurrentHashMap<>();
+
+    // The resources with an event being pushed, only updated while holding the lock of the key in the pending map
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    // Bounds the number of resources with a pending event, an event coalesced with a pending one takes no slot
+    private final Semaphore slots;
+
+    private final Counter rejectedCounter;
+
+    private final Counter replacedCounter;
+
+    private final Counter staleCounter;
+
+    @Getter
+    private final int retryAfter;
+
+    public WebhookProcessor(
+            OdooFhirClient odooFhirClient,
+            FingerprintStore fingerprintStore,
+            RetryQueue retryQueue,
+            DedupeIndex dedupeIndex,
+            @Value("${" + Constants.PROP_WEBHOOK_QUEUE_CAPACITY + ":" + Constants.DEFAULT_WEBHOOK_QUEUE_CAPACITY + "}")
+                    int capacity,
+            @Value("${" + Constants.PROP_WEBHOOK_WORKERS + ":" + Constants.DEFAULT_WEBHOOK_WORKERS + "}") int workers,
+            @Value("${" + Constants.PROP_WEBHOOK_RETRY_AFTER + ":" + Constants.DEFAULT_WEBHOOK_RETRY_AFTER + "}")
+                    int retryAfter,
+            MeterRegistry meterRegistry) {
+        log.info(
+                "Using a pool of {} threads and a queue capacity of {} to process webhook requests", workers, capacity);
+        this.odooFhirClient = odooFhirClient;
+        this.fingerprintStore = fingerprintStore;
+        this.retryQueue = retryQueue;
+        this.dedupeIndex = dedupeIndex;
+        this.retryAfter = retryAfter;
+        this.executor = new ThreadPoolExecutor(
+                workers,
+                workers,
+                0,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new CustomizableThreadFactory("webhook-"));
+        this.slots = new Semaphore(capacity);
+        Gauge.builder("eip.webhook.queue.size", pending, Map::size)
+                .description("The number of webhook events waiting to be pushed to Odoo")
+                .register(meterRegistry);
+        Gauge.builder("eip.webhook.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("The number of webhook events being pushed to Odoo")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("eip.webhook.rejected")
+                .description("The number of webhook events rejected because the queue was full")
+                .register(meterRegistry);
+        replacedCounter = Counter.builder("eip.webhook.coalesced")
+                .description("The number of pending webhook events replaced by a later event for the same resource")
+                .tag("result", "replaced")
+                .register(meterRegistry);
+        staleCounter = Counter.builder("eip.webhook.coalesced")
+                .description("The number of webhook events discarded because a newer event for the resource is pending")
+                .tag("result", "stale")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues the specified event to be applied to Odoo.
+     *
+     * @param event the event
+     * @return true if the event was queued, false if the queue is full
+     */
+    public boolean submit(WebhookEvent event) {
+        final String key = event.resourceType() + "/" + event.id();
+        final boolean[] schedule = new boolean[1];
+        final boolean[] rejected = new boolean[1];
+        pending.compute(key, (k, previous) -> {
+            if (previous == null) {
+                if (!slots.tryAcquire()) {
+                    rejected[0] = true;
+                    return null;
+                }
+
+                // The event is scheduled when the push in flight for the resource completes
+                schedule[0] = !inFlight.contains(k);
+                return event;
+            }
+
+            return coalesce(previous, event);
+        });
+
+        if (rejected[0]) {
+            rejectedCounter.increment();
+            log.warn("Webhook queue is full, rejecting {}", event);
+            return false;
+        }
+
+        if (schedule[0]) {
+            try {
+                executor.execute(() -> process(key));
+            } catch (RejectedExecutionException e) {
+                // The processor is shutting down
+                if (pending.remove(key) != null) {
+                    slots.release();
+                }
+
+                rejectedCounter.increment();
+                return false;
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Queued {}", event);
+        }
+
+        return true;
+    }
+
+    /**
+     * Picks the event to keep between a pending event and a new event for the same resource.
+     *
+     * @param pendingEvent the pending event
+     * @param newEvent the new event
+     * @return the event to keep
+     */
+    protected WebhookEvent coalesce(WebhookEvent pendingEvent, WebhookEvent newEvent) {
+        final boolean stale;
+        if (pendingEvent.isDelete()) {
+            // A new update after a delete means the resource was recreated
+            stale = false;
+        } else if (newEvent.isDelete() || pendingEvent.lastUpdated() == null || newEvent.lastUpdated() == null) {
+            stale = false;
+        } else {
+            stale = DateUtils.toEpochMilli(newEvent.lastUpdated()) < DateUtils.toEpochMilli(pendingEvent.lastUpdated());
+        }
+
+        if (stale) {
+            staleCounter.increment();
+            if (log.isDebugEnabled()) {
+                log.debug("Discarding {} since a newer version is pending", newEvent);
+            }
+
+            return pendingEvent;
+        }
+
+        replacedCounter.increment();
+        if (log.isDebugEnabled()) {
+            log.debug("Replacing pending {} with {}", pendingEvent, newEvent);
+        }
+
+        return newEvent;
+    }
+
+    private void process(String key) {
+        final WebhookEvent[] event = new WebhookEvent[1];
+        pending.computeIfPresent(key, (k, e) -> {
+            inFlight.add(k);
+            event[0] = e;
+            return null;
+        });
+
+        if (event[0] == null) {
+            return;
+        }
+
+        slots.release();
+        try {
+            process(event[0]);
+        } finally {
+            final boolean[] next = new boolean[1];
+            pending.compute(key, (k, e) -> {
+                inFlight.remove(k);
+                next[0] = e != null;
+                return e;
+            });
+
+            if (next[0]) {
+                try {
+                    executor.execute(() -> process(key));
+                } catch (RejectedExecutionException e) {
+                    // The processor is shutting down, the event is added to the retry queue
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the specified event to Odoo, a resource that fails to sync is added to the retry queue so that the sync
+     * task retries it e.g. once Odoo recovers from an outage.
+     *
+     * @param event the event
+     */
+    protected void process(WebhookEvent event) {
+        final String resourceType = event.resourceType();
+        final String id = event.id();
+        try {
+            if (event.isDelete()) {
+                odooFhirClient.delete(resourceType, id);
+                fingerprintStore.remove(resourceType, id);
+                SyncUtils.saveLastUpdated(dedupeIndex, resourceType, id, null);
+            } else {
+                odooFhirClient.update(resourceType, id, event.body());
+                // The fingerprint is computed from the parsed resource, drop it rather than parse the payload
+                fingerprintStore.remove(resourceType, id);
+                if (event.lastUpdated() != null) {
+                    SyncUtils.saveLastUpdated(
+                            dedupeIndex, resourceType, id, DateUtils.deserialize(event.lastUpdated()));
+                }
+            }
+        } catch (Throwable e) {
+            log.error("Failed to {} resource {}/{}", event.isDelete() ? "delete" : "update", resourceType, id, e);
+            park(event);
+        }
+    }
+
+    private void park(WebhookEvent event) {
+        if (!SyncTask.RESOURCE_TYPES.contains(event.resourceType())) {
+            return;
+        }
+
+        // The retry fetches the current version from OpenELIS and deletes the resource from Odoo if it no longer exists
+        try {
+            retryQueue.add(
+                    event.resourceType(),
+                    event.id(),
+                    event.lastUpdated() == null ? null : DateUtils.deserialize(event.lastUpdated()));
+        } catch (RuntimeException e) {
+            log.error("Failed to add {}/{} to the retry queue", event.resourceType(), event.id(), e);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        log.info("Waiting for {} queued webhook event(s) to be processed", pending.size());
+        executor.shutdown();
+        if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            log.warn(
+                    "Webhook processing did not complete in time, {} queued event(s) not processed",
+                    executor.shutdownNow().size());
+        }
+
+        if (!pending.isEmpty()) {
+            log.info("Adding {} unprocessed webhook event(s) to the retry queue", pending.size());
+            pending.keySet().forEach(key -> {
+                WebhookEvent event = pending.remove(key);
+                if (event == null) {
+                    return;
+                }
+
+                if (SyncTask.RESOURCE_TYPES.contains(event.resourceType())) {
+                    park(event);
+                } else {
+                    log.warn("Discarding unprocessed {} which cannot be retried", event);
+                }
+            });
+        }
+    }
+}
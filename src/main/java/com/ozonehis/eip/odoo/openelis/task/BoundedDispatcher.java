@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Dispatches tasks to an {@link Executor} while limiting the number of tasks and the total size in bytes of the data
+ * they hold that are in flight i.e. submitted but not yet completed, when any of the limits is reached the submitting
+ * thread is blocked until enough of the in flight tasks complete.
+ */
+@Slf4j
+public class BoundedDispatcher {
+
+    private final Executor executor;
+
+    @Getter
+    private final int maxInFlight;
+
+    @Getter
+    private final long maxInFlightBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notFull = lock.newCondition();
+
+    private final Timer blockedTimer;
+
+    private volatile int inFlight;
+
+    private volatile long inFlightBytes;
+
+    /**
+     * @param executor the executor to run the tasks
+     * @param maxInFlight the maximum number of in flight tasks
+     * @param maxInFlightBytes the maximum total size of in flight tasks, a value less than 1 means no limit
+     * @param meterRegistry the registry to report the queue depth and blocked time
+     */
+    public BoundedDispatcher(Executor executor, int maxInFlight, long maxInFlightBytes, MeterRegistry meterRegistry) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("The maximum number of in flight tasks must be greater than zero");
+        }
+
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.maxInFlightBytes = maxInFlightBytes;
+        Gauge.builder("eip.sync.dispatch.in.flight", this, d -> d.inFlight)
+                .description("The number of resources queued or being pushed to Odoo")
+                .register(meterRegistry);
+        Gauge.builder("eip.sync.dispatch.in.flight.bytes", this, d -> d.inFlightBytes)
+                .description("The estimated size of the resources queued or being pushed to Odoo")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        blockedTimer = Timer.builder("eip.sync.dispatch.blocked")
+                .description("Time the OpenELIS reader was blocked waiting for room in the dispatch queue")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Checks if the size of the tasks is used to limit the in flight tasks
+     *
+     * @return true if the size of the tasks is limited otherwise false
+     */
+    public boolean isSizeLimited() {
+        return maxInFlightBytes > 0;
+    }
+
+    /**
+     * Submits the specified task for execution, blocking the calling thread as long as any of the limits is reached.
+     * Note that a single task that is larger than the maximum bytes is still accepted when no other task is in flight.
+     *
+     * @param task the task to run
+     * @param bytes the size of the data held by the task
+     * @return a future that completes when the task completes
+     */
+    public CompletableFuture<Void> submit(Runnable task, long bytes) {
+        acquire(bytes);
+        CompletableFuture<Void> future;
+        try {
+            future = CompletableFuture.runAsync(task, executor);
+        } catch (RuntimeException e) {
+            release(bytes);
+            throw e;
+        }
+
+        future.whenComplete((r, e) -> release(bytes));
+        return future;
+    }
+
+    /**
+     * Gets the number of tasks in flight.
+     *
+     * @return the in flight count
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Gets the total size of the tasks in flight.
+     *
+     * @return the in flight bytes
+     */
+    public long getInFlightBytes() {
+        return inFlightBytes;
+    }
+
+    private void acquire(long bytes) {
+        lock.lock();
+        try {
+            if (isFull(bytes)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Dispatch queue is full, waiting for in flight tasks to complete");
+                }
+
+                long start = System.nanoTime();
+                try {
+                    while (isFull(bytes)) {
+                        notFull.await();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for room in the dispatch queue", e);
+                } finally {
+                    blockedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            }
+
+            inFlight++;
+            inFlightBytes += bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long bytes) {
+        lock.lock();
+        try {
+            inFlight--;
+            inFlightBytes -= bytes;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isFull(long bytes) {
+        if (inFlight == 0) {
+            return false;
+        }
+
+        return inFlight >= maxInFlight || (isSizeLimited() && inFlightBytes + bytes > maxInFlightBytes);
+    }
+}
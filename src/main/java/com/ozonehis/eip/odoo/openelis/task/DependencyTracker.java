@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the resources of a sync run that other resources in the same run reference, e.g. the patients referenced by
+ * service requests, so that a referencing resource is only written to Odoo after the resource it references.
+ * <p>
+ * The producer of the referenced resources calls {@link #expect(String)} for each resource it is about to write,
+ * {@link #written(String)} or {@link #failed(String, Throwable)} once the write completes and
+ * {@link #enumerationComplete()} when it has found all the resources in the window. A consumer gets a future from
+ * {@link #awaitWritten(String)} which completes when the referenced resource is written, or when the enumeration
+ * completes without the resource being expected i.e. it is not part of the window.
+ */
+public class DependencyTracker {
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final Map<String, CompletableFuture<Void>> futures = new ConcurrentHashMap<>();
+
+    private final Set<String> expected = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean enumerationComplete;
+
+    private volatile Throwable abortCause;
+
+    /**
+     * Marks the resource with the specified id as part of the window and not yet written.
+     *
+     * @param id the resource id
+     */
+    public void expect(String id) {
+        expected.add(id);
+        getFuture(id);
+    }
+
+    /**
+     * Marks the resource with the specified id as written.
+     *
+     * @param id the resource id
+     */
+    public void written(String id) {
+        getFuture(id).complete(null);
+    }
+
+    /**
+     * Marks the resource with the specified id as failed to be written.
+     *
+     * @param id the resource id
+     * @param cause the cause of the failure
+     */
+    public void failed(String id, Throwable cause) {
+        getFuture(id).completeExceptionally(cause);
+    }
+
+    /**
+     * Signals that all the referenced resources in the window have been found, releases any consumer waiting for a
+     * resource that is not part of the window.
+     */
+    public void enumerationComplete() {
+        enumerationComplete = true;
+        futures.forEach((id, future) -> {
+            if (!expected.contains(id)) {
+                future.complete(null);
+            }
+        });
+    }
+
+    /**
+     * Signals that the producer stopped before finding all the referenced resources in the window, any consumer
+     * waiting for a resource that was not yet written fails with the specified cause since it is unknown if the
+     * resource was in the window.
+     *
+     * @param cause the cause
+     */
+    public void abort(Throwable cause) {
+        abortCause = cause;
+        enumerationComplete = true;
+        futures.values().forEach(future -> future.completeExceptionally(cause));
+    }
+
+    /**
+     * Gets a future that completes once the resource with the specified id is written, or immediately if it is known
+     * not to be part of the window.
+     *
+     * @param id the resource id
+     * @return the future
+     */
+    public CompletableFuture<Void> awaitWritten(String id) {
+        if (enumerationComplete && !futures.containsKey(id)) {
+            return abortCause == null ? DONE : CompletableFuture.failedFuture(abortCause);
+        }
+
+        CompletableFuture<Void> future = getFuture(id);
+        if (enumerationComplete && !expected.contains(id)) {
+            // The enumeration completed after the check above and may have missed this future
+            if (abortCause == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(abortCause);
+            }
+        }
+
+        return future;
+    }
+
+    private CompletableFuture<Void> getFuture(String id) {
+        return futures.computeIfAbsent(id, k -> new CompletableFuture<>());
+    }
+}
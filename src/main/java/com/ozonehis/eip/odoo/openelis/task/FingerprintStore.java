@@ -0,0 +1,204 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import com.ozonehis.eip.odoo.openelis.Constants;
+import com.ozonehis.eip.odoo.openelis.EipFileUtils;
+import com.ozonehis.eip.odoo.openelis.fhir.RawPayload;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.r4.model.DomainResource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Durable index of a fingerprint of the content of each resource last pushed successfully to Odoo, it is used to skip
+ * resources whose content has not changed e.g. when OpenELIS only bumps the last updated timestamp or when a resource
+ * is picked up again because of the poll overlap. The fingerprint is a 64-bit hash of the JSON encoding of the resource
+ * without its meta element, for a resource read without parsing it the hash is computed from its raw JSON payload
+ * without the meta element instead which implies a resource is pushed again once when the raw search mode is toggled.
+ * <p>
+ * The index is held in a {@link KeyValueJournal} keyed by resource type and id with the fingerprints as hexadecimal
+ * values.
+ * <p>
+ * The store is disabled by default because it can not tell when a resource is changed or removed in Odoo by other
+ * means e.g. when the Odoo database is restored from a backup, in that case the stored fingerprints must be discarded
+ * by starting the application once with the reset property set to true or by deleting the file while it is stopped.
+ */
+@Slf4j
+@Component
+public class FingerprintStore implements DisposableBean {
+
+    private static final String USER_DATA_KEY = FingerprintStore.class.getName();
+
+    private static final Set<String> EXCLUDED_ELEMENTS = Set.of("*.meta");
+
+    @Value("${" + Constants.PROP_TASK_LAST_RUN_TS_FILE + "}")
+    private String timestampFilename;
+
+    @Value("${" + Constants.PROP_FINGERPRINT_FILE + ":}")
+    private String filename;
+
+    @Value("${" + Constants.PROP_FINGERPRINT_ENABLED + ":false}")
+    private boolean enabled;
+
+    @Value("${" + Constants.PROP_FINGERPRINT_RESET + ":false}")
+    private boolean reset;
+
+    private volatile KeyValueJournal<Long> journal;
+
+    private FhirContext fhirContext;
+
+    public FingerprintStore(FhirContext fhirContext) {
+        this.fhirContext = fhirContext;
+    }
+
+    /**
+     * Checks if the content of the specified resource is the same as when it was last pushed to Odoo, the computed
+     * fingerprint is kept with the resource so that it is not computed again when the resource is saved.
+     *
+     * @param resource the resource
+     * @return true if the resource is unchanged otherwise false, always false if the store is disabled
+     */
+    public boolean isUnchanged(DomainResource resource) {
+        if (!enabled) {
+            return false;
+        }
+
+        final Long previous = getJournal().get(getKey(resource.fhirType(), resource.getIdPart()));
+        return previous != null && previous == getFingerprint(resource);
+    }
+
+    /**
+     * Saves the fingerprint of the specified resource after it was successfully pushed to Odoo.
+     *
+     * @param resource the resource
+     */
+    public void save(DomainResource resource) {
+        if (!enabled) {
+            return;
+        }
+
+        final String key = getKey(resource.fhirType(), resource.getIdPart());
+        final long fingerprint = getFingerprint(resource);
+        final Long previous = getJournal().get(key);
+        if (previous != null && previous == fingerprint) {
+            return;
+        }
+
+        getJournal().put(key, fingerprint);
+    }
+
+    /**
+     * Removes the fingerprint of the specified resource e.g. when it is deleted or updated in Odoo by other means,
+     * does nothing if there is no fingerprint for the resource.
+     *
+     * @param resourceType the resource type
+     * @param id the resource id
+     */
+    public void remove(String resourceType, String id) {
+        if (!enabled) {
+            return;
+        }
+
+        getJournal().remove(getKey(resourceType, id));
+    }
+
+    /**
+     * Gets the number of resources with a fingerprint.
+     *
+     * @return the number of fingerprints
+     */
+    public int size() {
+        return enabled ? getJournal().size() : 0;
+    }
+
+    /**
+     * Gets the fingerprint of the specified resource, it is computed and kept with the resource if necessary.
+     *
+     * @param resource the resource
+     * @return the fingerprint
+     */
+    protected long getFingerprint(DomainResource resource) {
+        if (resource.getUserData(USER_DATA_KEY) instanceof Long fingerprint) {
+            return fingerprint;
+        }
+
+        final RawPayload payload = RawPayload.get(resource);
+        final String json;
+        if (payload != null) {
+            json = payload.withoutMeta();
+        } else {
+            IParser parser = fhirContext.newJsonParser();
+            parser.setDontEncodeElements(EXCLUDED_ELEMENTS);
+            json = parser.encodeResourceToString(resource);
+        }
+
+        final byte[] content = json.getBytes(StandardCharsets.UTF_8);
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Failed to compute the fingerprint of the resource", e);
+        }
+
+        long fingerprint = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            fingerprint = (fingerprint << 8) | (digest[i] & 0xFF);
+        }
+
+        resource.setUserData(USER_DATA_KEY, fingerprint);
+        return fingerprint;
+    }
+
+    private KeyValueJournal<Long> getJournal() {
+        if (journal == null) {
+            synchronized (this) {
+                if (journal == null) {
+                    File file =
+                            KeyValueJournal.createFile(filename, timestampFilename, Constants.DEFAULT_FINGERPRINT_FILE);
+                    if (reset) {
+                        log.info("Discarding resource fingerprints in {}", file);
+                        try {
+                            EipFileUtils.writeAtomically(file, stream -> {});
+                        } catch (IOException e) {
+                            throw new RuntimeException("Failed to discard the resource fingerprints", e);
+                        }
+                    }
+
+                    journal = new KeyValueJournal<>(
+                            file,
+                            "resource fingerprints",
+                            Long::toHexString,
+                            (key, value) -> Long.parseUnsignedLong(value, 16));
+                }
+            }
+        }
+
+        return journal;
+    }
+
+    private static String getKey(String resourceType, String id) {
+        return resourceType + "/" + id;
+    }
+
+    @Override
+    public synchronized void destroy() throws Exception {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import com.ozonehis.eip.odoo.openelis.EipFileUtils;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Durable map of string keys to values that is held in memory and backed by an append-only journal file, every change
+ * is appended to the journal with a line per change in the format {@code key=value} where an empty value marks a
+ * removed entry. Each change is synced to disk before it is applied in memory so that it survives an OS crash or a
+ * power loss and not just the process. The journal is replayed when it is created and compacted to the live entries
+ * when it has grown to more than twice their number.
+ * <p>
+ * Reads are lock free, changes are serialized by the journal, callers that read a value before changing it must
+ * synchronize on their own.
+ *
+ * @param <V> the value type
+ */
+@Slf4j
+public class KeyValueJournal<V> implements AutoCloseable {
+
+    private static final String SEPARATOR = "=";
+
+    private static final int MIN_COMPACTION_SIZE = 10000;
+
+    @Getter
+    private final File file;
+
+    private final String name;
+
+    private final Function<V, String> serializer;
+
+    private final Map<String, V> entries;
+
+    private FileOutputStream journalOut;
+
+    private Writer writer;
+
+    private int journalSize;
+
+    /**
+     * Creates a journal backed by the specified file and replays it.
+     *
+     * @param file the journal file, it must exist
+     * @param name the name of the journal used in log and error messages
+     * @param serializer serializes a value, it must not return a value containing a line separator
+     * @param deserializer deserializes a value given its key and its serialized form
+     */
+    public KeyValueJournal(
+            File file, String name, Function<V, String> serializer, BiFunction<String, String, V> deserializer) {
+        this.file = file;
+        this.name = name;
+        this.serializer = serializer;
+        log.info("Loading {} from {}", name, file);
+        Map<String, V> loaded = new ConcurrentHashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                final int index = line.lastIndexOf(SEPARATOR);
+                if (index < 1) {
+                    continue;
+                }
+
+                journalSize++;
+                final String key = line.substring(0, index);
+                final String value = line.substring(index + 1);
+                if (StringUtils.isBlank(value)) {
+                    loaded.remove(key);
+                } else {
+                    loaded.put(key, deserializer.apply(key, value));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("Failed to load the " + name, e);
+        }
+
+        log.info("Successfully loaded {} entries in the {}", loaded.size(), name);
+        entries = loaded;
+    }
+
+    /**
+     * Gets the value of the specified key.
+     *
+     * @param key the key
+     * @return the value or null if there is none
+     */
+    public V get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Gets an unmodifiable view of the live values.
+     *
+     * @return the values
+     */
+    public Collection<V> values() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * Gets the number of live entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Sets the value of the specified key.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public synchronized void put(String key, V value) {
+        append(key, serializer.apply(value));
+        entries.put(key, value);
+        compactIfNecessary();
+    }
+
+    /**
+     * Removes the specified key, does nothing if there is no value for it.
+     *
+     * @param key the key
+     * @return true if the key was removed otherwise false
+     */
+    public synchronized boolean remove(String key) {
+        if (!entries.containsKey(key)) {
+            return false;
+        }
+
+        append(key, "");
+        entries.remove(key);
+        compactIfNecessary();
+        return true;
+    }
+
+    private void append(String key, String value) {
+        try {
+            if (writer == null) {
+                journalOut = new FileOutputStream(file, true);
+                writer = new OutputStreamWriter(journalOut, StandardCharsets.UTF_8);
+            }
+
+            writer.write(key + SEPARATOR + value + System.lineSeparator());
+            writer.flush();
+            journalOut.getFD().sync();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save " + key + " in the " + name, e);
+        }
+
+        journalSize++;
+    }
+
+    /**
+     * Rewrites the journal file with only the live entries if it has grown to more than twice their number.
+     */
+    private void compactIfNecessary() {
+        if (journalSize <= Math.max(entries.size() * 2, MIN_COMPACTION_SIZE)) {
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Compacting {} journal of {} lines to {} entries", name, journalSize, entries.size());
+        }
+
+        try {
+            close();
+            EipFileUtils.writeAtomically(file, stream -> {
+                Writer out = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+                for (Map.Entry<String, V> e : entries.entrySet()) {
+                    out.write(e.getKey() + SEPARATOR + serializer.apply(e.getValue()) + System.lineSeparator());
+                }
+
+                out.flush();
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to compact the " + name + " journal", e);
+        }
+
+        journalSize = entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+            journalOut = null;
+        }
+    }
+
+    /**
+     * Gets the journal file with the specified name, if no name is specified the file with the default name in the
+     * directory of the timestamp file is returned, the file and its parent directories are created if necessary.
+     *
+     * @param filename the configured file name, can be blank
+     * @param timestampFilename the timestamp file name
+     * @param defaultFilename the default file name
+     * @return the file
+     */
+    public static File createFile(String filename, String timestampFilename, String defaultFilename) {
+        File file;
+        if (StringUtils.isNotBlank(filename)) {
+            file = EipFileUtils.createFile(filename);
+        } else {
+            File tsFile = EipFileUtils.createFile(timestampFilename);
+            File dir = tsFile.isDirectory() ? tsFile : tsFile.getAbsoluteFile().getParentFile();
+            file = EipFileUtils.get(dir.getAbsolutePath(), defaultFilename);
+        }
+
+        if (!file.exists()) {
+            if (!file.getAbsoluteFile().getParentFile().exists()
+                    && !file.getAbsoluteFile().getParentFile().mkdirs()) {
+                throw new RuntimeException("Failed to create the directory of " + file);
+            }
+
+            try {
+                if (file.createNewFile()) {
+                    log.info("Successfully created {}", file);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to create " + file, e);
+            }
+        }
+
+        return file;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import com.ozonehis.eip.odoo.openelis.DateUtils;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.hl7.fhir.r4.model.DomainResource;
+
+/**
+ * Tracks the completion of the pages of a sync window whose resources are fetched in ascending last updated order and
+ * reports a new {@link SyncCursor} each time a page and all the pages before it have completed, so that an interrupted
+ * sync can resume after the last completed page instead of restarting the window.
+ * <p>
+ * A page is added with {@link #addPage(List)} when it is fetched, {@link Page#expect(DomainResource)} is called for each
+ * of its resources that is pushed to Odoo and {@link Page#done()} once the resource is pushed or parked in the retry
+ * queue, {@link Page#enumerated()} is called after all the resources in the page have been handed off. A resource that
+ * is neither pushed nor parked keeps its page and all the later pages from being checkpointed.
+ * <p>
+ * When the pages are all added, {@link #finish()} is called so that the checkpoint callback is called once more when
+ * all of them have completed even if the cursor does not advance, {@link #isComplete()} then returns true.
+ * <p>
+ * The checkpoint callback is called outside the lock that guards the pages so that a slow write of the cursor does not
+ * hold up the threads completing resources, checkpoints that advance while a cursor is being written are coalesced
+ * into a single call with the latest cursor.
+ */
+public class PageCheckpointer {
+
+    private static final String USER_DATA_KEY = PageCheckpointer.class.getName();
+
+    private final Deque<Page> pages = new ArrayDeque<>();
+
+    private final Consumer<SyncCursor> onCheckpoint;
+
+    private SyncCursor cursor;
+
+    private final Object checkpointLock = new Object();
+
+    private SyncCursor checkpointed;
+
+    private boolean finished;
+
+    private boolean complete;
+
+    private boolean completeCheckpointed;
+
+    /**
+     * @param cursor the cursor the window was resumed from, can be null
+     * @param onCheckpoint called with the new cursor each time it advances
+     */
+    public PageCheckpointer(SyncCursor cursor, Consumer<SyncCursor> onCheckpoint) {
+        this.cursor = cursor;
+        this.onCheckpoint = onCheckpoint;
+    }
+
+    /**
+     * Adds a page of resources in the order it was fetched.
+     *
+     * @param resources the resources in the page
+     * @return the page
+     */
+    public synchronized Page addPage(List<? extends DomainResource> resources) {
+        LocalDateTime max = null;
+        Set<String> ids = new HashSet<>();
+        for (DomainResource r : resources) {
+            LocalDateTime lastUpdated = DateUtils.toLocalDateTime(r.getMeta().getLastUpdated());
+            if (lastUpdated == null || r.getIdPart() == null || (max != null && lastUpdated.isBefore(max))) {
+                continue;
+            }
+
+            if (max == null || lastUpdated.isAfter(max)) {
+                max = lastUpdated;
+                ids.clear();
+            }
+
+            ids.add(r.getIdPart());
+        }
+
+        Page page = new Page(max, ids);
+        pages.add(page);
+        return page;
+    }
+
+    /**
+     * Marks that no more pages will be added.
+     */
+    public void finish() {
+        synchronized (this) {
+            finished = true;
+        }
+
+        advance();
+    }
+
+    /**
+     * Checks whether all the pages have been added and have completed.
+     *
+     * @return true if complete otherwise false
+     */
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Gets the cursor of the last checkpoint.
+     *
+     * @return the cursor or null if no page has completed
+     */
+    public synchronized SyncCursor getCursor() {
+        return cursor;
+    }
+
+    private void advance() {
+        if (!advanceCursor()) {
+            return;
+        }
+
+        synchronized (checkpointLock) {
+            final SyncCursor latest;
+            final boolean latestComplete;
+            synchronized (this) {
+                latest = cursor;
+                latestComplete = complete;
+            }
+
+            if (latest != checkpointed || latestComplete != completeCheckpointed) {
+                onCheckpoint.accept(latest);
+                checkpointed = latest;
+                completeCheckpointed = latestComplete;
+            }
+        }
+    }
+
+    private synchronized boolean advanceCursor() {
+        boolean advanced = false;
+        while (!pages.isEmpty() && pages.peek().pending.get() == 0) {
+            Page page = pages.poll();
+            if (page.lastUpdated == null) {
+                continue;
+            }
+
+            if (cursor == null || page.lastUpdated.isAfter(cursor.lastUpdated())) {
+                cursor = new SyncCursor(page.lastUpdated, Set.copyOf(page.ids));
+                advanced = true;
+            } else if (page.lastUpdated.equals(cursor.lastUpdated())
+                    && !cursor.ids().containsAll(page.ids)) {
+                Set<String> ids = new HashSet<>(cursor.ids());
+                ids.addAll(page.ids);
+                cursor = new SyncCursor(page.lastUpdated, Set.copyOf(ids));
+                advanced = true;
+            }
+        }
+
+        if (finished && !complete && pages.isEmpty()) {
+            complete = true;
+            advanced = true;
+        }
+
+        return advanced;
+    }
+
+    /**
+     * A page of resources in the sync window.
+     */
+    public class Page {
+
+        private final LocalDateTime lastUpdated;
+
+        private final Set<String> ids;
+
+        // Starts at 1 to hold the page open until all its resources are handed off
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        private Page(LocalDateTime lastUpdated, Set<String> ids) {
+            this.lastUpdated = lastUpdated;
+            this.ids = ids;
+        }
+
+        /**
+         * Marks the specified resource as pending in this page.
+         *
+         * @param resource the resource
+         */
+        public void expect(DomainResource resource) {
+            pending.incrementAndGet();
+            resource.setUserData(USER_DATA_KEY, this);
+        }
+
+        /**
+         * Marks a resource in this page as pushed or parked.
+         */
+        public void done() {
+            if (pending.decrementAndGet() == 0) {
+                advance();
+            }
+        }
+
+        /**
+         * Marks all the resources in this page as handed off.
+         */
+        public void enumerated() {
+            done();
+        }
+    }
+
+    /**
+     * Gets the page the specified resource was expected in.
+     *
+     * @param resource the resource
+     * @return the page or null if the resource was not expected in any page
+     */
+    public static Page getPage(DomainResource resource) {
+        return (Page) resource.getUserData(USER_DATA_KEY);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * An {@link Iterator} that reads ahead elements from another iterator in a background thread so that the next elements
+ * are ready by the time the consumer asks for them, at most the specified depth of elements are buffered.
+ *
+ * @param <T> the element type
+ */
+public class PrefetchingIterator<T> implements Iterator<T>, AutoCloseable {
+
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> buffer;
+
+    private final Future<?> producer;
+
+    private Object next;
+
+    public PrefetchingIterator(Iterator<? extends T> source, int depth, ExecutorService executor) {
+        buffer = new ArrayBlockingQueue<>(depth);
+        producer = executor.submit(() -> {
+            try {
+                try {
+                    while (source.hasNext()) {
+                        buffer.put(source.next());
+                    }
+                } catch (RuntimeException | Error e) {
+                    buffer.put(new Failure(e));
+                    return;
+                }
+
+                buffer.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = buffer.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the next prefetched element", e);
+            }
+        }
+
+        if (next instanceof Failure failure) {
+            next = END;
+            if (failure.cause instanceof RuntimeException e) {
+                throw e;
+            }
+
+            throw (Error) failure.cause;
+        }
+
+        return next != END;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        T element = (T) next;
+        next = null;
+        return element;
+    }
+
+    /**
+     * Gets the number of elements that have been fetched ahead and are waiting to be consumed.
+     *
+     * @return the count of buffered elements
+     */
+    public int getBufferedCount() {
+        return buffer.size();
+    }
+
+    /**
+     * Stops the background reader and discards any buffered elements.
+     */
+    @Override
+    public void close() {
+        producer.cancel(true);
+        buffer.clear();
+    }
+
+    private record Failure(Throwable cause) {}
+}
@@ -0,0 +1,22 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import java.time.LocalDateTime;
+
+/**
+ * A resource in the {@link RetryQueue} that failed to sync to Odoo.
+ *
+ * @param resourceType the resource type
+ * @param id the resource id
+ * @param lastUpdated the last updated timestamp of the version that failed to sync, can be null
+ * @param attempts the number of failed attempts
+ * @param nextRetry the time after which the resource is due for a retry
+ */
+public record RetryEntry(
+        String resourceType, String id, LocalDateTime lastUpdated, int attempts, LocalDateTime nextRetry) {}
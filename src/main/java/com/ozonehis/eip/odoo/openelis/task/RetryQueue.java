@@ -0,0 +1,216 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import com.ozonehis.eip.odoo.openelis.Constants;
+import com.ozonehis.eip.odoo.openelis.DateUtils;
+import com.ozonehis.eip.odoo.openelis.EipFileUtils;
+import com.ozonehis.eip.odoo.openelis.LocalDateTimeUtils;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Durable queue of the resources that failed to sync to Odoo, each resource is retried on its own exponential backoff
+ * schedule so that a few failing resources do not hold back the sync timestamps. A resource that has failed the
+ * configured maximum number of attempts is moved from the queue to the dead letter file next to the queue file.
+ * <p>
+ * The queue is held in a {@link KeyValueJournal} keyed by resource type and id with values in the format
+ * {@code lastUpdated|attempts|nextRetry}.
+ */
+@Slf4j
+@Component
+public class RetryQueue implements DisposableBean {
+
+    private static final String SEPARATOR = "|";
+
+    private static final int MAX_BACKOFF_EXPONENT = 30;
+
+    @Value("${" + Constants.PROP_TASK_LAST_RUN_TS_FILE + "}")
+    private String timestampFilename;
+
+    @Value("${" + Constants.PROP_RETRY_QUEUE_FILE + ":}")
+    private String filename;
+
+    @Value("${" + Constants.PROP_RETRY_INITIAL_DELAY + ":" + Constants.DEFAULT_RETRY_INITIAL_DELAY + "}")
+    private long initialDelay;
+
+    @Value("${" + Constants.PROP_RETRY_MAX_DELAY + ":" + Constants.DEFAULT_RETRY_MAX_DELAY + "}")
+    private long maxDelay;
+
+    @Value("${" + Constants.PROP_RETRY_MAX_ATTEMPTS + ":" + Constants.DEFAULT_RETRY_MAX_ATTEMPTS + "}")
+    private int maxAttempts = Constants.DEFAULT_RETRY_MAX_ATTEMPTS;
+
+    private volatile KeyValueJournal<RetryEntry> journal;
+
+    /**
+     * Adds the specified resource to the queue or increments its attempts if it is already queued, the next retry is
+     * scheduled based on the number of attempts. If the resource has reached the maximum number of attempts, it is
+     * removed from the queue and written to the dead letter file instead.
+     *
+     * @param resourceType the resource type
+     * @param id the resource id
+     * @param lastUpdated the last updated timestamp of the version that failed to sync, can be null
+     */
+    public synchronized void add(String resourceType, String id, LocalDateTime lastUpdated) {
+        final String key = getKey(resourceType, id);
+        RetryEntry existing = getJournal().get(key);
+        int attempts = 1;
+        if (existing != null) {
+            attempts = existing.attempts() + 1;
+            if (lastUpdated == null
+                    || (existing.lastUpdated() != null && existing.lastUpdated().isAfter(lastUpdated))) {
+                lastUpdated = existing.lastUpdated();
+            }
+        }
+
+        final LocalDateTime now = LocalDateTimeUtils.getCurrentTime();
+        if (maxAttempts > 0 && attempts > maxAttempts) {
+            log.error("Giving up on {} after {} failed attempts, moving it to the dead letter file", key, attempts);
+            writeDeadLetter(key, new RetryEntry(resourceType, id, lastUpdated, attempts, now));
+            getJournal().remove(key);
+
+            return;
+        }
+
+        LocalDateTime nextRetry = now.plus(getDelay(attempts), ChronoUnit.MILLIS);
+        RetryEntry entry = new RetryEntry(resourceType, id, lastUpdated, attempts, nextRetry);
+        if (log.isDebugEnabled()) {
+            log.debug("Scheduling retry number {} for {} at {}", attempts, key, nextRetry);
+        }
+
+        getJournal().put(key, entry);
+    }
+
+    /**
+     * Removes the specified resource from the queue, does nothing if it is not queued.
+     *
+     * @param resourceType the resource type
+     * @param id the resource id
+     */
+    public void remove(String resourceType, String id) {
+        final String key = getKey(resourceType, id);
+        if (getJournal().get(key) == null) {
+            return;
+        }
+
+        boolean removed;
+        synchronized (this) {
+            removed = getJournal().remove(key);
+        }
+
+        if (removed && log.isDebugEnabled()) {
+            log.debug("Removed {} from the retry queue", key);
+        }
+    }
+
+    /**
+     * Gets the queued resources of the specified type that are due for a retry, ordered by their retry time.
+     *
+     * @param resourceType the resource type
+     * @return list of entries
+     */
+    public List<RetryEntry> getDue(String resourceType) {
+        final LocalDateTime now = LocalDateTimeUtils.getCurrentTime();
+        return getJournal().values().stream()
+                .filter(e -> e.resourceType().equals(resourceType))
+                .filter(e -> !e.nextRetry().isAfter(now))
+                .sorted(Comparator.comparing(RetryEntry::nextRetry))
+                .toList();
+    }
+
+    /**
+     * Gets the queued entry for the specified resource.
+     *
+     * @param resourceType the resource type
+     * @param id the resource id
+     * @return the entry or null if the resource is not queued
+     */
+    public RetryEntry get(String resourceType, String id) {
+        return getJournal().get(getKey(resourceType, id));
+    }
+
+    /**
+     * Gets the number of queued resources.
+     *
+     * @return the queue size
+     */
+    public int size() {
+        return getJournal().size();
+    }
+
+    protected long getDelay(int attempts) {
+        final int exponent = Math.min(attempts - 1, MAX_BACKOFF_EXPONENT);
+        return Math.min(initialDelay * (1L << exponent), maxDelay);
+    }
+
+    private void writeDeadLetter(String key, RetryEntry entry) {
+        File deadLetterFile = EipFileUtils.get(
+                getJournal().getFile().getAbsoluteFile().getParent(), Constants.DEFAULT_RETRY_DEAD_LETTER_FILE);
+        try (Writer out = Files.newBufferedWriter(
+                deadLetterFile.toPath(),
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND)) {
+            out.write(key + "=" + serialize(entry) + System.lineSeparator());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write " + key + " to the dead letter file", e);
+        }
+    }
+
+    private KeyValueJournal<RetryEntry> getJournal() {
+        if (journal == null) {
+            synchronized (this) {
+                if (journal == null) {
+                    File file =
+                            KeyValueJournal.createFile(filename, timestampFilename, Constants.DEFAULT_RETRY_QUEUE_FILE);
+                    journal =
+                            new KeyValueJournal<>(file, "retry queue", RetryQueue::serialize, RetryQueue::deserialize);
+                }
+            }
+        }
+
+        return journal;
+    }
+
+    private static String getKey(String resourceType, String id) {
+        return resourceType + "/" + id;
+    }
+
+    @Override
+    public synchronized void destroy() throws Exception {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private static String serialize(RetryEntry entry) {
+        final String lastUpdated = entry.lastUpdated() == null ? "" : DateUtils.serialize(entry.lastUpdated());
+        return lastUpdated + SEPARATOR + entry.attempts() + SEPARATOR + DateUtils.serialize(entry.nextRetry());
+    }
+
+    private static RetryEntry deserialize(String key, String value) {
+        String[] keyParts = key.split("/", 2);
+        String[] parts = StringUtils.splitPreserveAllTokens(value, SEPARATOR);
+        LocalDateTime lastUpdated = StringUtils.isBlank(parts[0]) ? null : DateUtils.deserialize(parts[0]);
+        return new RetryEntry(
+                keyParts[0], keyParts[1], lastUpdated, Integer.parseInt(parts[1]), DateUtils.deserialize(parts[2]));
+    }
+}
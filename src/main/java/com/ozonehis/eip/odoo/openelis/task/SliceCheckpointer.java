@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Tracks the completion of the consecutive time slices of a sync window that are synced concurrently, each slice is
+ * checkpointed by its own {@link PageCheckpointer} and a new {@link SyncCursor} for the window is reported each time
+ * the cursor of a slice advances and all the slices before it have completed. A later slice that completes first does
+ * not move the cursor of the window so that an interrupted sync resumes from the earliest incomplete slice.
+ * <p>
+ * Each slice is finished with {@link PageCheckpointer#finish()} once all its pages have been added, the checkpoint
+ * callback is called outside the lock that guards the slices and checkpoints that advance while a cursor is being
+ * written are coalesced into a single call with the latest cursor like in {@link PageCheckpointer}.
+ */
+public class SliceCheckpointer {
+
+    private final List<PageCheckpointer> slices = new ArrayList<>();
+
+    private final Consumer<SyncCursor> onCheckpoint;
+
+    private SyncCursor cursor;
+
+    private final Object checkpointLock = new Object();
+
+    private SyncCursor checkpointed;
+
+    /**
+     * @param cursor the cursor the window was resumed from, can be null
+     * @param sliceCount the number of slices
+     * @param onCheckpoint called with the new cursor each time it advances
+     */
+    public SliceCheckpointer(SyncCursor cursor, int sliceCount, Consumer<SyncCursor> onCheckpoint) {
+        this.cursor = cursor;
+        this.checkpointed = cursor;
+        this.onCheckpoint = onCheckpoint;
+        for (int i = 0; i < sliceCount; i++) {
+            // Only the first slice can hold resources at the timestamp of the cursor the window was resumed from
+            slices.add(new PageCheckpointer(i == 0 ? cursor : null, c -> advance()));
+        }
+    }
+
+    /**
+     * Gets the checkpointer of the slice at the specified index.
+     *
+     * @param index the slice index
+     * @return the checkpointer
+     */
+    public PageCheckpointer getSlice(int index) {
+        return slices.get(index);
+    }
+
+    /**
+     * Gets the cursor of the last checkpoint.
+     *
+     * @return the cursor or null if no page has completed
+     */
+    public synchronized SyncCursor getCursor() {
+        return cursor;
+    }
+
+    private void advance() {
+        if (!advanceCursor()) {
+            return;
+        }
+
+        synchronized (checkpointLock) {
+            final SyncCursor latest = getCursor();
+            if (latest != checkpointed) {
+                onCheckpoint.accept(latest);
+                checkpointed = latest;
+            }
+        }
+    }
+
+    private synchronized boolean advanceCursor() {
+        SyncCursor latest = cursor;
+        for (PageCheckpointer slice : slices) {
+            // The resources in a slice are all modified after those in the slices before it
+            final SyncCursor sliceCursor = slice.getCursor();
+            if (sliceCursor != null) {
+                latest = sliceCursor;
+            }
+
+            if (!slice.isComplete()) {
+                break;
+            }
+        }
+
+        if (latest == cursor) {
+            return false;
+        }
+
+        cursor = latest;
+        return true;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * The position up to which the resources of an interrupted sync window were pushed to Odoo, all the resources with an
+ * earlier last updated timestamp and those with the listed ids at the timestamp are synced.
+ *
+ * @param lastUpdated the last updated timestamp of the last synced resources
+ * @param ids the ids of the synced resources with the last updated timestamp
+ */
+public record SyncCursor(LocalDateTime lastUpdated, Set<String> ids) {
+
+    /**
+     * Checks whether the resource with the specified id and last updated timestamp is behind the cursor i.e. it was
+     * already synced.
+     *
+     * @param id the resource id
+     * @param resourceLastUpdated the last updated timestamp of the resource, can be null
+     * @return true if the resource is synced otherwise false
+     */
+    public boolean isSynced(String id, LocalDateTime resourceLastUpdated) {
+        if (resourceLastUpdated == null) {
+            return false;
+        }
+
+        return resourceLastUpdated.isBefore(lastUpdated) || contains(id, resourceLastUpdated);
+    }
+
+    /**
+     * Checks whether the resource with the specified id and last updated timestamp is one of the resources at the
+     * cursor.
+     *
+     * @param id the resource id
+     * @param resourceLastUpdated the last updated timestamp of the resource, can be null
+     * @return true if the resource is at the cursor otherwise false
+     */
+    public boolean contains(String id, LocalDateTime resourceLastUpdated) {
+        return lastUpdated.equals(resourceLastUpdated) && ids.contains(id);
+    }
+}
@@ -10,84 +10,831 @@ package com.ozonehis.eip.odoo.openelis.task;
 import static com.ozonehis.eip.odoo.openelis.Constants.PROP_DELAY;
 import static com.ozonehis.eip.odoo.openelis.Constants.PROP_INITIAL_DELAY;
 
+import ca.uhn.fhir.context.FhirContext;
 import com.ozonehis.eip.odoo.openelis.Constants;
+import com.ozonehis.eip.odoo.openelis.DateUtils;
+import com.ozonehis.eip.odoo.openelis.DedupeIndex;
 import com.ozonehis.eip.odoo.openelis.LocalDateTimeUtils;
 import com.ozonehis.eip.odoo.openelis.SyncUtils;
+import com.ozonehis.eip.odoo.openelis.fhir.BatchEntry;
 import com.ozonehis.eip.odoo.openelis.fhir.OdooFhirClient;
 import com.ozonehis.eip.odoo.openelis.fhir.OpenElisFhirClient;
+import com.ozonehis.eip.odoo.openelis.fhir.RawPayload;
+import com.ozonehis.eip.odoo.openelis.fhir.SearchSummary;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.instance.model.api.IIdType;
 import org.hl7.fhir.r4.model.DomainResource;
 import org.hl7.fhir.r4.model.Patient;
 import org.hl7.fhir.r4.model.ServiceRequest;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 @Slf4j
 public class SyncTask {
 
+    /**
+     * The names of the resource types synced by the task.
+     */
+    public static final Set<String> RESOURCE_TYPES =
+            Set.of(Patient.class.getSimpleName(), ServiceRequest.class.getSimpleName());
+
+    private static final CompletableFuture<Void> NO_DEPENDENCY = CompletableFuture.completedFuture(null);
+
     private TimestampStore timestampStore;
 
     private OpenElisFhirClient openElisClient;
 
     private OdooFhirClient odooClient;
 
-    private Executor executor;
+    private BoundedDispatcher dispatcher;
+
+    private RetryQueue retryQueue;
+
+    private FingerprintStore fingerprintStore;
+
+    private DedupeIndex dedupeIndex;
+
+    private FhirContext fhirContext;
+
+    private ExecutorService prefetchExecutor;
+
+    private ExecutorService syncExecutor;
+
+    private Set<PrefetchingIterator<?>> prefetchers = ConcurrentHashMap.newKeySet();
+
+    private Timer pageWaitTimer;
+
+    private Counter retrySuccessCounter;
+
+    private Counter retryFailureCounter;
+
+    private Counter unchangedCounter;
+
+    private Counter changedCounter;
 
     @Value("${" + Constants.PROP_SYNC_OVERLAP + "}")
     private long overlap;
 
-    public SyncTask(TimestampStore timestampStore, OpenElisFhirClient openElisClient, OdooFhirClient odooClient) {
+    @Value("${" + Constants.PROP_PREFETCH_DEPTH + ":" + Constants.DEFAULT_PREFETCH_DEPTH + "}")
+    private int prefetchDepth;
+
+    @Value("${" + Constants.PROP_BACKFILL_SLICES + ":" + Constants.DEFAULT_BACKFILL_SLICES + "}")
+    private int backfillSlices;
+
+    @Value("${" + Constants.PROP_BACKFILL_THRESHOLD + ":" + Constants.DEFAULT_BACKFILL_THRESHOLD + "}")
+    private int backfillThreshold;
+
+    @Value("${" + Constants.PROP_BACKFILL_WINDOW + ":" + Constants.DEFAULT_BACKFILL_WINDOW + "}")
+    private long backfillWindow = Constants.DEFAULT_BACKFILL_WINDOW;
+
+    @Value("${" + Constants.PROP_RETRY_BATCH_SIZE + ":" + Constants.DEFAULT_RETRY_BATCH_SIZE + "}")
+    private int retryBatchSize;
+
+    public SyncTask(
+            TimestampStore timestampStore,
+            OpenElisFhirClient openElisClient,
+            OdooFhirClient odooClient,
+            BoundedDispatcher dispatcher,
+            RetryQueue retryQueue,
+            FingerprintStore fingerprintStore,
+            DedupeIndex dedupeIndex,
+            FhirContext fhirContext,
+            MeterRegistry meterRegistry) {
         this.timestampStore = timestampStore;
         this.openElisClient = openElisClient;
         this.odooClient = odooClient;
-        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
+        this.dispatcher = dispatcher;
+        this.retryQueue = retryQueue;
+        this.fingerprintStore = fingerprintStore;
+        this.dedupeIndex = dedupeIndex;
+        this.fhirContext = fhirContext;
+        prefetchExecutor = Executors.newCachedThreadPool(new CustomizableThreadFactory("openelis-prefetch-"));
+        syncExecutor = Executors.newCachedThreadPool(new CustomizableThreadFactory("openelis-sync-"));
+        Gauge.builder("eip.sync.prefetch.depth", this, t -> t.prefetchDepth)
+                .description("The maximum number of OpenELIS pages fetched ahead of the page being synced")
+                .register(meterRegistry);
+        Gauge.builder("eip.sync.prefetch.buffered", prefetchers, p -> p.stream()
+                        .mapToInt(PrefetchingIterator::getBufferedCount)
+                        .sum())
+                .description("The number of OpenELIS pages fetched ahead and waiting to be synced")
+                .register(meterRegistry);
+        pageWaitTimer = Timer.builder("eip.sync.page.wait")
+                .description("Time spent waiting for the next page of resources from OpenELIS")
+                .register(meterRegistry);
+        Gauge.builder("eip.sync.retry.queue.size", retryQueue, RetryQueue::size)
+                .description("The number of resources waiting to be retried after failing to sync")
+                .register(meterRegistry);
+        retrySuccessCounter = Counter.builder("eip.sync.retry")
+                .description("The number of retries of resources that previously failed to sync")
+                .tag("outcome", "success")
+                .register(meterRegistry);
+        retryFailureCounter = Counter.builder("eip.sync.retry")
+                .description("The number of retries of resources that previously failed to sync")
+                .tag("outcome", "failure")
+                .register(meterRegistry);
+        unchangedCounter = Counter.builder("eip.sync.fingerprint")
+                .description("The number of resources skipped because their content is unchanged since the last push")
+                .tag("result", "unchanged")
+                .register(meterRegistry);
+        changedCounter = Counter.builder("eip.sync.fingerprint")
+                .description("The number of resources pushed because their content changed since the last push")
+                .tag("result", "changed")
+                .register(meterRegistry);
+        Gauge.builder("eip.sync.fingerprint.size", fingerprintStore, FingerprintStore::size)
+                .description("The number of resources with a saved content fingerprint")
+                .register(meterRegistry);
     }
 
+    /**
+     * Syncs patients and service requests concurrently, a service request whose subject is a patient in the same sync
+     * window is only pushed to Odoo after its patient.
+     */
     @Scheduled(initialDelayString = "${" + PROP_INITIAL_DELAY + "}", fixedDelayString = "${" + PROP_DELAY + "}")
     public void execute() {
-        sync(Patient.class);
-        sync(ServiceRequest.class);
+        DependencyTracker patients = new DependencyTracker();
+        CompletableFuture<Void> patientSync =
+                CompletableFuture.runAsync(() -> sync(Patient.class, patients), syncExecutor);
+        RuntimeException failure = null;
+        try {
+            sync(ServiceRequest.class, patients);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        try {
+            patientSync.join();
+        } catch (CompletionException e) {
+            RuntimeException cause =
+                    e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+            if (failure == null) {
+                failure = cause;
+            } else {
+                failure.addSuppressed(cause);
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
     }
 
     public void sync(Class<? extends DomainResource> resourceType) {
-        LocalDateTime timestamp = LocalDateTimeUtils.getCurrentTime();
-        // TODO Should we rollback by a few seconds to close any gaps in case there were uncommitted changes
-        // during the last poll?
-        LocalDateTime since = timestampStore.getTimestamp(resourceType);
-        if (since == null) {
-            since = LocalDateTime.of(1970, 1, 1, 0, 0, 0);
-        } else {
-            since = since.minus(overlap, ChronoUnit.MILLIS);
+        sync(resourceType, null);
+    }
+
+    /**
+     * Syncs the resources of the specified type modified since the last sync.
+     *
+     * @param resourceType the resource type
+     * @param patients tracks the patients written to Odoo in this sync run, patients are registered with it when
+     *     syncing patients and service requests are held back until their subject is written when syncing service
+     *     requests, can be null
+     */
+    protected void sync(Class<? extends DomainResource> resourceType, DependencyTracker patients) {
+        final boolean trackPatients = patients != null && resourceType == Patient.class;
+        if (odooClient.isCircuitOpen()) {
+            // The window is synced in full by a later run once Odoo recovers
+            log.info("Skipping the sync of {} resources while Odoo is unavailable", resourceType.getSimpleName());
+            if (trackPatients) {
+                patients.abort(new RuntimeException("Patient sync skipped while Odoo is unavailable"));
+            }
+
+            return;
+        }
+
+        // A failure before the window is enumerated must release the service requests waiting for their patients
+        LocalDateTime since;
+        SyncCursor cursor;
+        LocalDateTime started;
+        SearchSummary summary;
+        SyncCursor boundary;
+        try {
+            retry(resourceType);
+            final LocalDateTime lastSync = timestampStore.getTimestamp(resourceType);
+            if (lastSync == null) {
+                since = LocalDateTime.of(1970, 1, 1, 0, 0, 0);
+            } else {
+                since = lastSync.minus(overlap, ChronoUnit.MILLIS);
+            }
+
+            cursor = timestampStore.getCursor(resourceType);
+            if (cursor != null && cursor.lastUpdated().isAfter(since)) {
+                log.info(
+                        "Resuming the interrupted sync of {} resources from {}",
+                        resourceType.getSimpleName(),
+                        cursor.lastUpdated());
+                since = cursor.lastUpdated();
+            } else {
+                cursor = null;
+            }
+
+            // The resources are only counted when catching up on a backlog e.g. on the initial sync or after an outage
+            // to
+            // decide whether to split the window into slices, the window is then closed at the current time of OpenELIS
+            // so that the watermark is not subject to the clock skew between the hosts
+            started = LocalDateTimeUtils.getCurrentTime();
+            if (lastSync == null || since.isBefore(started.minus(backfillWindow, ChronoUnit.MILLIS))) {
+                summary = openElisClient.getModifiedSummary(resourceType, since);
+            } else {
+                summary = new SearchSummary(0, null);
+            }
+
+            boundary = timestampStore.getBoundary(resourceType);
+        } catch (RuntimeException e) {
+            if (trackPatients) {
+                patients.abort(e);
+            }
+
+            throw e;
+        }
+
+        final LocalDateTime until = summary.serverTime();
+        final LocalDateTime timestamp = until != null ? until : started;
+        final List<LocalDateTime> bounds = getSliceBounds(resourceType, since, until, summary.total());
+        final Window window = new Window(
+                resourceType,
+                cursor,
+                boundary,
+                trackPatients ? patients : null,
+                resourceType == ServiceRequest.class ? patients : null,
+                new Phaser(1),
+                new AtomicReference<>());
+        final AtomicReference<Throwable> failure = window.failure();
+        SliceCheckpointer checkpointer =
+                new SliceCheckpointer(cursor, bounds.size() - 1, c -> saveCursor(c, resourceType));
+        List<PrefetchingIterator<?>> fetchers = new ArrayList<>();
+        int count = 0;
+        boolean enumerated = false;
+        try {
+            List<Iterator<? extends List<? extends DomainResource>>> slices = new ArrayList<>();
+            for (int i = 0; i < bounds.size() - 1; i++) {
+                slices.add(getPages(resourceType, bounds.get(i), bounds.get(i + 1), fetchers));
+            }
+
+            if (slices.size() == 1) {
+                count = syncSlice(window, slices.get(0), checkpointer.getSlice(0));
+            } else {
+                // Each slice is consumed on its own thread so that the resources in all the slices are pushed to Odoo
+                // concurrently, the window is still only checkpointed up to the earliest incomplete slice
+                List<CompletableFuture<Integer>> futures = new ArrayList<>();
+                for (int i = 0; i < slices.size(); i++) {
+                    final Iterator<? extends List<? extends DomainResource>> pages = slices.get(i);
+                    final PageCheckpointer slice = checkpointer.getSlice(i);
+                    futures.add(CompletableFuture.supplyAsync(() -> syncSlice(window, pages, slice), syncExecutor));
+                }
+
+                RuntimeException thrown = null;
+                for (CompletableFuture<Integer> future : futures) {
+                    try {
+                        count += future.join();
+                    } catch (CompletionException e) {
+                        if (thrown == null) {
+                            thrown = e.getCause() instanceof RuntimeException re
+                                    ? re
+                                    : new RuntimeException(e.getCause());
+                        }
+                    }
+                }
+
+                if (thrown != null) {
+                    throw thrown;
+                }
+            }
+
+            enumerated = failure.get() == null;
+            if (trackPatients && enumerated) {
+                patients.enumerationComplete();
+            }
+        } finally {
+            if (trackPatients && !enumerated) {
+                patients.abort(failure.get() != null ? failure.get() : new RuntimeException("Patient sync aborted"));
+            }
+
+            fetchers.forEach(fetcher -> {
+                prefetchers.remove(fetcher);
+                fetcher.close();
+            });
+
+            window.inFlight().arriveAndAwaitAdvance();
+        }
+
+        if (failure.get() != null) {
+            throw new RuntimeException(
+                    "Failed to sync " + resourceType.getSimpleName() + " resources to Odoo", failure.get());
         }
 
-        List<? extends DomainResource> resources = openElisClient.getModifiedResources(resourceType, since);
-        int count = resources.size();
         if (log.isDebugEnabled()) {
-            log.debug("Found {} {} resources to sync", count, resourceType.getSimpleName());
+            log.debug("Synced {} {} resources", count, resourceType.getSimpleName());
         }
 
-        List<CompletableFuture<Void>> futures = new ArrayList<>(count);
-        resources.stream().forEach(r -> {
-            if (!SyncUtils.skip(r)) {
-                futures.add(CompletableFuture.runAsync(() -> odooClient.update(r), executor));
-            } else if (log.isDebugEnabled()) {
-                log.debug(
-                        "Skipping resource {}/{} lastUpdated at {}",
-                        r.fhirType(),
-                        r.getIdPart(),
-                        SyncUtils.getLastUpdatedTimeStamp(r));
+        // The latest synced resources are remembered so that they are not synced again by the overlap of the next poll
+        SyncCursor newBoundary = checkpointer.getCursor();
+        timestampStore.update(timestamp, newBoundary != null ? newBoundary : boundary, resourceType);
+    }
+
+    /**
+     * Syncs the resources in the pages of a slice of the window, the slice is finished once all its pages are handed off
+     * and the resources held back for their subject are released.
+     *
+     * @param window the window
+     * @param pages the pages of the slice
+     * @param checkpointer the checkpointer of the slice
+     * @return the number of resources in the slice
+     */
+    private int syncSlice(
+            Window window, Iterator<? extends List<? extends DomainResource>> pages, PageCheckpointer checkpointer) {
+        final AtomicReference<Throwable> failure = window.failure();
+        int count = 0;
+        List<Deferred> deferred = new ArrayList<>();
+        try {
+            while (failure.get() == null && nextPageExists(pages)) {
+                if (odooClient.isCircuitOpen()) {
+                    // The next run resumes from the last checkpoint
+                    failure.compareAndSet(null, new RuntimeException("Odoo became unavailable"));
+                    break;
+                }
+
+                List<? extends DomainResource> page = pages.next();
+                count += page.size();
+                if (log.isDebugEnabled()) {
+                    log.debug(
+                            "Found {} {} resources to sync in page",
+                            page.size(),
+                            window.resourceType().getSimpleName());
+                }
+
+                PageCheckpointer.Page checkpoint = checkpointer.addPage(page);
+                List<DomainResource> ready = new ArrayList<>(page.size());
+                for (DomainResource r : page) {
+                    final LocalDateTime lastUpdated =
+                            DateUtils.toLocalDateTime(r.getMeta().getLastUpdated());
+                    if ((window.resumedFrom() != null && window.resumedFrom().isSynced(r.getIdPart(), lastUpdated))
+                            || (window.boundary() != null && window.boundary().contains(r.getIdPart(), lastUpdated))) {
+                        continue;
+                    }
+
+                    if (SyncUtils.skip(dedupeIndex, r)) {
+                        if (log.isDebugEnabled()) {
+                            log.debug(
+                                    "Skipping resource {}/{} lastUpdated at {}",
+                                    r.fhirType(),
+                                    r.getIdPart(),
+                                    SyncUtils.getLastUpdatedTimeStamp(r));
+                        }
+
+                        continue;
+                    }
+
+                    if (fingerprintStore.isUnchanged(r)) {
+                        unchangedCounter.increment();
+                        if (log.isDebugEnabled()) {
+                            log.debug("Skipping resource {}/{} with unchanged content", r.fhirType(), r.getIdPart());
+                        }
+
+                        retryQueue.remove(r.fhirType(), r.getIdPart());
+                        continue;
+                    }
+
+                    changedCounter.increment();
+                    checkpoint.expect(r);
+                    CompletableFuture<Void> dependency = getDependency(r, window.dependencies());
+                    if (dependency == NO_DEPENDENCY) {
+                        ready.add(r);
+                    } else {
+                        deferred.add(new Deferred(r, dependency));
+                    }
+                }
+
+                ready.addAll(getReleased(deferred, false, failure));
+                dispatch(ready, window.patients(), window.inFlight(), failure);
+                checkpoint.enumerated();
+            }
+
+            if (!deferred.isEmpty()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Waiting for the subjects of {} held back service requests", deferred.size());
+                }
+
+                dispatch(getReleased(deferred, true, failure), null, window.inFlight(), failure);
+            }
+        } catch (RuntimeException e) {
+            // Stops the other slices
+            failure.compareAndSet(null, e);
+            throw e;
+        }
+
+        if (failure.get() == null) {
+            checkpointer.finish();
+        }
+
+        return count;
+    }
+
+    /**
+     * Splits the specified window into time slices when it holds a backlog of at least the backfill threshold e.g. on
+     * the initial sync or after an outage, the slices cover equal time ranges from the oldest modified resource.
+     *
+     * @param resourceType the resource type
+     * @param since the start of the window
+     * @param until the exclusive end of the window, null for no end
+     * @param backlog the number of resources in the window
+     * @return the bounds of the consecutive slices starting with since and ending with until
+     */
+    private List<LocalDateTime> getSliceBounds(
+            Class<? extends DomainResource> resourceType, LocalDateTime since, LocalDateTime until, int backlog) {
+        List<LocalDateTime> bounds = new ArrayList<>();
+        bounds.add(since);
+        if (backfillSlices > 1 && backlog >= backfillThreshold) {
+            final LocalDateTime oldest = openElisClient.getOldestLastUpdated(resourceType, since, until);
+            final LocalDateTime end = until != null ? until : LocalDateTimeUtils.getCurrentTime();
+            if (oldest != null && oldest.isBefore(end)) {
+                final long span = ChronoUnit.MILLIS.between(oldest, end);
+                for (int i = 1; i < backfillSlices; i++) {
+                    LocalDateTime bound = oldest.plus(span * i / backfillSlices, ChronoUnit.MILLIS);
+                    if (bound.isAfter(bounds.get(bounds.size() - 1))) {
+                        bounds.add(bound);
+                    }
+                }
+
+                log.info(
+                        "Backfilling {} {} resource(s) modified since {} in {} time slices",
+                        backlog,
+                        resourceType.getSimpleName(),
+                        since,
+                        bounds.size());
+            }
+        }
+
+        bounds.add(until);
+        return bounds;
+    }
+
+    /**
+     * Gets the pages of the resources modified in the specified slice of the window, the pages are fetched ahead on
+     * another thread when prefetching is enabled.
+     *
+     * @param resourceType the resource type
+     * @param since the start of the slice
+     * @param until the exclusive end of the slice, null for no end
+     * @param fetchers the list to add the started prefetching iterator to
+     * @return an iterator over the pages
+     */
+    private Iterator<? extends List<? extends DomainResource>> getPages(
+            Class<? extends DomainResource> resourceType,
+            LocalDateTime since,
+            LocalDateTime until,
+            List<PrefetchingIterator<?>> fetchers) {
+        if (prefetchDepth <= 0) {
+            return openElisClient.getModifiedResources(resourceType, since, until);
+        }
+
+        PrefetchingIterator<List<? extends DomainResource>> fetcher = new PrefetchingIterator<>(
+                openElisClient.getModifiedResources(resourceType, since, until), prefetchDepth, prefetchExecutor);
+        fetchers.add(fetcher);
+        prefetchers.add(fetcher);
+        return fetcher;
+    }
+
+    private CompletableFuture<Void> getDependency(DomainResource resource, DependencyTracker dependencies) {
+        if (dependencies == null || !(resource instanceof ServiceRequest request)) {
+            return NO_DEPENDENCY;
+        }
+
+        IIdType subject = request.getSubject().getReferenceElement();
+        if (!subject.hasIdPart() || !"Patient".equals(subject.getResourceType())) {
+            return NO_DEPENDENCY;
+        }
+
+        return dependencies.awaitWritten(subject.getIdPart());
+    }
+
+    /**
+     * Removes and returns the held back resources whose dependency is written, a resource whose dependency failed is
+     * added to the retry queue.
+     *
+     * @param deferred the held back resources
+     * @param wait specifies whether to wait for all the dependencies to complete
+     * @param failure holder for the first failure encountered
+     * @return the released resources
+     */
+    private List<DomainResource> getReleased(
+            List<Deferred> deferred, boolean wait, AtomicReference<Throwable> failure) {
+        List<DomainResource> released = new ArrayList<>();
+        for (Iterator<Deferred> it = deferred.iterator(); it.hasNext(); ) {
+            Deferred d = it.next();
+            if (!wait && !d.dependency.isDone()) {
+                continue;
+            }
+
+            it.remove();
+            try {
+                d.dependency.join();
+                released.add(d.resource);
+            } catch (CompletionException e) {
+                park(d.resource, new RuntimeException("Subject failed to sync", e.getCause()), failure);
+            }
+        }
+
+        return released;
+    }
+
+    private boolean nextPageExists(Iterator<?> pages) {
+        long start = System.nanoTime();
+        try {
+            return pages.hasNext();
+        } finally {
+            pageWaitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Submits the specified resources to the dispatcher to be pushed to Odoo, this blocks when the dispatcher is full
+     * which in turn stops reading of further pages from OpenELIS. When batching is enabled, the resources are grouped
+     * into batches of the configured size and each batch is submitted as a single task, a resource read without parsing
+     * it is always submitted on its own with its raw payload since a batch bundle is built from parsed resources.
+     *
+     * @param resources the resources to sync
+     * @param patients the tracker to notify when a resource is written, can be null
+     * @param inFlight the phaser tracking the resources being pushed
+     * @param failure holder for the first failure encountered
+     */
+    private void dispatch(
+            List<DomainResource> resources,
+            DependencyTracker patients,
+            Phaser inFlight,
+            AtomicReference<Throwable> failure) {
+        final boolean batch = odooClient.isBatchEnabled();
+        List<BatchEntry> entries = new ArrayList<>();
+        long entriesSize = 0;
+        for (DomainResource r : resources) {
+            if (patients != null) {
+                patients.expect(r.getIdPart());
+            }
+
+            final RawPayload payload = RawPayload.get(r);
+            if (!batch || payload != null) {
+                Runnable task = payload == null
+                        ? () -> odooClient.update(r)
+                        : () -> odooClient.update(r.fhirType(), r.getIdPart(), payload.json());
+                submit(task, getSize(r), inFlight, failure, e -> {
+                    notify(patients, r, e);
+                    completed(r, e, failure);
+                });
+                continue;
+            }
+
+            entries.add(BatchEntry.update(r));
+            entriesSize += getSize(r);
+            if (entries.size() >= odooClient.getBatchSize()) {
+                submitBatch(entries, entriesSize, patients, inFlight, failure);
+                entries = new ArrayList<>();
+                entriesSize = 0;
+            }
+        }
+
+        if (!entries.isEmpty()) {
+            submitBatch(entries, entriesSize, patients, inFlight, failure);
+        }
+    }
+
+    private void submitBatch(
+            List<BatchEntry> entries,
+            long size,
+            DependencyTracker patients,
+            Phaser inFlight,
+            AtomicReference<Throwable> failure) {
+        submit(
+                () -> odooClient.batch(entries),
+                size,
+                inFlight,
+                failure,
+                e -> entries.forEach(entry -> {
+                    Throwable error = entry.getError() != null ? entry.getError() : e;
+                    notify(patients, entry.getResource(), error);
+                    completed(entry.getResource(), error, failure);
+                }));
+    }
+
+    private void submit(
+            Runnable task,
+            long size,
+            Phaser inFlight,
+            AtomicReference<Throwable> failure,
+            Consumer<Throwable> onComplete) {
+        inFlight.register();
+        CompletableFuture<Void> future;
+        try {
+            future = dispatcher.submit(task, size);
+        } catch (RuntimeException e) {
+            inFlight.arriveAndDeregister();
+            onComplete.accept(e);
+            throw e;
+        }
+
+        future.whenComplete((v, e) -> {
+            try {
+                onComplete.accept(e != null && e.getCause() != null ? e.getCause() : e);
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            } finally {
+                inFlight.arriveAndDeregister();
             }
         });
+    }
+
+    /**
+     * Removes a successfully synced resource from the retry queue or adds a resource that failed to it.
+     *
+     * @param resource the resource
+     * @param error the sync error or null if the resource was successfully synced
+     * @param failure holder for the first failure encountered
+     */
+    private void completed(DomainResource resource, Throwable error, AtomicReference<Throwable> failure) {
+        if (error == null) {
+            retryQueue.remove(resource.fhirType(), resource.getIdPart());
+            fingerprintStore.save(resource);
+            checkpoint(resource);
+        } else {
+            park(resource, error, failure);
+        }
+    }
+
+    private void park(DomainResource resource, Throwable error, AtomicReference<Throwable> failure) {
+        log.warn(
+                "Failed to sync {}/{}, adding it to the retry queue: {}",
+                resource.fhirType(),
+                resource.getIdPart(),
+                error.getMessage());
+        try {
+            retryQueue.add(resource.fhirType(), resource.getIdPart(), SyncUtils.getLastUpdatedTimeStamp(resource));
+        } catch (RuntimeException e) {
+            e.addSuppressed(error);
+            failure.compareAndSet(null, e);
+            return;
+        }
+
+        checkpoint(resource);
+    }
+
+    /**
+     * Marks the specified resource as done in its page, a parked resource is done since the retry queue takes over.
+     *
+     * @param resource the resource
+     */
+    private void checkpoint(DomainResource resource) {
+        PageCheckpointer.Page page = PageCheckpointer.getPage(resource);
+        if (page != null) {
+            page.done();
+        }
+    }
+
+    private void saveCursor(SyncCursor cursor, Class<? extends DomainResource> resourceType) {
+        try {
+            timestampStore.updateCursor(cursor, resourceType);
+        } catch (RuntimeException e) {
+            // The window is just synced again from the previous checkpoint after a restart
+            log.warn(
+                    "Failed to save the sync cursor for {} resources: {}",
+                    resourceType.getSimpleName(),
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Retries the resources of the specified type in the retry queue that are due, the current version of each resource
+     * is fetched from OpenELIS and pushed to Odoo, a resource that no longer exists in OpenELIS is deleted from Odoo.
+     *
+     * @param resourceType the resource type
+     */
+    private void retry(Class<? extends DomainResource> resourceType) {
+        List<RetryEntry> due = retryQueue.getDue(resourceType.getSimpleName());
+        if (due.isEmpty()) {
+            return;
+        }
+
+        // Drains a large queue over several runs e.g. after an outage so that Odoo is not flooded as it recovers
+        if (retryBatchSize > 0 && due.size() > retryBatchSize) {
+            log.info(
+                    "{} {} resource(s) are due for a retry, retrying the first {}",
+                    due.size(),
+                    resourceType.getSimpleName(),
+                    retryBatchSize);
+            due = due.subList(0, retryBatchSize);
+        }
+
+        log.info("Retrying {} {} resource(s) that previously failed to sync", due.size(), resourceType.getSimpleName());
+        Phaser inFlight = new Phaser(1);
+        for (RetryEntry entry : due) {
+            if (odooClient.isCircuitOpen()) {
+                log.info(
+                        "Stopping the retries of {} resources while Odoo is unavailable", resourceType.getSimpleName());
+                break;
+            }
+
+            inFlight.register();
+            dispatcher.submit(() -> retry(resourceType, entry), 0).whenComplete((v, e) -> {
+                if (e != null) {
+                    log.error("Failed to process retry of {}/{}", entry.resourceType(), entry.id(), e);
+                }
+
+                inFlight.arriveAndDeregister();
+            });
+        }
 
-        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
-        timestampStore.update(timestamp, resourceType);
-        SyncUtils.clearLastUpdatedTimestamps();
+        inFlight.arriveAndAwaitAdvance();
     }
+
+    private void retry(Class<? extends DomainResource> resourceType, RetryEntry entry) {
+        try {
+            DomainResource resource = openElisClient.getById(resourceType, entry.id());
+            if (resource == null) {
+                log.info("{}/{} no longer exists in OpenELIS, deleting it from Odoo", entry.resourceType(), entry.id());
+                odooClient.delete(entry.resourceType(), entry.id());
+                fingerprintStore.remove(entry.resourceType(), entry.id());
+            } else {
+                odooClient.update(resource);
+                fingerprintStore.save(resource);
+            }
+        } catch (RuntimeException e) {
+            retryFailureCounter.increment();
+            log.warn(
+                    "Retry number {} of {}/{} failed: {}",
+                    entry.attempts(),
+                    entry.resourceType(),
+                    entry.id(),
+                    e.getMessage());
+            retryQueue.add(entry.resourceType(), entry.id(), entry.lastUpdated());
+            return;
+        }
+
+        retrySuccessCounter.increment();
+        retryQueue.remove(entry.resourceType(), entry.id());
+    }
+
+    private static void notify(DependencyTracker patients, DomainResource resource, Throwable error) {
+        if (patients == null) {
+            return;
+        }
+
+        if (error == null) {
+            patients.written(resource.getIdPart());
+        } else {
+            patients.failed(resource.getIdPart(), error);
+        }
+    }
+
+    private long getSize(DomainResource resource) {
+        if (!dispatcher.isSizeLimited()) {
+            return 0;
+        }
+
+        final RawPayload payload = RawPayload.get(resource);
+        if (payload != null) {
+            return payload.json().length();
+        }
+
+        return fhirContext.newJsonParser().encodeResourceToString(resource).length();
+    }
+
+    private record Deferred(DomainResource resource, CompletableFuture<Void> dependency) {}
+
+    /**
+     * The state shared by the slices of a sync window.
+     *
+     * @param resourceType the resource type
+     * @param resumedFrom the cursor the window was resumed from, can be null
+     * @param boundary the resources synced at the end of the last window, can be null
+     * @param patients the tracker to register the written patients with, can be null
+     * @param dependencies the tracker of the patients the service requests are held back for, can be null
+     * @param inFlight the phaser tracking the resources being pushed
+     * @param failure holder for the first failure encountered
+     */
+    private record Window(
+            Class<? extends DomainResource> resourceType,
+            SyncCursor resumedFrom,
+            SyncCursor boundary,
+            DependencyTracker patients,
+            DependencyTracker dependencies,
+            Phaser inFlight,
+            AtomicReference<Throwable> failure) {}
 }
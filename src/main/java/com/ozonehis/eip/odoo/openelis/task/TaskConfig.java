@@ -7,17 +7,94 @@
  */
 package com.ozonehis.eip.odoo.openelis.task;
 
+import static com.ozonehis.eip.odoo.openelis.Constants.DEFAULT_DISPATCH_MAX_IN_FLIGHT;
+import static com.ozonehis.eip.odoo.openelis.Constants.PROP_DISPATCH_MAX_BYTES;
+import static com.ozonehis.eip.odoo.openelis.Constants.PROP_DISPATCH_MAX_IN_FLIGHT;
+import static com.ozonehis.eip.odoo.openelis.Constants.PROP_MAX_CONCURRENCY;
+import static com.ozonehis.eip.odoo.openelis.Constants.PROP_VIRTUAL_THREADS;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.ozonehis.eip.odoo.openelis.DedupeIndex;
 import com.ozonehis.eip.odoo.openelis.fhir.OdooFhirClient;
 import com.ozonehis.eip.odoo.openelis.fhir.OpenElisFhirClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
+@Slf4j
 @EnableScheduling
 public class TaskConfig {
 
     @Bean
     public SyncTask SyncTask(
-            TimestampStore timestampStore, OpenElisFhirClient openElisClient, OdooFhirClient odooClient) {
-        return new SyncTask(timestampStore, openElisClient, odooClient);
+            TimestampStore timestampStore,
+            OpenElisFhirClient openElisClient,
+            OdooFhirClient odooClient,
+            BoundedDispatcher syncDispatcher,
+            RetryQueue retryQueue,
+            FingerprintStore fingerprintStore,
+            DedupeIndex dedupeIndex,
+            FhirContext fhirContext,
+            MeterRegistry meterRegistry) {
+        return new SyncTask(
+                timestampStore,
+                openElisClient,
+                odooClient,
+                syncDispatcher,
+                retryQueue,
+                fingerprintStore,
+                dedupeIndex,
+                fhirContext,
+                meterRegistry);
+    }
+
+    @Bean
+    public BoundedDispatcher syncDispatcher(
+            @Value("${" + PROP_DISPATCH_MAX_IN_FLIGHT + ":" + DEFAULT_DISPATCH_MAX_IN_FLIGHT + "}") int maxInFlight,
+            @Value("${" + PROP_DISPATCH_MAX_BYTES + ":0}") long maxInFlightBytes,
+            @Value("${" + PROP_VIRTUAL_THREADS + ":false}") boolean virtualThreads,
+            @Value("${" + PROP_MAX_CONCURRENCY + ":0}") int maxConcurrency,
+            MeterRegistry meterRegistry) {
+        if (maxConcurrency < 1) {
+            maxConcurrency = Runtime.getRuntime().availableProcessors() * 2;
+        }
+
+        return new BoundedDispatcher(
+                createExecutor(virtualThreads, maxConcurrency), maxInFlight, maxInFlightBytes, meterRegistry);
+    }
+
+    /**
+     * Creates the executor to push resources to Odoo, by default a fixed pool of platform threads is used, when
+     * virtual threads are enabled each push runs in its own virtual thread and the concurrency is capped by the
+     * executor's concurrency limit instead. Virtual threads require a Java 21 or later runtime, the project targets
+     * Java 17 so the application fails to start if they are enabled on an older runtime.
+     *
+     * @param virtualThreads specifies if virtual threads are enabled
+     * @param maxConcurrency the maximum number of concurrent pushes to Odoo
+     * @return the executor
+     */
+    protected static Executor createExecutor(boolean virtualThreads, int maxConcurrency) {
+        if (virtualThreads) {
+            if (Runtime.version().feature() < 21) {
+                throw new RuntimeException("Virtual threads require a Java 21 or later runtime, found "
+                        + Runtime.version().feature());
+            }
+
+            log.info(
+                    "Using virtual threads to push resources to Odoo with a maximum concurrency of {}", maxConcurrency);
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("odoo-sync-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(maxConcurrency);
+            return executor;
+        }
+
+        log.info("Using a pool of {} threads to push resources to Odoo", maxConcurrency);
+        return Executors.newFixedThreadPool(maxConcurrency, new CustomizableThreadFactory("odoo-sync-"));
     }
 }
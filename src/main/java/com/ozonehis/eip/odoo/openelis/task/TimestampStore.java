@@ -13,8 +13,12 @@ import com.ozonehis.eip.odoo.openelis.EipFileUtils;
 import com.ozonehis.eip.odoo.openelis.PropertiesUtils;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.r4.model.DomainResource;
@@ -25,12 +29,20 @@ import org.springframework.stereotype.Component;
 @Component
 public class TimestampStore {
 
+    private static final String CURSOR_SUFFIX = ".cursor";
+
+    private static final String BOUNDARY_SUFFIX = ".boundary";
+
+    private static final String CURSOR_SEPARATOR = "|";
+
+    private static final String CURSOR_ID_SEPARATOR = ",";
+
     @Value("${" + Constants.PROP_TASK_LAST_RUN_TS_FILE + "}")
     private String filename;
 
     private File file;
 
-    private Properties props;
+    private volatile Properties props;
 
     public LocalDateTime getTimestamp(Class<? extends DomainResource> resourceType) {
         final String ts = getProps().getProperty(resourceType.getSimpleName());
@@ -45,41 +57,147 @@ public class TimestampStore {
         return DateUtils.deserialize(ts);
     }
 
-    public synchronized void update(LocalDateTime timestamp, Class<? extends DomainResource> resourceType) {
+    /**
+     * Gets the cursor of an interrupted sync of the specified resource type.
+     *
+     * @param resourceType the resource type
+     * @return the cursor or null if the last sync was not interrupted
+     */
+    public SyncCursor getCursor(Class<? extends DomainResource> resourceType) {
+        return deserialize(getProps().getProperty(getCursorKey(resourceType)));
+    }
+
+    /**
+     * Gets the boundary of the last completed sync of the specified resource type i.e. the last updated timestamp of
+     * the latest resources it synced and their ids.
+     *
+     * @param resourceType the resource type
+     * @return the boundary or null if none is saved
+     */
+    public SyncCursor getBoundary(Class<? extends DomainResource> resourceType) {
+        return deserialize(getProps().getProperty(getBoundaryKey(resourceType)));
+    }
+
+    /**
+     * Saves the sync timestamp for the resource type, clears its cursor and boundary.
+     *
+     * @param timestamp the timestamp to save
+     * @param resourceType the resource type
+     * @see #update(LocalDateTime, SyncCursor, Class)
+     */
+    public void update(LocalDateTime timestamp, Class<? extends DomainResource> resourceType) {
+        update(timestamp, null, resourceType);
+    }
+
+    /**
+     * Saves the sync timestamp and boundary for the resource type and clears its cursor, the timestamps are written to a temporary
+     * file that is synced to disk and atomically renamed to the timestamp file so that a crash never leaves a partially
+     * written file, the in-memory timestamps are updated only after a successful write and are the only ones read
+     * afterwards. Saving a timestamp that has not changed is a no-op which keeps frequent checkpoints cheap.
+     *
+     * @param timestamp the timestamp to save
+     * @param boundary the boundary to save, can be null
+     * @param resourceType the resource type
+     */
+    public synchronized void update(
+            LocalDateTime timestamp, SyncCursor boundary, Class<? extends DomainResource> resourceType) {
         final String resource = resourceType.getSimpleName();
-        Properties propsTemp = PropertiesUtils.createProperties();
-        propsTemp.putAll(getProps());
         final String newTimestamp = DateUtils.serialize(timestamp);
-        propsTemp.put(resourceType.getSimpleName(), newTimestamp);
+        final String newBoundary = boundary == null ? null : serialize(boundary);
+        if (newTimestamp.equals(getProps().get(resource))
+                && Objects.equals(newBoundary, getProps().get(getBoundaryKey(resourceType)))
+                && !getProps().containsKey(getCursorKey(resourceType))) {
+            return;
+        }
+
         if (log.isDebugEnabled()) {
             log.debug("Updating timestamps for {} resource to {}", resource, newTimestamp);
         }
 
+        save(resource, props -> {
+            props.put(resource, newTimestamp);
+            props.remove(getCursorKey(resourceType));
+            if (newBoundary == null) {
+                props.remove(getBoundaryKey(resourceType));
+            } else {
+                props.put(getBoundaryKey(resourceType), newBoundary);
+            }
+        });
+    }
+
+    /**
+     * Saves the cursor of the sync in progress for the specified resource type, it is cleared when the sync timestamp is
+     * updated at the end of the sync.
+     *
+     * @param cursor the cursor to save
+     * @param resourceType the resource type
+     */
+    public synchronized void updateCursor(SyncCursor cursor, Class<? extends DomainResource> resourceType) {
+        final String resource = resourceType.getSimpleName();
+        final String value = serialize(cursor);
+        if (log.isDebugEnabled()) {
+            log.debug("Updating sync cursor for {} resource to {}", resource, value);
+        }
+
+        save(resource, props -> props.put(getCursorKey(resourceType), value));
+    }
+
+    private void save(String resource, Consumer<Properties> update) {
+        Properties propsTemp = PropertiesUtils.createProperties();
+        propsTemp.putAll(getProps());
+        update.accept(propsTemp);
         try {
-            propsTemp.store(EipFileUtils.openOutputStream(getFile()), null);
+            EipFileUtils.writeAtomically(getFile(), out -> propsTemp.store(out, null));
         } catch (IOException e) {
             throw new RuntimeException("Failed to save timestamps for " + resource + " resource ", e);
         }
 
-        getProps().put(resourceType.getSimpleName(), DateUtils.serialize(timestamp));
+        update.accept(getProps());
         if (log.isDebugEnabled()) {
             log.debug("Successfully saved timestamps for {} resource", resource);
         }
     }
 
+    private static String getCursorKey(Class<? extends DomainResource> resourceType) {
+        return resourceType.getSimpleName() + CURSOR_SUFFIX;
+    }
+
+    private static String getBoundaryKey(Class<? extends DomainResource> resourceType) {
+        return resourceType.getSimpleName() + BOUNDARY_SUFFIX;
+    }
+
+    private static String serialize(SyncCursor cursor) {
+        return DateUtils.serialize(cursor.lastUpdated())
+                + CURSOR_SEPARATOR
+                + String.join(CURSOR_ID_SEPARATOR, cursor.ids());
+    }
+
+    private static SyncCursor deserialize(String value) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+
+        final String ids = StringUtils.substringAfter(value, CURSOR_SEPARATOR);
+        return new SyncCursor(
+                DateUtils.deserialize(StringUtils.substringBefore(value, CURSOR_SEPARATOR)),
+                Set.of(StringUtils.split(ids, CURSOR_ID_SEPARATOR)));
+    }
+
     private Properties getProps() {
         if (props == null) {
             synchronized (this) {
                 if (props == null) {
-                    props = PropertiesUtils.createProperties();
-                    try {
-                        File file = getFile();
-                        log.info("Loading timestamps from {}", file);
-                        props.load(EipFileUtils.openInputStream(file));
-                        log.info("Successfully loaded timestamps");
+                    Properties loaded = PropertiesUtils.createProperties();
+                    File file = getFile();
+                    log.info("Loading timestamps from {}", file);
+                    try (InputStream in = EipFileUtils.openInputStream(file)) {
+                        loaded.load(in);
                     } catch (IOException e) {
                         throw new RuntimeException("Failed to load timestamps", e);
                     }
+
+                    log.info("Successfully loaded timestamps");
+                    props = loaded;
                 }
             }
         }
@@ -28,4 +28,9 @@ public class DateUtilsTest {
         LocalDateTime expected = LocalDateTime.of(2019, 6, 30, 18, 25, 43);
         assertEquals(expected, DateUtils.toLocalDateTime(date));
     }
+
+    @Test
+    void toEpochMilli_shouldReturnTheMillisecondsSinceTheEpoch() {
+        assertEquals(1561919143511L, DateUtils.toEpochMilli("2019-06-30T18:25:43.511Z"));
+    }
 }
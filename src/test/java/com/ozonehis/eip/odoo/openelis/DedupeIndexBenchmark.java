@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the legacy synchronized map of last updated timestamps keyed by concatenated type and id with the striped
+ * {@link DedupeIndex} under a mixed load where webhook threads save timestamps while sync task workers look them up.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DedupeIndexBenchmark {
+
+    private static final int PATIENT = ResourceType.Patient.ordinal();
+
+    @Param({"legacy", "striped"})
+    private String impl;
+
+    @Param({"10000"})
+    private int resourceCount;
+
+    private String[] ids;
+
+    private LocalDateTime lastUpdated;
+
+    private long lastUpdatedMillis;
+
+    private Map<String, LocalDateTime> legacy;
+
+    private DedupeIndex index;
+
+    @Setup
+    public void setUp() {
+        ids = new String[resourceCount];
+        lastUpdated = LocalDateTime.now();
+        lastUpdatedMillis =
+                lastUpdated.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        legacy = Collections.synchronizedMap(new HashMap<>());
+        index = new DedupeIndex();
+        for (int i = 0; i < resourceCount; i++) {
+            ids[i] = String.valueOf(i);
+            legacy.put("Patient" + ids[i], lastUpdated);
+            index.put(PATIENT, ids[i], lastUpdatedMillis);
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void webhook() {
+        final String id = ids[ThreadLocalRandom.current().nextInt(resourceCount)];
+        if ("legacy".equals(impl)) {
+            legacy.put("Patient" + id, LocalDateTime.now());
+        } else {
+            index.put(PATIENT, id, System.currentTimeMillis());
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public void poll(Blackhole blackhole) {
+        final String id = ids[ThreadLocalRandom.current().nextInt(resourceCount)];
+        if ("legacy".equals(impl)) {
+            LocalDateTime previous = legacy.get("Patient" + id);
+            blackhole.consume(previous != null && !lastUpdated.isAfter(previous));
+        } else {
+            long previous = index.get(PATIENT, id);
+            blackhole.consume(previous != DedupeIndex.ABSENT && lastUpdatedMillis <= previous);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.junit.jupiter.api.Test;
+
+public class DedupeIndexTest {
+
+    private static final int PATIENT = ResourceType.Patient.ordinal();
+
+    private static final int SERVICE_REQUEST = ResourceType.ServiceRequest.ordinal();
+
+    @Test
+    public void get_shouldReturnAbsentForAResourceWithNoEntry() {
+        assertEquals(DedupeIndex.ABSENT, new DedupeIndex(4).get(PATIENT, "1"));
+    }
+
+    @Test
+    public void put_shouldStoreAndReplaceTheValueOfAResource() {
+        DedupeIndex index = new DedupeIndex(4);
+
+        index.put(PATIENT, "1", 100);
+        index.put(PATIENT, "1", 200);
+        index.put(PATIENT, "2", DedupeIndex.DELETED);
+
+        assertEquals(200, index.get(PATIENT, "1"));
+        assertEquals(DedupeIndex.DELETED, index.get(PATIENT, "2"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void put_shouldKeepSeparateEntriesForResourcesOfDifferentTypesWithTheSameId() {
+        DedupeIndex index = new DedupeIndex(4);
+
+        index.put(PATIENT, "1", 100);
+        index.put(SERVICE_REQUEST, "1", 200);
+
+        assertEquals(100, index.get(PATIENT, "1"));
+        assertEquals(200, index.get(SERVICE_REQUEST, "1"));
+    }
+
+    @Test
+    public void put_shouldGrowTheStripesAsEntriesAreAdded() {
+        DedupeIndex index = new DedupeIndex(2);
+        final int count = 10000;
+
+        for (int i = 0; i < count; i++) {
+            index.put(PATIENT, String.valueOf(i), i);
+        }
+
+        assertEquals(count, index.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, index.get(PATIENT, String.valueOf(i)));
+        }
+    }
+
+    @Test
+    public void clear_shouldRemoveAllTheEntries() {
+        DedupeIndex index = new DedupeIndex(4);
+        index.put(PATIENT, "1", 100);
+        index.put(PATIENT, "2", DedupeIndex.DELETED);
+
+        index.clear();
+
+        assertEquals(0, index.size());
+        assertEquals(DedupeIndex.ABSENT, index.get(PATIENT, "1"));
+        assertEquals(DedupeIndex.ABSENT, index.get(PATIENT, "2"));
+    }
+
+    @Test
+    public void shouldSupportConcurrentReadsAndWrites() {
+        DedupeIndex index = new DedupeIndex(4);
+        final int threads = 8;
+        final int count = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                futures.add(CompletableFuture.runAsync(
+                        () -> {
+                            for (int i = 0; i < count; i++) {
+                                final String id = thread + "-" + i;
+                                index.put(PATIENT, id, i);
+                                assertEquals(i, index.get(PATIENT, id));
+                            }
+                        },
+                        executor));
+            }
+
+            futures.forEach(CompletableFuture::join);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threads * count, index.size());
+    }
+
+    @Test
+    public void get_shouldReturnAbsentForAnExpiredEntry() {
+        AtomicLong clock = new AtomicLong();
+        DedupeIndex index = new DedupeIndex(4, 100, 0, clock::get);
+        index.put(PATIENT, "1", 10);
+
+        clock.set(99);
+        assertEquals(10, index.get(PATIENT, "1"));
+
+        clock.set(100);
+        assertEquals(DedupeIndex.ABSENT, index.get(PATIENT, "1"));
+    }
+
+    @Test
+    public void put_shouldResetTheExpiryOfAnExistingEntry() {
+        AtomicLong clock = new AtomicLong();
+        DedupeIndex index = new DedupeIndex(4, 100, 0, clock::get);
+        index.put(PATIENT, "1", 10);
+        clock.set(50);
+
+        index.put(PATIENT, "1", 20);
+
+        clock.set(120);
+        assertEquals(20, index.get(PATIENT, "1"));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void put_shouldEvictEntriesToStayWithinTheMaximumSize() {
+        final int maxSize = 1000;
+        DedupeIndex index = new DedupeIndex(4, 0, maxSize, System::currentTimeMillis);
+        final int count = 10000;
+
+        for (int i = 0; i < count; i++) {
+            index.put(PATIENT, String.valueOf(i), i);
+        }
+
+        assertTrue(index.size() <= maxSize);
+        assertEquals(count, index.size() + index.getEvictedCount());
+        // Evictions shift entries within the probe sequences, every entry that was not evicted must still be found
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            final long value = index.get(PATIENT, String.valueOf(i));
+            if (value != DedupeIndex.ABSENT) {
+                assertEquals(i, value);
+                found++;
+            }
+        }
+
+        assertEquals(index.size(), found);
+    }
+
+    @Test
+    public void put_shouldGiveASecondChanceToEntriesThatWereReadSinceTheLastSweep() {
+        DedupeIndex index = new DedupeIndex(4, 0, 64, System::currentTimeMillis);
+        index.put(PATIENT, "hot", 1);
+
+        for (int i = 0; i < 1000; i++) {
+            index.put(PATIENT, String.valueOf(i), i);
+            assertEquals(1, index.get(PATIENT, "hot"));
+        }
+
+        assertTrue(index.getEvictedCount() > 0);
+    }
+
+    @Test
+    public void put_shouldEvictExpiredEntriesBeforeLiveOnes() {
+        AtomicLong clock = new AtomicLong();
+        DedupeIndex index = new DedupeIndex(4, 100, 64, clock::get);
+        for (int i = 0; i < 1000; i++) {
+            index.put(PATIENT, "old-" + i, i);
+        }
+
+        final long evicted = index.getEvictedCount();
+        clock.set(100);
+        final int count = 16;
+        for (int i = 0; i < count; i++) {
+            index.put(PATIENT, "new-" + i, i);
+        }
+
+        assertEquals(evicted, index.getEvictedCount());
+        assertTrue(index.getExpiredCount() >= count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, index.get(PATIENT, "new-" + i));
+        }
+    }
+
+    @Test
+    public void bindTo_shouldReportTheRequestAndEvictionCounts() {
+        AtomicLong clock = new AtomicLong();
+        DedupeIndex index = new DedupeIndex(4, 100, 0, clock::get);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        index.bindTo(registry);
+        index.put(PATIENT, "1", 10);
+        index.put(PATIENT, "2", 20);
+
+        index.get(PATIENT, "1");
+        index.get(PATIENT, "3");
+        clock.set(100);
+        index.get(PATIENT, "2");
+
+        assertEquals(
+                1,
+                registry.get("eip.dedupe.cache.requests")
+                        .tag("result", "hit")
+                        .functionCounter()
+                        .count());
+        assertEquals(
+                2,
+                registry.get("eip.dedupe.cache.requests")
+                        .tag("result", "miss")
+                        .functionCounter()
+                        .count());
+        assertEquals(2, registry.get("eip.dedupe.cache.size").gauge().value());
+        assertEquals(
+                0,
+                registry.get("eip.dedupe.cache.evictions")
+                        .tag("cause", "size")
+                        .functionCounter()
+                        .count());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class EipFileUtilsTest {
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    public void writeAtomically_shouldReplaceTheContentsOfTheFile() throws IOException {
+        File file = dir.resolve("test.txt").toFile();
+        Files.writeString(file.toPath(), "old");
+
+        EipFileUtils.writeAtomically(file, out -> out.write("new".getBytes(StandardCharsets.UTF_8)));
+
+        Assertions.assertEquals("new", Files.readString(file.toPath()));
+        Assertions.assertEquals(1, dir.toFile().list().length);
+    }
+
+    @Test
+    public void writeAtomically_shouldCreateTheFileIfItDoesNotExist() throws IOException {
+        File file = dir.resolve("test.txt").toFile();
+
+        EipFileUtils.writeAtomically(file, out -> out.write("new".getBytes(StandardCharsets.UTF_8)));
+
+        Assertions.assertEquals("new", Files.readString(file.toPath()));
+    }
+
+    @Test
+    public void writeAtomically_shouldKeepTheOldContentsAndRemoveTheTempFileIfTheWriteFails() throws IOException {
+        File file = dir.resolve("test.txt").toFile();
+        Files.writeString(file.toPath(), "old");
+
+        Assertions.assertThrows(
+                IOException.class,
+                () -> EipFileUtils.writeAtomically(file, out -> {
+                    out.write("partial".getBytes(StandardCharsets.UTF_8));
+                    throw new IOException();
+                }));
+
+        Assertions.assertEquals("old", Files.readString(file.toPath()));
+        Assertions.assertEquals(1, dir.toFile().list().length);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis;
+
+import com.jayway.jsonpath.JsonPath;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares reading meta.lastUpdated from OpenELIS webhook payloads with {@link JsonPath}, which parses the whole
+ * payload into a document, against the streaming {@link ResourceMetaReader}. The service request payload has its meta
+ * after the contained resources which is the worst case for the streaming reader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourceMetaReaderBenchmark {
+
+    @Param({"Patient", "ServiceRequest"})
+    private String resource;
+
+    private String payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        payload = IOUtils.resourceToString("/payloads/" + resource + ".json", StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String jsonPath() {
+        return JsonPath.read(payload, "meta.lastUpdated");
+    }
+
+    @Benchmark
+    public String streaming() {
+        return ResourceMetaReader.readLastUpdated(payload);
+    }
+}
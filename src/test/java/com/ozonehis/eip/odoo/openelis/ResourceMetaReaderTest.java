@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.ozonehis.eip.odoo.openelis.ResourceMetaReader.ResourceMeta;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+public class ResourceMetaReaderTest {
+
+    @Test
+    public void read_shouldReadTheVersionIdAndLastUpdated() {
+        ResourceMeta meta = ResourceMetaReader.read(
+                "{\"resourceType\":\"Patient\",\"id\":\"1\",\"meta\":{\"versionId\":\"2\",\"lastUpdated\":\"2025-02-05T19:45:00.123Z\"}}");
+
+        assertEquals("2", meta.versionId());
+        assertEquals("2025-02-05T19:45:00.123Z", meta.lastUpdated());
+    }
+
+    @Test
+    public void read_shouldIgnoreTheMetaOfContainedResources() throws Exception {
+        String payload = IOUtils.resourceToString("/payloads/ServiceRequest.json", StandardCharsets.UTF_8);
+
+        ResourceMeta meta = ResourceMetaReader.read(payload);
+
+        assertEquals("5", meta.versionId());
+        assertEquals("2025-02-05T19:45:00.456+03:00", meta.lastUpdated());
+    }
+
+    @Test
+    public void read_shouldReturnNullFieldsForAResourceWithNoMeta() {
+        ResourceMeta meta = ResourceMetaReader.read("{\"resourceType\":\"Patient\",\"id\":\"1\",\"active\":true}");
+
+        assertNull(meta.versionId());
+        assertNull(meta.lastUpdated());
+    }
+
+    @Test
+    public void read_shouldReturnNullForAMissingMetaField() {
+        ResourceMeta meta = ResourceMetaReader.read("{\"meta\":{\"tag\":[{\"code\":\"a\"}],\"versionId\":\"1\"}}");
+
+        assertEquals("1", meta.versionId());
+        assertNull(meta.lastUpdated());
+    }
+
+    @Test
+    public void read_shouldFailForAPayloadThatIsNotAJsonObject() {
+        RuntimeException e = assertThrows(RuntimeException.class, () -> ResourceMetaReader.read("[]"));
+        assertEquals("Expected a JSON object for the resource payload", e.getMessage());
+    }
+}
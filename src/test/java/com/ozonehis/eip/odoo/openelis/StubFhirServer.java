@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A minimal local FHIR server stub for benchmarks, it waits for the configured latency to simulate the server
+ * processing time and then echoes back the request body or an empty resource of the requested type. Gzip encoded
+ * request bodies are decoded and responses are gzip encoded when the client accepts it and gzip is enabled.
+ */
+public class StubFhirServer implements AutoCloseable {
+
+    private static final String CAPABILITY_STATEMENT =
+            "{\"resourceType\":\"CapabilityStatement\",\"status\":\"active\",\"kind\":\"instance\","
+                    + "\"fhirVersion\":\"4.0.1\",\"format\":[\"json\"]}";
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private volatile Headers lastRequestHeaders;
+
+    public StubFhirServer(long latencyMillis) throws IOException {
+        this(latencyMillis, false);
+    }
+
+    public StubFhirServer(long latencyMillis, boolean gzip) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", exchange -> {
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+
+            lastRequestHeaders = exchange.getRequestHeaders();
+            if ("gzip".equalsIgnoreCase(lastRequestHeaders.getFirst("Content-Encoding"))) {
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                    body = in.readAllBytes();
+                }
+            }
+
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (exchange.getRequestURI().getPath().endsWith("/metadata")) {
+                body = CAPABILITY_STATEMENT.getBytes(StandardCharsets.UTF_8);
+            } else if (body.length == 0) {
+                String path = exchange.getRequestURI().getPath();
+                String type = path.substring(path.lastIndexOf('/') + 1);
+                body = ("{\"resourceType\":\"" + type + "\"}").getBytes(StandardCharsets.UTF_8);
+            }
+
+            exchange.getResponseHeaders().add("Content-Type", Constants.MEDIA_TYPE);
+            final String acceptEncoding = lastRequestHeaders.getFirst("Accept-Encoding");
+            if (gzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                try (OutputStream out = new GZIPOutputStream(encoded)) {
+                    out.write(body);
+                }
+
+                body = encoded.toByteArray();
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+
+        server.start();
+    }
+
+    /**
+     * Gets the base url of the server.
+     *
+     * @return the url
+     */
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Gets the headers of the last request received by the server.
+     *
+     * @return the headers
+     */
+    public Headers getLastRequestHeaders() {
+        return lastRequestHeaders;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
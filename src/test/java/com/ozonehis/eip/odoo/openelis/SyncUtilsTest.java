@@ -14,7 +14,6 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import ca.uhn.fhir.context.FhirContext;
 import java.time.LocalDateTime;
 import org.hl7.fhir.r4.model.DomainResource;
-import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -25,36 +24,33 @@ public class SyncUtilsTest {
 
     private static final String RESOURCE_TYPE = "Patient";
 
-    @AfterEach
-    void tearDown() {
-        SyncUtils.clearLastUpdatedTimestamps();
-    }
+    private DedupeIndex index = new DedupeIndex();
 
     @Test
     public void skip_shouldReturnFalseNullWhenPayloadIsNull() {
-        assertFalse(SyncUtils.skip(RESOURCE_TYPE, "5", null));
+        assertFalse(SyncUtils.skip(index, RESOURCE_TYPE, "5", null));
     }
 
     @Test
     public void skip_shouldReturnFalseWhenPreviousLastUpdatedTimestampIsNull() {
         String payload = "{\"meta\": {\"lastUpdated\": \"2019-06-30T18:25:43.511Z\"}}";
-        assertFalse(SyncUtils.skip(RESOURCE_TYPE, "5", payload));
+        assertFalse(SyncUtils.skip(index, RESOURCE_TYPE, "5", payload));
     }
 
     @Test
     public void skip_shouldReturnFalseIfLastUpdatedIsAfterPreviousTimestamp() {
         final String id = "5";
         String payload = "{\"meta\": {\"lastUpdated\": \"2019-06-30T18:25:43.511Z\"}}";
-        SyncUtils.saveLastUpdated(RESOURCE_TYPE, id, DateUtils.deserialize("2019-06-30T18:25:43.510Z"));
-        assertFalse(SyncUtils.skip(RESOURCE_TYPE, id, payload));
+        SyncUtils.saveLastUpdated(index, RESOURCE_TYPE, id, DateUtils.deserialize("2019-06-30T18:25:43.510Z"));
+        assertFalse(SyncUtils.skip(index, RESOURCE_TYPE, id, payload));
     }
 
     @Test
     public void skip_shouldReturnTrueIfLastUpdatedTimestampIsBeforePreviousOne() {
         final String id = "5";
-        SyncUtils.saveLastUpdated(RESOURCE_TYPE, id, DateUtils.deserialize("2019-06-30T18:25:43.512Z"));
+        SyncUtils.saveLastUpdated(index, RESOURCE_TYPE, id, DateUtils.deserialize("2019-06-30T18:25:43.512Z"));
         String payload = "{\"meta\": {\"lastUpdated\": \"2019-06-30T18:25:43.511Z\"}}";
-        assertTrue(SyncUtils.skip(RESOURCE_TYPE, id, payload));
+        assertTrue(SyncUtils.skip(index, RESOURCE_TYPE, id, payload));
     }
 
     @Test
@@ -62,29 +58,29 @@ public class SyncUtilsTest {
         final String id = "5";
         final String lastUpdated = "2019-06-30T18:25:43.511Z";
         String payload = "{\"meta\": {\"lastUpdated\": \"" + lastUpdated + "\"}}";
-        SyncUtils.saveLastUpdated(RESOURCE_TYPE, id, DateUtils.deserialize(lastUpdated));
-        assertTrue(SyncUtils.skip(RESOURCE_TYPE, id, payload));
+        SyncUtils.saveLastUpdated(index, RESOURCE_TYPE, id, DateUtils.deserialize(lastUpdated));
+        assertTrue(SyncUtils.skip(index, RESOURCE_TYPE, id, payload));
     }
 
     @Test
     public void skip_shouldReturnTrueForAProcessedDeletedEvent() {
         final String id = "5";
-        SyncUtils.saveLastUpdated(RESOURCE_TYPE, id, null);
-        assertTrue(SyncUtils.skip(RESOURCE_TYPE, id, null));
+        SyncUtils.saveLastUpdated(index, RESOURCE_TYPE, id, null);
+        assertTrue(SyncUtils.skip(index, RESOURCE_TYPE, id, null));
     }
 
     @Test
-    public void clearLastUpdatedTimestamps_shouldClearAllSavedTimestamps() {
+    public void skip_shouldReturnFalseOnceTheIndexIsCleared() {
         String payload1 = "{\"meta\": {\"lastUpdated\": \"2022-01-01T10:00:00.000Z\"}}";
-        SyncUtils.saveLastUpdated(RESOURCE_TYPE, "1", DateUtils.deserialize("2022-01-01T10:00:00.001Z"));
-        SyncUtils.saveLastUpdated(RESOURCE_TYPE, "2", null);
-        assertTrue(SyncUtils.skip(RESOURCE_TYPE, "1", payload1));
-        assertTrue(SyncUtils.skip(RESOURCE_TYPE, "2", null));
+        SyncUtils.saveLastUpdated(index, RESOURCE_TYPE, "1", DateUtils.deserialize("2022-01-01T10:00:00.001Z"));
+        SyncUtils.saveLastUpdated(index, RESOURCE_TYPE, "2", null);
+        assertTrue(SyncUtils.skip(index, RESOURCE_TYPE, "1", payload1));
+        assertTrue(SyncUtils.skip(index, RESOURCE_TYPE, "2", null));
 
-        SyncUtils.clearLastUpdatedTimestamps();
+        index.clear();
 
-        assertFalse(SyncUtils.skip(RESOURCE_TYPE, "1", payload1));
-        assertFalse(SyncUtils.skip(RESOURCE_TYPE, "2", null));
+        assertFalse(SyncUtils.skip(index, RESOURCE_TYPE, "1", payload1));
+        assertFalse(SyncUtils.skip(index, RESOURCE_TYPE, "2", null));
     }
 
     @Test
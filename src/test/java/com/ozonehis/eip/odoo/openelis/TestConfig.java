@@ -7,14 +7,37 @@
  */
 package com.ozonehis.eip.odoo.openelis;
 
+import ca.uhn.fhir.context.FhirContext;
 import com.ozonehis.eip.odoo.openelis.fhir.OdooFhirClient;
+import com.ozonehis.eip.odoo.openelis.task.FingerprintStore;
+import com.ozonehis.eip.odoo.openelis.task.RetryQueue;
 import org.mockito.Mockito;
 import org.springframework.context.annotation.Bean;
 
 public class TestConfig {
 
+    @Bean
+    public FhirContext fhirContext() {
+        return FhirContext.forR4();
+    }
+
+    @Bean
+    public DedupeIndex dedupeIndex() {
+        return new DedupeIndex();
+    }
+
     @Bean
     public OdooFhirClient odooFhirClient() {
         return Mockito.mock(OdooFhirClient.class);
     }
+
+    @Bean
+    public FingerprintStore fingerprintStore() {
+        return Mockito.mock(FingerprintStore.class);
+    }
+
+    @Bean
+    public RetryQueue retryQueue() {
+        return Mockito.mock(RetryQueue.class);
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void execute_shouldReduceTheLimitWhenARequestFailsWithAServerError() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 8, 5000, 0.5);
+
+        assertThrows(
+                InternalErrorException.class,
+                () -> limiter.execute(() -> {
+                    throw new InternalErrorException("test");
+                }));
+
+        assertEquals(4, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void execute_shouldNotReduceTheLimitWhenARequestFailsWithAClientError() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 8, 5000, 0.5);
+
+        assertThrows(
+                InvalidRequestException.class,
+                () -> limiter.execute(() -> {
+                    throw new InvalidRequestException("test");
+                }));
+
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    public void release_shouldReduceTheLimitWhenARequestExceedsTheLatencyTarget() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 8, 1, 0.5);
+        final long start = limiter.acquire();
+        Thread.sleep(20);
+
+        limiter.release(start, false);
+
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void release_shouldReduceTheLimitOnceForTheRequestsInFlightAtTheTimeOfACut() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 8, 5000, 0.5);
+        final long first = limiter.acquire();
+        final long second = limiter.acquire();
+
+        limiter.release(first, true);
+        limiter.release(second, true);
+        assertEquals(4, limiter.getLimit());
+
+        limiter.release(limiter.acquire(), true);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void release_shouldNotReduceTheLimitBelowTheMinimum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 3, 4, 5000, 0.5);
+
+        limiter.release(limiter.acquire(), true);
+
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    public void release_shouldGrowTheLimitBackOnlyWhileAtLeastHalfOfItIsInUse() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 8, 5000, 0.5);
+        limiter.release(limiter.acquire(), true);
+        assertEquals(4, limiter.getLimit());
+
+        for (int i = 0; i < 10; i++) {
+            final long first = limiter.acquire();
+            final long second = limiter.acquire();
+            limiter.release(first, false);
+            limiter.release(second, false);
+        }
+
+        // Two requests in flight use half of a limit of 4 but not of 5
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void acquire_shouldBlockUntilARequestSlotIsReleased() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 2, 5000, 0.5);
+        limiter.release(limiter.acquire(), true);
+        final long start = limiter.acquire();
+        CompletableFuture<Long> blocked = CompletableFuture.supplyAsync(limiter::acquire);
+
+        Thread.sleep(200);
+        assertFalse(blocked.isDone());
+
+        limiter.release(start, false);
+        limiter.release(blocked.get(5, TimeUnit.SECONDS), false);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void isOverload_shouldReturnTrueForATimeout() {
+        assertTrue(AdaptiveConcurrencyLimiter.isOverload(
+                new FhirClientConnectionException(new SocketTimeoutException("Read timed out"))));
+        assertTrue(AdaptiveConcurrencyLimiter.isOverload(
+                new RuntimeException(new HttpTimeoutException("request timed out"))));
+        assertFalse(AdaptiveConcurrencyLimiter.isOverload(new RuntimeException("test")));
+    }
+}
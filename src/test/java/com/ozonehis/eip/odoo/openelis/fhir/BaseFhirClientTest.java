@@ -7,10 +7,26 @@
  */
 package com.ozonehis.eip.odoo.openelis.fhir;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.HookParams;
+import ca.uhn.fhir.interceptor.api.IAnonymousInterceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.interceptor.executor.InterceptorService;
+import ca.uhn.fhir.rest.api.EncodingEnum;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.client.api.ClientResponseContext;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.IHttpClient;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import ca.uhn.fhir.rest.client.api.IRestfulClient;
+import ca.uhn.fhir.rest.client.api.IRestfulClientFactory;
 import ca.uhn.fhir.rest.gclient.ICreate;
 import ca.uhn.fhir.rest.gclient.ICreateTyped;
 import ca.uhn.fhir.rest.gclient.ICriterion;
@@ -18,21 +34,44 @@ import ca.uhn.fhir.rest.gclient.ICriterionInternal;
 import ca.uhn.fhir.rest.gclient.IDelete;
 import ca.uhn.fhir.rest.gclient.IDeleteTyped;
 import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.gclient.IRead;
+import ca.uhn.fhir.rest.gclient.IReadExecutable;
+import ca.uhn.fhir.rest.gclient.IReadTyped;
+import ca.uhn.fhir.rest.gclient.ITransaction;
+import ca.uhn.fhir.rest.gclient.ITransactionTyped;
 import ca.uhn.fhir.rest.gclient.IUntypedQuery;
 import ca.uhn.fhir.rest.gclient.IUpdate;
-import ca.uhn.fhir.rest.gclient.IUpdateExecutable;
 import ca.uhn.fhir.rest.gclient.IUpdateTyped;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.MethodNotAllowedException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import ca.uhn.fhir.rest.server.exceptions.UnprocessableEntityException;
+import com.ozonehis.eip.odoo.openelis.Constants;
+import com.ozonehis.eip.odoo.openelis.StubFhirServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleType;
+import org.hl7.fhir.r4.model.Bundle.HTTPVerb;
+import org.hl7.fhir.r4.model.DomainResource;
 import org.hl7.fhir.r4.model.Patient;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.powermock.reflect.Whitebox;
 
 @ExtendWith(MockitoExtension.class)
 public class BaseFhirClientTest {
@@ -112,6 +151,52 @@ public class BaseFhirClientTest {
         Assertions.assertEquals(extId, criterion.getParameterValue(null));
     }
 
+    @Test
+    public void getById_shouldReturnTheResourceWithTheMatchingId() {
+        Patient patient = new Patient();
+        IRead mockRead = Mockito.mock(IRead.class);
+        IReadTyped mockReadTyped = Mockito.mock(IReadTyped.class);
+        IReadExecutable mockReadExecutable = Mockito.mock(IReadExecutable.class);
+        Mockito.when(mockFhirClient.read()).thenReturn(mockRead);
+        Mockito.when(mockRead.resource(Patient.class)).thenReturn(mockReadTyped);
+        Mockito.when(mockReadTyped.withId("p1")).thenReturn(mockReadExecutable);
+        Mockito.when(mockReadExecutable.execute()).thenReturn(patient);
+
+        Assertions.assertEquals(patient, client.getById(Patient.class, "p1"));
+    }
+
+    @Test
+    public void getById_shouldRetryATransientFailure() {
+        RetrySettings settings = RetrySettings.parse(3, 0, 0, "503", "", "", BaseFhirClient.OPERATION_READ, 0.2);
+        Whitebox.setInternalState(client, "retryPolicy", new RetryPolicy("Odoo", settings, null));
+        Patient patient = new Patient();
+        IRead mockRead = Mockito.mock(IRead.class);
+        IReadTyped mockReadTyped = Mockito.mock(IReadTyped.class);
+        IReadExecutable mockReadExecutable = Mockito.mock(IReadExecutable.class);
+        Mockito.when(mockFhirClient.read()).thenReturn(mockRead);
+        Mockito.when(mockRead.resource(Patient.class)).thenReturn(mockReadTyped);
+        Mockito.when(mockReadTyped.withId("p1")).thenReturn(mockReadExecutable);
+        Mockito.when(mockReadExecutable.execute())
+                .thenThrow(new UnclassifiedServerFailureException(503, "test"))
+                .thenReturn(patient);
+
+        Assertions.assertEquals(patient, client.getById(Patient.class, "p1"));
+        Mockito.verify(mockReadExecutable, Mockito.times(2)).execute();
+    }
+
+    @Test
+    public void getById_shouldReturnNullIfTheResourceIsDeleted() {
+        IRead mockRead = Mockito.mock(IRead.class);
+        IReadTyped mockReadTyped = Mockito.mock(IReadTyped.class);
+        IReadExecutable mockReadExecutable = Mockito.mock(IReadExecutable.class);
+        Mockito.when(mockFhirClient.read()).thenReturn(mockRead);
+        Mockito.when(mockRead.resource(Patient.class)).thenReturn(mockReadTyped);
+        Mockito.when(mockReadTyped.withId("p1")).thenReturn(mockReadExecutable);
+        Mockito.when(mockReadExecutable.execute()).thenThrow(new ResourceGoneException("test"));
+
+        Assertions.assertNull(client.getById(Patient.class, "p1"));
+    }
+
     @Test
     public void create_shouldCallFhirClientWithResource() {
         Patient patient = new Patient();
@@ -209,56 +294,64 @@ public class BaseFhirClientTest {
         Assertions.assertEquals(msg, e.getMessage());
     }
 
+    private IHttpResponse mockRawUpdate(String url, String payload, int status, String body) throws Exception {
+        IRestfulClientFactory factory = Mockito.mock(IRestfulClientFactory.class);
+        IHttpClient httpClient = Mockito.mock(IHttpClient.class);
+        IHttpRequest request = Mockito.mock(IHttpRequest.class);
+        IHttpResponse response = Mockito.mock(IHttpResponse.class);
+        Whitebox.setInternalState(client, "clientFactory", factory);
+        Mockito.when(mockFhirClient.getServerBase()).thenReturn("http://odoo/fhir");
+        Mockito.when(mockFhirClient.getInterceptorService()).thenReturn(new InterceptorService());
+        Mockito.when(factory.getHttpClient(
+                        ArgumentMatchers.argThat(b -> b != null && b.toString().equals(url)),
+                        ArgumentMatchers.isNull(),
+                        ArgumentMatchers.isNull(),
+                        ArgumentMatchers.eq(RequestTypeEnum.PUT),
+                        ArgumentMatchers.anyList()))
+                .thenReturn(httpClient);
+        Mockito.when(httpClient.createByteRequest(
+                        ArgumentMatchers.any(),
+                        ArgumentMatchers.eq(payload),
+                        ArgumentMatchers.eq(ca.uhn.fhir.rest.api.Constants.CT_FHIR_JSON_NEW),
+                        ArgumentMatchers.eq(EncodingEnum.JSON)))
+                .thenReturn(request);
+        Mockito.when(request.execute()).thenReturn(response);
+        Mockito.when(response.getStatus()).thenReturn(status);
+        Mockito.when(response.readEntity()).thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        return response;
+    }
+
     @Test
-    public void update_shouldCallFhirClientWithResourceAndId() {
+    public void update_shouldSendThePayloadWithoutParsingIt() throws Exception {
         final String id = "12345";
-        final String data = "{}";
-        IUpdate mockUpdate = Mockito.mock(IUpdate.class);
-        IUpdateTyped mockUpdateTyped = Mockito.mock(IUpdateTyped.class);
-        IUpdateExecutable mockExecutable = Mockito.mock(IUpdateExecutable.class);
-        MethodOutcome outcome = new MethodOutcome();
-        outcome.setResponseStatusCode(200);
-        Mockito.when(mockFhirClient.update()).thenReturn(mockUpdate);
-        Mockito.when(mockUpdate.resource(data)).thenReturn(mockUpdateTyped);
-        Mockito.when(mockUpdateTyped.withId(id)).thenReturn(mockExecutable);
-        Mockito.when(mockExecutable.execute()).thenReturn(outcome);
+        // Not valid JSON so that the update fails if the payload is parsed
+        final String data = "{\"resourceType\":\"Patient\",";
+        IHttpResponse response = mockRawUpdate("http://odoo/fhir/Patient/" + id, data, 200, "{}");
 
-        client.update("Patient", id, data);
+        assertEquals(200, client.update("Patient", id, data));
 
-        Mockito.verify(mockExecutable).execute();
+        Mockito.verify(mockFhirClient, Mockito.never()).update();
+        Mockito.verify(response).close();
     }
 
     @Test
-    public void update_shouldThrowRuntimeExceptionWhenCalledWithResourceAndIdAndExceptionOccurs() {
+    public void update_shouldThrowRuntimeExceptionWhenCalledWithResourceAndIdAndExceptionOccurs() throws Exception {
         final String id = "12345";
         final String data = "{}";
-        IUpdate mockUpdate = Mockito.mock(IUpdate.class);
-        IUpdateTyped mockUpdateTyped = Mockito.mock(IUpdateTyped.class);
-        IUpdateExecutable mockExecutable = Mockito.mock(IUpdateExecutable.class);
-        Mockito.when(mockFhirClient.update()).thenReturn(mockUpdate);
-        Mockito.when(mockUpdate.resource(data)).thenReturn(mockUpdateTyped);
-        Mockito.when(mockUpdateTyped.withId(id)).thenReturn(mockExecutable);
-        Mockito.when(mockExecutable.execute()).thenThrow(new RuntimeException("test"));
+        IHttpResponse response = mockRawUpdate("http://odoo/fhir/Patient/" + id, data, 500, "");
 
         RuntimeException e = assertThrows(RuntimeException.class, () -> client.update("Patient", id, data));
 
         Assertions.assertEquals("Failed to update Patient in Odoo", e.getMessage());
+        Mockito.verify(response).close();
     }
 
     @Test
-    public void update_shouldThrowRuntimeExceptionWhenCalledWithResourceAndIdAndOutcomeIsNotOk() {
+    public void update_shouldThrowRuntimeExceptionWhenCalledWithResourceAndIdAndOutcomeIsNotOk() throws Exception {
         final String id = "12345";
         final String data = "{}";
-        final int status = 403;
-        IUpdate mockUpdate = Mockito.mock(IUpdate.class);
-        IUpdateTyped mockUpdateTyped = Mockito.mock(IUpdateTyped.class);
-        IUpdateExecutable mockExecutable = Mockito.mock(IUpdateExecutable.class);
-        Mockito.when(mockFhirClient.update()).thenReturn(mockUpdate);
-        Mockito.when(mockUpdate.resource(data)).thenReturn(mockUpdateTyped);
-        Mockito.when(mockUpdateTyped.withId(id)).thenReturn(mockExecutable);
-        MethodOutcome outcome = new MethodOutcome();
-        outcome.setResponseStatusCode(status);
-        Mockito.when(mockExecutable.execute()).thenReturn(outcome);
+        final int status = 201;
+        mockRawUpdate("http://odoo/fhir/Patient/" + id, data, status, "");
 
         RuntimeException e = assertThrows(RuntimeException.class, () -> client.update("Patient", id, data));
 
@@ -266,6 +359,38 @@ public class BaseFhirClientTest {
         Assertions.assertEquals(msg, e.getMessage());
     }
 
+    @Test
+    public void update_shouldFailWithTheResponseBodyOfAnErrorResponse() throws Exception {
+        final String id = "12345";
+        final String data = "{}";
+        mockRawUpdate("http://odoo/fhir/Patient/" + id, data, 403, "Access denied");
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> client.update("Patient", id, data));
+
+        Assertions.assertEquals("Access denied", e.getMessage());
+    }
+
+    @Test
+    public void update_shouldCallTheResponseInterceptorsBeforeReadingTheBody() throws Exception {
+        final String id = "12345";
+        final String data = "{}";
+        IHttpResponse response = mockRawUpdate("http://odoo/fhir/Patient/" + id, data, 200, "{}");
+        IAnonymousInterceptor interceptor = Mockito.mock(IAnonymousInterceptor.class);
+        mockFhirClient.getInterceptorService().registerAnonymousInterceptor(Pointcut.CLIENT_RESPONSE, interceptor);
+
+        client.update("Patient", id, data);
+
+        ArgumentCaptor<HookParams> paramsCaptor = ArgumentCaptor.forClass(HookParams.class);
+        InOrder inOrder = Mockito.inOrder(interceptor, response);
+        inOrder.verify(interceptor).invoke(ArgumentMatchers.eq(Pointcut.CLIENT_RESPONSE), paramsCaptor.capture());
+        inOrder.verify(response).readEntity();
+        assertSame(response, paramsCaptor.getValue().get(IHttpResponse.class));
+        assertSame(mockFhirClient, paramsCaptor.getValue().get(IRestfulClient.class));
+        assertSame(
+                response,
+                paramsCaptor.getValue().get(ClientResponseContext.class).getHttpResponse());
+    }
+
     @Test
     public void delete_shouldCallFhirClientWithResource() {
         final String id = "12345";
@@ -316,4 +441,262 @@ public class BaseFhirClientTest {
         final String msg = "Unexpected status code " + status + " when deleting Patient/" + id + " from Odoo";
         Assertions.assertEquals(msg, e.getMessage());
     }
+
+    @Test
+    public void batch_shouldSendTheEntriesInBundlesOfTheConfiguredSize() {
+        Whitebox.setInternalState(client, "batchSize", 2);
+        Whitebox.setInternalState(client, "batchType", "transaction");
+        Patient patient1 = new Patient();
+        patient1.setId("p1");
+        Patient patient2 = new Patient();
+        patient2.setId("p2");
+        List<BatchEntry> entries =
+                List.of(BatchEntry.update(patient1), BatchEntry.update(patient2), BatchEntry.delete("Patient", "p3"));
+        ITransaction mockTransaction = Mockito.mock(ITransaction.class);
+        ITransactionTyped mockTransactionTyped = Mockito.mock(ITransactionTyped.class);
+        ArgumentCaptor<Bundle> bundleCaptor = ArgumentCaptor.forClass(Bundle.class);
+        Mockito.when(mockFhirClient.transaction()).thenReturn(mockTransaction);
+        Mockito.when(mockTransaction.withBundle(bundleCaptor.capture())).thenReturn(mockTransactionTyped);
+        Mockito.when(mockTransactionTyped.execute())
+                .thenReturn(createResponse("200 OK", "201 Created"), createResponse("204 No Content"));
+
+        client.batch(entries);
+
+        List<Bundle> bundles = bundleCaptor.getAllValues();
+        Assertions.assertEquals(2, bundles.size());
+        Assertions.assertEquals(BundleType.TRANSACTION, bundles.get(0).getType());
+        Assertions.assertEquals(2, bundles.get(0).getEntry().size());
+        Assertions.assertEquals(
+                HTTPVerb.PUT, bundles.get(0).getEntry().get(0).getRequest().getMethod());
+        Assertions.assertEquals(
+                "Patient/p1", bundles.get(0).getEntry().get(0).getRequest().getUrl());
+        Assertions.assertEquals(patient1, bundles.get(0).getEntry().get(0).getResource());
+        Assertions.assertEquals(
+                "Patient/p2", bundles.get(0).getEntry().get(1).getRequest().getUrl());
+        Assertions.assertEquals(1, bundles.get(1).getEntry().size());
+        Assertions.assertEquals(
+                HTTPVerb.DELETE, bundles.get(1).getEntry().get(0).getRequest().getMethod());
+        Assertions.assertEquals(
+                "Patient/p3", bundles.get(1).getEntry().get(0).getRequest().getUrl());
+        entries.forEach(e -> Assertions.assertTrue(e.isSuccessful()));
+        Mockito.verify(client, Mockito.never()).update(ArgumentMatchers.any(DomainResource.class));
+        Mockito.verify(client, Mockito.never()).delete(ArgumentMatchers.anyString(), ArgumentMatchers.anyString());
+    }
+
+    @Test
+    public void batch_shouldRetryFailedEntriesIndividually() {
+        Whitebox.setInternalState(client, "batchSize", 10);
+        Whitebox.setInternalState(client, "batchType", "batch");
+        Patient patient1 = new Patient();
+        patient1.setId("p1");
+        Patient patient2 = new Patient();
+        patient2.setId("p2");
+        BatchEntry entry1 = BatchEntry.update(patient1);
+        BatchEntry entry2 = BatchEntry.update(patient2);
+        ITransaction mockTransaction = Mockito.mock(ITransaction.class);
+        ITransactionTyped mockTransactionTyped = Mockito.mock(ITransactionTyped.class);
+        Mockito.when(mockFhirClient.transaction()).thenReturn(mockTransaction);
+        Mockito.when(mockTransaction.withBundle(ArgumentMatchers.any(Bundle.class)))
+                .thenReturn(mockTransactionTyped);
+        Mockito.when(mockTransactionTyped.execute()).thenReturn(createResponse("200 OK", "500 Internal Server Error"));
+        Mockito.doThrow(new RuntimeException("test")).when(client).update(patient2);
+
+        client.batch(List.of(entry1, entry2));
+
+        Assertions.assertTrue(entry1.isSuccessful());
+        Assertions.assertFalse(entry2.isSuccessful());
+        Assertions.assertEquals("test", entry2.getError().getMessage());
+        Mockito.verify(client, Mockito.never()).update(patient1);
+    }
+
+    @Test
+    public void batch_shouldFallbackToIndividualRequestsIfTheServerDoesNotSupportBatches() {
+        Whitebox.setInternalState(client, "batchSize", 1);
+        Whitebox.setInternalState(client, "batchType", "batch");
+        Patient patient = new Patient();
+        patient.setId("p1");
+        BatchEntry updateEntry = BatchEntry.update(patient);
+        BatchEntry deleteEntry = BatchEntry.delete("Patient", "p2");
+        ITransaction mockTransaction = Mockito.mock(ITransaction.class);
+        ITransactionTyped mockTransactionTyped = Mockito.mock(ITransactionTyped.class);
+        Mockito.when(mockFhirClient.transaction()).thenReturn(mockTransaction);
+        Mockito.when(mockTransaction.withBundle(ArgumentMatchers.any(Bundle.class)))
+                .thenReturn(mockTransactionTyped);
+        Mockito.when(mockTransactionTyped.execute()).thenThrow(new MethodNotAllowedException("test"));
+        Mockito.doNothing().when(client).update(patient);
+        Mockito.doNothing().when(client).delete("Patient", "p2");
+
+        client.batch(List.of(updateEntry, deleteEntry));
+
+        Assertions.assertTrue(updateEntry.isSuccessful());
+        Assertions.assertTrue(deleteEntry.isSuccessful());
+        Mockito.verify(mockFhirClient).transaction();
+        Mockito.verify(client).update(patient);
+        Mockito.verify(client).delete("Patient", "p2");
+    }
+
+    @Test
+    public void batch_shouldFailAllTheEntriesWithoutSendingThemIndividuallyIfTheServerFails() {
+        Whitebox.setInternalState(client, "batchSize", 10);
+        Whitebox.setInternalState(client, "batchType", "batch");
+        Patient patient = new Patient();
+        patient.setId("p1");
+        BatchEntry updateEntry = BatchEntry.update(patient);
+        BatchEntry deleteEntry = BatchEntry.delete("Patient", "p2");
+        ITransaction mockTransaction = Mockito.mock(ITransaction.class);
+        ITransactionTyped mockTransactionTyped = Mockito.mock(ITransactionTyped.class);
+        Mockito.when(mockFhirClient.transaction()).thenReturn(mockTransaction);
+        Mockito.when(mockTransaction.withBundle(ArgumentMatchers.any(Bundle.class)))
+                .thenReturn(mockTransactionTyped);
+        InternalErrorException error = new InternalErrorException("test");
+        Mockito.when(mockTransactionTyped.execute()).thenThrow(error);
+
+        client.batch(List.of(updateEntry, deleteEntry));
+
+        Assertions.assertEquals(error, updateEntry.getError());
+        Assertions.assertEquals(error, deleteEntry.getError());
+        Mockito.verify(client, Mockito.never()).update(ArgumentMatchers.any(DomainResource.class));
+        Mockito.verify(client, Mockito.never()).delete(ArgumentMatchers.anyString(), ArgumentMatchers.anyString());
+    }
+
+    @Test
+    public void batch_shouldRetryTheEntriesIndividuallyIfTheServerRejectsTheBundle() {
+        Whitebox.setInternalState(client, "batchSize", 10);
+        Whitebox.setInternalState(client, "batchType", "transaction");
+        Patient patient = new Patient();
+        patient.setId("p1");
+        BatchEntry entry = BatchEntry.update(patient);
+        ITransaction mockTransaction = Mockito.mock(ITransaction.class);
+        ITransactionTyped mockTransactionTyped = Mockito.mock(ITransactionTyped.class);
+        Mockito.when(mockFhirClient.transaction()).thenReturn(mockTransaction);
+        Mockito.when(mockTransaction.withBundle(ArgumentMatchers.any(Bundle.class)))
+                .thenReturn(mockTransactionTyped);
+        Mockito.when(mockTransactionTyped.execute()).thenThrow(new UnprocessableEntityException("test"));
+        Mockito.doNothing().when(client).update(patient);
+
+        client.batch(List.of(entry));
+
+        Assertions.assertTrue(entry.isSuccessful());
+        Mockito.verify(client).update(patient);
+    }
+
+    private Bundle createResponse(String... statuses) {
+        Bundle bundle = new Bundle();
+        for (String status : statuses) {
+            bundle.addEntry().getResponse().setStatus(status);
+        }
+
+        return bundle;
+    }
+
+    @Test
+    public void getFhirClient_shouldUseTheSharedContextWithAClientFactoryPerClient() {
+        FhirContext fhirContext = FhirContext.forR4();
+        OdooFhirClient odooClient = new OdooFhirClient();
+        Whitebox.setInternalState(odooClient, "serverUrl", "http://localhost:8069");
+        Whitebox.setInternalState(odooClient, "username", "admin");
+        Whitebox.setInternalState(odooClient, "password", "admin".toCharArray());
+        odooClient.setFhirContext(fhirContext);
+        OpenElisFhirClient openElisClient = new OpenElisFhirClient();
+        Whitebox.setInternalState(openElisClient, "baseUrl", "http://localhost:8080");
+        openElisClient.setFhirContext(fhirContext);
+
+        assertSame(fhirContext, odooClient.getFhirClient().getFhirContext());
+        assertSame(fhirContext, openElisClient.getFhirClient().getFhirContext());
+        assertNotSame(odooClient.clientFactory, openElisClient.clientFactory);
+    }
+
+    @Test
+    public void createHttpClient_shouldCreateAPoolWithTheConfiguredSizeAndReportItsMetrics() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        OdooFhirClient odooClient = new OdooFhirClient();
+        odooClient.setMeterRegistry(registry);
+        HttpClientSettings settings =
+                new HttpClientSettings(20, 5, 1000, 1000, 100, 100, 100, Constants.HTTP_CLIENT_APACHE, false, true);
+
+        try (CloseableHttpClient httpClient = odooClient.createHttpClient(settings)) {
+            assertEquals(
+                    20,
+                    registry.get("eip.http.pool.max")
+                            .tag("target", "Odoo")
+                            .gauge()
+                            .value());
+            assertEquals(
+                    0,
+                    registry.get("eip.http.pool.connections")
+                            .tag("target", "Odoo")
+                            .tag("state", "leased")
+                            .gauge()
+                            .value());
+            assertEquals(
+                    0,
+                    registry.get("eip.http.pool.connections")
+                            .tag("state", "pending")
+                            .gauge()
+                            .value());
+        }
+    }
+
+    @Test
+    public void createHttpClient_shouldSizeThePoolToTheSyncConcurrencyAndWebhookWorkersByDefault() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        OdooFhirClient odooClient = new OdooFhirClient();
+        odooClient.setMeterRegistry(registry);
+        Whitebox.setInternalState(odooClient, "syncConcurrency", 6);
+        Whitebox.setInternalState(odooClient, "webhookWorkers", 4);
+        HttpClientSettings settings =
+                new HttpClientSettings(0, 0, 1000, 0, 100, 100, 100, Constants.HTTP_CLIENT_APACHE, false, true);
+
+        try (CloseableHttpClient httpClient = odooClient.createHttpClient(settings)) {
+            assertEquals(10, registry.get("eip.http.pool.max").gauge().value());
+        }
+    }
+
+    @Test
+    public void createWriteLimiter_shouldLimitTheWritesToTheSyncConcurrencyAndWebhookWorkersByDefault() {
+        AdaptiveConcurrencyLimiter limiter = new OdooFhirClient().createWriteLimiter(10);
+
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void delete_shouldReduceTheWriteLimitWhenTheServerFails() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("Odoo", 1, 8, 5000, 0.5);
+        Whitebox.setInternalState(client, "writeLimiter", limiter);
+        IDelete mockDelete = Mockito.mock(IDelete.class);
+        IDeleteTyped mockDeleteTyped = Mockito.mock(IDeleteTyped.class);
+        Mockito.when(mockFhirClient.delete()).thenReturn(mockDelete);
+        Mockito.when(mockDelete.resourceById("Patient", "12345")).thenReturn(mockDeleteTyped);
+        Mockito.when(mockDeleteTyped.execute()).thenThrow(new InternalErrorException("test"));
+
+        assertThrows(RuntimeException.class, () -> client.delete("Patient", "12345"));
+
+        assertEquals(4, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void update_shouldSendTheRequestWithTheHttpClientOfTheFhirClient() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        try (StubFhirServer server = new StubFhirServer(0)) {
+            OdooFhirClient odooClient = new OdooFhirClient();
+            Whitebox.setInternalState(odooClient, "serverUrl", server.getUrl());
+            Whitebox.setInternalState(odooClient, "username", "admin");
+            Whitebox.setInternalState(odooClient, "password", "admin".toCharArray());
+            odooClient.setFhirContext(FhirContext.forR4());
+            odooClient.setMeterRegistry(registry);
+            Patient patient = new Patient();
+            patient.setId("Patient/1");
+
+            odooClient.update(patient);
+
+            assertEquals(
+                    1,
+                    registry.get("eip.http.pool.connections")
+                            .tag("target", "Odoo")
+                            .tag("state", "available")
+                            .gauge()
+                            .value());
+        }
+    }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class CircuitBreakerTest {
+
+    private static void fail(CircuitBreaker breaker) {
+        assertThrows(
+                InternalErrorException.class,
+                () -> breaker.execute(() -> {
+                    throw new InternalErrorException("test");
+                }));
+    }
+
+    @Test
+    public void execute_shouldOpenTheCircuitWhenTheFailureRateReachesTheThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 50, 4, 4, 60000, 1);
+        breaker.execute(() -> 1);
+        breaker.execute(() -> 1);
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        fail(breaker);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.isOpen());
+        AtomicInteger calls = new AtomicInteger();
+        RuntimeException e = assertThrows(RuntimeException.class, () -> breaker.execute(calls::incrementAndGet));
+        assertEquals("Not sending the request to test while its circuit is open", e.getMessage());
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void execute_shouldNotCountAClientErrorAsAFailure() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 50, 2, 2, 60000, 1);
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(
+                    InvalidRequestException.class,
+                    () -> breaker.execute(() -> {
+                        throw new InvalidRequestException("test");
+                    }));
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void execute_shouldOnlyComputeTheFailureRateOverTheWindow() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 100, 2, 2, 60000, 1);
+        fail(breaker);
+        breaker.execute(() -> 1);
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        fail(breaker);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void execute_shouldCloseTheCircuitWhenTheTrialRequestsSucceed() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 100, 1, 1, 50, 2);
+        fail(breaker);
+        Thread.sleep(100);
+        assertFalse(breaker.isOpen());
+
+        breaker.execute(() -> 1);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.execute(() -> 1);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void execute_shouldReopenTheCircuitWhenATrialRequestFails() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 100, 1, 1, 50, 2);
+        fail(breaker);
+        Thread.sleep(100);
+
+        fail(breaker);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    public void acquire_shouldOnlyLetTheTrialRequestsThroughWhenHalfOpen() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 100, 1, 1, 50, 1);
+        fail(breaker);
+        Thread.sleep(100);
+
+        assertTrue(breaker.acquire());
+
+        assertThrows(RuntimeException.class, breaker::acquire);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import com.ozonehis.eip.odoo.openelis.Constants;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+public class FhirClientPropertiesTest {
+
+    @Test
+    public void bind_shouldBindTheSettingsUnderThePrefixOfTheTarget() {
+        Binder binder = new Binder(new MapConfigurationPropertySource(Map.of(
+                "eip.odoo.fhir.http.max-connections", "12",
+                "eip.odoo.fhir.http.socket-timeout", "5000",
+                "eip.odoo.fhir.http.gzip.responses", "false",
+                "eip.odoo.fhir.retry.max-attempts", "5",
+                "eip.openelis.retry.max-attempts", "2")));
+
+        OdooFhirClientProperties properties =
+                binder.bindOrCreate("eip.odoo.fhir", Bindable.ofInstance(new OdooFhirClientProperties()));
+
+        HttpClientSettings http = properties.toHttpClientSettings();
+        assertEquals(12, http.maxConnections());
+        assertEquals(5000, http.socketTimeout());
+        assertEquals(Constants.DEFAULT_HTTP_CONNECT_TIMEOUT, http.connectTimeout());
+        assertFalse(http.gzipResponses());
+        RetrySettings retry = properties.toRetrySettings();
+        assertEquals(5, retry.maxAttempts());
+        assertEquals(Set.of("read", "search", "update", "delete", "transaction"), retry.operations());
+    }
+
+    @Test
+    public void toRetrySettings_shouldOnlyRetryTheReadsOfOpenElisByDefault() {
+        assertEquals(
+                Set.of("read", "search"),
+                new OpenElisFhirClientProperties().toRetrySettings().operations());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.ozonehis.eip.odoo.openelis.FhirUtils;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the startup cost of the fhir contexts used by the OpenELIS and Odoo clients in a fresh JVM, a context per
+ * client as it used to be against a single shared context. Besides the time, the heap retained by the contexts is
+ * reported in the retainedMb counter.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class FhirContextBenchmark {
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+
+        private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+        public double retainedMb;
+
+        private long before;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            before = usedHeap();
+        }
+
+        void measure(Object retained) {
+            retainedMb = (usedHeap() - before) / (1024.0 * 1024.0);
+            // Keep the contexts reachable until the heap is measured
+            if (retained.hashCode() == 0) {
+                retainedMb = -1;
+            }
+        }
+
+        private static long usedHeap() {
+            System.gc();
+            return MEMORY.getHeapMemoryUsage().getUsed();
+        }
+    }
+
+    @Benchmark
+    public Object contextPerClient(Footprint footprint) {
+        List<FhirContext> contexts =
+                List.of(FhirUtils.warmUp(FhirContext.forR4()), FhirUtils.warmUp(FhirContext.forR4()));
+        footprint.measure(contexts);
+        return contexts;
+    }
+
+    @Benchmark
+    public Object sharedContext(Footprint footprint) {
+        FhirContext context = FhirUtils.warmUp(FhirContext.forR4());
+        footprint.measure(context);
+        return context;
+    }
+}
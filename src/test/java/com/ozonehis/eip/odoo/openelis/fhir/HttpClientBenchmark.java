@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import com.ozonehis.eip.odoo.openelis.StubFhirServer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.hl7.fhir.r4.model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.powermock.reflect.Whitebox;
+
+/**
+ * Compares the throughput and latency of pushing a batch of resources concurrently to a stub Odoo server that takes a
+ * fixed time to respond when using the pooled apache client versus the JDK client, the stub only speaks HTTP/1.1 so
+ * this measures the client overhead rather than the gain from multiplexing over HTTP/2.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HttpClientBenchmark {
+
+    private static final int RESOURCE_COUNT = 200;
+
+    @Param({"apache", "jdk"})
+    private String client;
+
+    @Param({"16"})
+    private int concurrency;
+
+    @Param({"5"})
+    private long latency;
+
+    private StubFhirServer server;
+
+    private ExecutorService executor;
+
+    private OdooFhirClient odooClient;
+
+    private List<Patient> patients;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new StubFhirServer(latency);
+        odooClient = new OdooFhirClient();
+        Whitebox.setInternalState(odooClient, "serverUrl", server.getUrl());
+        Whitebox.setInternalState(odooClient, "username", "admin");
+        Whitebox.setInternalState(odooClient, "password", "admin".toCharArray());
+        odooClient.getProperties().getHttp().setClient(client);
+        Whitebox.setInternalState(odooClient, "syncConcurrency", concurrency);
+        executor = Executors.newFixedThreadPool(concurrency);
+        patients = new ArrayList<>(RESOURCE_COUNT);
+        for (int i = 0; i < RESOURCE_COUNT; i++) {
+            Patient patient = new Patient();
+            patient.setId("Patient/" + i);
+            patient.addName().setFamily("Doe").addGiven("John");
+            patients.add(patient);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        server.close();
+    }
+
+    @Benchmark
+    public void push() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(RESOURCE_COUNT);
+        for (Patient patient : patients) {
+            futures.add(CompletableFuture.runAsync(() -> odooClient.update(patient), executor));
+        }
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+    }
+}
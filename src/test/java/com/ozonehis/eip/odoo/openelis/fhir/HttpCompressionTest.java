@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ozonehis.eip.odoo.openelis.StubFhirServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.powermock.reflect.Whitebox;
+
+public class HttpCompressionTest {
+
+    private StubFhirServer server;
+
+    private MeterRegistry registry;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = new StubFhirServer(0, true);
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    private OdooFhirClient createClient(String httpClient, boolean gzipRequests, boolean gzipResponses) {
+        OdooFhirClient client = new OdooFhirClient();
+        Whitebox.setInternalState(client, "serverUrl", server.getUrl());
+        Whitebox.setInternalState(client, "username", "admin");
+        Whitebox.setInternalState(client, "password", "admin".toCharArray());
+        client.getProperties().getHttp().setClient(httpClient);
+        client.getProperties().getHttp().getGzip().setRequests(gzipRequests);
+        client.getProperties().getHttp().getGzip().setResponses(gzipResponses);
+        client.setMeterRegistry(registry);
+        return client;
+    }
+
+    private static String createPayload() {
+        StringBuilder payload = new StringBuilder("{\"resourceType\":\"Patient\",\"id\":\"1\",\"name\":[");
+        for (int i = 0; i < 100; i++) {
+            payload.append(i == 0 ? "" : ",").append("{\"family\":\"Doe\",\"given\":[\"John\"]}");
+        }
+
+        return payload.append("]}").toString();
+    }
+
+    private double getBytes(String name, String direction) {
+        return registry.get(name)
+                .tag("target", "Odoo")
+                .tag("direction", direction)
+                .counter()
+                .count();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"apache", "jdk"})
+    public void update_shouldGzipTheRequestAndResponseBodiesWhenEnabled(String httpClient) {
+        OdooFhirClient client = createClient(httpClient, true, true);
+
+        assertEquals(200, client.update("Patient", "1", createPayload()));
+
+        assertEquals("gzip", server.getLastRequestHeaders().getFirst("Content-Encoding"));
+        assertTrue(getBytes("eip.http.bytes.wire", "sent") < getBytes("eip.http.bytes.content", "sent"));
+        assertTrue(getBytes("eip.http.bytes.wire", "received") < getBytes("eip.http.bytes.content", "received"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"apache", "jdk"})
+    public void update_shouldNotGzipTheRequestAndResponseBodiesWhenDisabled(String httpClient) {
+        OdooFhirClient client = createClient(httpClient, false, false);
+
+        assertEquals(200, client.update("Patient", "1", createPayload()));
+
+        assertNull(server.getLastRequestHeaders().getFirst("Content-Encoding"));
+        assertNull(server.getLastRequestHeaders().getFirst("Accept-Encoding"));
+        assertTrue(getBytes("eip.http.bytes.content", "sent") > 0);
+        assertEquals(getBytes("eip.http.bytes.content", "sent"), getBytes("eip.http.bytes.wire", "sent"));
+        assertEquals(getBytes("eip.http.bytes.content", "received"), getBytes("eip.http.bytes.wire", "received"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"apache", "jdk"})
+    public void update_shouldOnlyAcceptGzipResponsesByDefault(String httpClient) {
+        OdooFhirClient client = createClient(httpClient, false, true);
+
+        assertEquals(200, client.update("Patient", "1", createPayload()));
+
+        assertNull(server.getLastRequestHeaders().getFirst("Content-Encoding"));
+        assertTrue(server.getLastRequestHeaders().getFirst("Accept-Encoding").contains("gzip"));
+        assertTrue(getBytes("eip.http.bytes.wire", "received") < getBytes("eip.http.bytes.content", "received"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"apache", "jdk"})
+    public void update_shouldSendTheCredentialsRegisteredWithTheGenericClient(String httpClient) {
+        OdooFhirClient client = createClient(httpClient, false, false);
+
+        assertEquals(200, client.update("Patient", "1", createPayload()));
+
+        assertEquals(
+                "Basic " + Base64.getEncoder().encodeToString("admin:admin".getBytes(StandardCharsets.UTF_8)),
+                server.getLastRequestHeaders().getFirst("Authorization"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"apache", "jdk"})
+    public void getById_shouldDecodeAGzipResponse(String httpClient) {
+        OdooFhirClient client = createClient(httpClient, false, true);
+
+        Patient patient = client.getById(Patient.class, "Patient");
+
+        assertEquals("Patient", patient.fhirType());
+    }
+}
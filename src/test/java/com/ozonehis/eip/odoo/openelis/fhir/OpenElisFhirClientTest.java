@@ -9,31 +9,54 @@ package com.ozonehis.eip.odoo.openelis.fhir;
 
 import static org.hl7.fhir.r4.model.Subscription.SubscriptionChannelType.RESTHOOK;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.SummaryEnum;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.IHttpClient;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import ca.uhn.fhir.rest.client.api.IRestfulClientFactory;
 import ca.uhn.fhir.rest.gclient.ICriterion;
 import ca.uhn.fhir.rest.gclient.ICriterionInternal;
+import ca.uhn.fhir.rest.gclient.IGetPage;
+import ca.uhn.fhir.rest.gclient.IGetPageTyped;
+import ca.uhn.fhir.rest.gclient.IGetPageUntyped;
 import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.gclient.ISort;
 import ca.uhn.fhir.rest.gclient.IUntypedQuery;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import com.ozonehis.eip.odoo.openelis.Constants;
 import com.ozonehis.eip.odoo.openelis.DateUtils;
+import java.io.ByteArrayInputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.Patient;
 import org.hl7.fhir.r4.model.Subscription;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.powermock.reflect.Whitebox;
 
 @ExtendWith(MockitoExtension.class)
 public class OpenElisFhirClientTest {
@@ -47,11 +70,17 @@ public class OpenElisFhirClientTest {
     @Mock
     private IQuery mockQuery;
 
+    @Mock
+    private ISort mockSort;
+
+    private static final int PAGE_SIZE = 50;
+
     private OpenElisFhirClient client;
 
     @BeforeEach
     public void setUp() {
         client = Mockito.spy(new OpenElisFhirClient());
+        Whitebox.setInternalState(client, "pageSize", PAGE_SIZE);
         Mockito.lenient().doReturn(mockFhirClient).when(client).getFhirClient();
     }
 
@@ -123,11 +152,8 @@ public class OpenElisFhirClientTest {
     @Test
     public void getModifiedResources_shouldReturnModifiedResources() {
         LocalDateTime since = LocalDateTime.now().minusDays(1);
-        List<DomainResource> resources = new ArrayList<>();
         DomainResource resource1 = Mockito.mock(DomainResource.class);
         DomainResource resource2 = Mockito.mock(DomainResource.class);
-        resources.add(resource1);
-        resources.add(resource2);
         Bundle bundle = new Bundle();
         bundle.addEntry().setResource(resource1);
         bundle.addEntry().setResource(resource2);
@@ -135,28 +161,223 @@ public class OpenElisFhirClientTest {
         Mockito.when(mockUnTypedQuery.forResource(DomainResource.class)).thenReturn(mockQuery);
         ArgumentCaptor<ICriterion> argCaptor = ArgumentCaptor.forClass(ICriterion.class);
         Mockito.when(mockQuery.where(argCaptor.capture())).thenReturn(mockQuery);
+        Mockito.when(mockQuery.sort()).thenReturn(mockSort);
+        Mockito.when(mockSort.ascending("_lastUpdated")).thenReturn(mockQuery);
+        Mockito.when(mockQuery.count(PAGE_SIZE)).thenReturn(mockQuery);
         Mockito.when(mockQuery.execute()).thenReturn(bundle);
 
-        List<DomainResource> resultingResources = client.getModifiedResources(DomainResource.class, since);
+        Iterator<List<DomainResource>> pages = client.getModifiedResources(DomainResource.class, since, null);
 
-        assertEquals(resources.size(), resultingResources.size());
+        assertTrue(pages.hasNext());
+        assertEquals(List.of(resource1, resource2), pages.next());
+        assertFalse(pages.hasNext());
         ICriterionInternal criterion = (ICriterionInternal) argCaptor.getValue();
         assertEquals("_lastUpdated", criterion.getParameterName());
         assertEquals("ge" + DateUtils.serialize(since), criterion.getParameterValue(null));
     }
 
     @Test
-    public void getModifiedResources_shouldReturnEmptyListWhenNoResourcesAreFound() {
+    public void getModifiedResources_shouldExcludeResourcesModifiedFromTheUpperBound() {
         LocalDateTime since = LocalDateTime.now().minusDays(1);
+        LocalDateTime until = LocalDateTime.now();
+        Mockito.when(mockFhirClient.search()).thenReturn(mockUnTypedQuery);
+        Mockito.when(mockUnTypedQuery.forResource(DomainResource.class)).thenReturn(mockQuery);
+        Mockito.when(mockQuery.where(ArgumentMatchers.any(ICriterion.class))).thenReturn(mockQuery);
+        ArgumentCaptor<ICriterion> argCaptor = ArgumentCaptor.forClass(ICriterion.class);
+        Mockito.when(mockQuery.and(argCaptor.capture())).thenReturn(mockQuery);
+        Mockito.when(mockQuery.sort()).thenReturn(mockSort);
+        Mockito.when(mockSort.ascending("_lastUpdated")).thenReturn(mockQuery);
+        Mockito.when(mockQuery.count(PAGE_SIZE)).thenReturn(mockQuery);
+        Mockito.when(mockQuery.execute()).thenReturn(new Bundle());
+
+        assertFalse(
+                client.getModifiedResources(DomainResource.class, since, until).hasNext());
+
+        ICriterionInternal criterion = (ICriterionInternal) argCaptor.getValue();
+        assertEquals("_lastUpdated", criterion.getParameterName());
+        assertEquals("lt" + DateUtils.serialize(until), criterion.getParameterValue(null));
+    }
+
+    @Test
+    public void getModifiedSummary_shouldReturnTheTotalAndTheLastUpdatedOfTheSearchResult() {
+        LocalDateTime since = LocalDateTime.now().minusDays(1);
+        LocalDateTime serverTime = LocalDateTime.now().minusMinutes(1).truncatedTo(ChronoUnit.MILLIS);
         Bundle bundle = new Bundle();
+        bundle.setTotal(5);
+        bundle.getMeta()
+                .setLastUpdated(
+                        Date.from(serverTime.atZone(ZoneId.systemDefault()).toInstant()));
         Mockito.when(mockFhirClient.search()).thenReturn(mockUnTypedQuery);
         Mockito.when(mockUnTypedQuery.forResource(DomainResource.class)).thenReturn(mockQuery);
         ArgumentCaptor<ICriterion> argCaptor = ArgumentCaptor.forClass(ICriterion.class);
         Mockito.when(mockQuery.where(argCaptor.capture())).thenReturn(mockQuery);
+        Mockito.when(mockQuery.summaryMode(SummaryEnum.COUNT)).thenReturn(mockQuery);
         Mockito.when(mockQuery.execute()).thenReturn(bundle);
 
-        List<DomainResource> resultingResources = client.getModifiedResources(DomainResource.class, since);
+        assertEquals(new SearchSummary(5, serverTime), client.getModifiedSummary(DomainResource.class, since));
+        ICriterionInternal criterion = (ICriterionInternal) argCaptor.getValue();
+        assertEquals("ge" + DateUtils.serialize(since), criterion.getParameterValue(null));
+    }
+
+    @Test
+    public void getModifiedSummary_shouldReturnANullServerTimeIfTheServerDoesNotReportIt() {
+        Mockito.when(mockFhirClient.search()).thenReturn(mockUnTypedQuery);
+        Mockito.when(mockUnTypedQuery.forResource(DomainResource.class)).thenReturn(mockQuery);
+        Mockito.when(mockQuery.where(ArgumentMatchers.any(ICriterion.class))).thenReturn(mockQuery);
+        Mockito.when(mockQuery.summaryMode(SummaryEnum.COUNT)).thenReturn(mockQuery);
+        Mockito.when(mockQuery.execute()).thenReturn(new Bundle());
+
+        Assertions.assertNull(client.getModifiedSummary(DomainResource.class, LocalDateTime.now())
+                .serverTime());
+    }
+
+    @Test
+    public void getOldestLastUpdated_shouldReturnTheLastUpdatedOfTheFirstResourceSortedByLastUpdated() {
+        LocalDateTime oldest = LocalDateTime.now().minusDays(1).truncatedTo(ChronoUnit.MILLIS);
+        Patient patient = new Patient();
+        patient.getMeta()
+                .setLastUpdated(Date.from(oldest.atZone(ZoneId.systemDefault()).toInstant()));
+        Bundle bundle = new Bundle();
+        bundle.addEntry().setResource(patient);
+        Mockito.when(mockFhirClient.search()).thenReturn(mockUnTypedQuery);
+        Mockito.when(mockUnTypedQuery.forResource(DomainResource.class)).thenReturn(mockQuery);
+        Mockito.when(mockQuery.where(ArgumentMatchers.any(ICriterion.class))).thenReturn(mockQuery);
+        Mockito.when(mockQuery.sort()).thenReturn(mockSort);
+        Mockito.when(mockSort.ascending("_lastUpdated")).thenReturn(mockQuery);
+        Mockito.when(mockQuery.count(1)).thenReturn(mockQuery);
+        Mockito.when(mockQuery.execute()).thenReturn(bundle);
+
+        assertEquals(oldest, client.getOldestLastUpdated(DomainResource.class, oldest.minusDays(1), null));
+    }
+
+    @Test
+    public void getModifiedResources_shouldFetchTheNextPagesLazily() {
+        final String nextUrl = "http://test/fhir?_getpages=1&_getpagesoffset=2";
+        LocalDateTime since = LocalDateTime.now().minusDays(1);
+        DomainResource resource1 = Mockito.mock(DomainResource.class);
+        DomainResource resource2 = Mockito.mock(DomainResource.class);
+        Bundle bundle1 = new Bundle();
+        bundle1.addEntry().setResource(resource1);
+        bundle1.addLink().setRelation(Bundle.LINK_NEXT).setUrl(nextUrl);
+        Bundle bundle2 = new Bundle();
+        bundle2.addEntry().setResource(resource2);
+        Mockito.when(mockFhirClient.search()).thenReturn(mockUnTypedQuery);
+        Mockito.when(mockUnTypedQuery.forResource(DomainResource.class)).thenReturn(mockQuery);
+        Mockito.when(mockQuery.where(ArgumentMatchers.any(ICriterion.class))).thenReturn(mockQuery);
+        Mockito.when(mockQuery.sort()).thenReturn(mockSort);
+        Mockito.when(mockSort.ascending("_lastUpdated")).thenReturn(mockQuery);
+        Mockito.when(mockQuery.count(PAGE_SIZE)).thenReturn(mockQuery);
+        Mockito.when(mockQuery.execute()).thenReturn(bundle1);
+        IGetPage mockGetPage = Mockito.mock(IGetPage.class);
+        IGetPageUntyped mockGetPageUntyped = Mockito.mock(IGetPageUntyped.class);
+        IGetPageTyped mockGetPageTyped = Mockito.mock(IGetPageTyped.class);
+        Mockito.when(mockFhirClient.loadPage()).thenReturn(mockGetPage);
+        Mockito.when(mockGetPage.byUrl(nextUrl)).thenReturn(mockGetPageUntyped);
+        Mockito.when(mockGetPageUntyped.andReturnBundle(Bundle.class)).thenReturn(mockGetPageTyped);
+        Mockito.when(mockGetPageTyped.execute()).thenReturn(bundle2);
+
+        Iterator<List<DomainResource>> pages = client.getModifiedResources(DomainResource.class, since, null);
+
+        Mockito.verify(mockFhirClient, Mockito.never()).search();
+        assertEquals(List.of(resource1), pages.next());
+        Mockito.verify(mockFhirClient, Mockito.never()).loadPage();
+        assertEquals(List.of(resource2), pages.next());
+        assertFalse(pages.hasNext());
+    }
+
+    @Test
+    public void getModifiedResources_shouldReturnNoPagesWhenNoResourcesAreFound() {
+        LocalDateTime since = LocalDateTime.now().minusDays(1);
+        Bundle bundle = new Bundle();
+        Mockito.when(mockFhirClient.search()).thenReturn(mockUnTypedQuery);
+        Mockito.when(mockUnTypedQuery.forResource(DomainResource.class)).thenReturn(mockQuery);
+        ArgumentCaptor<ICriterion> argCaptor = ArgumentCaptor.forClass(ICriterion.class);
+        Mockito.when(mockQuery.where(argCaptor.capture())).thenReturn(mockQuery);
+        Mockito.when(mockQuery.sort()).thenReturn(mockSort);
+        Mockito.when(mockSort.ascending("_lastUpdated")).thenReturn(mockQuery);
+        Mockito.when(mockQuery.count(PAGE_SIZE)).thenReturn(mockQuery);
+        Mockito.when(mockQuery.execute()).thenReturn(bundle);
+
+        Iterator<List<DomainResource>> pages = client.getModifiedResources(DomainResource.class, since, null);
+
+        assertFalse(pages.hasNext());
+    }
+
+    private IHttpResponse mockRawSearch(IRestfulClientFactory factory, String url, int status, String payload)
+            throws Exception {
+        IHttpClient httpClient = Mockito.mock(IHttpClient.class);
+        IHttpRequest request = Mockito.mock(IHttpRequest.class);
+        IHttpResponse response = Mockito.mock(IHttpResponse.class);
+        Mockito.when(factory.getHttpClient(
+                        ArgumentMatchers.argThat(b -> b != null && b.toString().equals(url)),
+                        ArgumentMatchers.isNull(),
+                        ArgumentMatchers.isNull(),
+                        ArgumentMatchers.eq(RequestTypeEnum.GET),
+                        ArgumentMatchers.anyList()))
+                .thenReturn(httpClient);
+        Mockito.when(httpClient.createGetRequest(ArgumentMatchers.any(), ArgumentMatchers.eq(EncodingEnum.JSON)))
+                .thenReturn(request);
+        Mockito.when(request.execute()).thenReturn(response);
+        Mockito.when(response.getStatus()).thenReturn(status);
+        Mockito.lenient()
+                .when(response.readEntity())
+                .thenReturn(new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)));
+        return response;
+    }
+
+    @Test
+    public void getModifiedResources_shouldReadThePagesWithoutParsingTheResourcesIfRawIsEnabled() throws Exception {
+        LocalDateTime since = LocalDateTime.now().minusDays(1);
+        LocalDateTime until = LocalDateTime.now();
+        IRestfulClientFactory factory = Mockito.mock(IRestfulClientFactory.class);
+        Whitebox.setInternalState(client, "raw", true);
+        Whitebox.setInternalState(client, "clientFactory", factory);
+        Whitebox.setInternalState(client, "fhirContext", FhirContext.forR4Cached());
+        Mockito.when(mockFhirClient.getServerBase()).thenReturn("http://openelis/fhir");
+        final String url = "http://openelis/fhir/Patient?_lastUpdated="
+                + URLEncoder.encode("ge" + DateUtils.serialize(since), StandardCharsets.UTF_8) + "&_lastUpdated="
+                + URLEncoder.encode("lt" + DateUtils.serialize(until), StandardCharsets.UTF_8)
+                + "&_sort=_lastUpdated&_count=" + PAGE_SIZE;
+        final String nextUrl = "http://openelis/fhir?_getpages=abc&_getpagesoffset=50";
+        final String patient1 = "{\"resourceType\":\"Patient\",\"id\":\"p1\",\"active\":true}";
+        final String patient2 = "{\"resourceType\":\"Patient\",\"id\":\"p2\",\"active\":false}";
+        IHttpResponse response1 = mockRawSearch(
+                factory,
+                url,
+                200,
+                "{\"link\":[{\"relation\":\"next\",\"url\":\"" + nextUrl + "\"}],\"entry\":[{\"resource\":" + patient1
+                        + "}]}");
+        IHttpResponse response2 = mockRawSearch(factory, nextUrl, 200, "{\"entry\":[{\"resource\":" + patient2 + "}]}");
+
+        Iterator<List<Patient>> pages = client.getModifiedResources(Patient.class, since, until);
+
+        assertTrue(pages.hasNext());
+        Patient resource1 = pages.next().get(0);
+        assertEquals("p1", resource1.getIdPart());
+        assertEquals(patient1, RawPayload.get(resource1).json());
+        assertTrue(pages.hasNext());
+        assertEquals(patient2, RawPayload.get(pages.next().get(0)).json());
+        assertFalse(pages.hasNext());
+        Mockito.verify(response1).close();
+        Mockito.verify(response2).close();
+        Mockito.verify(mockFhirClient, Mockito.never()).search();
+    }
+
+    @Test
+    public void getModifiedResources_shouldFailForAnErrorResponseIfRawIsEnabled() throws Exception {
+        LocalDateTime since = LocalDateTime.now().minusDays(1);
+        IRestfulClientFactory factory = Mockito.mock(IRestfulClientFactory.class);
+        Whitebox.setInternalState(client, "raw", true);
+        Whitebox.setInternalState(client, "clientFactory", factory);
+        Mockito.when(mockFhirClient.getServerBase()).thenReturn("http://openelis/fhir");
+        final String url = "http://openelis/fhir/Patient?_lastUpdated="
+                + URLEncoder.encode("ge" + DateUtils.serialize(since), StandardCharsets.UTF_8)
+                + "&_sort=_lastUpdated&_count=" + PAGE_SIZE;
+        IHttpResponse response = mockRawSearch(factory, url, 500, "");
+
+        Iterator<List<Patient>> pages = client.getModifiedResources(Patient.class, since, null);
 
-        assertTrue(resultingResources.isEmpty());
+        assertThrows(InternalErrorException.class, pages::hasNext);
+        Mockito.verify(response).close();
     }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ca.uhn.fhir.context.FhirContext;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.ServiceRequest;
+import org.junit.jupiter.api.Test;
+
+public class RawBundleReaderTest {
+
+    private static final String PATIENT =
+            "{\"resourceType\":\"Patient\",\"id\":\"p1\",\"meta\":{\"versionId\":\"2\",\"lastUpdated\":\"2025-02-05T19:45:00.123Z\"},\"active\":true}";
+
+    private static <T extends DomainResource> RawBundleReader.Page<T> read(String payload, Class<T> resourceType) {
+        return RawBundleReader.read(new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)), resourceType);
+    }
+
+    @Test
+    public void read_shouldReadTheEntriesWithoutParsingThem() {
+        String bundle = "{\"resourceType\":\"Bundle\",\"type\":\"searchset\",\"link\":[{\"relation\":\"self\",\"url\":"
+                + "\"http://test/Patient\"},{\"relation\":\"next\",\"url\":\"http://test/Patient?page=2\"}],\"entry\":"
+                + "[{\"fullUrl\":\"http://test/Patient/p1\",\"resource\":" + PATIENT
+                + ",\"search\":{\"mode\":\"match\"}}]}";
+
+        RawBundleReader.Page<Patient> page = read(bundle, Patient.class);
+
+        assertEquals("http://test/Patient?page=2", page.nextUrl());
+        assertEquals(1, page.resources().size());
+        Patient patient = page.resources().get(0);
+        assertEquals("p1", patient.getIdPart());
+        assertEquals("2", patient.getMeta().getVersionId());
+        assertEquals(
+                "2025-02-05T19:45:00.123Z",
+                patient.getMeta().getLastUpdatedElement().getValueAsString());
+        // Only the id and meta are read
+        assertTrue(patient.getActiveElement().isEmpty());
+        assertEquals(PATIENT, RawPayload.get(patient).json());
+    }
+
+    @Test
+    public void read_shouldReturnNoNextUrlForTheLastPage() {
+        RawBundleReader.Page<Patient> page = read(
+                "{\"resourceType\":\"Bundle\",\"link\":[{\"relation\":\"self\",\"url\":\"http://test/Patient\"}]}",
+                Patient.class);
+
+        assertNull(page.nextUrl());
+        assertTrue(page.resources().isEmpty());
+    }
+
+    @Test
+    public void read_shouldReadTheSubjectOfAServiceRequest() {
+        String request = "{\"resourceType\":\"ServiceRequest\",\"id\":\"s1\",\"contained\":[{\"resourceType\":"
+                + "\"Patient\",\"id\":\"c1\",\"meta\":{\"versionId\":\"9\"}}],\"subject\":{\"reference\":"
+                + "\"Patient/p1\",\"display\":\"John\"}}";
+
+        RawBundleReader.Page<ServiceRequest> page =
+                read("{\"entry\":[{\"resource\":" + request + "}]}", ServiceRequest.class);
+
+        ServiceRequest serviceRequest = page.resources().get(0);
+        assertEquals("s1", serviceRequest.getIdPart());
+        assertEquals("Patient/p1", serviceRequest.getSubject().getReference());
+        assertNull(serviceRequest.getMeta().getVersionId());
+        assertEquals(request, RawPayload.get(serviceRequest).json());
+    }
+
+    @Test
+    public void read_shouldPreserveThePrecisionOfDecimals() {
+        String observation = "{\"resourceType\":\"Observation\",\"id\":\"o1\",\"valueQuantity\":{\"value\":1.50}}";
+
+        RawBundleReader.Page<Observation> page =
+                read("{\"entry\":[{\"resource\":" + observation + "}]}", Observation.class);
+
+        String json = RawPayload.get(page.resources().get(0)).json();
+        assertEquals(observation, json);
+        Observation parsed = FhirContext.forR4Cached().newJsonParser().parseResource(Observation.class, json);
+        assertEquals("1.50", parsed.getValueQuantity().getValueElement().getValueAsString());
+    }
+
+    @Test
+    public void read_shouldIgnoreEntriesOfOtherResourceTypes() {
+        String bundle = "{\"entry\":[{\"resource\":{\"resourceType\":\"OperationOutcome\",\"issue\":[]},\"search\":"
+                + "{\"mode\":\"outcome\"}},{\"resource\":" + PATIENT + "}]}";
+
+        RawBundleReader.Page<Patient> page = read(bundle, Patient.class);
+
+        assertEquals(1, page.resources().size());
+        assertEquals("p1", page.resources().get(0).getIdPart());
+    }
+
+    @Test
+    public void read_shouldExcludeTheMetaFromTheContentToCompare() {
+        String other = PATIENT.replace(
+                "\"versionId\":\"2\",\"lastUpdated\":\"2025-02-05T19:45:00.123Z\"",
+                "\"versionId\":\"3\",\"lastUpdated\":\"2025-02-06T10:00:00.000Z\"");
+        String changed = PATIENT.replace("true", "false");
+
+        RawPayload payload = RawPayload.get(read("{\"entry\":[{\"resource\":" + PATIENT + "}]}", Patient.class)
+                .resources()
+                .get(0));
+        RawPayload otherPayload = RawPayload.get(read("{\"entry\":[{\"resource\":" + other + "}]}", Patient.class)
+                .resources()
+                .get(0));
+        RawPayload changedPayload = RawPayload.get(read("{\"entry\":[{\"resource\":" + changed + "}]}", Patient.class)
+                .resources()
+                .get(0));
+
+        assertEquals(payload.withoutMeta(), otherPayload.withoutMeta());
+        assertNotEquals(payload.withoutMeta(), changedPayload.withoutMeta());
+        assertFalse(payload.withoutMeta().contains("lastUpdated"));
+    }
+
+    @Test
+    public void read_shouldFailForAPayloadThatIsNotAJsonObject() {
+        RuntimeException e = assertThrows(RuntimeException.class, () -> read("[]", Patient.class));
+        assertEquals("Expected a JSON object for the search result", e.getMessage());
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import com.ozonehis.eip.odoo.openelis.Constants;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RetryPolicyTest {
+
+    private MeterRegistry registry;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    private RetryPolicy createPolicy(int maxAttempts, double budgetRatio) {
+        RetrySettings settings = RetrySettings.parse(
+                maxAttempts,
+                100,
+                1000,
+                Constants.DEFAULT_HTTP_RETRY_STATUS_CODES,
+                Constants.DEFAULT_HTTP_RETRY_EXCEPTIONS,
+                Constants.DEFAULT_HTTP_RETRY_WRITE_EXCEPTIONS,
+                "read, update",
+                budgetRatio);
+        return new RetryPolicy("test", settings, registry) {
+
+            @Override
+            protected void sleep(long millis) {}
+        };
+    }
+
+    private double count(String outcome) {
+        return registry.get("eip.http.retry").tag("outcome", outcome).counter().count();
+    }
+
+    private static <T> T fail(RuntimeException e) {
+        throw e;
+    }
+
+    @Test
+    public void parse_shouldSplitTheCommaSeparatedValues() {
+        RetrySettings settings = RetrySettings.parse(
+                3, 1, 2, "502, 503", "java.net.ConnectException", "java.net.ConnectException,", "read,", 0.5);
+
+        assertEquals(Set.of(502, 503), settings.statusCodes());
+        assertEquals(List.of("java.net.ConnectException"), settings.exceptions());
+        assertEquals(List.of("java.net.ConnectException"), settings.writeExceptions());
+        assertEquals(Set.of("read"), settings.operations());
+    }
+
+    @Test
+    public void execute_shouldRetryAResponseWithARetryableStatusCode() {
+        RetryPolicy policy = createPolicy(3, 0.2);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = policy.execute(
+                BaseFhirClient.OPERATION_UPDATE,
+                () -> attempts.incrementAndGet() < 3
+                        ? fail(new UnclassifiedServerFailureException(502, "test"))
+                        : "ok");
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2, count("retried"));
+        assertEquals(1, count("recovered"));
+    }
+
+    @Test
+    public void execute_shouldRetryAnErrorCausedByARetryableException() {
+        RetryPolicy policy = createPolicy(2, 0.2);
+        AtomicInteger attempts = new AtomicInteger();
+
+        policy.execute(
+                BaseFhirClient.OPERATION_READ,
+                () -> attempts.incrementAndGet() < 2
+                        ? fail(new FhirClientConnectionException(new NoHttpResponseException("test")))
+                        : "ok");
+
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void execute_shouldNotRetryAWriteThatTimedOut() {
+        RetryPolicy policy = createPolicy(3, 0.2);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(
+                FhirClientConnectionException.class,
+                () -> policy.execute(BaseFhirClient.OPERATION_UPDATE, () -> {
+                    attempts.incrementAndGet();
+                    throw new FhirClientConnectionException(new SocketTimeoutException("Read timed out"));
+                }));
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void execute_shouldRetryAReadThatTimedOut() {
+        RetryPolicy policy = createPolicy(2, 0.2);
+        AtomicInteger attempts = new AtomicInteger();
+
+        policy.execute(
+                BaseFhirClient.OPERATION_READ,
+                () -> attempts.incrementAndGet() < 2
+                        ? fail(new FhirClientConnectionException(new SocketTimeoutException("Read timed out")))
+                        : "ok");
+
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void execute_shouldRetryAWriteThatFailedToConnect() {
+        RetryPolicy policy = createPolicy(2, 0.2);
+        AtomicInteger attempts = new AtomicInteger();
+
+        policy.execute(
+                BaseFhirClient.OPERATION_UPDATE,
+                () -> attempts.incrementAndGet() < 2
+                        ? fail(new FhirClientConnectionException(new ConnectTimeoutException("test")))
+                        : "ok");
+
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void execute_shouldNotRetryANonRetryableError() {
+        RetryPolicy policy = createPolicy(3, 0.2);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(
+                InvalidRequestException.class,
+                () -> policy.execute(BaseFhirClient.OPERATION_UPDATE, () -> {
+                    attempts.incrementAndGet();
+                    throw new InvalidRequestException("test");
+                }));
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void execute_shouldNotRetryAnOperationThatIsNotConfigured() {
+        RetryPolicy policy = createPolicy(3, 0.2);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(
+                UnclassifiedServerFailureException.class,
+                () -> policy.execute(BaseFhirClient.OPERATION_CREATE, () -> {
+                    attempts.incrementAndGet();
+                    throw new UnclassifiedServerFailureException(503, "test");
+                }));
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void execute_shouldGiveUpAfterTheMaximumAttempts() {
+        RetryPolicy policy = createPolicy(3, 0.2);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(
+                UnclassifiedServerFailureException.class,
+                () -> policy.execute(BaseFhirClient.OPERATION_UPDATE, () -> {
+                    attempts.incrementAndGet();
+                    throw new UnclassifiedServerFailureException(503, "test");
+                }));
+
+        assertEquals(3, attempts.get());
+        assertEquals(2, count("retried"));
+        assertEquals(1, count("exhausted"));
+    }
+
+    @Test
+    public void execute_shouldNotRetryWhenTheRetryBudgetIsSpent() {
+        RetryPolicy policy = createPolicy(2, 0);
+        AtomicInteger attempts = new AtomicInteger();
+
+        for (int i = 0; i < 11; i++) {
+            assertThrows(
+                    UnclassifiedServerFailureException.class,
+                    () -> policy.execute(BaseFhirClient.OPERATION_UPDATE, () -> {
+                        attempts.incrementAndGet();
+                        throw new UnclassifiedServerFailureException(503, "test");
+                    }));
+        }
+
+        // The reserve of 10 retries is spent by the first requests
+        assertEquals(21, attempts.get());
+        assertEquals(1, count("throttled"));
+    }
+
+    @Test
+    public void getDelay_shouldReturnARandomDelayUpToTheExponentialBackoff() {
+        RetryPolicy policy = createPolicy(3, 0.2);
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(policy.getDelay(1) <= 100);
+            assertTrue(policy.getDelay(2) <= 200);
+            assertTrue(policy.getDelay(10) <= 1000);
+        }
+    }
+}
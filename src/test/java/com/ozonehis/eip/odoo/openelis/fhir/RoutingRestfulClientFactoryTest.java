@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.client.apache.ApacheHttpClient;
+import ca.uhn.fhir.rest.client.api.IHttpClient;
+import ca.uhn.fhir.rest.client.api.IRestfulClientFactory;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class RoutingRestfulClientFactoryTest {
+
+    @Mock
+    private IRestfulClientFactory mockOdooFactory;
+
+    @Mock
+    private IRestfulClientFactory mockOpenElisFactory;
+
+    @Mock
+    private IHttpClient mockHttpClient;
+
+    @Test
+    public void getInstance_shouldSetTheRoutingFactoryOnTheContextOnce() {
+        FhirContext fhirContext = FhirContext.forR4();
+
+        RoutingRestfulClientFactory factory = RoutingRestfulClientFactory.getInstance(fhirContext);
+
+        assertSame(factory, fhirContext.getRestfulClientFactory());
+        assertSame(factory, RoutingRestfulClientFactory.getInstance(fhirContext));
+    }
+
+    @Test
+    public void getHttpClient_shouldUseTheFactoryRegisteredForTheLongestMatchingServerBase() {
+        RoutingRestfulClientFactory factory = new RoutingRestfulClientFactory(FhirContext.forR4());
+        factory.register("http://localhost/fhir", mockOpenElisFactory);
+        factory.register("http://localhost/fhir/odoo", mockOdooFactory);
+        StringBuilder url = new StringBuilder("http://localhost/fhir/odoo/Patient/1");
+        Mockito.when(mockOdooFactory.getHttpClient(url, null, null, RequestTypeEnum.GET, List.of()))
+                .thenReturn(mockHttpClient);
+
+        assertSame(mockHttpClient, factory.getHttpClient(url, null, null, RequestTypeEnum.GET, List.of()));
+        Mockito.verifyNoInteractions(mockOpenElisFactory);
+    }
+
+    @Test
+    public void getHttpClient_shouldUseTheDefaultClientForAnUnregisteredServer() {
+        RoutingRestfulClientFactory factory = new RoutingRestfulClientFactory(FhirContext.forR4());
+        factory.register("http://localhost/fhir", mockOpenElisFactory);
+
+        IHttpClient httpClient = factory.getHttpClient(
+                new StringBuilder("http://other/fhir/Patient/1"), null, null, RequestTypeEnum.GET, List.of());
+
+        assertInstanceOf(ApacheHttpClient.class, httpClient);
+        Mockito.verifyNoInteractions(mockOpenElisFactory);
+    }
+
+    @Test
+    public void unregister_shouldRemoveTheFactoryForTheServer() {
+        RoutingRestfulClientFactory factory = new RoutingRestfulClientFactory(FhirContext.forR4());
+        factory.register("http://localhost/fhir", mockOpenElisFactory);
+
+        factory.unregister("http://localhost/fhir", mockOpenElisFactory);
+
+        IHttpClient httpClient = factory.getHttpClient(
+                new StringBuilder("http://localhost/fhir/Patient/1"), null, null, RequestTypeEnum.GET, List.of());
+        assertInstanceOf(ApacheHttpClient.class, httpClient);
+        Mockito.verifyNoInteractions(mockOpenElisFactory);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir.jdk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import com.ozonehis.eip.odoo.openelis.Constants;
+import com.ozonehis.eip.odoo.openelis.StubFhirServer;
+import com.ozonehis.eip.odoo.openelis.fhir.OdooFhirClient;
+import java.net.http.HttpClient;
+import org.hl7.fhir.r4.model.CapabilityStatement;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.powermock.reflect.Whitebox;
+
+public class JdkRestfulClientFactoryTest {
+
+    private StubFhirServer server;
+
+    private JdkRestfulClientFactory factory;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = new StubFhirServer(0);
+        factory = new JdkRestfulClientFactory(FhirContext.forR4Cached());
+        factory.setServerValidationMode(ServerValidationModeEnum.NEVER);
+        factory.setConnectTimeout(1000);
+        factory.setSocketTimeout(5000);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void getNativeHttpClient_shouldCreateAnHttp2ClientWithTheConfiguredConnectTimeout() {
+        HttpClient httpClient = factory.getNativeHttpClient();
+
+        assertEquals(HttpClient.Version.HTTP_2, httpClient.version());
+        assertEquals(1000, httpClient.connectTimeout().get().toMillis());
+    }
+
+    @Test
+    public void newGenericClient_shouldSendAnUpdateAndParseTheResponse() {
+        IGenericClient client = factory.newGenericClient(server.getUrl() + "/fhir");
+        Patient patient = new Patient();
+        patient.setId("Patient/1");
+        patient.addName().setFamily("Doe");
+
+        var outcome = client.update().resource(patient).execute();
+
+        assertEquals(200, outcome.getResponseStatusCode());
+        assertEquals("Doe", ((Patient) outcome.getResource()).getNameFirstRep().getFamily());
+    }
+
+    @Test
+    public void newGenericClient_shouldReadAResource() {
+        IGenericClient client = factory.newGenericClient(server.getUrl() + "/fhir");
+
+        CapabilityStatement statement =
+                client.capabilities().ofType(CapabilityStatement.class).execute();
+
+        assertEquals("4.0.1", statement.getFhirVersion().toCode());
+    }
+
+    @Test
+    public void newGenericClient_shouldFailWhenTheServerIsNotReachable() {
+        final String url = server.getUrl() + "/fhir";
+        server.close();
+        IGenericClient client = factory.newGenericClient(url);
+
+        assertThrows(
+                RuntimeException.class,
+                () -> client.read().resource(Patient.class).withId("1").execute());
+    }
+
+    @Test
+    public void createClientFactory_shouldUseTheJdkClientWhenSelected() {
+        OdooFhirClient odooClient = new OdooFhirClient();
+        Whitebox.setInternalState(odooClient, "serverUrl", server.getUrl());
+        Whitebox.setInternalState(odooClient, "username", "admin");
+        Whitebox.setInternalState(odooClient, "password", "admin".toCharArray());
+        odooClient.getProperties().getHttp().setClient(Constants.HTTP_CLIENT_JDK);
+        Patient patient = new Patient();
+        patient.setId("Patient/1");
+
+        odooClient.update(patient);
+
+        assertInstanceOf(JdkRestfulClientFactory.class, Whitebox.getInternalState(odooClient, "clientFactory"));
+    }
+
+    @Test
+    public void createClientFactory_shouldFailForAnUnsupportedClient() {
+        OdooFhirClient odooClient = new OdooFhirClient();
+        Whitebox.setInternalState(odooClient, "serverUrl", server.getUrl());
+        odooClient.getProperties().getHttp().setClient("other");
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> odooClient.getById(Patient.class, "1"));
+        assertEquals("Unsupported http client other for Odoo", e.getMessage());
+    }
+}
@@ -7,17 +7,21 @@
  */
 package com.ozonehis.eip.odoo.openelis.fhir.web;
 
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ozonehis.eip.odoo.openelis.Constants;
 import com.ozonehis.eip.odoo.openelis.DateUtils;
+import com.ozonehis.eip.odoo.openelis.DedupeIndex;
 import com.ozonehis.eip.odoo.openelis.SyncUtils;
 import com.ozonehis.eip.odoo.openelis.TestConfig;
 import com.ozonehis.eip.odoo.openelis.fhir.OdooFhirClient;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.Map;
+import java.util.Objects;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -27,6 +31,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.context.TestExecutionListeners;
 import org.springframework.test.context.TestPropertySource;
@@ -51,6 +56,7 @@ import org.springframework.web.context.WebApplicationContext;
 @TestPropertySource(properties = "EIP_ODOO_FHIR_URL=")
 @TestPropertySource(properties = "EIP_ODOO_FHIR_USERNAME=")
 @TestPropertySource(properties = "EIP_ODOO_FHIR_PASSWORD=")
+@TestPropertySource(properties = "EIP_SYNC_TASK_LAST_RUN_TS_FILE=")
 public class FhirControllerTest {
 
     private static final ObjectMapper MAPPER = new ObjectMapper();
@@ -60,6 +66,9 @@ public class FhirControllerTest {
     @Autowired
     private OdooFhirClient mockOdooClient;
 
+    @Autowired
+    private DedupeIndex dedupeIndex;
+
     @Autowired
     private WebApplicationContext wac;
 
@@ -72,7 +81,7 @@ public class FhirControllerTest {
 
     @AfterEach
     public void tearDown() {
-        SyncUtils.clearLastUpdatedTimestamps();
+        dedupeIndex.clear();
         Mockito.reset(mockOdooClient);
     }
 
@@ -92,7 +101,7 @@ public class FhirControllerTest {
         ResultActions result = mockMvc.perform(builder);
 
         result.andExpect(status().isOk());
-        Assertions.assertEquals(lastUpdated, SyncUtils.getLastUpdated(resType, id));
+        awaitLastUpdated(resType, id, lastUpdated);
     }
 
     @Test
@@ -105,14 +114,14 @@ public class FhirControllerTest {
         builder.contentType(Constants.MEDIA_TYPE);
         builder.content(body);
         Mockito.when(mockOdooClient.update(resType, id, body)).thenThrow(new RuntimeException("Test"));
-        LocalDateTime lastUpdated = LocalDateTime.now();
-        SyncUtils.saveLastUpdated(resType, id, lastUpdated);
+        LocalDateTime lastUpdated = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        SyncUtils.saveLastUpdated(dedupeIndex, resType, id, lastUpdated);
 
         ResultActions result = mockMvc.perform(builder);
 
         result.andExpect(status().isOk());
-        Mockito.verify(mockOdooClient).update(resType, id, body);
-        Assertions.assertEquals(lastUpdated, SyncUtils.getLastUpdated(resType, id));
+        Mockito.verify(mockOdooClient, Mockito.timeout(5000)).update(resType, id, body);
+        Assertions.assertEquals(lastUpdated, SyncUtils.getLastUpdated(dedupeIndex, resType, id));
     }
 
     @Test
@@ -120,13 +129,13 @@ public class FhirControllerTest {
         final String id = "12345";
         final String resType = "Patient";
         MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.delete("/fhir/" + resType + "/" + id);
-        SyncUtils.saveLastUpdated(resType, id, LocalDateTime.now());
+        SyncUtils.saveLastUpdated(dedupeIndex, resType, id, LocalDateTime.now());
 
         ResultActions result = mockMvc.perform(builder);
 
         result.andExpect(status().isNoContent());
-        Mockito.verify(mockOdooClient).delete(resType, id);
-        Assertions.assertNull(SyncUtils.getLastUpdated(resType, id));
+        Mockito.verify(mockOdooClient, Mockito.timeout(5000)).delete(resType, id);
+        awaitLastUpdated(resType, id, null);
     }
 
     @Test
@@ -134,15 +143,69 @@ public class FhirControllerTest {
         final String id = "12345";
         final String resType = "Patient";
         MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.delete("/fhir/" + resType + "/" + id);
-        SyncUtils.saveLastUpdated(resType, id, LocalDateTime.now());
+        SyncUtils.saveLastUpdated(dedupeIndex, resType, id, LocalDateTime.now());
         Mockito.doThrow(new RuntimeException("Test")).when(mockOdooClient).delete(resType, id);
-        LocalDateTime lastUpdated = LocalDateTime.now();
-        SyncUtils.saveLastUpdated(resType, id, lastUpdated);
+        LocalDateTime lastUpdated = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        SyncUtils.saveLastUpdated(dedupeIndex, resType, id, lastUpdated);
 
         ResultActions result = mockMvc.perform(builder);
 
         result.andExpect(status().isNoContent());
-        Mockito.verify(mockOdooClient).delete(resType, id);
-        Assertions.assertEquals(lastUpdated, SyncUtils.getLastUpdated(resType, id));
+        Mockito.verify(mockOdooClient, Mockito.timeout(5000)).delete(resType, id);
+        Assertions.assertEquals(lastUpdated, SyncUtils.getLastUpdated(dedupeIndex, resType, id));
+    }
+
+    @Test
+    public void createOrUpdate_shouldRejectAPayloadThatIsNotAJsonObject() throws Exception {
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.put("/fhir/Patient/12345");
+        builder.contentType(Constants.MEDIA_TYPE);
+        builder.content("[]");
+
+        ResultActions result = mockMvc.perform(builder);
+
+        result.andExpect(status().isBadRequest());
+        Mockito.verifyNoInteractions(mockOdooClient);
+    }
+
+    @Test
+    public void createOrUpdate_shouldReturnServiceUnavailableWhenTheQueueIsFull() throws Exception {
+        WebhookProcessor mockProcessor = Mockito.mock(WebhookProcessor.class);
+        Mockito.when(mockProcessor.submit(Mockito.any())).thenReturn(false);
+        Mockito.when(mockProcessor.getRetryAfter()).thenReturn(7);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new FhirController(mockProcessor))
+                .build();
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.put("/fhir/Patient/12345");
+        builder.contentType(Constants.MEDIA_TYPE);
+        builder.content("{\"meta\": {\"lastUpdated\": \"2025-02-05T19:45:00.000Z\"}}");
+
+        ResultActions result = mvc.perform(builder);
+
+        result.andExpect(status().isServiceUnavailable());
+        result.andExpect(header().string(HttpHeaders.RETRY_AFTER, "7"));
+    }
+
+    @Test
+    public void delete_shouldReturnServiceUnavailableWhenTheQueueIsFull() throws Exception {
+        WebhookProcessor mockProcessor = Mockito.mock(WebhookProcessor.class);
+        Mockito.when(mockProcessor.submit(Mockito.any())).thenReturn(false);
+        Mockito.when(mockProcessor.getRetryAfter()).thenReturn(7);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new FhirController(mockProcessor))
+                .build();
+
+        ResultActions result = mvc.perform(MockMvcRequestBuilders.delete("/fhir/Patient/12345"));
+
+        result.andExpect(status().isServiceUnavailable());
+        result.andExpect(header().string(HttpHeaders.RETRY_AFTER, "7"));
+    }
+
+    private void awaitLastUpdated(String resourceType, String id, LocalDateTime expected) throws Exception {
+        // The events are applied asynchronously, the timestamp is saved right after the call to Odoo returns
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!Objects.equals(expected, SyncUtils.getLastUpdated(dedupeIndex, resourceType, id))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        Assertions.assertEquals(expected, SyncUtils.getLastUpdated(dedupeIndex, resourceType, id));
     }
 }
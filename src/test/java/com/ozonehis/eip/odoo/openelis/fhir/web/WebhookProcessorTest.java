@@ -0,0 +1,285 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.fhir.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ozonehis.eip.odoo.openelis.DateUtils;
+import com.ozonehis.eip.odoo.openelis.DedupeIndex;
+import com.ozonehis.eip.odoo.openelis.fhir.OdooFhirClient;
+import com.ozonehis.eip.odoo.openelis.task.FingerprintStore;
+import com.ozonehis.eip.odoo.openelis.task.RetryQueue;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.powermock.reflect.Whitebox;
+
+@ExtendWith(MockitoExtension.class)
+public class WebhookProcessorTest {
+
+    private static final String BODY = "{}";
+
+    @Mock
+    private OdooFhirClient mockOdooClient;
+
+    @Mock
+    private FingerprintStore mockFingerprintStore;
+
+    @Mock
+    private RetryQueue mockRetryQueue;
+
+    private DedupeIndex dedupeIndex = new DedupeIndex();
+
+    private WebhookProcessor processor;
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (processor != null) {
+            processor.destroy();
+        }
+    }
+
+    @Test
+    public void submit_shouldApplyTheEventToOdooOnAWorkerThread() {
+        processor = new WebhookProcessor(
+                mockOdooClient, mockFingerprintStore, mockRetryQueue, dedupeIndex, 10, 1, 5, new SimpleMeterRegistry());
+
+        assertTrue(processor.submit(WebhookEvent.update("Patient", "1", BODY, null)));
+        assertTrue(processor.submit(WebhookEvent.delete("Patient", "2")));
+
+        verify(mockOdooClient, timeout(5000)).update("Patient", "1", BODY);
+        verify(mockOdooClient, timeout(5000)).delete("Patient", "2");
+        verify(mockFingerprintStore, timeout(5000)).remove("Patient", "1");
+        verify(mockFingerprintStore, timeout(5000)).remove("Patient", "2");
+    }
+
+    @Test
+    public void submit_shouldRejectTheEventWhenTheQueueIsFull() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        processor = new WebhookProcessor(
+                mockOdooClient, mockFingerprintStore, mockRetryQueue, dedupeIndex, 1, 1, 5, registry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(mockOdooClient.update("Patient", "1", BODY)).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return 200;
+        });
+        assertTrue(processor.submit(WebhookEvent.update("Patient", "1", BODY, null)));
+        started.await();
+        assertTrue(processor.submit(WebhookEvent.update("Patient", "2", BODY, null)));
+
+        assertFalse(processor.submit(WebhookEvent.update("Patient", "3", BODY, null)));
+
+        assertEquals(1, registry.get("eip.webhook.rejected").counter().count());
+        assertEquals(1, registry.get("eip.webhook.queue.size").gauge().value());
+        release.countDown();
+        verify(mockOdooClient, timeout(5000)).update("Patient", "2", BODY);
+    }
+
+    @Test
+    public void destroy_shouldProcessTheQueuedEventsBeforeReturning() throws Exception {
+        processor = new WebhookProcessor(
+                mockOdooClient, mockFingerprintStore, mockRetryQueue, dedupeIndex, 10, 1, 5, new SimpleMeterRegistry());
+        processor.submit(WebhookEvent.delete("Patient", "1"));
+        processor.submit(WebhookEvent.delete("Patient", "2"));
+
+        processor.destroy();
+
+        verify(mockOdooClient).delete("Patient", "1");
+        verify(mockOdooClient).delete("Patient", "2");
+    }
+
+    @Test
+    public void submit_shouldOnlyApplyTheLatestPendingEventForAResource() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        processor = new WebhookProcessor(
+                mockOdooClient, mockFingerprintStore, mockRetryQueue, dedupeIndex, 10, 1, 5, registry);
+        CountDownLatch release = blockWorker();
+        final String v1 = "{\"meta\":{\"versionId\":\"1\"}}";
+        final String v2 = "{\"meta\":{\"versionId\":\"2\"}}";
+        processor.submit(WebhookEvent.update("ServiceRequest", "1", v1, "2025-02-05T19:45:00.000Z"));
+        processor.submit(WebhookEvent.update("ServiceRequest", "1", v2, "2025-02-05T19:45:01.000Z"));
+
+        release.countDown();
+        processor.destroy();
+
+        verify(mockOdooClient).update("ServiceRequest", "1", v2);
+        verify(mockOdooClient, never()).update("ServiceRequest", "1", v1);
+        assertEquals(
+                1,
+                registry.get("eip.webhook.coalesced")
+                        .tag("result", "replaced")
+                        .counter()
+                        .count());
+    }
+
+    @Test
+    public void submit_shouldDiscardAnEventThatIsOlderThanThePendingOne() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        processor = new WebhookProcessor(
+                mockOdooClient, mockFingerprintStore, mockRetryQueue, dedupeIndex, 10, 1, 5, registry);
+        CountDownLatch release = blockWorker();
+        final String v1 = "{\"meta\":{\"versionId\":\"1\"}}";
+        final String v2 = "{\"meta\":{\"versionId\":\"2\"}}";
+        processor.submit(WebhookEvent.update("ServiceRequest", "1", v2, "2025-02-05T19:45:01.000Z"));
+        processor.submit(WebhookEvent.update("ServiceRequest", "1", v1, "2025-02-05T19:45:00.000Z"));
+
+        release.countDown();
+        processor.destroy();
+
+        verify(mockOdooClient).update("ServiceRequest", "1", v2);
+        verify(mockOdooClient, never()).update("ServiceRequest", "1", v1);
+        assertEquals(
+                1,
+                registry.get("eip.webhook.coalesced")
+                        .tag("result", "stale")
+                        .counter()
+                        .count());
+    }
+
+    @Test
+    public void submit_shouldReplaceAPendingUpdateWithADelete() throws Exception {
+        processor = new WebhookProcessor(
+                mockOdooClient, mockFingerprintStore, mockRetryQueue, dedupeIndex, 10, 1, 5, new SimpleMeterRegistry());
+        CountDownLatch release = blockWorker();
+        processor.submit(WebhookEvent.update("ServiceRequest", "1", BODY, "2025-02-05T19:45:00.000Z"));
+        processor.submit(WebhookEvent.delete("ServiceRequest", "1"));
+
+        release.countDown();
+        processor.destroy();
+
+        verify(mockOdooClient).delete("ServiceRequest", "1");
+        verify(mockOdooClient, never()).update("ServiceRequest", "1", BODY);
+    }
+
+    @Test
+    public void submit_shouldNotCountACoalescedEventAgainstTheQueueCapacity() throws Exception {
+        processor = new WebhookProcessor(
+                mockOdooClient, mockFingerprintStore, mockRetryQueue, dedupeIndex, 1, 1, 5, new SimpleMeterRegistry());
+        CountDownLatch release = blockWorker();
+
+        assertTrue(processor.submit(WebhookEvent.update("ServiceRequest", "1", BODY, null)));
+        assertTrue(processor.submit(WebhookEvent.update("ServiceRequest", "1", BODY, null)));
+        assertFalse(processor.submit(WebhookEvent.update("ServiceRequest", "2", BODY, null)));
+
+        release.countDown();
+    }
+
+    @Test
+    public void submit_shouldAddAResourceThatFailsToSyncToTheRetryQueue() throws Exception {
+        processor = new WebhookProcessor(
+                mockOdooClient, mockFingerprintStore, mockRetryQueue, dedupeIndex, 10, 1, 5, new SimpleMeterRegistry());
+        when(mockOdooClient.update("Patient", "1", BODY)).thenThrow(new RuntimeException("test"));
+        when(mockOdooClient.update("Location", "2", BODY)).thenThrow(new RuntimeException("test"));
+        processor.submit(WebhookEvent.update("Patient", "1", BODY, "2025-02-05T19:45:00.000Z"));
+        processor.submit(WebhookEvent.update("Location", "2", BODY, null));
+
+        processor.destroy();
+
+        verify(mockRetryQueue).add("Patient", "1", DateUtils.deserialize("2025-02-05T19:45:00.000Z"));
+        verify(mockRetryQueue, never()).add(eq("Location"), any(), any());
+    }
+
+    @Test
+    public void submit_shouldNotPushAnEventUntilThePushOfTheEarlierEventForTheResourceCompletes() throws Exception {
+        processor = new WebhookProcessor(
+                mockOdooClient, mockFingerprintStore, mockRetryQueue, dedupeIndex, 10, 2, 5, new SimpleMeterRegistry());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(mockOdooClient.update("Patient", "1", BODY)).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return 200;
+        });
+        processor.submit(WebhookEvent.update("Patient", "1", BODY, null));
+        started.await();
+
+        assertTrue(processor.submit(WebhookEvent.delete("Patient", "1")));
+        processor.submit(WebhookEvent.delete("Patient", "2"));
+        verify(mockOdooClient, timeout(5000)).delete("Patient", "2");
+        verify(mockOdooClient, never()).delete("Patient", "1");
+
+        release.countDown();
+        // An event still pending at shutdown is parked instead of pushed
+        verify(mockOdooClient, timeout(5000)).delete("Patient", "1");
+        processor.destroy();
+
+        InOrder inOrder = Mockito.inOrder(mockOdooClient);
+        inOrder.verify(mockOdooClient).update("Patient", "1", BODY);
+        inOrder.verify(mockOdooClient).delete("Patient", "1");
+    }
+
+    @Test
+    public void destroy_shouldAddTheEventsThatWereNotProcessedToTheRetryQueue() throws Exception {
+        processor = new WebhookProcessor(
+                mockOdooClient, mockFingerprintStore, mockRetryQueue, dedupeIndex, 10, 1, 5, new SimpleMeterRegistry());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(mockOdooClient.update("Patient", "1", BODY)).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return 200;
+        });
+        processor.submit(WebhookEvent.update("Patient", "1", BODY, null));
+        started.await();
+        // Waits for the push in flight so it is only scheduled after the processor is shut down
+        processor.submit(WebhookEvent.update("Patient", "1", BODY, "2025-02-05T19:45:00.000Z"));
+        ThreadPoolExecutor executor = Whitebox.getInternalState(processor, "executor");
+        Thread destroyer = new Thread(() -> {
+            try {
+                processor.destroy();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        destroyer.start();
+        while (!executor.isShutdown()) {
+            Thread.sleep(10);
+        }
+
+        release.countDown();
+        destroyer.join(5000);
+
+        verify(mockOdooClient).update("Patient", "1", BODY);
+        verify(mockRetryQueue).add("Patient", "1", DateUtils.deserialize("2025-02-05T19:45:00.000Z"));
+    }
+
+    /**
+     * Submits an event that keeps the single worker busy until the returned latch is released.
+     */
+    private CountDownLatch blockWorker() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(mockOdooClient.update("Patient", "blocker", BODY)).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return 200;
+        });
+        processor.submit(WebhookEvent.update("Patient", "blocker", BODY, null));
+        started.await();
+        return release;
+    }
+}
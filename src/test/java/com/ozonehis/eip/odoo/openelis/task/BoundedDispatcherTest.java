@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class BoundedDispatcherTest {
+
+    private ExecutorService executor;
+
+    private MeterRegistry registry;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void submit_shouldBlockWhenTheMaximumInFlightCountIsReached() throws Exception {
+        BoundedDispatcher dispatcher = new BoundedDispatcher(executor, 1, 0, registry);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.submit(() -> await(release), 0);
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> dispatcher.submit(() -> {}, 0), executor);
+
+        Thread.sleep(200);
+        assertFalse(blocked.isDone());
+        assertEquals(1, dispatcher.getInFlight());
+
+        release.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+        assertTrue(registry.get("eip.sync.dispatch.blocked").timer().count() > 0);
+    }
+
+    @Test
+    public void submit_shouldBlockWhenTheMaximumInFlightBytesIsReached() throws Exception {
+        BoundedDispatcher dispatcher = new BoundedDispatcher(executor, 10, 100, registry);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.submit(() -> await(release), 60);
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> dispatcher.submit(() -> {}, 50), executor);
+
+        Thread.sleep(200);
+        assertFalse(blocked.isDone());
+        assertEquals(60, dispatcher.getInFlightBytes());
+
+        release.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void submit_shouldAcceptATaskLargerThanTheMaximumBytesIfNothingIsInFlight() throws Exception {
+        BoundedDispatcher dispatcher = new BoundedDispatcher(executor, 10, 100, registry);
+
+        dispatcher.submit(() -> {}, 500).get(5, TimeUnit.SECONDS);
+
+        assertEquals(0, dispatcher.getInFlightBytes());
+    }
+
+    @Test
+    public void submit_shouldReleaseTheSlotWhenATaskFails() throws Exception {
+        BoundedDispatcher dispatcher = new BoundedDispatcher(executor, 1, 0, registry);
+        CompletableFuture<Void> future = dispatcher.submit(
+                () -> {
+                    throw new RuntimeException("test");
+                },
+                0);
+
+        assertThrows(Exception.class, () -> future.get(5, TimeUnit.SECONDS));
+        dispatcher.submit(() -> {}, 0).get(5, TimeUnit.SECONDS);
+        assertEquals(0, dispatcher.getInFlight());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
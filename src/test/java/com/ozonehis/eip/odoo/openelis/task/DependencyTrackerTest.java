@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+public class DependencyTrackerTest {
+
+    @Test
+    public void awaitWritten_shouldCompleteWhenTheExpectedResourceIsWritten() {
+        DependencyTracker tracker = new DependencyTracker();
+        tracker.expect("p1");
+        tracker.enumerationComplete();
+
+        CompletableFuture<Void> future = tracker.awaitWritten("p1");
+
+        assertFalse(future.isDone());
+        tracker.written("p1");
+        assertTrue(future.isDone());
+        assertFalse(future.isCompletedExceptionally());
+    }
+
+    @Test
+    public void awaitWritten_shouldWaitForTheEnumerationToCompleteForAnUnknownResource() {
+        DependencyTracker tracker = new DependencyTracker();
+
+        CompletableFuture<Void> future = tracker.awaitWritten("p1");
+
+        assertFalse(future.isDone());
+        tracker.enumerationComplete();
+        assertTrue(future.isDone());
+        assertFalse(future.isCompletedExceptionally());
+    }
+
+    @Test
+    public void awaitWritten_shouldWaitForAResourceThatIsExpectedAfterTheCall() {
+        DependencyTracker tracker = new DependencyTracker();
+        CompletableFuture<Void> future = tracker.awaitWritten("p1");
+
+        tracker.expect("p1");
+        tracker.enumerationComplete();
+
+        assertFalse(future.isDone());
+        tracker.written("p1");
+        assertTrue(future.isDone());
+    }
+
+    @Test
+    public void awaitWritten_shouldReturnACompletedFutureForAResourceNotInTheWindow() {
+        DependencyTracker tracker = new DependencyTracker();
+        tracker.enumerationComplete();
+
+        assertTrue(tracker.awaitWritten("p1").isDone());
+    }
+
+    @Test
+    public void awaitWritten_shouldFailWhenTheExpectedResourceFails() {
+        DependencyTracker tracker = new DependencyTracker();
+        tracker.expect("p1");
+
+        tracker.failed("p1", new RuntimeException("test"));
+
+        assertTrue(tracker.awaitWritten("p1").isCompletedExceptionally());
+    }
+
+    @Test
+    public void abort_shouldFailThePendingFutures() {
+        DependencyTracker tracker = new DependencyTracker();
+        tracker.expect("p1");
+        tracker.written("p1");
+        CompletableFuture<Void> future = tracker.awaitWritten("p2");
+
+        tracker.abort(new RuntimeException("test"));
+
+        assertTrue(future.isCompletedExceptionally());
+        assertFalse(tracker.awaitWritten("p1").isCompletedExceptionally());
+        assertTrue(tracker.awaitWritten("p3").isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.ozonehis.eip.odoo.openelis.fhir.RawPayload;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Date;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.powermock.reflect.Whitebox;
+
+public class FingerprintStoreTest {
+
+    @TempDir
+    private File tempDir;
+
+    private FingerprintStore store;
+
+    @BeforeEach
+    public void setUp() {
+        store = createStore();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        store.destroy();
+    }
+
+    private FingerprintStore createStore() {
+        FingerprintStore fingerprintStore = new FingerprintStore(FhirContext.forR4());
+        Whitebox.setInternalState(fingerprintStore, "timestampFilename", new File(tempDir, "ts.txt").getAbsolutePath());
+        Whitebox.setInternalState(fingerprintStore, "enabled", true);
+        return fingerprintStore;
+    }
+
+    private static Patient createPatient(String id, String family, long lastUpdated) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        patient.addName().setFamily(family);
+        patient.getMeta().setLastUpdated(new Date(lastUpdated)).setVersionId(String.valueOf(lastUpdated));
+        return patient;
+    }
+
+    private static Patient createRawPatient(String id, String family, long lastUpdated) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        final String prefix = "{\"resourceType\":\"Patient\",\"id\":\"" + id + "\"";
+        final String meta = ",\"meta\":{\"versionId\":\"" + lastUpdated + "\"}";
+        final String json = prefix + meta + ",\"name\":[{\"family\":\"" + family + "\"}]}";
+        new RawPayload(json, prefix.length(), prefix.length() + meta.length()).attach(patient);
+        return patient;
+    }
+
+    @Test
+    public void isUnchanged_shouldReturnFalseForAResourceWithNoFingerprint() {
+        assertFalse(store.isUnchanged(createPatient("p1", "Doe", 1000)));
+    }
+
+    @Test
+    public void isUnchanged_shouldIgnoreTheMetaOfTheResource() {
+        store.save(createPatient("p1", "Doe", 1000));
+
+        assertTrue(store.isUnchanged(createPatient("p1", "Doe", 2000)));
+        assertFalse(store.isUnchanged(createPatient("p1", "Smith", 2000)));
+        assertFalse(store.isUnchanged(createPatient("p2", "Doe", 1000)));
+    }
+
+    @Test
+    public void isUnchanged_shouldIgnoreTheMetaOfTheRawPayloadOfAResourceReadWithoutParsingIt() {
+        store.save(createRawPatient("p1", "Doe", 1000));
+
+        assertTrue(store.isUnchanged(createRawPatient("p1", "Doe", 2000)));
+        assertFalse(store.isUnchanged(createRawPatient("p1", "Smith", 2000)));
+    }
+
+    @Test
+    public void isUnchanged_shouldReturnFalseWhenTheStoreIsDisabled() {
+        Whitebox.setInternalState(store, "enabled", false);
+        store.save(createPatient("p1", "Doe", 1000));
+
+        assertFalse(store.isUnchanged(createPatient("p1", "Doe", 1000)));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void remove_shouldRemoveTheFingerprintOfTheResource() {
+        store.save(createPatient("p1", "Doe", 1000));
+
+        store.remove("Patient", "p1");
+
+        assertFalse(store.isUnchanged(createPatient("p1", "Doe", 1000)));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void getFingerprints_shouldLoadTheFingerprintsSavedBeforeARestart() throws Exception {
+        store.save(createPatient("p1", "Doe", 1000));
+        store.save(createPatient("p2", "Doe", 1000));
+        store.save(createPatient("p1", "Smith", 2000));
+        store.remove("Patient", "p2");
+        store.destroy();
+
+        FingerprintStore reloaded = createStore();
+
+        assertEquals(1, reloaded.size());
+        assertTrue(reloaded.isUnchanged(createPatient("p1", "Smith", 3000)));
+        assertFalse(reloaded.isUnchanged(createPatient("p2", "Doe", 1000)));
+        reloaded.destroy();
+    }
+
+    @Test
+    public void getFingerprints_shouldDiscardTheSavedFingerprintsIfResetIsSet() throws Exception {
+        store.save(createPatient("p1", "Doe", 1000));
+        store.destroy();
+        FingerprintStore reloaded = createStore();
+        Whitebox.setInternalState(reloaded, "reset", true);
+
+        assertEquals(0, reloaded.size());
+        assertFalse(reloaded.isUnchanged(createPatient("p1", "Doe", 1000)));
+        reloaded.destroy();
+    }
+
+    @Test
+    public void save_shouldCompactTheJournalWhenItGrowsTooLarge() throws Exception {
+        store.save(createPatient("p1", "Doe", 1000));
+        store.save(createPatient("p1", "Smith", 1000));
+        Whitebox.setInternalState(Whitebox.getInternalState(store, "journal"), "journalSize", 20000);
+
+        store.save(createPatient("p1", "Jones", 1000));
+
+        File file = new File(tempDir, "sync_fingerprints.txt");
+        assertEquals(1, Files.readAllLines(file.toPath()).size());
+        store.destroy();
+        FingerprintStore reloaded = createStore();
+        assertTrue(reloaded.isUnchanged(createPatient("p1", "Jones", 1000)));
+        reloaded.destroy();
+    }
+}
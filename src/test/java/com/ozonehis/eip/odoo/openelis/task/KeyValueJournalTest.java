@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.powermock.reflect.Whitebox;
+
+public class KeyValueJournalTest {
+
+    @TempDir
+    private File tempDir;
+
+    private File file;
+
+    private KeyValueJournal<Integer> journal;
+
+    @BeforeEach
+    public void setUp() {
+        file = KeyValueJournal.createFile(null, new File(tempDir, "ts.txt").getAbsolutePath(), "journal.txt");
+        journal = createJournal();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        journal.close();
+    }
+
+    private KeyValueJournal<Integer> createJournal() {
+        return new KeyValueJournal<>(file, "test journal", String::valueOf, (key, value) -> Integer.valueOf(value));
+    }
+
+    @Test
+    public void createFile_shouldCreateTheFileWithTheDefaultNameNextToTheTimestampFile() {
+        assertEquals(new File(tempDir, "journal.txt").getAbsolutePath(), file.getAbsolutePath());
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void createFile_shouldCreateTheFileWithTheSpecifiedName() {
+        File custom = new File(tempDir, "dir/custom.txt");
+
+        File created = KeyValueJournal.createFile(custom.getAbsolutePath(), null, "journal.txt");
+
+        assertEquals(custom.getAbsolutePath(), created.getAbsolutePath());
+        assertTrue(custom.exists());
+    }
+
+    @Test
+    public void put_shouldAppendEachChangeToTheFile() throws Exception {
+        journal.put("Patient/p1", 1);
+        journal.put("Patient/p1", 2);
+        assertTrue(journal.remove("Patient/p1"));
+        assertFalse(journal.remove("Patient/p1"));
+        journal.put("Patient/p2", 3);
+
+        assertEquals(
+                List.of("Patient/p1=1", "Patient/p1=2", "Patient/p1=", "Patient/p2=3"),
+                Files.readAllLines(file.toPath()));
+        assertNull(journal.get("Patient/p1"));
+        assertEquals(3, journal.get("Patient/p2"));
+    }
+
+    @Test
+    public void shouldReplayTheChangesSavedInTheFile() throws Exception {
+        journal.put("Patient/p1", 1);
+        journal.put("Patient/p2", 2);
+        journal.put("Patient/p1", 3);
+        journal.remove("Patient/p2");
+        journal.close();
+
+        KeyValueJournal<Integer> reloaded = createJournal();
+
+        assertEquals(1, reloaded.size());
+        assertEquals(3, reloaded.get("Patient/p1"));
+        assertNull(reloaded.get("Patient/p2"));
+        reloaded.close();
+    }
+
+    @Test
+    public void put_shouldCompactTheFileWhenItHasGrownTooLarge() throws Exception {
+        journal.put("Patient/p1", 1);
+        journal.put("Patient/p2", 2);
+        journal.remove("Patient/p2");
+        Whitebox.setInternalState(journal, "journalSize", 20000);
+
+        journal.put("Patient/p3", 3);
+
+        assertEquals(2, Files.readAllLines(file.toPath()).size());
+        journal.put("Patient/p4", 4);
+        assertEquals(3, Files.readAllLines(file.toPath()).size());
+        KeyValueJournal<Integer> reloaded = createJournal();
+        assertEquals(3, reloaded.size());
+        assertEquals(1, reloaded.get("Patient/p1"));
+        assertEquals(4, reloaded.get("Patient/p4"));
+        reloaded.close();
+    }
+}
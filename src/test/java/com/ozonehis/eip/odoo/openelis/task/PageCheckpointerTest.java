@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.Test;
+
+public class PageCheckpointerTest {
+
+    private static final LocalDateTime T1 = LocalDateTime.of(2024, 1, 1, 10, 0, 0);
+
+    private static final LocalDateTime T2 = T1.plusSeconds(1);
+
+    private final List<SyncCursor> checkpoints = new ArrayList<>();
+
+    private static Patient createPatient(String id, LocalDateTime lastUpdated) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        patient.getMeta()
+                .setLastUpdated(
+                        Date.from(lastUpdated.atZone(ZoneId.systemDefault()).toInstant()));
+        return patient;
+    }
+
+    @Test
+    public void done_shouldCheckpointAPageOnceAllItsResourcesAreDone() {
+        PageCheckpointer checkpointer = new PageCheckpointer(null, checkpoints::add);
+        Patient p1 = createPatient("p1", T1);
+        Patient p2 = createPatient("p2", T2);
+        PageCheckpointer.Page page = checkpointer.addPage(List.of(p1, p2));
+        page.expect(p1);
+        page.expect(p2);
+        page.enumerated();
+
+        PageCheckpointer.getPage(p2).done();
+        assertEquals(List.of(), checkpoints);
+        PageCheckpointer.getPage(p1).done();
+
+        assertEquals(List.of(new SyncCursor(T2, Set.of("p2"))), checkpoints);
+        assertSame(checkpoints.get(0), checkpointer.getCursor());
+    }
+
+    @Test
+    public void done_shouldNotCheckpointAPageBeforeThePreviousPagesAreDone() {
+        PageCheckpointer checkpointer = new PageCheckpointer(null, checkpoints::add);
+        Patient p1 = createPatient("p1", T1);
+        Patient p2 = createPatient("p2", T2);
+        PageCheckpointer.Page page1 = checkpointer.addPage(List.of(p1));
+        page1.expect(p1);
+        page1.enumerated();
+        PageCheckpointer.Page page2 = checkpointer.addPage(List.of(p2));
+        page2.expect(p2);
+        page2.enumerated();
+
+        page2.done();
+        assertNull(checkpointer.getCursor());
+        page1.done();
+
+        assertEquals(List.of(new SyncCursor(T2, Set.of("p2"))), checkpoints);
+    }
+
+    @Test
+    public void done_shouldNotCheckpointAPageUntilItIsEnumerated() {
+        PageCheckpointer checkpointer = new PageCheckpointer(null, checkpoints::add);
+        Patient p1 = createPatient("p1", T1);
+        PageCheckpointer.Page page = checkpointer.addPage(List.of(p1));
+        page.expect(p1);
+
+        page.done();
+
+        assertNull(checkpointer.getCursor());
+        assertEquals(List.of(), checkpoints);
+    }
+
+    @Test
+    public void enumerated_shouldCheckpointAPageWithNoPendingResources() {
+        PageCheckpointer checkpointer = new PageCheckpointer(null, checkpoints::add);
+
+        checkpointer.addPage(List.of(createPatient("p1", T1))).enumerated();
+
+        assertEquals(List.of(new SyncCursor(T1, Set.of("p1"))), checkpoints);
+    }
+
+    @Test
+    public void enumerated_shouldMergeTheIdsOfPagesEndingAtTheSameTimestamp() {
+        PageCheckpointer checkpointer = new PageCheckpointer(new SyncCursor(T1, Set.of("p1")), checkpoints::add);
+
+        checkpointer
+                .addPage(List.of(createPatient("p2", T1), createPatient("p3", T1)))
+                .enumerated();
+
+        assertEquals(List.of(new SyncCursor(T1, Set.of("p1", "p2", "p3"))), checkpoints);
+    }
+
+    @Test
+    public void finish_shouldCompleteOnceAllThePagesHaveCompleted() {
+        PageCheckpointer checkpointer = new PageCheckpointer(null, checkpoints::add);
+        Patient p1 = createPatient("p1", T1);
+        PageCheckpointer.Page page = checkpointer.addPage(List.of(p1));
+        page.expect(p1);
+        page.enumerated();
+
+        checkpointer.finish();
+        assertFalse(checkpointer.isComplete());
+        page.done();
+
+        assertTrue(checkpointer.isComplete());
+        assertEquals(List.of(new SyncCursor(T1, Set.of("p1"))), checkpoints);
+    }
+
+    @Test
+    public void finish_shouldCheckpointACompletedWindowEvenIfTheCursorDoesNotAdvance() {
+        PageCheckpointer checkpointer = new PageCheckpointer(null, checkpoints::add);
+
+        checkpointer.finish();
+
+        assertTrue(checkpointer.isComplete());
+        assertEquals(1, checkpoints.size());
+        assertNull(checkpoints.get(0));
+    }
+
+    @Test
+    public void done_shouldNotHoldUpTheCompletionOfPagesWhileACheckpointIsSaved() throws Exception {
+        AtomicReference<PageCheckpointer> checkpointer = new AtomicReference<>();
+        AtomicReference<CompletableFuture<Void>> next = new AtomicReference<>();
+        checkpointer.set(new PageCheckpointer(null, c -> {
+            checkpoints.add(c);
+            if (checkpoints.size() == 1) {
+                next.set(CompletableFuture.runAsync(() -> checkpointer
+                        .get()
+                        .addPage(List.of(createPatient("p2", T2)))
+                        .enumerated()));
+                long deadline = System.currentTimeMillis() + 5000;
+                while (!T2.equals(checkpointer.get().getCursor().lastUpdated())) {
+                    assertTrue(System.currentTimeMillis() < deadline, "The cursor did not advance");
+                    Thread.onSpinWait();
+                }
+            }
+        }));
+
+        checkpointer.get().addPage(List.of(createPatient("p1", T1))).enumerated();
+        next.get().get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(new SyncCursor(T1, Set.of("p1")), new SyncCursor(T2, Set.of("p2"))), checkpoints);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PrefetchingIteratorTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void next_shouldReturnAllTheElementsInOrder() {
+        List<Integer> result = new ArrayList<>();
+
+        try (PrefetchingIterator<Integer> it =
+                new PrefetchingIterator<>(List.of(1, 2, 3).iterator(), 1, executor)) {
+            it.forEachRemaining(result::add);
+        }
+
+        assertEquals(List.of(1, 2, 3), result);
+    }
+
+    @Test
+    public void next_shouldFailIfThereAreNoMoreElements() {
+        try (PrefetchingIterator<Integer> it =
+                new PrefetchingIterator<>(List.<Integer>of().iterator(), 1, executor)) {
+            assertFalse(it.hasNext());
+            assertThrows(NoSuchElementException.class, it::next);
+        }
+    }
+
+    @Test
+    public void hasNext_shouldFetchTheNextElementWhileTheCurrentOneIsProcessed() throws Exception {
+        CountDownLatch latch = new CountDownLatch(2);
+        Iterator<Integer> source = new Iterator<>() {
+
+            private int count;
+
+            @Override
+            public boolean hasNext() {
+                return count < 3;
+            }
+
+            @Override
+            public Integer next() {
+                latch.countDown();
+                return ++count;
+            }
+        };
+
+        try (PrefetchingIterator<Integer> it = new PrefetchingIterator<>(source, 1, executor)) {
+            assertEquals(1, it.next());
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(2, it.next());
+            assertEquals(3, it.next());
+            assertFalse(it.hasNext());
+        }
+    }
+
+    @Test
+    public void hasNext_shouldRethrowAFailureFromTheSourceIterator() {
+        Iterator<Integer> source = new Iterator<>() {
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Integer next() {
+                throw new IllegalStateException("test");
+            }
+        };
+
+        try (PrefetchingIterator<Integer> it = new PrefetchingIterator<>(source, 1, executor)) {
+            IllegalStateException e = assertThrows(IllegalStateException.class, it::hasNext);
+            assertEquals("test", e.getMessage());
+            assertFalse(it.hasNext());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.ozonehis.eip.odoo.openelis.LocalDateTimeUtils;
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.powermock.reflect.Whitebox;
+
+public class RetryQueueTest {
+
+    private static final long INITIAL_DELAY = 1000;
+
+    private static final long MAX_DELAY = 5000;
+
+    @TempDir
+    private File tempDir;
+
+    private MockedStatic<LocalDateTimeUtils> mockDateTimeUtils;
+
+    private LocalDateTime now;
+
+    private RetryQueue queue;
+
+    @BeforeEach
+    public void setUp() {
+        mockDateTimeUtils = Mockito.mockStatic(LocalDateTimeUtils.class);
+        now = LocalDateTime.of(2024, 1, 1, 10, 0, 0);
+        when(LocalDateTimeUtils.getCurrentTime()).thenAnswer(invocation -> now);
+        queue = createQueue();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        queue.destroy();
+        mockDateTimeUtils.close();
+    }
+
+    private RetryQueue createQueue() {
+        RetryQueue retryQueue = new RetryQueue();
+        Whitebox.setInternalState(retryQueue, "timestampFilename", new File(tempDir, "ts.txt").getAbsolutePath());
+        Whitebox.setInternalState(retryQueue, "initialDelay", INITIAL_DELAY);
+        Whitebox.setInternalState(retryQueue, "maxDelay", MAX_DELAY);
+        return retryQueue;
+    }
+
+    @Test
+    public void add_shouldAddTheResourceAndScheduleTheFirstRetry() {
+        LocalDateTime lastUpdated = now.minusMinutes(1);
+
+        queue.add("Patient", "p1", lastUpdated);
+
+        RetryEntry entry = queue.get("Patient", "p1");
+        assertEquals(lastUpdated, entry.lastUpdated());
+        assertEquals(1, entry.attempts());
+        assertEquals(now.plusSeconds(1), entry.nextRetry());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void add_shouldIncrementTheAttemptsAndBackOffExponentiallyUpToTheMaxDelay() {
+        queue.add("Patient", "p1", null);
+        queue.add("Patient", "p1", null);
+        assertEquals(now.plusSeconds(2), queue.get("Patient", "p1").nextRetry());
+        queue.add("Patient", "p1", null);
+        assertEquals(now.plusSeconds(4), queue.get("Patient", "p1").nextRetry());
+        queue.add("Patient", "p1", null);
+
+        RetryEntry entry = queue.get("Patient", "p1");
+        assertEquals(4, entry.attempts());
+        assertEquals(now.plusSeconds(5), entry.nextRetry());
+    }
+
+    @Test
+    public void add_shouldKeepTheLatestLastUpdatedTimestamp() {
+        LocalDateTime lastUpdated = now.minusMinutes(1);
+        queue.add("Patient", "p1", lastUpdated);
+
+        queue.add("Patient", "p1", lastUpdated.minusMinutes(1));
+
+        assertEquals(lastUpdated, queue.get("Patient", "p1").lastUpdated());
+    }
+
+    @Test
+    public void getDue_shouldReturnOnlyTheEntriesOfTheTypeThatAreDue() {
+        queue.add("Patient", "p1", null);
+        queue.add("Patient", "p2", null);
+        queue.add("Patient", "p2", null);
+        queue.add("ServiceRequest", "sr1", null);
+        assertTrue(queue.getDue("Patient").isEmpty());
+
+        now = now.plusSeconds(1);
+
+        List<RetryEntry> due = queue.getDue("Patient");
+        assertEquals(1, due.size());
+        assertEquals("p1", due.get(0).id());
+    }
+
+    @Test
+    public void remove_shouldRemoveTheResource() {
+        queue.add("Patient", "p1", null);
+
+        queue.remove("Patient", "p1");
+
+        assertNull(queue.get("Patient", "p1"));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void shouldLoadTheSavedEntriesFromTheFile() {
+        LocalDateTime lastUpdated = now.minusMinutes(1);
+        queue.add("Patient", "p1", lastUpdated);
+        queue.add("ServiceRequest", "sr1", null);
+        queue.add("ServiceRequest", "sr1", null);
+        queue.add("ServiceRequest", "sr2", null);
+        queue.remove("ServiceRequest", "sr2");
+
+        RetryQueue reloaded = createQueue();
+
+        assertEquals(2, reloaded.size());
+        assertEquals(queue.get("Patient", "p1"), reloaded.get("Patient", "p1"));
+        assertEquals(queue.get("ServiceRequest", "sr1"), reloaded.get("ServiceRequest", "sr1"));
+        assertTrue(new File(tempDir, "sync_retry_queue.txt").exists());
+    }
+
+    @Test
+    public void add_shouldMoveTheResourceToTheDeadLetterFileAfterTheMaximumAttempts() throws Exception {
+        Whitebox.setInternalState(queue, "maxAttempts", 2);
+        queue.add("Patient", "p1", null);
+        queue.add("Patient", "p1", null);
+
+        queue.add("Patient", "p1", null);
+
+        assertNull(queue.get("Patient", "p1"));
+        assertEquals(0, queue.size());
+        List<String> deadLetters = Files.readAllLines(new File(tempDir, "sync_dead_letters.txt").toPath());
+        assertEquals(1, deadLetters.size());
+        assertTrue(deadLetters.get(0).startsWith("Patient/p1=|3|"));
+        assertNull(createQueue().get("Patient", "p1"));
+    }
+
+    @Test
+    public void add_shouldAppendEachChangeToTheJournalAndCompactIt() throws Exception {
+        File file = new File(tempDir, "sync_retry_queue.txt");
+        queue.add("Patient", "p1", null);
+        queue.add("Patient", "p1", null);
+        queue.remove("Patient", "p1");
+        queue.add("Patient", "p2", null);
+        assertEquals(4, Files.readAllLines(file.toPath()).size());
+
+        Whitebox.setInternalState(Whitebox.getInternalState(queue, "journal"), "journalSize", 20000);
+        queue.add("Patient", "p3", null);
+
+        assertEquals(2, Files.readAllLines(file.toPath()).size());
+        RetryQueue reloaded = createQueue();
+        assertEquals(2, reloaded.size());
+        assertEquals(queue.get("Patient", "p2"), reloaded.get("Patient", "p2"));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.Test;
+
+public class SliceCheckpointerTest {
+
+    private static final LocalDateTime T1 = LocalDateTime.of(2024, 1, 1, 10, 0, 0);
+
+    private static final LocalDateTime T2 = T1.plusHours(1);
+
+    private static final LocalDateTime T3 = T1.plusHours(2);
+
+    private final List<SyncCursor> checkpoints = new ArrayList<>();
+
+    private static Patient createPatient(String id, LocalDateTime lastUpdated) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        patient.getMeta()
+                .setLastUpdated(
+                        Date.from(lastUpdated.atZone(ZoneId.systemDefault()).toInstant()));
+        return patient;
+    }
+
+    private static PageCheckpointer.Page addPage(PageCheckpointer slice, Patient patient) {
+        PageCheckpointer.Page page = slice.addPage(List.of(patient));
+        page.expect(patient);
+        page.enumerated();
+        slice.finish();
+        return page;
+    }
+
+    @Test
+    public void shouldNotAdvancePastAnEarlierSliceThatHasNotCompleted() {
+        SliceCheckpointer checkpointer = new SliceCheckpointer(null, 2, checkpoints::add);
+        PageCheckpointer.Page page1 = addPage(checkpointer.getSlice(0), createPatient("p1", T1));
+        PageCheckpointer.Page page2 = addPage(checkpointer.getSlice(1), createPatient("p2", T2));
+
+        page2.done();
+        assertNull(checkpointer.getCursor());
+        assertEquals(List.of(), checkpoints);
+        page1.done();
+
+        assertEquals(List.of(new SyncCursor(T2, Set.of("p2"))), checkpoints);
+        assertEquals(new SyncCursor(T2, Set.of("p2")), checkpointer.getCursor());
+    }
+
+    @Test
+    public void shouldAdvanceWithinTheFirstIncompleteSlice() {
+        SliceCheckpointer checkpointer = new SliceCheckpointer(null, 3, checkpoints::add);
+        PageCheckpointer.Page page1 = addPage(checkpointer.getSlice(0), createPatient("p1", T1));
+        PageCheckpointer.Page page3 = addPage(checkpointer.getSlice(2), createPatient("p3", T3));
+        PageCheckpointer slice2 = checkpointer.getSlice(1);
+        Patient p2 = createPatient("p2", T2);
+        PageCheckpointer.Page page2 = slice2.addPage(List.of(p2));
+        page2.expect(p2);
+        page2.enumerated();
+
+        page3.done();
+        page1.done();
+        page2.done();
+        assertEquals(List.of(new SyncCursor(T1, Set.of("p1")), new SyncCursor(T2, Set.of("p2"))), checkpoints);
+        slice2.finish();
+
+        assertEquals(new SyncCursor(T3, Set.of("p3")), checkpointer.getCursor());
+        assertEquals(3, checkpoints.size());
+    }
+
+    @Test
+    public void shouldAdvancePastAnEmptySliceOnceItIsFinished() {
+        SliceCheckpointer checkpointer = new SliceCheckpointer(null, 2, checkpoints::add);
+        addPage(checkpointer.getSlice(1), createPatient("p2", T2)).done();
+        assertEquals(List.of(), checkpoints);
+
+        checkpointer.getSlice(0).finish();
+
+        assertEquals(List.of(new SyncCursor(T2, Set.of("p2"))), checkpoints);
+    }
+
+    @Test
+    public void shouldMergeTheIdsOfTheResumedCursorInTheFirstSlice() {
+        SliceCheckpointer checkpointer = new SliceCheckpointer(new SyncCursor(T1, Set.of("p1")), 2, checkpoints::add);
+
+        addPage(checkpointer.getSlice(0), createPatient("p2", T1)).done();
+
+        assertEquals(List.of(new SyncCursor(T1, Set.of("p1", "p2"))), checkpoints);
+    }
+}
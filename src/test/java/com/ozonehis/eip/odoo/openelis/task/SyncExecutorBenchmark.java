@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import com.ozonehis.eip.odoo.openelis.StubFhirServer;
+import com.ozonehis.eip.odoo.openelis.fhir.OdooFhirClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.hl7.fhir.r4.model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.powermock.reflect.Whitebox;
+
+/**
+ * Compares the time to push a batch of resources to a stub Odoo server that takes a fixed time to respond when using
+ * the fixed pool of platform threads versus virtual threads capped by a semaphore, the virtual mode requires a Java 21
+ * or later runtime.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SyncExecutorBenchmark {
+
+    private static final int RESOURCE_COUNT = 200;
+
+    @Param({"platform", "virtual"})
+    private String mode;
+
+    @Param({"8", "64"})
+    private int concurrency;
+
+    @Param({"20"})
+    private long latency;
+
+    private StubFhirServer server;
+
+    private Executor executor;
+
+    private BoundedDispatcher dispatcher;
+
+    private OdooFhirClient odooClient;
+
+    private List<Patient> patients;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new StubFhirServer(latency);
+        odooClient = new OdooFhirClient();
+        Whitebox.setInternalState(odooClient, "serverUrl", server.getUrl());
+        Whitebox.setInternalState(odooClient, "username", "admin");
+        Whitebox.setInternalState(odooClient, "password", "admin".toCharArray());
+        executor = TaskConfig.createExecutor("virtual".equals(mode), concurrency);
+        dispatcher = new BoundedDispatcher(executor, 500, 0, new SimpleMeterRegistry());
+        patients = new ArrayList<>(RESOURCE_COUNT);
+        for (int i = 0; i < RESOURCE_COUNT; i++) {
+            Patient patient = new Patient();
+            patient.setId("Patient/" + i);
+            patients.add(patient);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor instanceof ExecutorService service) {
+            service.shutdownNow();
+        }
+
+        server.close();
+    }
+
+    @Benchmark
+    public void push() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(RESOURCE_COUNT);
+        for (Patient patient : patients) {
+            futures.add(dispatcher.submit(() -> odooClient.update(patient), 0));
+        }
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+    }
+}
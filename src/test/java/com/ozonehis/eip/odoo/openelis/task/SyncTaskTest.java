@@ -8,22 +8,47 @@
 package com.ozonehis.eip.odoo.openelis.task;
 
 import static java.time.temporal.ChronoUnit.MILLIS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import ca.uhn.fhir.context.FhirContext;
+import com.ozonehis.eip.odoo.openelis.DedupeIndex;
 import com.ozonehis.eip.odoo.openelis.LocalDateTimeUtils;
 import com.ozonehis.eip.odoo.openelis.SyncUtils;
+import com.ozonehis.eip.odoo.openelis.fhir.BatchEntry;
 import com.ozonehis.eip.odoo.openelis.fhir.OdooFhirClient;
 import com.ozonehis.eip.odoo.openelis.fhir.OpenElisFhirClient;
+import com.ozonehis.eip.odoo.openelis.fhir.RawPayload;
+import com.ozonehis.eip.odoo.openelis.fhir.SearchSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.hl7.fhir.r4.model.DomainResource;
 import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.ServiceRequest;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
@@ -48,14 +73,37 @@ public class SyncTaskTest {
     @Mock
     private TimestampStore mockTimestampStore;
 
+    @Mock
+    private RetryQueue mockRetryQueue;
+
+    @Mock
+    private FingerprintStore mockFingerprintStore;
+
+    @Mock
+    private DedupeIndex mockDedupeIndex;
+
     private SyncTask task;
 
     @BeforeEach
     public void setUp() {
         mockDateTimeUtils = Mockito.mockStatic(LocalDateTimeUtils.class);
         mockSyncUtils = Mockito.mockStatic(SyncUtils.class);
-        task = new SyncTask(mockTimestampStore, mockOpenElisClient, mockOdooClient);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        BoundedDispatcher dispatcher = new BoundedDispatcher(Runnable::run, 10, 0, registry);
+        task = new SyncTask(
+                mockTimestampStore,
+                mockOpenElisClient,
+                mockOdooClient,
+                dispatcher,
+                mockRetryQueue,
+                mockFingerprintStore,
+                mockDedupeIndex,
+                FhirContext.forR4(),
+                registry);
         Whitebox.setInternalState(task, "overlap", OVERLAP);
+        Mockito.lenient()
+                .when(mockOpenElisClient.getModifiedSummary(any(), any()))
+                .thenReturn(new SearchSummary(0, null));
     }
 
     @AfterEach
@@ -64,6 +112,15 @@ public class SyncTaskTest {
         mockSyncUtils.close();
     }
 
+    private static Patient createPatient(String id, LocalDateTime lastUpdated) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        patient.getMeta()
+                .setLastUpdated(
+                        Date.from(lastUpdated.atZone(ZoneId.systemDefault()).toInstant()));
+        return patient;
+    }
+
     @Test
     public void sync_shouldFetchAndSyncAllTheModifiedResources() {
         LocalDateTime now = LocalDateTime.now();
@@ -73,15 +130,15 @@ public class SyncTaskTest {
         when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
         when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
         LocalDateTime effectiveLastSyncTs = lastSyncTs.minus(OVERLAP, MILLIS);
-        when(mockOpenElisClient.getModifiedResources(Patient.class, effectiveLastSyncTs))
-                .thenReturn(List.of(p1, p2));
+        when(mockOpenElisClient.getModifiedResources(Patient.class, effectiveLastSyncTs, null))
+                .thenReturn(List.of(List.of(p1, p2)).iterator());
 
         task.sync(Patient.class);
 
         verify(mockOdooClient).update(p1);
         verify(mockOdooClient).update(p2);
-        verify(mockTimestampStore).update(now, Patient.class);
-        mockSyncUtils.verify(() -> SyncUtils.clearLastUpdatedTimestamps());
+        verify(mockTimestampStore).update(now, null, Patient.class);
+        verify(mockDedupeIndex, never()).clear();
     }
 
     @Test
@@ -93,16 +150,41 @@ public class SyncTaskTest {
         when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
         when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
         LocalDateTime effectiveLastSyncTs = lastSyncTs.minus(OVERLAP, MILLIS);
-        when(mockOpenElisClient.getModifiedResources(Patient.class, effectiveLastSyncTs))
-                .thenReturn(List.of(p1, p2));
-        when(SyncUtils.skip(p1)).thenReturn(true);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, effectiveLastSyncTs, null))
+                .thenReturn(List.of(List.of(p1, p2)).iterator());
+        when(SyncUtils.skip(mockDedupeIndex, p1)).thenReturn(true);
 
         task.sync(Patient.class);
 
         verify(mockOdooClient, never()).update(p1);
         verify(mockOdooClient).update(p2);
-        verify(mockTimestampStore).update(now, Patient.class);
-        mockSyncUtils.verify(() -> SyncUtils.clearLastUpdatedTimestamps());
+        verify(mockTimestampStore).update(now, null, Patient.class);
+        verify(mockDedupeIndex, never()).clear();
+    }
+
+    @Test
+    public void sync_shouldSkipAResourceWithAnUnchangedFingerprint() {
+        LocalDateTime now = LocalDateTime.now();
+        Patient p1 = new Patient();
+        p1.setId("p1");
+        Patient p2 = new Patient();
+        p2.setId("p2");
+        LocalDateTime lastSyncTs = now.minusMinutes(5);
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
+        LocalDateTime effectiveLastSyncTs = lastSyncTs.minus(OVERLAP, MILLIS);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, effectiveLastSyncTs, null))
+                .thenReturn(List.of(List.of(p1, p2)).iterator());
+        when(mockFingerprintStore.isUnchanged(p1)).thenReturn(true);
+
+        task.sync(Patient.class);
+
+        verify(mockOdooClient, never()).update(p1);
+        verify(mockOdooClient).update(p2);
+        verify(mockFingerprintStore, never()).save(p1);
+        verify(mockFingerprintStore).save(p2);
+        verify(mockRetryQueue).remove("Patient", "p1");
+        verify(mockTimestampStore).update(now, null, Patient.class);
     }
 
     @Test
@@ -112,25 +194,602 @@ public class SyncTaskTest {
         Patient p2 = new Patient();
         when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
         LocalDateTime lastSyncTs = LocalDateTime.of(1970, 1, 1, 0, 0, 0);
-        when(mockOpenElisClient.getModifiedResources(Patient.class, lastSyncTs)).thenReturn(List.of(p1, p2));
+        when(mockOpenElisClient.getModifiedResources(Patient.class, lastSyncTs, null))
+                .thenReturn(List.of(List.of(p1, p2)).iterator());
+
+        task.sync(Patient.class);
+
+        verify(mockOdooClient).update(p1);
+        verify(mockOdooClient).update(p2);
+        verify(mockTimestampStore).update(now, null, Patient.class);
+        verify(mockDedupeIndex, never()).clear();
+    }
+
+    @Test
+    public void sync_shouldSyncTheResourcesInAllThePages() {
+        LocalDateTime now = LocalDateTime.now();
+        Patient p1 = new Patient();
+        Patient p2 = new Patient();
+        Patient p3 = new Patient();
+        LocalDateTime lastSyncTs = now.minusMinutes(5);
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
+        LocalDateTime effectiveLastSyncTs = lastSyncTs.minus(OVERLAP, MILLIS);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, effectiveLastSyncTs, null))
+                .thenReturn(List.of(List.of(p1, p2), List.of(p3)).iterator());
+
+        task.sync(Patient.class);
+
+        verify(mockOdooClient).update(p1);
+        verify(mockOdooClient).update(p2);
+        verify(mockOdooClient).update(p3);
+        verify(mockTimestampStore).update(now, null, Patient.class);
+    }
+
+    @Test
+    public void sync_shouldSyncTheResourcesInAllThePagesWhenPrefetchingIsEnabled() {
+        Whitebox.setInternalState(task, "prefetchDepth", 1);
+        LocalDateTime now = LocalDateTime.now();
+        Patient p1 = new Patient();
+        Patient p2 = new Patient();
+        Patient p3 = new Patient();
+        LocalDateTime lastSyncTs = now.minusMinutes(5);
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
+        LocalDateTime effectiveLastSyncTs = lastSyncTs.minus(OVERLAP, MILLIS);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, effectiveLastSyncTs, null))
+                .thenReturn(List.of(List.of(p1), List.of(p2), List.of(p3)).iterator());
+
+        task.sync(Patient.class);
+
+        verify(mockOdooClient).update(p1);
+        verify(mockOdooClient).update(p2);
+        verify(mockOdooClient).update(p3);
+        verify(mockTimestampStore).update(now, null, Patient.class);
+    }
+
+    @Test
+    public void sync_shouldAddAResourceThatFailsToSyncToTheRetryQueueAndUpdateTheTimestamp() {
+        LocalDateTime now = LocalDateTime.now();
+        Patient p1 = new Patient();
+        p1.setId("p1");
+        Patient p2 = new Patient();
+        p2.setId("p2");
+        LocalDateTime lastUpdated = now.minusMinutes(1);
+        LocalDateTime lastSyncTs = now.minusMinutes(5);
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(SyncUtils.getLastUpdatedTimeStamp(p1)).thenReturn(lastUpdated);
+        when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
+        LocalDateTime effectiveLastSyncTs = lastSyncTs.minus(OVERLAP, MILLIS);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, effectiveLastSyncTs, null))
+                .thenReturn(List.of(List.of(p1, p2)).iterator());
+        Mockito.doThrow(new RuntimeException("test")).when(mockOdooClient).update(p1);
+
+        task.sync(Patient.class);
+
+        verify(mockOdooClient).update(p2);
+        verify(mockFingerprintStore, never()).save(p1);
+        verify(mockFingerprintStore).save(p2);
+        verify(mockRetryQueue).add("Patient", "p1", lastUpdated);
+        verify(mockRetryQueue).remove("Patient", "p2");
+        verify(mockTimestampStore).update(now, null, Patient.class);
+    }
+
+    @Test
+    public void sync_shouldSaveTheCursorAfterEachCompletedPage() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(MILLIS);
+        LocalDateTime lastUpdated1 = now.minusMinutes(2);
+        LocalDateTime lastUpdated2 = now.minusMinutes(1);
+        Patient p1 = createPatient("p1", lastUpdated1);
+        Patient p2 = createPatient("p2", lastUpdated2);
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, LocalDateTime.of(1970, 1, 1, 0, 0, 0), null))
+                .thenReturn(List.of(List.of(p1), List.of(p2)).iterator());
+
+        task.sync(Patient.class);
+
+        InOrder inOrder = Mockito.inOrder(mockTimestampStore);
+        inOrder.verify(mockTimestampStore).updateCursor(new SyncCursor(lastUpdated1, Set.of("p1")), Patient.class);
+        inOrder.verify(mockTimestampStore).updateCursor(new SyncCursor(lastUpdated2, Set.of("p2")), Patient.class);
+        inOrder.verify(mockTimestampStore).update(now, new SyncCursor(lastUpdated2, Set.of("p2")), Patient.class);
+    }
+
+    @Test
+    public void sync_shouldNotSaveTheCursorPastAResourceThatCannotBeAddedToTheRetryQueue() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(MILLIS);
+        Patient p1 = createPatient("p1", now.minusMinutes(2));
+        Patient p2 = createPatient("p2", now.minusMinutes(1));
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, LocalDateTime.of(1970, 1, 1, 0, 0, 0), null))
+                .thenReturn(List.of(List.of(p1), List.of(p2)).iterator());
+        Mockito.doThrow(new RuntimeException("test")).when(mockOdooClient).update(p1);
+        Mockito.doThrow(new RuntimeException("test")).when(mockRetryQueue).add(eq("Patient"), eq("p1"), any());
+
+        assertThrows(RuntimeException.class, () -> task.sync(Patient.class));
+
+        verify(mockTimestampStore, never()).updateCursor(any(), any());
+        verify(mockTimestampStore, never()).update(any(), any(), any());
+    }
+
+    @Test
+    public void sync_shouldResumeFromTheSavedCursor() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(MILLIS);
+        LocalDateTime lastSyncTs = now.minusMinutes(5);
+        LocalDateTime cursorTs = now.minusMinutes(2);
+        Patient p1 = createPatient("p1", cursorTs);
+        Patient p2 = createPatient("p2", cursorTs);
+        LocalDateTime p3Ts = now.minusMinutes(1);
+        Patient p3 = createPatient("p3", p3Ts);
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
+        when(mockTimestampStore.getCursor(Patient.class)).thenReturn(new SyncCursor(cursorTs, Set.of("p1")));
+        when(mockOpenElisClient.getModifiedResources(Patient.class, cursorTs, null))
+                .thenReturn(List.of(List.of(p1, p2, p3)).iterator());
+
+        task.sync(Patient.class);
+
+        verify(mockOdooClient, never()).update(p1);
+        verify(mockOdooClient).update(p2);
+        verify(mockOdooClient).update(p3);
+        verify(mockTimestampStore).update(now, new SyncCursor(p3Ts, Set.of("p3")), Patient.class);
+    }
+
+    @Test
+    public void sync_shouldCloseACatchUpWindowAtTheServerTimeAndSaveItAsTheTimestamp() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(MILLIS);
+        LocalDateTime serverTime = now.minusSeconds(30);
+        LocalDateTime lastSyncTs = now.minusHours(2);
+        Patient p1 = new Patient();
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
+        when(mockOpenElisClient.getModifiedSummary(Patient.class, lastSyncTs.minus(OVERLAP, MILLIS)))
+                .thenReturn(new SearchSummary(1, serverTime));
+        when(mockOpenElisClient.getModifiedResources(Patient.class, lastSyncTs.minus(OVERLAP, MILLIS), serverTime))
+                .thenReturn(List.of(List.of(p1)).iterator());
+
+        task.sync(Patient.class);
+
+        verify(mockOdooClient).update(p1);
+        verify(mockTimestampStore).update(serverTime, null, Patient.class);
+    }
+
+    @Test
+    public void sync_shouldNotCountTheResourcesInAWindowShorterThanTheBackfillWindow() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(MILLIS);
+        LocalDateTime lastSyncTs = now.minusMinutes(5);
+        Patient p1 = new Patient();
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, lastSyncTs.minus(OVERLAP, MILLIS), null))
+                .thenReturn(List.of(List.of(p1)).iterator());
+
+        task.sync(Patient.class);
+
+        verify(mockOdooClient).update(p1);
+        verify(mockOpenElisClient, never()).getModifiedSummary(any(), any());
+        verify(mockTimestampStore).update(now, null, Patient.class);
+    }
+
+    @Test
+    public void sync_shouldSplitABacklogIntoTimeSlicesAndSyncThemConcurrently() {
+        LocalDateTime serverTime = LocalDateTime.now().truncatedTo(MILLIS);
+        LocalDateTime oldest = serverTime.minusHours(2);
+        LocalDateTime middle = serverTime.minusHours(1);
+        LocalDateTime epoch = LocalDateTime.of(1970, 1, 1, 0, 0, 0);
+        Patient p1 = createPatient("p1", oldest);
+        Patient p2 = createPatient("p2", middle);
+        Whitebox.setInternalState(task, "backfillSlices", 2);
+        Whitebox.setInternalState(task, "backfillThreshold", 2);
+        when(mockOpenElisClient.getModifiedSummary(Patient.class, epoch)).thenReturn(new SearchSummary(2, serverTime));
+        when(mockOpenElisClient.getOldestLastUpdated(Patient.class, epoch, serverTime))
+                .thenReturn(oldest);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, epoch, middle))
+                .thenReturn(List.of(List.of(p1)).iterator());
+        when(mockOpenElisClient.getModifiedResources(Patient.class, middle, serverTime))
+                .thenReturn(List.of(List.of(p2)).iterator());
 
         task.sync(Patient.class);
 
         verify(mockOdooClient).update(p1);
         verify(mockOdooClient).update(p2);
-        verify(mockTimestampStore).update(now, Patient.class);
-        mockSyncUtils.verify(() -> SyncUtils.clearLastUpdatedTimestamps());
+        InOrder inOrder = Mockito.inOrder(mockTimestampStore);
+        inOrder.verify(mockTimestampStore).updateCursor(new SyncCursor(middle, Set.of("p2")), Patient.class);
+        inOrder.verify(mockTimestampStore).update(serverTime, new SyncCursor(middle, Set.of("p2")), Patient.class);
+    }
+
+    @Test
+    public void sync_shouldNotCheckpointALaterSliceThatCompletesBeforeAnEarlierOne() throws Exception {
+        LocalDateTime serverTime = LocalDateTime.now().truncatedTo(MILLIS);
+        LocalDateTime oldest = serverTime.minusHours(2);
+        LocalDateTime middle = serverTime.minusHours(1);
+        LocalDateTime epoch = LocalDateTime.of(1970, 1, 1, 0, 0, 0);
+        Patient p1 = createPatient("p1", oldest);
+        Patient p2 = createPatient("p2", middle);
+        Whitebox.setInternalState(task, "backfillSlices", 2);
+        Whitebox.setInternalState(task, "backfillThreshold", 2);
+        when(mockOpenElisClient.getModifiedSummary(Patient.class, epoch)).thenReturn(new SearchSummary(2, serverTime));
+        when(mockOpenElisClient.getOldestLastUpdated(Patient.class, epoch, serverTime))
+                .thenReturn(oldest);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, epoch, middle))
+                .thenReturn(List.of(List.of(p1)).iterator());
+        when(mockOpenElisClient.getModifiedResources(Patient.class, middle, serverTime))
+                .thenReturn(List.of(List.of(p2)).iterator());
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+                    release.await();
+                    return null;
+                })
+                .when(mockOdooClient)
+                .update(p1);
+        CompletableFuture<Void> sync = CompletableFuture.runAsync(() -> task.sync(Patient.class));
+
+        verify(mockOdooClient, timeout(5000)).update(p2);
+        verify(mockTimestampStore, after(200).never()).updateCursor(any(), any());
+        release.countDown();
+        sync.get(5, TimeUnit.SECONDS);
+
+        InOrder inOrder = Mockito.inOrder(mockTimestampStore);
+        inOrder.verify(mockTimestampStore).updateCursor(new SyncCursor(oldest, Set.of("p1")), Patient.class);
+        inOrder.verify(mockTimestampStore).updateCursor(new SyncCursor(middle, Set.of("p2")), Patient.class);
+        inOrder.verify(mockTimestampStore).update(serverTime, new SyncCursor(middle, Set.of("p2")), Patient.class);
+    }
+
+    @Test
+    public void sync_shouldNotSplitABacklogBelowTheThreshold() {
+        LocalDateTime serverTime = LocalDateTime.now().truncatedTo(MILLIS);
+        LocalDateTime epoch = LocalDateTime.of(1970, 1, 1, 0, 0, 0);
+        Whitebox.setInternalState(task, "backfillSlices", 2);
+        Whitebox.setInternalState(task, "backfillThreshold", 2);
+        when(mockOpenElisClient.getModifiedSummary(Patient.class, epoch)).thenReturn(new SearchSummary(1, serverTime));
+        when(mockOpenElisClient.getModifiedResources(Patient.class, epoch, serverTime))
+                .thenReturn(List.<List<Patient>>of().iterator());
+
+        task.sync(Patient.class);
+
+        verify(mockOpenElisClient, never()).getOldestLastUpdated(any(), any(), any());
+        verify(mockTimestampStore).update(serverTime, null, Patient.class);
+    }
+
+    @Test
+    public void sync_shouldSkipTheResourcesAtTheBoundaryOfTheLastSync() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(MILLIS);
+        LocalDateTime lastSyncTs = now.minusMinutes(5);
+        LocalDateTime boundaryTs = lastSyncTs.minusSeconds(1);
+        SyncCursor boundary = new SyncCursor(boundaryTs, Set.of("p1"));
+        Patient p1 = createPatient("p1", boundaryTs);
+        Patient p2 = createPatient("p2", boundaryTs);
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
+        when(mockTimestampStore.getBoundary(Patient.class)).thenReturn(boundary);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, lastSyncTs.minus(OVERLAP, MILLIS), null))
+                .thenReturn(List.of(List.of(p1, p2)).iterator());
+
+        task.sync(Patient.class);
+
+        verify(mockOdooClient, never()).update(p1);
+        verify(mockOdooClient).update(p2);
+        verify(mockTimestampStore).update(now, new SyncCursor(boundaryTs, Set.of("p1", "p2")), Patient.class);
+    }
+
+    @Test
+    public void sync_shouldKeepTheBoundaryIfNoResourceIsSynced() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(MILLIS);
+        LocalDateTime lastSyncTs = now.minusMinutes(5);
+        SyncCursor boundary = new SyncCursor(lastSyncTs.minusSeconds(1), Set.of("p1"));
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
+        when(mockTimestampStore.getBoundary(Patient.class)).thenReturn(boundary);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, lastSyncTs.minus(OVERLAP, MILLIS), null))
+                .thenReturn(List.<List<Patient>>of().iterator());
+
+        task.sync(Patient.class);
+
+        verify(mockTimestampStore).update(now, boundary, Patient.class);
+    }
+
+    @Test
+    public void sync_shouldIgnoreACursorBeforeTheLastSyncTimestamp() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(MILLIS);
+        LocalDateTime lastSyncTs = now.minusMinutes(5);
+        Patient p1 = createPatient("p1", now.minusMinutes(10));
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
+        when(mockTimestampStore.getCursor(Patient.class))
+                .thenReturn(new SyncCursor(now.minusMinutes(10), Set.of("p1")));
+        when(mockOpenElisClient.getModifiedResources(Patient.class, lastSyncTs.minus(OVERLAP, MILLIS), null))
+                .thenReturn(List.of(List.of(p1)).iterator());
+
+        task.sync(Patient.class);
+
+        verify(mockOdooClient).update(p1);
+    }
+
+    @Test
+    public void sync_shouldFailAndNotUpdateTheTimestampIfAFailedResourceCannotBeAddedToTheRetryQueue() {
+        LocalDateTime now = LocalDateTime.now();
+        Patient p1 = new Patient();
+        p1.setId("p1");
+        LocalDateTime lastSyncTs = now.minusMinutes(5);
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
+        LocalDateTime effectiveLastSyncTs = lastSyncTs.minus(OVERLAP, MILLIS);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, effectiveLastSyncTs, null))
+                .thenReturn(List.of(List.of(p1)).iterator());
+        Mockito.doThrow(new RuntimeException("test")).when(mockOdooClient).update(p1);
+        Mockito.doThrow(new RuntimeException("queue")).when(mockRetryQueue).add("Patient", "p1", null);
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> task.sync(Patient.class));
+
+        assertEquals("Failed to sync Patient resources to Odoo", e.getMessage());
+        assertEquals("queue", e.getCause().getMessage());
+        verify(mockTimestampStore, never()).update(now, Patient.class);
+    }
+
+    @Test
+    public void sync_shouldRetryTheDueResourcesInTheRetryQueue() {
+        LocalDateTime now = LocalDateTime.now();
+        Patient p1 = new Patient();
+        p1.setId("p1");
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockRetryQueue.getDue("Patient"))
+                .thenReturn(List.of(
+                        new RetryEntry("Patient", "p1", null, 1, now),
+                        new RetryEntry("Patient", "p2", null, 2, now),
+                        new RetryEntry("Patient", "p3", null, 3, now)));
+        when(mockOpenElisClient.getById(Patient.class, "p1")).thenReturn(p1);
+        when(mockOpenElisClient.getById(Patient.class, "p2")).thenReturn(null);
+        when(mockOpenElisClient.getById(Patient.class, "p3")).thenThrow(new RuntimeException("test"));
+        when(mockOpenElisClient.getModifiedResources(Patient.class, LocalDateTime.of(1970, 1, 1, 0, 0, 0), null))
+                .thenReturn(List.<List<Patient>>of().iterator());
+
+        task.sync(Patient.class);
+
+        verify(mockOdooClient).update(p1);
+        verify(mockRetryQueue).remove("Patient", "p1");
+        verify(mockOdooClient).delete("Patient", "p2");
+        verify(mockRetryQueue).remove("Patient", "p2");
+        verify(mockRetryQueue).add("Patient", "p3", null);
+        verify(mockRetryQueue, never()).remove("Patient", "p3");
+        verify(mockTimestampStore).update(now, null, Patient.class);
+    }
+
+    @Test
+    public void sync_shouldRetryAtMostTheRetryBatchSizeOfDueResources() {
+        Whitebox.setInternalState(task, "retryBatchSize", 2);
+        LocalDateTime now = LocalDateTime.now();
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockRetryQueue.getDue("Patient"))
+                .thenReturn(List.of(
+                        new RetryEntry("Patient", "p1", null, 1, now),
+                        new RetryEntry("Patient", "p2", null, 1, now),
+                        new RetryEntry("Patient", "p3", null, 1, now)));
+        when(mockOpenElisClient.getModifiedResources(Patient.class, LocalDateTime.of(1970, 1, 1, 0, 0, 0), null))
+                .thenReturn(List.<List<Patient>>of().iterator());
+
+        task.sync(Patient.class);
+
+        verify(mockOpenElisClient).getById(Patient.class, "p1");
+        verify(mockOpenElisClient).getById(Patient.class, "p2");
+        verify(mockOpenElisClient, never()).getById(Patient.class, "p3");
+    }
+
+    @Test
+    public void sync_shouldSkipTheSyncWhileTheOdooCircuitIsOpen() {
+        when(mockOdooClient.isCircuitOpen()).thenReturn(true);
+        DependencyTracker patients = new DependencyTracker();
+
+        task.sync(Patient.class, patients);
+
+        verify(mockRetryQueue, never()).getDue(any());
+        verify(mockOpenElisClient, never()).getModifiedSummary(any(), any());
+        verify(mockTimestampStore, never()).update(any(), any(), any());
+        assertTrue(patients.awaitWritten("p1").isCompletedExceptionally());
+    }
+
+    @Test
+    public void sync_shouldStopWhenTheOdooCircuitOpensDuringTheSync() {
+        LocalDateTime now = LocalDateTime.now();
+        Patient p1 = createPatient("p1", now.minusMinutes(2));
+        Patient p2 = createPatient("p2", now.minusMinutes(1));
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, LocalDateTime.of(1970, 1, 1, 0, 0, 0), null))
+                .thenReturn(List.of(List.of(p1), List.of(p2)).iterator());
+        when(mockOdooClient.isCircuitOpen()).thenReturn(false, false, true);
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> task.sync(Patient.class));
+
+        assertEquals("Odoo became unavailable", e.getCause().getMessage());
+        verify(mockOdooClient).update(p1);
+        verify(mockOdooClient, never()).update(p2);
+        verify(mockTimestampStore, never()).update(any(), any(), any());
+    }
+
+    @Test
+    public void sync_shouldSendTheResourcesInBatchesWhenBatchingIsEnabled() {
+        LocalDateTime now = LocalDateTime.now();
+        Patient p1 = new Patient();
+        Patient p2 = new Patient();
+        Patient p3 = new Patient();
+        LocalDateTime lastSyncTs = now.minusMinutes(5);
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
+        LocalDateTime effectiveLastSyncTs = lastSyncTs.minus(OVERLAP, MILLIS);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, effectiveLastSyncTs, null))
+                .thenReturn(List.of(List.of(p1, p2, p3)).iterator());
+        when(mockOdooClient.isBatchEnabled()).thenReturn(true);
+        when(mockOdooClient.getBatchSize()).thenReturn(2);
+        List<List<DomainResource>> batches = new ArrayList<>();
+        Mockito.doAnswer(invocation -> {
+                    List<BatchEntry> entries = invocation.getArgument(0);
+                    batches.add(entries.stream().map(BatchEntry::getResource).toList());
+                    return null;
+                })
+                .when(mockOdooClient)
+                .batch(ArgumentMatchers.anyList());
+
+        task.sync(Patient.class);
+
+        assertEquals(List.of(List.of(p1, p2), List.of(p3)), batches);
+        verify(mockOdooClient, never()).update(ArgumentMatchers.any(DomainResource.class));
+        verify(mockTimestampStore).update(now, null, Patient.class);
+    }
+
+    @Test
+    public void sync_shouldSendTheRawPayloadOfAResourceReadWithoutParsingIt() {
+        LocalDateTime now = LocalDateTime.now();
+        Patient p1 = new Patient();
+        p1.setId("p1");
+        new RawPayload("{\"resourceType\":\"Patient\",\"id\":\"p1\"}", -1, -1).attach(p1);
+        LocalDateTime lastSyncTs = now.minusMinutes(5);
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
+        LocalDateTime effectiveLastSyncTs = lastSyncTs.minus(OVERLAP, MILLIS);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, effectiveLastSyncTs, null))
+                .thenReturn(List.of(List.of(p1)).iterator());
+        when(mockOdooClient.isBatchEnabled()).thenReturn(true);
+
+        task.sync(Patient.class);
+
+        verify(mockOdooClient).update("Patient", "p1", "{\"resourceType\":\"Patient\",\"id\":\"p1\"}");
+        verify(mockOdooClient, never()).batch(ArgumentMatchers.anyList());
+        verify(mockOdooClient, never()).update(ArgumentMatchers.any(DomainResource.class));
+        verify(mockFingerprintStore).save(p1);
+        verify(mockTimestampStore).update(now, null, Patient.class);
+    }
+
+    @Test
+    public void sync_shouldAddABatchEntryThatFailsToSyncToTheRetryQueue() {
+        LocalDateTime now = LocalDateTime.now();
+        Patient p1 = new Patient();
+        p1.setId("p1");
+        Patient p2 = new Patient();
+        p2.setId("p2");
+        LocalDateTime lastSyncTs = now.minusMinutes(5);
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockTimestampStore.getTimestamp(Patient.class)).thenReturn(lastSyncTs);
+        LocalDateTime effectiveLastSyncTs = lastSyncTs.minus(OVERLAP, MILLIS);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, effectiveLastSyncTs, null))
+                .thenReturn(List.of(List.of(p1, p2)).iterator());
+        when(mockOdooClient.isBatchEnabled()).thenReturn(true);
+        when(mockOdooClient.getBatchSize()).thenReturn(10);
+        Mockito.doAnswer(invocation -> {
+                    List<BatchEntry> entries = invocation.getArgument(0);
+                    entries.get(0).setError(new RuntimeException("test"));
+                    return null;
+                })
+                .when(mockOdooClient)
+                .batch(ArgumentMatchers.anyList());
+
+        task.sync(Patient.class);
+
+        verify(mockRetryQueue).add("Patient", "p1", null);
+        verify(mockRetryQueue).remove("Patient", "p2");
+        verify(mockTimestampStore).update(now, null, Patient.class);
+    }
+
+    @Test
+    public void sync_shouldHoldBackAServiceRequestUntilItsSubjectIsWritten() {
+        LocalDateTime now = LocalDateTime.now();
+        ServiceRequest sr1 = new ServiceRequest();
+        sr1.setId("sr1");
+        sr1.setSubject(new Reference("Patient/p1"));
+        ServiceRequest sr2 = new ServiceRequest();
+        sr2.setId("sr2");
+        sr2.setSubject(new Reference("Patient/p2"));
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockOpenElisClient.getModifiedResources(ServiceRequest.class, LocalDateTime.of(1970, 1, 1, 0, 0, 0), null))
+                .thenReturn(List.of(List.of(sr1, sr2)).iterator());
+        DependencyTracker patients = new DependencyTracker();
+        patients.expect("p1");
+        patients.enumerationComplete();
+        Mockito.doAnswer(invocation -> {
+                    patients.written("p1");
+                    return null;
+                })
+                .when(mockOdooClient)
+                .update(sr2);
+
+        task.sync(ServiceRequest.class, patients);
+
+        InOrder inOrder = Mockito.inOrder(mockOdooClient);
+        inOrder.verify(mockOdooClient).update(sr2);
+        inOrder.verify(mockOdooClient).update(sr1);
+        verify(mockTimestampStore).update(now, null, ServiceRequest.class);
+    }
+
+    @Test
+    public void sync_shouldAddAServiceRequestToTheRetryQueueIfItsSubjectFailsToSync() {
+        LocalDateTime now = LocalDateTime.now();
+        ServiceRequest sr = new ServiceRequest();
+        sr.setId("sr1");
+        sr.setSubject(new Reference("Patient/p1"));
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockOpenElisClient.getModifiedResources(ServiceRequest.class, LocalDateTime.of(1970, 1, 1, 0, 0, 0), null))
+                .thenReturn(List.of(List.of(sr)).iterator());
+        DependencyTracker patients = new DependencyTracker();
+        patients.expect("p1");
+        patients.failed("p1", new RuntimeException("test"));
+
+        task.sync(ServiceRequest.class, patients);
+
+        verify(mockOdooClient, never()).update(sr);
+        verify(mockRetryQueue).add("ServiceRequest", "sr1", null);
+        verify(mockTimestampStore).update(now, null, ServiceRequest.class);
+    }
+
+    @Test
+    public void sync_shouldRegisterTheWrittenPatientsWithTheTracker() {
+        LocalDateTime now = LocalDateTime.now();
+        Patient p1 = new Patient();
+        p1.setId("p1");
+        when(LocalDateTimeUtils.getCurrentTime()).thenReturn(now);
+        when(mockOpenElisClient.getModifiedResources(Patient.class, LocalDateTime.of(1970, 1, 1, 0, 0, 0), null))
+                .thenReturn(List.of(List.of(p1)).iterator());
+        DependencyTracker patients = new DependencyTracker();
+
+        task.sync(Patient.class, patients);
+
+        assertTrue(patients.awaitWritten("p1").isDone());
+        assertTrue(patients.awaitWritten("p2").isDone());
+        verify(mockOdooClient).update(p1);
     }
 
     @Test
     public void execute_callsSyncForPatientsAndServiceRequests() {
         task = Mockito.spy(task);
-        Mockito.doNothing().when(task).sync(Patient.class);
-        Mockito.doNothing().when(task).sync(ServiceRequest.class);
+        Mockito.doNothing().when(task).sync(eq(Patient.class), any(DependencyTracker.class));
+        Mockito.doNothing().when(task).sync(eq(ServiceRequest.class), any(DependencyTracker.class));
 
         task.execute();
 
-        verify(task).sync(Patient.class);
-        verify(task).sync(ServiceRequest.class);
+        verify(task).sync(eq(Patient.class), any(DependencyTracker.class));
+        verify(task).sync(eq(ServiceRequest.class), any(DependencyTracker.class));
+    }
+
+    @Test
+    public void execute_shouldFailIfThePatientSyncFails() {
+        task = Mockito.spy(task);
+        Mockito.doThrow(new RuntimeException("test")).when(task).sync(eq(Patient.class), any(DependencyTracker.class));
+        Mockito.doNothing().when(task).sync(eq(ServiceRequest.class), any(DependencyTracker.class));
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> task.execute());
+
+        assertEquals("test", e.getMessage());
+    }
+
+    @Test
+    public void execute_shouldReleaseTheServiceRequestsIfThePatientSyncFailsBeforeFetchingPatients() {
+        ServiceRequest sr = new ServiceRequest();
+        sr.setId("sr1");
+        sr.setSubject(new Reference("Patient/p1"));
+        when(mockOpenElisClient.getModifiedSummary(eq(Patient.class), any())).thenThrow(new RuntimeException("test"));
+        when(mockOpenElisClient.getModifiedResources(ServiceRequest.class, LocalDateTime.of(1970, 1, 1, 0, 0, 0), null))
+                .thenReturn(List.of(List.of(sr)).iterator());
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> task.execute());
+
+        assertEquals("test", e.getMessage());
+        verify(mockOdooClient, never()).update(sr);
+        verify(mockRetryQueue).add("ServiceRequest", "sr1", null);
     }
 }
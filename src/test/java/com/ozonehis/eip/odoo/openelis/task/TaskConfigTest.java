@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2024, Ozone HIS <info@ozone-his.com>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.ozonehis.eip.odoo.openelis.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+public class TaskConfigTest {
+
+    @Test
+    public void createExecutor_shouldCreateAFixedThreadPoolByDefault() {
+        Executor executor = TaskConfig.createExecutor(false, 3);
+
+        assertEquals(3, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+        ((ExecutorService) executor).shutdown();
+    }
+
+    @Test
+    public void createExecutor_shouldLimitTheConcurrencyOfVirtualThreads() {
+        if (Runtime.version().feature() < 21) {
+            RuntimeException e = assertThrows(RuntimeException.class, () -> TaskConfig.createExecutor(true, 3));
+            assertTrue(e.getMessage().startsWith("Virtual threads require a Java 21 or later runtime"));
+            return;
+        }
+
+        SimpleAsyncTaskExecutor executor = (SimpleAsyncTaskExecutor) TaskConfig.createExecutor(true, 3);
+
+        assertEquals(3, executor.getConcurrencyLimit());
+    }
+}
@@ -13,9 +13,12 @@ import com.ozonehis.eip.odoo.openelis.PropertiesUtils;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.util.Properties;
+import java.util.Set;
+import org.apache.commons.io.function.IOConsumer;
 import org.hl7.fhir.r4.model.Patient;
 import org.hl7.fhir.r4.model.ServiceRequest;
 import org.junit.jupiter.api.AfterEach;
@@ -98,7 +101,12 @@ public class TimestampStoreTest {
         Whitebox.setInternalState(store, "props", existingProps);
         Whitebox.setInternalState(store, "file", mockFile);
         Mockito.when(PropertiesUtils.createProperties()).thenReturn(mockProperties);
-        Mockito.when(EipFileUtils.openOutputStream(mockFile)).thenReturn(mockFileOutputStream);
+        mockEipFileUtils
+                .when(() -> EipFileUtils.writeAtomically(Mockito.eq(mockFile), Mockito.any()))
+                .thenAnswer(invocation -> {
+                    invocation.<IOConsumer<OutputStream>>getArgument(1).accept(mockFileOutputStream);
+                    return null;
+                });
 
         store.update(newPatientTs, Patient.class);
 
@@ -115,14 +123,84 @@ public class TimestampStoreTest {
         Whitebox.setInternalState(store, "props", new Properties());
         Whitebox.setInternalState(store, "file", mockFile);
         Mockito.when(PropertiesUtils.createProperties()).thenReturn(mockProperties);
-        Mockito.when(EipFileUtils.openOutputStream(mockFile)).thenReturn(mockFileOutputStream);
-        Mockito.doThrow(new IOException()).when(mockProperties).store(mockFileOutputStream, null);
+        mockEipFileUtils
+                .when(() -> EipFileUtils.writeAtomically(Mockito.eq(mockFile), Mockito.any()))
+                .thenThrow(new IOException());
 
         RuntimeException e =
                 Assertions.assertThrows(RuntimeException.class, () -> store.update(newPatientTs, Patient.class));
 
         Assertions.assertEquals(
                 "Failed to save timestamps for " + Patient.class.getSimpleName() + " resource ", e.getMessage());
+        Assertions.assertNull(store.getTimestamp(Patient.class));
+    }
+
+    @Test
+    public void update_shouldNotRewriteTheFileIfTheTimestampIsUnchanged() {
+        final String ts = "2021-01-01T01:00:00.000" + TZ_OFFSET;
+        Properties props = new Properties();
+        props.put(Patient.class.getSimpleName(), ts);
+        Whitebox.setInternalState(store, "props", props);
+
+        store.update(ZonedDateTime.parse(ts).toLocalDateTime(), Patient.class);
+
+        mockEipFileUtils.verify(() -> EipFileUtils.writeAtomically(Mockito.any(), Mockito.any()), Mockito.never());
+    }
+
+    @Test
+    public void getCursor_shouldReturnNullIfNoCursorIsSaved() {
+        Whitebox.setInternalState(store, "props", new Properties());
+
+        Assertions.assertNull(store.getCursor(Patient.class));
+    }
+
+    @Test
+    public void getCursor_shouldReturnTheSavedCursor() {
+        final String ts = "2021-01-01T01:00:00.000" + TZ_OFFSET;
+        Properties props = new Properties();
+        props.put("Patient.cursor", ts + "|p1,p2");
+        Whitebox.setInternalState(store, "props", props);
+
+        SyncCursor cursor = store.getCursor(Patient.class);
+
+        Assertions.assertEquals(ZonedDateTime.parse(ts).toLocalDateTime(), cursor.lastUpdated());
+        Assertions.assertEquals(Set.of("p1", "p2"), cursor.ids());
+    }
+
+    @Test
+    public void updateCursor_shouldSaveTheCursorAndUpdateShouldClearIt() {
+        final String ts = "2021-01-01T01:00:00.000" + TZ_OFFSET;
+        LocalDateTime timestamp = ZonedDateTime.parse(ts).toLocalDateTime();
+        Whitebox.setInternalState(store, "props", new Properties());
+        Whitebox.setInternalState(store, "file", mockFile);
+        Mockito.when(PropertiesUtils.createProperties()).thenAnswer(invocation -> new Properties());
+
+        store.updateCursor(new SyncCursor(timestamp, Set.of("p1")), Patient.class);
+
+        Assertions.assertEquals(new SyncCursor(timestamp, Set.of("p1")), store.getCursor(Patient.class));
+        store.update(timestamp, Patient.class);
+        Assertions.assertNull(store.getCursor(Patient.class));
+        Assertions.assertEquals(timestamp, store.getTimestamp(Patient.class));
+        mockEipFileUtils.verify(
+                () -> EipFileUtils.writeAtomically(Mockito.eq(mockFile), Mockito.any()), Mockito.times(2));
+    }
+
+    @Test
+    public void update_shouldSaveTheBoundary() {
+        final String ts = "2021-01-01T01:00:00.000" + TZ_OFFSET;
+        LocalDateTime timestamp = ZonedDateTime.parse(ts).toLocalDateTime();
+        SyncCursor boundary = new SyncCursor(timestamp.minusSeconds(1), Set.of("p1"));
+        Whitebox.setInternalState(store, "props", new Properties());
+        Whitebox.setInternalState(store, "file", mockFile);
+        Mockito.when(PropertiesUtils.createProperties()).thenAnswer(invocation -> new Properties());
+
+        store.update(timestamp, boundary, Patient.class);
+        store.update(timestamp, boundary, Patient.class);
+
+        Assertions.assertEquals(boundary, store.getBoundary(Patient.class));
+        mockEipFileUtils.verify(() -> EipFileUtils.writeAtomically(Mockito.eq(mockFile), Mockito.any()));
+        store.update(timestamp, null, Patient.class);
+        Assertions.assertNull(store.getBoundary(Patient.class));
     }
 
     @Test